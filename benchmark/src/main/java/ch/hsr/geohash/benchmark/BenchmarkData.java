@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.Random;
+
+/**
+ * Fixed, seeded input data shared by the benchmarks, so that runs on
+ * different machines or versions measure exactly the same work.
+ */
+final class BenchmarkData {
+	/**
+	 * Number of inputs per benchmark; a power of two, so that benchmarks can
+	 * cycle through them with a mask.
+	 */
+	static final int SIZE = 1 << 12;
+	static final int MASK = SIZE - 1;
+
+	static final long SEED = 0x5eedL;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Clustered points come from the {@link WorkloadGenerator}; unlike uniform
+	 * ones, they share prefixes and keep hitting the same cells.
+	 *
+	 * @param distribution
+	 *            <code>uniform</code> or <code>clustered</code>
+	 * @return the latitudes and the longitudes of {@link #SIZE} points
+	 */
+	static double[][] points(String distribution) {
+		if ("clustered".equals(distribution)) {
+			Workload workload = new WorkloadGenerator(SEED).clusteredPoints(SIZE);
+			return new double[][] { workload.getColumn(0), workload.getColumn(1) };
+		}
+		if ("uniform".equals(distribution)) {
+			Random rand = new Random(SEED);
+			return new double[][] { randomLatitudes(rand), randomLongitudes(rand) };
+		}
+		throw new IllegalArgumentException("Unknown distribution: " + distribution);
+	}
+
+	static double[] randomLatitudes(Random rand) {
+		double[] latitudes = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			latitudes[i] = rand.nextDouble() * 180 - 90;
+		}
+		return latitudes;
+	}
+
+	static double[] randomLongitudes(Random rand) {
+		double[] longitudes = new double[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			longitudes[i] = rand.nextDouble() * 360 - 180;
+		}
+		return longitudes;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.CompiledGeoHashQuery;
+import ch.hsr.geohash.util.PolylineCorridorCoverer;
+
+/**
+ * Point membership in a corridor covering, by scanning the list of cells
+ * versus a {@link CompiledGeoHashQuery}. The corridor follows a generated
+ * track; its length sets the number of cells. The points are drawn around
+ * the track, so that many of them are close to the corridor's edge.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledGeoHashQueryBenchmark {
+	@Param({ "50", "600" })
+	public int trackPoints;
+
+	private List<GeoHash> cells;
+	private CompiledGeoHashQuery compiled;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		Workload track = new WorkloadGenerator(BenchmarkData.SEED).tracks(1, trackPoints);
+		List<WGS84Point> polyline = new ArrayList<WGS84Point>();
+		for (int i = 0; i < track.size(); i++) {
+			polyline.add(new WGS84Point(track.getColumn(0)[i], track.getColumn(1)[i]));
+		}
+		cells = new PolylineCorridorCoverer(polyline, 200.0).cover(30, 40);
+		compiled = CompiledGeoHashQuery.compile(cells);
+
+		// jitter the fixes of the track by up to about 500 meters
+		Random rand = new Random(BenchmarkData.SEED);
+		latitudes = new double[BenchmarkData.SIZE];
+		longitudes = new double[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			WGS84Point fix = polyline.get(rand.nextInt(polyline.size()));
+			latitudes[i] = fix.getLatitude() + 0.009 * rand.nextGaussian();
+			longitudes[i] = fix.getLongitude() + 0.009 * rand.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	public boolean linearScan() {
+		int i = index++ & BenchmarkData.MASK;
+		GeoHash hash = GeoHash.withBitPrecision(latitudes[i], longitudes[i], 64);
+		for (GeoHash cell : cells) {
+			if (hash.within(cell)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean compiled() {
+		int i = index++ & BenchmarkData.MASK;
+		return compiled.contains(latitudes[i], longitudes[i]);
+	}
+}
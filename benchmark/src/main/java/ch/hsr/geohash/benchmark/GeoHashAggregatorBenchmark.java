@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.GeoHashAggregator;
+
+/**
+ * Adding one event to per-cell aggregates, with a {@link GeoHashAggregator}
+ * versus a map from boxed hashes to boxed values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashAggregatorBenchmark {
+	@Param({ "uniform", "clustered" })
+	public String distribution;
+
+	@Param({ "25" })
+	public int precision;
+
+	private double[] latitudes;
+	private double[] longitudes;
+	private int index;
+
+	private GeoHashAggregator aggregator;
+	private Map<GeoHash, Double> sums;
+
+	@Setup
+	public void setUp() {
+		double[][] points = BenchmarkData.points(distribution);
+		latitudes = points[0];
+		longitudes = points[1];
+		aggregator = new GeoHashAggregator(precision);
+		sums = new HashMap<GeoHash, Double>();
+	}
+
+	@Benchmark
+	public int boxedMap() {
+		int i = index++ & BenchmarkData.MASK;
+		GeoHash cell = GeoHash.withBitPrecision(latitudes[i], longitudes[i], precision);
+		Double sum = sums.get(cell);
+		sums.put(cell, (sum == null) ? 1.0 : sum + 1.0);
+		return sums.size();
+	}
+
+	@Benchmark
+	public int aggregator() {
+		int i = index++ & BenchmarkData.MASK;
+		aggregator.add(latitudes[i], longitudes[i], 1.0);
+		return aggregator.size();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Decoding and the operations on existing GeoHashes, at several precisions
+ * given in base32 characters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashCodecBenchmark {
+	@Param({ "4", "8", "12" })
+	public int characters;
+
+	@Param({ "uniform", "clustered" })
+	public String distribution;
+
+	private GeoHash[] hashes;
+	private GeoHash[] parents;
+	private String[] base32;
+	private long[] longValues;
+	private int bits;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		double[][] points = BenchmarkData.points(distribution);
+		double[] latitudes = points[0];
+		double[] longitudes = points[1];
+
+		bits = 5 * characters;
+		hashes = new GeoHash[BenchmarkData.SIZE];
+		parents = new GeoHash[BenchmarkData.SIZE];
+		base32 = new String[BenchmarkData.SIZE];
+		longValues = new long[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			hashes[i] = GeoHash.withCharacterPrecision(latitudes[i], longitudes[i], characters);
+			// every other parent actually contains the hash
+			int j = (i % 2 == 0) ? i : (i + 1) & BenchmarkData.MASK;
+			parents[i] = GeoHash.withBitPrecision(latitudes[j], longitudes[j], bits / 2);
+			base32[i] = hashes[i].toBase32();
+			longValues[i] = hashes[i].longValue();
+		}
+	}
+
+	@Benchmark
+	public GeoHash fromGeohashString() {
+		return GeoHash.fromGeohashString(base32[index++ & BenchmarkData.MASK]);
+	}
+
+	@Benchmark
+	public GeoHash fromLongValue() {
+		return GeoHash.fromLongValue(longValues[index++ & BenchmarkData.MASK], bits);
+	}
+
+	@Benchmark
+	public String toBase32() {
+		return hashes[index++ & BenchmarkData.MASK].toBase32();
+	}
+
+	@Benchmark
+	public GeoHash[] getAdjacent() {
+		return hashes[index++ & BenchmarkData.MASK].getAdjacent();
+	}
+
+	@Benchmark
+	public GeoHash next() {
+		return hashes[index++ & BenchmarkData.MASK].next();
+	}
+
+	@Benchmark
+	public boolean within() {
+		int i = index++ & BenchmarkData.MASK;
+		return hashes[i].within(parents[i]);
+	}
+}
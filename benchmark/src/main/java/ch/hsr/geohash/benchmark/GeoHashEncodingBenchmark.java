@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Encoding of coordinates into GeoHashes at several precisions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashEncodingBenchmark {
+	@Param({ "5", "20", "40", "60" })
+	public int bits;
+
+	@Param({ "uniform", "clustered" })
+	public String distribution;
+
+	private double[] latitudes;
+	private double[] longitudes;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		double[][] points = BenchmarkData.points(distribution);
+		latitudes = points[0];
+		longitudes = points[1];
+	}
+
+	@Benchmark
+	public GeoHash withBitPrecision() {
+		int i = index++ & BenchmarkData.MASK;
+		return GeoHash.withBitPrecision(latitudes[i], longitudes[i], bits);
+	}
+
+	@Benchmark
+	public GeoHash withCharacterPrecision() {
+		int i = index++ & BenchmarkData.MASK;
+		return GeoHash.withCharacterPrecision(latitudes[i], longitudes[i], Math.max(1, bits / 5));
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.BoundingBoxGeoHashIterator;
+import ch.hsr.geohash.util.GeoHashSizeTable;
+import ch.hsr.geohash.util.LineSegmentBufferGeoHashIterator;
+import ch.hsr.geohash.util.RadialGeoHashIterator;
+import ch.hsr.geohash.util.RectangleGeoHashIterator;
+import ch.hsr.geohash.util.TrackGeoHashIterator;
+import ch.hsr.geohash.util.TwoGeoHashBoundingBox;
+
+/**
+ * Full iterations of the covering iterators, swept over precision, area and
+ * latitude. Besides the iterations per second, every benchmark reports the
+ * <code>cells</code> it yielded per second, so that the scaling curves of the
+ * iterators can be compared directly; the GC profiler adds the allocation
+ * rate. The whole sweep takes a while, so narrow it down with <code>-p</code>
+ * where possible.
+ *
+ * All shapes are centered at the same longitude: the box is
+ * <code>sizeInMeters</code> wide and high, the circle is inscribed in it, and
+ * the line segment and the track cross it diagonally with a buffer of a tenth
+ * of its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashIteratorBenchmark {
+	private static final double LONGITUDE = 8.8184;
+	private static final int TRACK_POINTS = 9;
+
+	@Param({ "20", "25", "30", "35" })
+	public int precision;
+
+	@Param({ "1000", "10000", "100000" })
+	public double sizeInMeters;
+
+	@Param({ "0", "70" })
+	public double latitude;
+
+	private double latitudeLL;
+	private double longitudeLL;
+	private double latitudeUR;
+	private double longitudeUR;
+	private double bufferInMeters;
+	private List<WGS84Point> track;
+	private TwoGeoHashBoundingBox twoGeoHashBoundingBox;
+
+	/**
+	 * Counts the yielded GeoHashes; JMH reports them as a rate.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Cells {
+		public long cells;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			cells = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		double halfHeight = 0.5 * sizeInMeters / GeoHashSizeTable.metersPerDegreeLatitude(latitude);
+		double halfWidth = 0.5 * sizeInMeters / GeoHashSizeTable.metersPerDegreeLongitude(latitude);
+		latitudeLL = latitude - halfHeight;
+		longitudeLL = LONGITUDE - halfWidth;
+		latitudeUR = latitude + halfHeight;
+		longitudeUR = LONGITUDE + halfWidth;
+		bufferInMeters = 0.1 * sizeInMeters;
+
+		// a zigzag along the diagonal, like a road that isn't quite straight
+		track = new ArrayList<WGS84Point>();
+		for (int i = 0; i < TRACK_POINTS; i++) {
+			double t = i / (TRACK_POINTS - 1.0);
+			double wiggle = (i % 2 == 0 ? 0.1 : -0.1) * halfHeight;
+			track.add(new WGS84Point(latitudeLL + t * 2 * halfHeight + wiggle, longitudeLL + t * 2 * halfWidth));
+		}
+
+		BoundingBox box = new BoundingBox(latitudeLL, latitudeUR, longitudeLL, longitudeUR);
+		twoGeoHashBoundingBox = TwoGeoHashBoundingBox.withBitPrecision(box, precision);
+	}
+
+	@Benchmark
+	public void rectangle(Cells cells, Blackhole blackhole) {
+		cells.cells += consume(new RectangleGeoHashIterator(latitudeLL, longitudeLL, latitudeUR, longitudeUR, precision), blackhole);
+	}
+
+	@Benchmark
+	public void radial(Cells cells, Blackhole blackhole) {
+		cells.cells += consume(new RadialGeoHashIterator(latitude, LONGITUDE, 0.5 * sizeInMeters, precision), blackhole);
+	}
+
+	@Benchmark
+	public void lineSegmentBuffer(Cells cells, Blackhole blackhole) {
+		cells.cells += consume(new LineSegmentBufferGeoHashIterator(latitudeLL, longitudeLL, latitudeUR, longitudeUR, bufferInMeters,
+				precision), blackhole);
+	}
+
+	@Benchmark
+	public void track(Cells cells, Blackhole blackhole) {
+		cells.cells += consume(new TrackGeoHashIterator(track, null, bufferInMeters, precision), blackhole);
+	}
+
+	@Benchmark
+	public void boundingBox(Cells cells, Blackhole blackhole) {
+		cells.cells += consume(new BoundingBoxGeoHashIterator(twoGeoHashBoundingBox), blackhole);
+	}
+
+	private static long consume(Iterator<GeoHash> iterator, Blackhole blackhole) {
+		long count = 0;
+		while (iterator.hasNext()) {
+			blackhole.consume(iterator.next());
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.GeoHashCellSet;
+import ch.hsr.geohash.util.GeoHashPolygonWriter;
+
+/**
+ * Exporting a covering of about 50000 cells around the clustered points as
+ * WKT: one rectangle per cell, built from the bounding boxes, versus the
+ * dissolved polygons of a {@link GeoHashPolygonWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashPolygonWriterBenchmark {
+	private GeoHashCellSet covering;
+	private List<GeoHash> cells;
+	private ByteArrayOutputStream out;
+
+	@Setup
+	public void setUp() {
+		Workload workload = new WorkloadGenerator(BenchmarkData.SEED).clusteredPoints(30000);
+		GeoHash[] hashes = new GeoHash[2 * workload.size()];
+		for (int i = 0; i < workload.size(); i++) {
+			hashes[2 * i] = GeoHash.withBitPrecision(workload.getColumn(0)[i], workload.getColumn(1)[i], 32);
+			hashes[2 * i + 1] = hashes[2 * i].getEasternNeighbour();
+		}
+		covering = GeoHashCellSet.of(hashes);
+		cells = covering.getCells();
+		out = new ByteArrayOutputStream(1 << 24);
+	}
+
+	@Benchmark
+	public int rectanglePerCell() throws IOException {
+		out.reset();
+		StringBuilder wkt = new StringBuilder("MULTIPOLYGON (");
+		for (GeoHash cell : cells) {
+			BoundingBox box = cell.getBoundingBox();
+			if (wkt.length() > 14) {
+				wkt.append(", ");
+			}
+			wkt.append("((").append(box.getMinLon()).append(' ').append(box.getMinLat()).append(", ");
+			wkt.append(box.getMaxLon()).append(' ').append(box.getMinLat()).append(", ");
+			wkt.append(box.getMaxLon()).append(' ').append(box.getMaxLat()).append(", ");
+			wkt.append(box.getMinLon()).append(' ').append(box.getMaxLat()).append(", ");
+			wkt.append(box.getMinLon()).append(' ').append(box.getMinLat()).append("))");
+		}
+		wkt.append(')');
+		out.write(wkt.toString().getBytes("US-ASCII"));
+		return out.size();
+	}
+
+	@Benchmark
+	public int dissolvedPolygons() throws IOException {
+		out.reset();
+		new GeoHashPolygonWriter(covering).writeWkt(out);
+		return out.size();
+	}
+}
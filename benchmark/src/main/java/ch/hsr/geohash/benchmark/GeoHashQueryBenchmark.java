@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.util.GeoHashSizeTable;
+
+/**
+ * Building the bounding box and circle queries, and testing points against
+ * them, swept over the size of the queried area and latitude. The points are
+ * spread over twice the queried area, so that about a quarter of them match.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashQueryBenchmark {
+	private static final double LONGITUDE = 8.8184;
+
+	@Param({ "100", "1000", "10000", "100000" })
+	public double sizeInMeters;
+
+	@Param({ "0", "70" })
+	public double latitude;
+
+	private WGS84Point center;
+	private BoundingBox boundingBox;
+	private GeoHashBoundingBoxQuery boundingBoxQuery;
+	private GeoHashCircleQuery circleQuery;
+	private WGS84Point[] points;
+	private double[] latitudes;
+	private double[] longitudes;
+	private long[] bitmask;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		double halfHeight = 0.5 * sizeInMeters / GeoHashSizeTable.metersPerDegreeLatitude(latitude);
+		double halfWidth = 0.5 * sizeInMeters / GeoHashSizeTable.metersPerDegreeLongitude(latitude);
+		center = new WGS84Point(latitude, LONGITUDE);
+		boundingBox = new BoundingBox(latitude - halfHeight, latitude + halfHeight, LONGITUDE - halfWidth, LONGITUDE + halfWidth);
+		boundingBoxQuery = new GeoHashBoundingBoxQuery(boundingBox);
+		circleQuery = new GeoHashCircleQuery(center, 0.5 * sizeInMeters);
+
+		Random rand = new Random(BenchmarkData.SEED);
+		points = new WGS84Point[BenchmarkData.SIZE];
+		latitudes = new double[BenchmarkData.SIZE];
+		longitudes = new double[BenchmarkData.SIZE];
+		bitmask = new long[BenchmarkData.SIZE / 64];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			latitudes[i] = latitude + (rand.nextDouble() * 4 - 2) * halfHeight;
+			longitudes[i] = LONGITUDE + (rand.nextDouble() * 4 - 2) * halfWidth;
+			points[i] = new WGS84Point(latitudes[i], longitudes[i]);
+		}
+	}
+
+	@Benchmark
+	public GeoHashBoundingBoxQuery createBoundingBoxQuery() {
+		return new GeoHashBoundingBoxQuery(boundingBox);
+	}
+
+	@Benchmark
+	public GeoHashCircleQuery createCircleQuery() {
+		return new GeoHashCircleQuery(center, 0.5 * sizeInMeters);
+	}
+
+	@Benchmark
+	public boolean boundingBoxQueryContains() {
+		return boundingBoxQuery.contains(points[index++ & BenchmarkData.MASK]);
+	}
+
+	@Benchmark
+	public boolean circleQueryContains() {
+		return circleQuery.contains(points[index++ & BenchmarkData.MASK]);
+	}
+
+	@Benchmark
+	public boolean boundingBoxQueryContainsCoordinates() {
+		int i = index++ & BenchmarkData.MASK;
+		return boundingBoxQuery.contains(latitudes[i], longitudes[i]);
+	}
+
+	/**
+	 * Filters all {@link BenchmarkData#SIZE} points at once.
+	 */
+	@Benchmark
+	public int boundingBoxQueryFilter() {
+		return boundingBoxQuery.filter(latitudes, longitudes, bitmask);
+	}
+}
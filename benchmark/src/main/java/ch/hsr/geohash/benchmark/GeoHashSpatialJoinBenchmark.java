@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.util.GeoHashSpatialJoin;
+
+/**
+ * Joins two sets of clustered points from the {@link WorkloadGenerator}, so
+ * that most points have partners within the distance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashSpatialJoinBenchmark {
+	@Param({ "100", "1000" })
+	public double distanceInMeters;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private GeoHashSpatialJoin join;
+	private double[] leftLatitudes;
+	private double[] leftLongitudes;
+	private double[] rightLatitudes;
+	private double[] rightLongitudes;
+
+	@Setup
+	public void setUp() {
+		join = new GeoHashSpatialJoin(distanceInMeters);
+		Workload left = new WorkloadGenerator(BenchmarkData.SEED).clusteredPoints(8 * BenchmarkData.SIZE);
+		Workload right = new WorkloadGenerator(BenchmarkData.SEED + 1).clusteredPoints(8 * BenchmarkData.SIZE);
+		leftLatitudes = left.getColumn(0);
+		leftLongitudes = left.getColumn(1);
+		rightLatitudes = right.getColumn(0);
+		rightLongitudes = right.getColumn(1);
+	}
+
+	@Benchmark
+	public int join() throws InterruptedException {
+		return join.join(leftLatitudes, leftLongitudes, rightLatitudes, rightLongitudes, threads).size();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.geofence.CircleGeofence;
+import ch.hsr.geohash.geofence.GeofenceIndex;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.util.GeodesicDistances;
+
+/**
+ * Matching an event against many circular fences around the clustered
+ * points, with a {@link GeofenceIndex} versus a loop over one
+ * {@link GeoHashCircleQuery} per fence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceIndexBenchmark {
+	@Param({ "100", "1000" })
+	public int fences;
+
+	private List<GeoHashCircleQuery> queries;
+	private GeofenceIndex index;
+	private int[] ids;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Workload centers = new WorkloadGenerator(BenchmarkData.SEED + 2).clusteredPoints(fences);
+		Random rand = new Random(BenchmarkData.SEED);
+		queries = new ArrayList<GeoHashCircleQuery>();
+		Map<Integer, CircleGeofence> circles = new HashMap<Integer, CircleGeofence>();
+		for (int i = 0; i < fences; i++) {
+			WGS84Point center = new WGS84Point(centers.getColumn(0)[i], centers.getColumn(1)[i]);
+			double radius = 500 + 5000 * rand.nextDouble();
+			queries.add(new GeoHashCircleQuery(center, radius, GeodesicDistances.HAVERSINE));
+			circles.put(i, new CircleGeofence(center, radius, GeodesicDistances.HAVERSINE));
+		}
+		index = new GeofenceIndex();
+		index.putAll(circles);
+		ids = new int[fences];
+
+		double[][] points = BenchmarkData.points("clustered");
+		latitudes = points[0];
+		longitudes = points[1];
+	}
+
+	@Benchmark
+	public int loopOverQueries() {
+		int i = next++ & BenchmarkData.MASK;
+		int count = 0;
+		for (GeoHashCircleQuery query : queries) {
+			if (query.contains(latitudes[i], longitudes[i])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int index() {
+		int i = next++ & BenchmarkData.MASK;
+		return index.snapshot().match(latitudes[i], longitudes[i], ids);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.HilbertKey;
+import ch.hsr.geohash.util.KeyRangePlanner;
+import ch.hsr.geohash.util.KeyRangePlanner.Curve;
+
+/**
+ * Planning the key ranges of the query boxes of the {@link WorkloadGenerator}
+ * along the GeoHash and the Hilbert curve, and encoding points into either
+ * key. Besides the plans per second, the planning benchmarks report the
+ * <code>ranges</code> they produced per second; divided by the former, that
+ * is the number of seeks per query a range-scanning store would make.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyRangePlannerBenchmark {
+	@Param({ "24", "30", "36" })
+	public int precision;
+
+	private BoundingBox[] boxes;
+	private double[] latitudes;
+	private double[] longitudes;
+	private int index;
+
+	/**
+	 * Counts the planned ranges; JMH reports them as a rate.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Ranges {
+		public long ranges;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			ranges = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		Workload workload = new WorkloadGenerator(BenchmarkData.SEED).boxes(BenchmarkData.SIZE);
+		boxes = new BoundingBox[workload.size()];
+		for (int i = 0; i < boxes.length; i++) {
+			boxes[i] = new BoundingBox(workload.getColumn(0)[i], workload.getColumn(2)[i], workload.getColumn(1)[i],
+					workload.getColumn(3)[i]);
+		}
+		double[][] points = BenchmarkData.points("clustered");
+		latitudes = points[0];
+		longitudes = points[1];
+	}
+
+	@Benchmark
+	public long[][] geoHashRanges(Ranges ranges) {
+		return plan(Curve.GEOHASH, ranges);
+	}
+
+	@Benchmark
+	public long[][] hilbertRanges(Ranges ranges) {
+		return plan(Curve.HILBERT, ranges);
+	}
+
+	@Benchmark
+	public long geoHashEncode() {
+		int i = index++ & BenchmarkData.MASK;
+		return GeoHash.encodeLongValue(latitudes[i], longitudes[i], precision);
+	}
+
+	@Benchmark
+	public long hilbertEncode() {
+		int i = index++ & BenchmarkData.MASK;
+		return HilbertKey.encode(latitudes[i], longitudes[i], precision);
+	}
+
+	private long[][] plan(Curve curve, Ranges ranges) {
+		long[][] planned = KeyRangePlanner.plan(boxes[index++ & BenchmarkData.MASK], precision, curve);
+		ranges.ranges += planned[0].length;
+		return planned;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.VincentyGeodesy;
+
+/**
+ * Vincenty's direct and inverse formulae, for pairs of points at a typical
+ * distance. The inverse formula iterates until it converges, so its cost
+ * depends on how far apart the points are.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VincentyGeodesyBenchmark {
+	@Param({ "1000", "100000", "10000000" })
+	public double distanceInMeters;
+
+	private WGS84Point[] from;
+	private WGS84Point[] to;
+	private double[] bearings;
+	private int index;
+
+	@Setup
+	public void setUp() {
+		Random rand = new Random(BenchmarkData.SEED);
+		from = new WGS84Point[BenchmarkData.SIZE];
+		to = new WGS84Point[BenchmarkData.SIZE];
+		bearings = new double[BenchmarkData.SIZE];
+		for (int i = 0; i < BenchmarkData.SIZE; i++) {
+			from[i] = new WGS84Point(rand.nextDouble() * 160 - 80, rand.nextDouble() * 360 - 180);
+			bearings[i] = rand.nextDouble() * 360;
+			to[i] = VincentyGeodesy.moveInDirection(from[i], bearings[i], distanceInMeters);
+		}
+	}
+
+	@Benchmark
+	public double distanceInMeters() {
+		int i = index++ & BenchmarkData.MASK;
+		return VincentyGeodesy.distanceInMeters(from[i], to[i]);
+	}
+
+	@Benchmark
+	public WGS84Point moveInDirection() {
+		int i = index++ & BenchmarkData.MASK;
+		return VincentyGeodesy.moveInDirection(from[i], bearings[i], distanceInMeters);
+	}
+}
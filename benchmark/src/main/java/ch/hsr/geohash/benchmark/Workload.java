@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A table of doubles stored column by column, as produced by the
+ * {@link WorkloadGenerator}. What the columns mean depends on the kind of
+ * workload; see the generator's methods.
+ *
+ * The binary form is a header of four ints (magic, version, number of columns
+ * and rows) followed by the columns, all big-endian, so that every column
+ * starts at a multiple of eight bytes and can be memory-mapped with
+ * {@link #map(File)} instead of being read into the heap.
+ */
+public final class Workload {
+	private static final int MAGIC = 0x4748574c; // "GHWL"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+
+	private final double[][] columns;
+
+	public Workload(double[]... columns) {
+		if (columns.length == 0) {
+			throw new IllegalArgumentException("A workload needs at least one column");
+		}
+		for (double[] column : columns) {
+			if (column.length != columns[0].length) {
+				throw new IllegalArgumentException("All columns must have the same length");
+			}
+		}
+		this.columns = columns;
+	}
+
+	public int size() {
+		return columns[0].length;
+	}
+
+	public int getNumberOfColumns() {
+		return columns.length;
+	}
+
+	public double[] getColumn(int column) {
+		return columns[column];
+	}
+
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(columns.length);
+			out.writeInt(size());
+			for (double[] column : columns) {
+				for (double value : column) {
+					out.writeDouble(value);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a workload written by {@link #write(File)} into the heap.
+	 */
+	public static Workload read(File file) throws IOException {
+		DoubleBuffer[] mapped = map(file);
+		double[][] columns = new double[mapped.length][];
+		for (int i = 0; i < mapped.length; i++) {
+			columns[i] = new double[mapped[i].remaining()];
+			mapped[i].get(columns[i]);
+		}
+		return new Workload(columns);
+	}
+
+	/**
+	 * Maps the columns of a workload written by {@link #write(File)} into
+	 * memory without copying them.
+	 *
+	 * @return one read-only buffer per column
+	 */
+	public static DoubleBuffer[] map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(file + " is not a workload file");
+			}
+			int numberOfColumns = header.getInt();
+			int rows = header.getInt();
+			if (channel.size() != HEADER_BYTES + 8L * numberOfColumns * rows) {
+				throw new IOException(file + " is truncated");
+			}
+
+			DoubleBuffer[] columns = new DoubleBuffer[numberOfColumns];
+			for (int i = 0; i < numberOfColumns; i++) {
+				columns[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + 8L * i * rows, 8L * rows).asDoubleBuffer();
+			}
+			return columns;
+		} finally {
+			// the mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import ch.hsr.geohash.util.GeoHashSizeTable;
+
+/**
+ * Generates skewed, realistic spatial workloads: points clustered around
+ * cities, noisy road-like tracks, query boxes and radii with long-tailed
+ * sizes, and the antimeridian and polar cases that uniform data rarely hits.
+ *
+ * The same seed always yields the same workload. The cities are drawn first,
+ * so the points, tracks and queries of one generator are concentrated in the
+ * same places, just like real data and the queries against it.
+ */
+public class WorkloadGenerator {
+	/**
+	 * Fraction of points spread uniformly over the globe rather than around a
+	 * city.
+	 */
+	private static final double BACKGROUND_FRACTION = 0.05;
+
+	private final Random rand;
+	private final double[] cityLatitudes;
+	private final double[] cityLongitudes;
+	private final double[] citySigmas;
+	/** cumulative Zipf weights of the cities */
+	private final double[] cityWeights;
+
+	public WorkloadGenerator(long seed) {
+		this(seed, 100);
+	}
+
+	/**
+	 * @param cities
+	 *            the number of clusters; their sizes follow Zipf's law, so a
+	 *            few of them hold most of the points
+	 */
+	public WorkloadGenerator(long seed, int cities) {
+		if (cities < 1) {
+			throw new IllegalArgumentException("There must be at least one city");
+		}
+		rand = new Random(seed);
+		cityLatitudes = new double[cities];
+		cityLongitudes = new double[cities];
+		citySigmas = new double[cities];
+		cityWeights = new double[cities];
+		double total = 0;
+		for (int i = 0; i < cities; i++) {
+			// most people live between 40S and 65N
+			cityLatitudes[i] = -40 + 105 * rand.nextDouble();
+			cityLongitudes[i] = -180 + 360 * rand.nextDouble();
+			// from 1 km to 30 km, the larger cities the more spread out
+			citySigmas[i] = 30000 / Math.sqrt(1 + i) * (0.5 + rand.nextDouble()) + 1000;
+			total += 1.0 / (1 + i);
+			cityWeights[i] = total;
+		}
+		for (int i = 0; i < cities; i++) {
+			cityWeights[i] /= total;
+		}
+	}
+
+	/**
+	 * @return a workload with the columns latitude and longitude
+	 */
+	public Workload clusteredPoints(int count) {
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		double[] point = new double[2];
+		for (int i = 0; i < count; i++) {
+			nextClusteredPoint(point);
+			latitudes[i] = point[0];
+			longitudes[i] = point[1];
+		}
+		return new Workload(latitudes, longitudes);
+	}
+
+	/**
+	 * Vehicles driving from a clustered start, one fix per second at 5 to 35
+	 * m/s, with a heading that drifts and now and then turns at a junction,
+	 * and about five meters of GPS noise on every fix.
+	 *
+	 * @return a workload with the columns latitude, longitude and the number
+	 *         of the track the fix belongs to
+	 */
+	public Workload tracks(int numberOfTracks, int pointsPerTrack) {
+		int count = numberOfTracks * pointsPerTrack;
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		double[] trackNumbers = new double[count];
+		double[] position = new double[2];
+		int i = 0;
+		for (int track = 0; track < numberOfTracks; track++) {
+			nextClusteredPoint(position);
+			double heading = 360 * rand.nextDouble();
+			double speed = 5 + 30 * rand.nextDouble();
+			for (int fix = 0; fix < pointsPerTrack; fix++, i++) {
+				if (rand.nextDouble() < 0.02) {
+					heading += rand.nextBoolean() ? 90 : -90;
+				} else {
+					heading += 3 * rand.nextGaussian();
+				}
+				speed = Math.max(0, Math.min(40, speed + rand.nextGaussian()));
+				move(position, heading, speed);
+
+				double noiseLatitude = position[0] + 5 * rand.nextGaussian() / GeoHashSizeTable.getMetersPerDegreeLatitude(position[0]);
+				double noiseLongitude = position[1] + 5 * rand.nextGaussian() / metersPerDegreeLongitude(position[0]);
+				latitudes[i] = clampLatitude(noiseLatitude);
+				longitudes[i] = wrapLongitude(noiseLongitude);
+				trackNumbers[i] = track;
+			}
+		}
+		return new Workload(latitudes, longitudes, trackNumbers);
+	}
+
+	/**
+	 * Query boxes around clustered points, with log-normally distributed
+	 * sizes (median 1 km, a tenth of them above about 7 km) and aspect ratios.
+	 * Boxes are clipped to the valid latitude and longitude range.
+	 *
+	 * @return a workload with the columns lower-left latitude and longitude,
+	 *         and upper-right latitude and longitude
+	 */
+	public Workload boxes(int count) {
+		double[] latitudesLL = new double[count];
+		double[] longitudesLL = new double[count];
+		double[] latitudesUR = new double[count];
+		double[] longitudesUR = new double[count];
+		double[] center = new double[2];
+		for (int i = 0; i < count; i++) {
+			nextClusteredPoint(center);
+			double size = nextLogNormal(1000, 1.5);
+			double aspect = Math.exp(0.5 * rand.nextGaussian());
+			double halfHeight = 0.5 * size / Math.sqrt(aspect) / GeoHashSizeTable.getMetersPerDegreeLatitude(center[0]);
+			double halfWidth = Math.min(180, 0.5 * size * Math.sqrt(aspect) / metersPerDegreeLongitude(center[0]));
+			latitudesLL[i] = Math.max(-90, center[0] - halfHeight);
+			longitudesLL[i] = Math.max(-180, center[1] - halfWidth);
+			latitudesUR[i] = Math.min(90, center[0] + halfHeight);
+			longitudesUR[i] = Math.min(180, center[1] + halfWidth);
+		}
+		return new Workload(latitudesLL, longitudesLL, latitudesUR, longitudesUR);
+	}
+
+	/**
+	 * Radius queries around clustered points, with log-normally distributed
+	 * radii (median 500 m).
+	 *
+	 * @return a workload with the columns latitude, longitude and radius in
+	 *         meters
+	 */
+	public Workload circles(int count) {
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		double[] radii = new double[count];
+		double[] center = new double[2];
+		for (int i = 0; i < count; i++) {
+			nextClusteredPoint(center);
+			latitudes[i] = center[0];
+			longitudes[i] = center[1];
+			radii[i] = nextLogNormal(500, 1.5);
+		}
+		return new Workload(latitudes, longitudes, radii);
+	}
+
+	/**
+	 * Radius queries where the geometry is hard: within a few kilometers of
+	 * the antimeridian, within a degree of either pole, exactly on the
+	 * boundaries of the coordinate range and of the first GeoHash cells, in
+	 * roughly equal parts.
+	 *
+	 * @return a workload with the columns latitude, longitude and radius in
+	 *         meters
+	 */
+	public Workload edgeCases(int count) {
+		double[] latitudes = new double[count];
+		double[] longitudes = new double[count];
+		double[] radii = new double[count];
+		double[] exact = { -90, -45, 0, 45, 90 };
+		double[] exactLongitudes = { -180, -90, 0, 90, 180 };
+		for (int i = 0; i < count; i++) {
+			switch (i % 3) {
+			case 0:
+				latitudes[i] = -80 + 160 * rand.nextDouble();
+				longitudes[i] = wrapLongitude(180 + 5000 * rand.nextGaussian() / metersPerDegreeLongitude(latitudes[i]));
+				break;
+			case 1:
+				latitudes[i] = (rand.nextBoolean() ? 1 : -1) * (90 - rand.nextDouble());
+				longitudes[i] = -180 + 360 * rand.nextDouble();
+				break;
+			default:
+				latitudes[i] = exact[rand.nextInt(exact.length)];
+				longitudes[i] = exactLongitudes[rand.nextInt(exactLongitudes.length)];
+				break;
+			}
+			radii[i] = nextLogNormal(500, 1.5);
+		}
+		return new Workload(latitudes, longitudes, radii);
+	}
+
+	private void nextClusteredPoint(double[] point) {
+		if (rand.nextDouble() < BACKGROUND_FRACTION) {
+			// uniform on the sphere, not in latitude
+			point[0] = Math.toDegrees(Math.asin(2 * rand.nextDouble() - 1));
+			point[1] = -180 + 360 * rand.nextDouble();
+			return;
+		}
+		int city = pickCity();
+		point[0] = cityLatitudes[city];
+		point[1] = cityLongitudes[city];
+		move(point, 360 * rand.nextDouble(), Math.abs(citySigmas[city] * rand.nextGaussian()));
+	}
+
+	private int pickCity() {
+		double x = rand.nextDouble();
+		int low = 0;
+		int high = cityWeights.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cityWeights[mid] < x) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private double nextLogNormal(double median, double sigma) {
+		return median * Math.exp(sigma * rand.nextGaussian());
+	}
+
+	/**
+	 * Moves the point in place, in a local flat approximation that is good
+	 * enough for the short steps taken here.
+	 */
+	private static void move(double[] point, double bearing, double meters) {
+		double radians = Math.toRadians(bearing);
+		double latitude = point[0] + meters * Math.cos(radians) / GeoHashSizeTable.getMetersPerDegreeLatitude(point[0]);
+		double longitude = point[1] + meters * Math.sin(radians) / metersPerDegreeLongitude(point[0]);
+		if (latitude > 90) {
+			// over the pole, to the other side of the globe
+			latitude = 180 - latitude;
+			longitude += 180;
+		} else if (latitude < -90) {
+			latitude = -180 - latitude;
+			longitude += 180;
+		}
+		point[0] = latitude;
+		point[1] = wrapLongitude(longitude);
+	}
+
+	/**
+	 * Never zero, so that steps near the poles stay finite.
+	 */
+	private static double metersPerDegreeLongitude(double latitude) {
+		return Math.max(1, GeoHashSizeTable.getMetersPerDegreeLongitude(latitude));
+	}
+
+	private static double clampLatitude(double latitude) {
+		return Math.max(-90, Math.min(90, latitude));
+	}
+
+	private static double wrapLongitude(double longitude) {
+		double wrapped = longitude - 360 * Math.floor((longitude + 180) / 360);
+		return (wrapped >= 180) ? wrapped - 360 : wrapped;
+	}
+
+	/**
+	 * Writes a workload file for load tests:
+	 * <code>WorkloadGenerator &lt;points|tracks|boxes|circles|edges&gt; &lt;count&gt; &lt;seed&gt; &lt;file&gt;</code>.
+	 * For tracks, the count is the number of tracks of 600 fixes each.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 4) {
+			System.err.println("usage: WorkloadGenerator <points|tracks|boxes|circles|edges> <count> <seed> <file>");
+			System.exit(1);
+		}
+		WorkloadGenerator generator = new WorkloadGenerator(Long.parseLong(args[2]));
+		int count = Integer.parseInt(args[1]);
+		Workload workload;
+		if ("points".equals(args[0])) {
+			workload = generator.clusteredPoints(count);
+		} else if ("tracks".equals(args[0])) {
+			workload = generator.tracks(count, 600);
+		} else if ("boxes".equals(args[0])) {
+			workload = generator.boxes(count);
+		} else if ("circles".equals(args[0])) {
+			workload = generator.circles(count);
+		} else if ("edges".equals(args[0])) {
+			workload = generator.edgeCases(count);
+		} else {
+			throw new IllegalArgumentException("Unknown workload: " + args[0]);
+		}
+		workload.write(new File(args[3]));
+	}
+}
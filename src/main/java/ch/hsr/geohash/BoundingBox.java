@@ -8,8 +8,19 @@
  */
 package ch.hsr.geohash;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * A box of latitudes and longitudes. The constructors order the coordinates
+ * they are given; {@link #fromWestToEast(double, double, double, double)}
+ * creates boxes that cross the antimeridian, whose western edge has a greater
+ * longitude than their eastern edge.
+ */
 public class BoundingBox implements Serializable {
 	private static final long serialVersionUID = -7145192134410261076L;
 	private double minLat;
@@ -32,7 +43,45 @@ public class BoundingBox implements Serializable {
 	}
 
 	public BoundingBox(BoundingBox that) {
-		this(that.minLat, that.maxLat, that.minLon, that.maxLon);
+		this.minLat = that.minLat;
+		this.maxLat = that.maxLat;
+		this.minLon = that.minLon;
+		this.maxLon = that.maxLon;
+	}
+
+	/**
+	 * create a bounding box that extends east from the western to the
+	 * eastern longitude. If the western longitude is greater, the box crosses
+	 * the antimeridian.
+	 */
+	public static BoundingBox fromWestToEast(double minLat, double maxLat, double westLon, double eastLon) {
+		BoundingBox box = new BoundingBox(minLat, maxLat, westLon, westLon);
+		box.maxLon = eastLon;
+		return box;
+	}
+
+	/**
+	 * returns whether this box extends east across the 180th meridian, in
+	 * which case {@link #getMinLon()} is its western and {@link #getMaxLon()}
+	 * its eastern edge.
+	 */
+	public boolean crossesAntimeridian() {
+		return minLon > maxLon;
+	}
+
+	/**
+	 * returns this box, or its parts on either side of the antimeridian if
+	 * it crosses it, the western part first.
+	 */
+	public List<BoundingBox> splitAtAntimeridian() {
+		List<BoundingBox> parts = new ArrayList<BoundingBox>(2);
+		if (crossesAntimeridian()) {
+			parts.add(new BoundingBox(minLat, maxLat, minLon, 180));
+			parts.add(new BoundingBox(minLat, maxLat, -180, maxLon));
+		} else {
+			parts.add(this);
+		}
+		return parts;
 	}
 
 	public WGS84Point getUpperLeft() {
@@ -48,7 +97,7 @@ public class BoundingBox implements Serializable {
 	}
 
 	public double getLongitudeSize() {
-		return maxLon - minLon;
+		return crossesAntimeridian() ? maxLon - minLon + 360 : maxLon - minLon;
 	}
 
 	@Override
@@ -80,12 +129,30 @@ public class BoundingBox implements Serializable {
 	}
 
 	public boolean contains(WGS84Point point) {
-		return (point.getLatitude() >= minLat) && (point.getLongitude() >= minLon) && (point.getLatitude() <= maxLat)
-				&& (point.getLongitude() <= maxLon);
+		if (point.getLatitude() < minLat || point.getLatitude() > maxLat) {
+			return false;
+		}
+		if (crossesAntimeridian()) {
+			return point.getLongitude() >= minLon || point.getLongitude() <= maxLon;
+		}
+		return point.getLongitude() >= minLon && point.getLongitude() <= maxLon;
 	}
 
 	public boolean intersects(BoundingBox other) {
-		return !(other.minLon > maxLon || other.maxLon < minLon || other.minLat > maxLat || other.maxLat < minLat);
+		if (other.minLat > maxLat || other.maxLat < minLat) {
+			return false;
+		}
+		if (crossesAntimeridian() || other.crossesAntimeridian()) {
+			for (BoundingBox part : splitAtAntimeridian()) {
+				for (BoundingBox otherPart : other.splitAtAntimeridian()) {
+					if (!(otherPart.minLon > part.maxLon || otherPart.maxLon < part.minLon)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		return !(other.minLon > maxLon || other.maxLon < minLon);
 	}
 
 	@Override
@@ -96,10 +163,22 @@ public class BoundingBox implements Serializable {
 	public WGS84Point getCenterPoint() {
 		double centerLatitude = (minLat + maxLat) / 2;
 		double centerLongitude = (minLon + maxLon) / 2;
+		if (crossesAntimeridian()) {
+			centerLongitude += (centerLongitude > 0) ? -180 : 180;
+		}
 		return new WGS84Point(centerLatitude, centerLongitude);
 	}
 
+	/**
+	 * grows this box to include the other one. If either box crosses the
+	 * antimeridian, the longitudes grow in whichever direction covers both
+	 * with the narrower box.
+	 */
 	public void expandToInclude(BoundingBox other) {
+		if (crossesAntimeridian() || other.crossesAntimeridian()) {
+			expandAroundTheGlobe(other);
+			return;
+		}
 		if (other.minLon < minLon) {
 			minLon = other.minLon;
 		}
@@ -114,6 +193,37 @@ public class BoundingBox implements Serializable {
 		}
 	}
 
+	private void expandAroundTheGlobe(BoundingBox other) {
+		double size = getLongitudeSize();
+		double otherSize = other.getLongitudeSize();
+		// the widths when extending east from either western edge
+		double fromThis = Math.max(size, degreesEast(minLon, other.minLon) + otherSize);
+		double fromOther = Math.max(otherSize, degreesEast(other.minLon, minLon) + size);
+		double west = (fromThis <= fromOther) ? minLon : other.minLon;
+		double width = Math.min(fromThis, fromOther);
+		if (width >= 360) {
+			minLon = -180;
+			maxLon = 180;
+		} else {
+			minLon = west;
+			maxLon = (west + width > 180) ? west + width - 360 : west + width;
+		}
+		minLat = Math.min(minLat, other.minLat);
+		maxLat = Math.max(maxLat, other.maxLat);
+	}
+
+	/**
+	 * returns how many degrees east of the first longitude the second lies,
+	 * between 0 and 360.
+	 */
+	private static double degreesEast(double from, double to) {
+		return (to >= from) ? to - from : to - from + 360;
+	}
+
+	/**
+	 * returns the western edge, which is greater than the eastern edge if the
+	 * box crosses the antimeridian.
+	 */
 	public double getMinLon() {
 		return minLon;
 	}
@@ -126,7 +236,35 @@ public class BoundingBox implements Serializable {
 		return maxLat;
 	}
 
+	/**
+	 * returns the eastern edge.
+	 */
 	public double getMaxLon() {
 		return maxLon;
 	}
+
+	/**
+	 * write this box as four doubles: minimum and maximum latitude, then
+	 * western and eastern longitude.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeDouble(minLat);
+		out.writeDouble(maxLat);
+		out.writeDouble(minLon);
+		out.writeDouble(maxLon);
+	}
+
+	/**
+	 * read a box written by {@link #writeTo(DataOutput)}.
+	 */
+	public static BoundingBox readFrom(DataInput in) throws IOException {
+		double minLat = in.readDouble();
+		double maxLat = in.readDouble();
+		double minLon = in.readDouble();
+		return fromWestToEast(minLat, maxLat, minLon, in.readDouble());
+	}
+
+	private Object writeReplace() {
+		return new GeoHashExternalForm(this);
+	}
 }
@@ -8,6 +8,9 @@
  */
 package ch.hsr.geohash;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -61,6 +64,61 @@ public final class GeoHash implements Comparable<GeoHash>, Serializable {
 		return new GeoHash(latitude, longitude, numberOfBits);
 	}
 
+	/**
+	 * encode the given point exactly like
+	 * {@link #withBitPrecision(double, double, int)}, but only return the
+	 * resulting {@link #longValue()}. Nothing is allocated, so this is the way
+	 * to hash large numbers of points.
+	 */
+	public static long encodeLongValue(double latitude, double longitude, int numberOfBits) {
+		if (Math.abs(latitude) > 90.0 || Math.abs(longitude) > 180.0) {
+			throw new IllegalArgumentException("Can't have lat/lon values out of (-90,90)/(-180/180)");
+		}
+		numberOfBits = Math.max(0, Math.min(numberOfBits, 64));
+
+		double minLatitude = -90, maxLatitude = 90;
+		double minLongitude = -180, maxLongitude = 180;
+		long bits = 0;
+		for (int i = 0; i < numberOfBits; i++) {
+			bits <<= 1;
+			if ((i & 1) == 0) {
+				double mid = (minLongitude + maxLongitude) / 2;
+				if (longitude >= mid) {
+					bits |= 1;
+					minLongitude = mid;
+				} else {
+					maxLongitude = mid;
+				}
+			} else {
+				double mid = (minLatitude + maxLatitude) / 2;
+				if (latitude >= mid) {
+					bits |= 1;
+					minLatitude = mid;
+				} else {
+					maxLatitude = mid;
+				}
+			}
+		}
+		return (numberOfBits == 0) ? 0 : bits << (64 - numberOfBits);
+	}
+
+	/**
+	 * encode the given point once, and store the {@link #longValue()} of every
+	 * precision from 0 up to <code>prefixesOut.length - 1</code> bits in
+	 * <code>prefixesOut</code>, indexed by the number of bits.
+	 */
+	public static void encodePrefixes(double latitude, double longitude, long[] prefixesOut) {
+		int numberOfBits = prefixesOut.length - 1;
+		if (numberOfBits < 0 || numberOfBits > 64) {
+			throw new IllegalArgumentException("Can only encode up to 64 bits");
+		}
+		long bits = encodeLongValue(latitude, longitude, numberOfBits);
+		prefixesOut[0] = 0;
+		for (int i = 1; i <= numberOfBits; i++) {
+			prefixesOut[i] = bits & (FIRST_BIT_FLAGGED >> (i - 1));
+		}
+	}
+
 	public static GeoHash fromBinaryString(String binaryString) {
 		GeoHash geohash = new GeoHash();
 		for (int i = 0; i < binaryString.length(); i++) {
@@ -141,15 +199,12 @@ public final class GeoHash implements Comparable<GeoHash>, Serializable {
 		boolean isEvenBit = true;
 		GeoHash hash = new GeoHash();
 
-		String binaryString = Long.toBinaryString(hashVal);
-		while (binaryString.length() < 64) {
-			binaryString = "0" + binaryString;
-		}
 		for (int j = 0; j < significantBits; j++) {
+			boolean isOnBit = (hashVal & (FIRST_BIT_FLAGGED >>> j)) != 0;
 			if (isEvenBit) {
-				divideRangeDecode(hash, longitudeRange, binaryString.charAt(j) != '0');
+				divideRangeDecode(hash, longitudeRange, isOnBit);
 			} else {
-				divideRangeDecode(hash, latitudeRange, binaryString.charAt(j) != '0');
+				divideRangeDecode(hash, latitudeRange, isOnBit);
 			}
 			isEvenBit = !isEvenBit;
 		}
@@ -502,6 +557,42 @@ public final class GeoHash implements Comparable<GeoHash>, Serializable {
 		return value & mask;
 	}
 
+	/**
+	 * write this hash in its compact binary form: one byte for the number of
+	 * significant bits, followed by just the bytes that hold them. The point
+	 * the hash was created from is not written; a hash that is read back
+	 * returns the center of its bounding box from {@link #getPoint()}, like
+	 * a hash decoded from base32.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeByte(significantBits);
+		for (int i = 0; i < significantBits; i += 8) {
+			out.writeByte((int) (bits >>> (56 - i)));
+		}
+	}
+
+	/**
+	 * read a hash written by {@link #writeTo(DataOutput)}.
+	 */
+	public static GeoHash readFrom(DataInput in) throws IOException {
+		int numberOfBits = in.readUnsignedByte();
+		if (numberOfBits > 64) {
+			throw new IOException("Invalid number of bits " + numberOfBits);
+		}
+		long value = 0;
+		for (int i = 0; i < numberOfBits; i += 8) {
+			value |= (long) in.readUnsignedByte() << (56 - i);
+		}
+		return fromLongValue(value, numberOfBits);
+	}
+
+	/**
+	 * serialize the compact form instead of all the fields.
+	 */
+	private Object writeReplace() {
+		return new GeoHashExternalForm(this);
+	}
+
 	@Override
 	public int compareTo(GeoHash o) {
 		return new Long(bits).compareTo(o.bits);
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The serialized form of {@link GeoHash}, {@link WGS84Point} and
+ * {@link BoundingBox}: a type byte followed by the object's
+ * <code>writeTo</code> encoding. The classes replace themselves with this
+ * when serialized, and it resolves back to them when deserialized.
+ */
+final class GeoHashExternalForm implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final byte GEOHASH = 1;
+	private static final byte POINT = 2;
+	private static final byte BOUNDING_BOX = 3;
+
+	private Object object;
+
+	/**
+	 * for deserialization only.
+	 */
+	public GeoHashExternalForm() {
+	}
+
+	GeoHashExternalForm(Object object) {
+		this.object = object;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		if (object instanceof GeoHash) {
+			out.writeByte(GEOHASH);
+			((GeoHash) object).writeTo(out);
+		} else if (object instanceof WGS84Point) {
+			out.writeByte(POINT);
+			((WGS84Point) object).writeTo(out);
+		} else {
+			out.writeByte(BOUNDING_BOX);
+			((BoundingBox) object).writeTo(out);
+		}
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case GEOHASH:
+			object = GeoHash.readFrom(in);
+			break;
+		case POINT:
+			object = WGS84Point.readFrom(in);
+			break;
+		case BOUNDING_BOX:
+			object = BoundingBox.readFrom(in);
+			break;
+		default:
+			throw new InvalidObjectException("Unknown type " + type);
+		}
+	}
+
+	private Object readResolve() {
+		return object;
+	}
+}
@@ -8,6 +8,9 @@
  */
 package ch.hsr.geohash;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -62,4 +65,24 @@ public class WGS84Point implements Serializable {
 		result = 31 * result + (int) (lonBits ^ (lonBits >>> 32));
 		return result;
 	}
+
+	/**
+	 * write this point as two doubles, latitude first.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeDouble(latitude);
+		out.writeDouble(longitude);
+	}
+
+	/**
+	 * read a point written by {@link #writeTo(DataOutput)}.
+	 */
+	public static WGS84Point readFrom(DataInput in) throws IOException {
+		double latitude = in.readDouble();
+		return new WGS84Point(latitude, in.readDouble());
+	}
+
+	private Object writeReplace() {
+		return new GeoHashExternalForm(this);
+	}
 }
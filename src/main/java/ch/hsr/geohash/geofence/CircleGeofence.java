@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.geofence;
+
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.util.GeodesicDistance;
+import ch.hsr.geohash.util.GeodesicDistances;
+
+/**
+ * All points within a radius of a center, by the given
+ * {@link GeodesicDistance}.
+ */
+public class CircleGeofence implements Geofence {
+	private final double latitude;
+	private final double longitude;
+	private final double radius;
+	private final GeodesicDistance distance;
+
+	/**
+	 * create a fence measuring distances with Vincenty's formulae.
+	 */
+	public CircleGeofence(WGS84Point center, double radius) {
+		this(center, radius, GeodesicDistances.VINCENTY);
+	}
+
+	public CircleGeofence(WGS84Point center, double radius, GeodesicDistance distance) {
+		if (!(radius >= 0) || radius > GeodesicDistances.MEAN_RADIUS) {
+			throw new IllegalArgumentException("The radius must be between 0 and " + GeodesicDistances.MEAN_RADIUS
+					+ " meters");
+		}
+		this.latitude = center.getLatitude();
+		this.longitude = center.getLongitude();
+		this.radius = radius;
+		this.distance = distance;
+	}
+
+	public WGS84Point getCenter() {
+		return new WGS84Point(latitude, longitude);
+	}
+
+	public double getRadius() {
+		return radius;
+	}
+
+	@Override
+	public List<GeoHash> getCovering() {
+		return new GeoHashBoundingBoxQuery(GeodesicDistances.getBoundingBox(latitude, longitude, radius))
+				.getSearchHashes();
+	}
+
+	/**
+	 * For a circle smaller than a hemisphere, the point of a cell farthest
+	 * from the center is one of its corners. The nearest point is within the
+	 * cell's diameter of the point of the cell closest to the center in
+	 * latitude and longitude.
+	 */
+	@Override
+	public Relation relate(BoundingBox cell) {
+		double lat = Math.max(cell.getMinLat(), Math.min(cell.getMaxLat(), latitude));
+		double lon = closestLongitude(cell);
+		double diameter = Math.max(distance.distanceInMeters(cell.getMinLat(), cell.getMinLon(), cell.getMaxLat(),
+				cell.getMaxLon()), distance.distanceInMeters(cell.getMinLat(), cell.getMaxLon(), cell.getMaxLat(),
+				cell.getMinLon()));
+		if (distance.distanceInMeters(latitude, longitude, lat, lon) - diameter > radius) {
+			return Relation.OUTSIDE;
+		}
+		if (cell.getLongitudeSize() < 180 && contains(cell.getMinLat(), cell.getMinLon())
+				&& contains(cell.getMinLat(), cell.getMaxLon()) && contains(cell.getMaxLat(), cell.getMinLon())
+				&& contains(cell.getMaxLat(), cell.getMaxLon())) {
+			return Relation.INSIDE;
+		}
+		return Relation.PARTIAL;
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude) {
+		return distance.distanceInMeters(this.latitude, this.longitude, latitude, longitude) <= radius;
+	}
+
+	private double closestLongitude(BoundingBox cell) {
+		if (longitude >= cell.getMinLon() && longitude <= cell.getMaxLon()) {
+			return longitude;
+		}
+		double west = angle(longitude, cell.getMinLon());
+		double east = angle(longitude, cell.getMaxLon());
+		return (west <= east) ? cell.getMinLon() : cell.getMaxLon();
+	}
+
+	/**
+	 * returns the difference of two longitudes, from 0 to 180 degrees.
+	 */
+	private static double angle(double a, double b) {
+		double difference = Math.abs(a - b) % 360;
+		return (difference > 180) ? 360 - difference : difference;
+	}
+
+	@Override
+	public String toString() {
+		return "CircleGeofence [center=" + getCenter() + ", radius=" + radius + "m]";
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.geofence;
+
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * An area that points can be matched against by a {@link GeofenceIndex}.
+ */
+public interface Geofence {
+	/**
+	 * How a cell relates to the area of a fence.
+	 */
+	public enum Relation {
+		/** every point of the cell is in the fence */
+		INSIDE,
+		/** no point of the cell is in the fence */
+		OUTSIDE,
+		/** some points may be in the fence, others not */
+		PARTIAL
+	}
+
+	/**
+	 * returns cells that together cover the whole fence, such as the search
+	 * hashes of a {@link ch.hsr.geohash.queries.GeoHashQuery} around it.
+	 */
+	public List<GeoHash> getCovering();
+
+	/**
+	 * classifies a cell. An answer of {@link Relation#INSIDE} or
+	 * {@link Relation#OUTSIDE} must hold for every point of the cell; if in
+	 * doubt, the answer is {@link Relation#PARTIAL}.
+	 */
+	public Relation relate(BoundingBox cell);
+
+	/**
+	 * returns whether the point lies within the fence, exactly.
+	 */
+	public boolean contains(double latitude, double longitude);
+}
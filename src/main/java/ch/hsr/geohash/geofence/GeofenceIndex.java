@@ -0,0 +1,386 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.LongUtil;
+
+/**
+ * Matches points against many fences at once.
+ * <p>
+ * Every fence is compiled into cells that are either inside it or on its
+ * boundary, by refining its covering down to where a cell is no longer
+ * partially inside, or until the fence's budget of cells is spent. The cells
+ * of all fences are then cut into disjoint ranges of 64-bit hash values, each
+ * listing the fences it is inside of and those it is on the boundary of. A
+ * point is matched by a binary search for its range; only the boundary
+ * fences of that range are checked exactly.
+ * <p>
+ * Adding or removing fences builds a new {@link Snapshot} and publishes it,
+ * so matching never blocks and always sees a consistent set of fences.
+ */
+public class GeofenceIndex {
+	public static final int DEFAULT_MAX_CELLS_PER_FENCE = 256;
+	public static final int DEFAULT_MAX_PRECISION = 40;
+
+	private final int maxCellsPerFence;
+	private final int maxPrecision;
+
+	private final Map<Integer, Geofence> fences = new TreeMap<Integer, Geofence>();
+	private final Map<Integer, long[]> compiled = new TreeMap<Integer, long[]>();
+	private volatile Snapshot snapshot = new Snapshot(new long[] { Long.MIN_VALUE }, new int[] { 0, 0 },
+			new int[1], new int[0], new int[0], new Geofence[0], 0);
+
+	public GeofenceIndex() {
+		this(DEFAULT_MAX_CELLS_PER_FENCE, DEFAULT_MAX_PRECISION);
+	}
+
+	/**
+	 * @param maxCellsPerFence
+	 *            how many cells a fence may be compiled into; more cells
+	 *            leave fewer points to be checked exactly
+	 * @param maxPrecision
+	 *            the finest cells to refine the boundary of a fence to
+	 */
+	public GeofenceIndex(int maxCellsPerFence, int maxPrecision) {
+		if (maxCellsPerFence < 1) {
+			throw new IllegalArgumentException("A fence needs at least one cell");
+		}
+		if (maxPrecision < 0 || maxPrecision > 64) {
+			throw new IllegalArgumentException("The precision must be between 0 and 64 bits");
+		}
+		this.maxCellsPerFence = maxCellsPerFence;
+		this.maxPrecision = maxPrecision;
+	}
+
+	/**
+	 * adds a fence, or replaces the fence with the same id.
+	 */
+	public synchronized void put(int id, Geofence fence) {
+		fences.put(id, fence);
+		compiled.put(id, compile(fence));
+		publish();
+	}
+
+	/**
+	 * adds many fences, building a single new snapshot.
+	 */
+	public synchronized void putAll(Map<Integer, ? extends Geofence> newFences) {
+		for (Map.Entry<Integer, ? extends Geofence> entry : newFences.entrySet()) {
+			fences.put(entry.getKey(), entry.getValue());
+			compiled.put(entry.getKey(), compile(entry.getValue()));
+		}
+		publish();
+	}
+
+	/**
+	 * @return whether there was a fence with the given id
+	 */
+	public synchronized boolean remove(int id) {
+		if (fences.remove(id) == null) {
+			return false;
+		}
+		compiled.remove(id);
+		publish();
+		return true;
+	}
+
+	/**
+	 * returns the current state of the index, which later changes don't
+	 * affect.
+	 */
+	public Snapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * returns the ids of the fences containing the point, in ascending order.
+	 */
+	public int[] match(double latitude, double longitude) {
+		return snapshot.match(latitude, longitude);
+	}
+
+	/**
+	 * An immutable state of the index.
+	 */
+	public static final class Snapshot {
+		/* the flipped first value of every range, beginning with 0 */
+		private final long[] starts;
+		/* the members of range i are at offsets[i] until offsets[i + 1] */
+		private final int[] offsets;
+		/* the number of fences range i is inside of; they come first */
+		private final int[] insideCounts;
+		/* indexes into ids and fences */
+		private final int[] members;
+		private final int[] ids;
+		private final Geofence[] fences;
+		private final long version;
+
+		Snapshot(long[] starts, int[] offsets, int[] insideCounts, int[] members, int[] ids, Geofence[] fences,
+				long version) {
+			this.starts = starts;
+			this.offsets = offsets;
+			this.insideCounts = insideCounts;
+			this.members = members;
+			this.ids = ids;
+			this.fences = fences;
+			this.version = version;
+		}
+
+		/**
+		 * returns the number of fences.
+		 */
+		public int size() {
+			return ids.length;
+		}
+
+		/**
+		 * returns a number that grows with every change of the index.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * returns the number of disjoint ranges of hash values the fences are
+		 * compiled into.
+		 */
+		public int getNumberOfRanges() {
+			return starts.length;
+		}
+
+		/**
+		 * returns the ids of the fences containing the point, in ascending
+		 * order.
+		 */
+		public int[] match(double latitude, double longitude) {
+			int[] found = new int[8];
+			int count = match(latitude, longitude, found);
+			if (count > found.length) {
+				found = new int[count];
+				match(latitude, longitude, found);
+			}
+			return Arrays.copyOf(found, count);
+		}
+
+		/**
+		 * stores the ids of the fences containing the point in ascending order,
+		 * as many as fit into <code>idsOut</code>.
+		 *
+		 * @return the number of fences containing the point, which may be
+		 *         more than were stored
+		 */
+		public int match(double latitude, double longitude, int[] idsOut) {
+			int range = rangeOf(GeoHash.encodeLongValue(latitude, longitude, 64));
+			int count = 0;
+			for (int i = offsets[range]; i < offsets[range + 1]; i++) {
+				int member = members[i];
+				if (i - offsets[range] < insideCounts[range] || fences[member].contains(latitude, longitude)) {
+					if (count < idsOut.length) {
+						idsOut[count] = ids[member];
+					}
+					count++;
+				}
+			}
+			Arrays.sort(idsOut, 0, Math.min(count, idsOut.length));
+			return count;
+		}
+
+		/**
+		 * returns whether every point of the given cell is inside or outside
+		 * each fence as a whole, so that all its points match the same fences.
+		 */
+		public boolean isResolved(long bits, int significantBits) {
+			long mask = LongUtil.prefixMask(significantBits);
+			int range = rangeOf(bits & mask);
+			long last = LongUtil.flip(bits | ~mask);
+			boolean isWithinOneRange = range == starts.length - 1 || starts[range + 1] > last;
+			return isWithinOneRange && offsets[range + 1] - offsets[range] == insideCounts[range];
+		}
+
+		private int rangeOf(long bits) {
+			long key = LongUtil.flip(bits);
+			int low = 0;
+			int high = starts.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (starts[mid] <= key) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
+	}
+
+	/**
+	 * returns the cells of the fence as triples of their flipped first value,
+	 * flipped last value and 1 if inside or 0 if on the boundary.
+	 */
+	private long[] compile(Geofence fence) {
+		LinkedList<GeoHash> queue = new LinkedList<GeoHash>(fence.getCovering());
+		List<long[]> cells = new ArrayList<long[]>();
+		while (!queue.isEmpty()) {
+			GeoHash cell = queue.removeFirst();
+			Geofence.Relation relation = fence.relate(cell.getBoundingBox());
+			if (relation == Geofence.Relation.OUTSIDE) {
+				continue;
+			}
+			int precision = cell.significantBits();
+			if (relation == Geofence.Relation.PARTIAL && precision < maxPrecision
+					&& cells.size() + queue.size() + 2 <= maxCellsPerFence) {
+				long bit = GeoHash.FIRST_BIT_FLAGGED >>> precision;
+				queue.addLast(GeoHash.fromLongValue(cell.longValue(), precision + 1));
+				queue.addLast(GeoHash.fromLongValue(cell.longValue() | bit, precision + 1));
+				continue;
+			}
+			long mask = LongUtil.prefixMask(precision);
+			cells.add(new long[] { LongUtil.flip(cell.longValue() & mask), LongUtil.flip(cell.longValue() | ~mask),
+					(relation == Geofence.Relation.INSIDE) ? 1 : 0 });
+		}
+		long[] triples = new long[3 * cells.size()];
+		for (int i = 0; i < cells.size(); i++) {
+			System.arraycopy(cells.get(i), 0, triples, 3 * i, 3);
+		}
+		return triples;
+	}
+
+	/**
+	 * cuts the cells of all fences into disjoint ranges and publishes them as
+	 * a new snapshot.
+	 */
+	private void publish() {
+		int[] ids = new int[fences.size()];
+		Geofence[] fenceArray = new Geofence[fences.size()];
+		List<long[]> events = new ArrayList<long[]>();
+		int member = 0;
+		for (Map.Entry<Integer, Geofence> entry : fences.entrySet()) {
+			ids[member] = entry.getKey();
+			fenceArray[member] = entry.getValue();
+			long[] cells = compiled.get(entry.getKey());
+			for (int i = 0; i < cells.length; i += 3) {
+				// position, member, change of the inside count, change of the
+				// boundary count
+				long inside = cells[i + 2];
+				events.add(new long[] { cells[i], member, inside, 1 - inside });
+				if (cells[i + 1] != Long.MAX_VALUE) {
+					events.add(new long[] { cells[i + 1] + 1, member, -inside, inside - 1 });
+				}
+			}
+			member++;
+		}
+		Collections.sort(events, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+			}
+		});
+
+		int[] insideCount = new int[ids.length];
+		int[] boundaryCount = new int[ids.length];
+		TreeSet<Integer> active = new TreeSet<Integer>();
+		RangeBuilder builder = new RangeBuilder();
+		int e = 0;
+		long position = Long.MIN_VALUE;
+		while (true) {
+			while (e < events.size() && events.get(e)[0] == position) {
+				long[] event = events.get(e++);
+				int m = (int) event[1];
+				insideCount[m] += event[2];
+				boundaryCount[m] += event[3];
+				if (insideCount[m] + boundaryCount[m] > 0) {
+					active.add(m);
+				} else {
+					active.remove(m);
+				}
+			}
+			builder.add(position, active, insideCount);
+			if (e == events.size()) {
+				break;
+			}
+			position = events.get(e)[0];
+		}
+		snapshot = builder.build(ids, fenceArray, snapshot.version + 1);
+	}
+
+	/**
+	 * collects ranges, joining a range with the one before it if both have the
+	 * same members.
+	 */
+	private static final class RangeBuilder {
+		private long[] starts = new long[16];
+		private int[] offsets = new int[17];
+		private int[] insideCounts = new int[16];
+		private int[] members = new int[16];
+		private int size;
+
+		/**
+		 * adds a range of the active members, those with an inside count
+		 * first.
+		 */
+		void add(long start, TreeSet<Integer> active, int[] insideCount) {
+			int offset = offsets[size];
+			int[] range = new int[active.size()];
+			int length = 0;
+			for (int m : active) {
+				if (insideCount[m] > 0) {
+					range[length++] = m;
+				}
+			}
+			int inside = length;
+			for (int m : active) {
+				if (insideCount[m] == 0) {
+					range[length++] = m;
+				}
+			}
+			if (size > 0 && insideCounts[size - 1] == inside && offset - offsets[size - 1] == length
+					&& equal(members, offsets[size - 1], range, length)) {
+				return;
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, 2 * size);
+				offsets = Arrays.copyOf(offsets, 2 * size + 1);
+				insideCounts = Arrays.copyOf(insideCounts, 2 * size);
+			}
+			if (offset + length > members.length) {
+				members = Arrays.copyOf(members, Math.max(2 * members.length, offset + length));
+			}
+			System.arraycopy(range, 0, members, offset, length);
+			starts[size] = start;
+			insideCounts[size] = inside;
+			offsets[size + 1] = offset + length;
+			size++;
+		}
+
+		private static boolean equal(int[] members, int offset, int[] range, int length) {
+			for (int i = 0; i < length; i++) {
+				if (members[offset + i] != range[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		Snapshot build(int[] ids, Geofence[] fences, long version) {
+			return new Snapshot(Arrays.copyOf(starts, size), Arrays.copyOf(offsets, size + 1), Arrays.copyOf(
+					insideCounts, size), Arrays.copyOf(members, offsets[size]), ids, fences, version);
+		}
+	}
+}
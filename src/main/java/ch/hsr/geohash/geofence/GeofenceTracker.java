@@ -0,0 +1,370 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.geofence;
+
+import java.util.Arrays;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.LongUtil;
+
+/**
+ * Turns the position reports of many entities into events for the fences of
+ * a {@link GeofenceIndex}: {@link EventType#ENTER} and
+ * {@link EventType#EXIT} when an entity crosses a fence, and
+ * {@link EventType#DWELL} once it has stayed in a fence for a given time.
+ * <p>
+ * The tracker remembers the cell each entity was last reported in. If the
+ * next report is in the same cell, and no fence has a boundary in that cell,
+ * the entity matches the same fences as before and nothing is evaluated.
+ * <p>
+ * All state is kept in arrays of primitives: an open-addressing table keyed
+ * by entity id, and an arena holding the fences each entity is in. A tracker
+ * is not thread-safe; entities can be spread over several trackers by id.
+ */
+public class GeofenceTracker {
+	public enum EventType {
+		ENTER, EXIT, DWELL
+	}
+
+	/**
+	 * Receives the events of a report.
+	 */
+	public interface Listener {
+		void onEvent(long entityId, int fenceId, EventType type, long timestamp);
+	}
+
+	public static final int DEFAULT_PRECISION = 40;
+
+	/* the largest power of two an int can double to */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private static final byte FREE = 0;
+	private static final byte USED = 1;
+	private static final byte USED_RESOLVED = 2;
+
+	private final GeofenceIndex index;
+	private final int precision;
+	private final long dwellMillis;
+
+	/* the table of entities */
+	private long[] entityIds;
+	private byte[] states;
+	private long[] cells;
+	private long[] versions;
+	private int[] offsets;
+	private int[] lengths;
+	private int size;
+
+	/*
+	 * two longs per fence an entity is in: the fence id shifted left by one,
+	 * with the lowest bit set once the dwell event was sent, and the time the
+	 * entity entered.
+	 */
+	private long[] arena = new long[1024];
+	private int arenaSize;
+	private int garbage;
+
+	private int[] matched = new int[16];
+	private long evaluations;
+
+	/**
+	 * @param dwellMillis
+	 *            how long an entity must stay in a fence before a
+	 *            {@link EventType#DWELL} event
+	 */
+	public GeofenceTracker(GeofenceIndex index, long dwellMillis) {
+		this(index, dwellMillis, DEFAULT_PRECISION, 1024);
+	}
+
+	/**
+	 * @param precision
+	 *            the bits of the cells within which reports reuse the
+	 *            previous result
+	 * @param expectedEntities
+	 *            the number of entities to hold without growing, at most 3/4
+	 *            of 2^30
+	 */
+	public GeofenceTracker(GeofenceIndex index, long dwellMillis, int precision, int expectedEntities) {
+		if (precision < 0 || precision > 64) {
+			throw new IllegalArgumentException("The precision must be between 0 and 64 bits");
+		}
+		if (dwellMillis < 0) {
+			throw new IllegalArgumentException("The dwell time must not be negative");
+		}
+		if (expectedEntities > MAX_CAPACITY / 4 * 3) {
+			throw new IllegalArgumentException("A tracker holds at most " + MAX_CAPACITY / 4 * 3 + " entities");
+		}
+		this.index = index;
+		this.precision = precision;
+		this.dwellMillis = dwellMillis;
+		int capacity = 16;
+		while (capacity / 4 * 3 < expectedEntities) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * processes a position report, calling the listener for every event it
+	 * causes.
+	 */
+	public void report(long entityId, double latitude, double longitude, long timestamp, Listener listener) {
+		GeofenceIndex.Snapshot snapshot = index.snapshot();
+		long cell = GeoHash.encodeLongValue(latitude, longitude, precision);
+
+		int slot = probe(entityId);
+		boolean isNew = states[slot] == FREE;
+		if (isNew) {
+			slot = insert(slot, entityId);
+		} else if (states[slot] == USED_RESOLVED && cells[slot] == cell && versions[slot] == snapshot.getVersion()) {
+			reportDwells(slot, entityId, timestamp, listener);
+			return;
+		}
+
+		evaluations++;
+		int count = snapshot.match(latitude, longitude, matched);
+		if (count > matched.length) {
+			matched = new int[Integer.highestOneBit(count) << 1];
+			snapshot.match(latitude, longitude, matched);
+		}
+		cells[slot] = cell;
+		versions[slot] = snapshot.getVersion();
+		states[slot] = snapshot.isResolved(cell, precision) ? USED_RESOLVED : USED;
+		update(slot, entityId, count, timestamp, listener);
+		reportDwells(slot, entityId, timestamp, listener);
+	}
+
+	/**
+	 * forgets an entity, without any events.
+	 *
+	 * @return whether the entity was tracked
+	 */
+	public boolean remove(long entityId) {
+		int slot = probe(entityId);
+		if (states[slot] == FREE) {
+			return false;
+		}
+		garbage += 2 * lengths[slot];
+		delete(slot);
+		return true;
+	}
+
+	/**
+	 * returns the number of tracked entities.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * returns the ids of the fences the entity is in, in ascending order.
+	 */
+	public int[] getFences(long entityId) {
+		int slot = probe(entityId);
+		if (states[slot] == FREE) {
+			return new int[0];
+		}
+		int[] fences = new int[lengths[slot]];
+		for (int i = 0; i < fences.length; i++) {
+			fences[i] = (int) (arena[offsets[slot] + 2 * i] >> 1);
+		}
+		return fences;
+	}
+
+	/**
+	 * returns how many reports were matched against the fences, rather than
+	 * answered from the entity's previous cell.
+	 */
+	public long getNumberOfEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * replaces the fences of the entity with the first <code>count</code> of
+	 * {@link #matched}, sending ENTER and EXIT events for the difference.
+	 */
+	private void update(int slot, long entityId, int count, long timestamp, Listener listener) {
+		int offset = offsets[slot];
+		int length = lengths[slot];
+		if (length == count && isSame(offset, count)) {
+			return;
+		}
+
+		int newOffset = reserve(2 * count);
+		// the arena may have been compacted
+		offset = offsets[slot];
+		int i = 0;
+		int j = 0;
+		while (i < length || j < count) {
+			int oldFence = (i < length) ? (int) (arena[offset + 2 * i] >> 1) : Integer.MAX_VALUE;
+			int newFence = (j < count) ? matched[j] : Integer.MAX_VALUE;
+			if (i < length && (j == count || oldFence < newFence)) {
+				listener.onEvent(entityId, oldFence, EventType.EXIT, timestamp);
+				i++;
+			} else if (j < count && (i == length || newFence < oldFence)) {
+				listener.onEvent(entityId, newFence, EventType.ENTER, timestamp);
+				arena[newOffset + 2 * j] = (long) newFence << 1;
+				arena[newOffset + 2 * j + 1] = timestamp;
+				j++;
+			} else {
+				arena[newOffset + 2 * j] = arena[offset + 2 * i];
+				arena[newOffset + 2 * j + 1] = arena[offset + 2 * i + 1];
+				i++;
+				j++;
+			}
+		}
+		garbage += 2 * length;
+		offsets[slot] = newOffset;
+		lengths[slot] = count;
+	}
+
+	private boolean isSame(int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			if ((int) (arena[offset + 2 * i] >> 1) != matched[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void reportDwells(int slot, long entityId, long timestamp, Listener listener) {
+		int offset = offsets[slot];
+		for (int i = 0; i < lengths[slot]; i++) {
+			long fence = arena[offset + 2 * i];
+			if ((fence & 1) == 0 && timestamp - arena[offset + 2 * i + 1] >= dwellMillis) {
+				arena[offset + 2 * i] = fence | 1;
+				listener.onEvent(entityId, (int) (fence >> 1), EventType.DWELL, timestamp);
+			}
+		}
+	}
+
+	/**
+	 * returns the offset of the given number of free longs at the end of the
+	 * arena, compacting or growing it first if needed.
+	 */
+	private int reserve(int longs) {
+		if (arenaSize + longs > arena.length) {
+			if (garbage > arenaSize / 2) {
+				compact();
+			}
+			if (arenaSize + longs > arena.length) {
+				arena = Arrays.copyOf(arena, Math.max(2 * arena.length, arenaSize + longs));
+			}
+		}
+		int offset = arenaSize;
+		arenaSize += longs;
+		return offset;
+	}
+
+	/**
+	 * moves the fences of all entities to the start of the arena.
+	 */
+	private void compact() {
+		long[] compacted = new long[arena.length];
+		int used = 0;
+		for (int slot = 0; slot < entityIds.length; slot++) {
+			if (states[slot] != FREE) {
+				System.arraycopy(arena, offsets[slot], compacted, used, 2 * lengths[slot]);
+				offsets[slot] = used;
+				used += 2 * lengths[slot];
+			}
+		}
+		arena = compacted;
+		arenaSize = used;
+		garbage = 0;
+	}
+
+	/**
+	 * returns the slot of the entity, or the free slot where it belongs.
+	 */
+	private int probe(long entityId) {
+		int mask = entityIds.length - 1;
+		int slot = LongUtil.hash(entityId) & mask;
+		while (states[slot] != FREE && entityIds[slot] != entityId) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int insert(int slot, long entityId) {
+		if (size + 1 > entityIds.length / 4 * 3) {
+			grow();
+			slot = probe(entityId);
+		}
+		entityIds[slot] = entityId;
+		states[slot] = USED;
+		offsets[slot] = 0;
+		lengths[slot] = 0;
+		size++;
+		return slot;
+	}
+
+	/**
+	 * frees a slot, moving later entries of the same run back so that probing
+	 * still finds them.
+	 */
+	private void delete(int slot) {
+		int mask = entityIds.length - 1;
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (states[next] != FREE) {
+			int home = LongUtil.hash(entityIds[next]) & mask;
+			// move the entry unless its home lies cyclically after the free slot
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				move(next, free);
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		states[free] = FREE;
+		size--;
+	}
+
+	private void move(int from, int to) {
+		entityIds[to] = entityIds[from];
+		states[to] = states[from];
+		cells[to] = cells[from];
+		versions[to] = versions[from];
+		offsets[to] = offsets[from];
+		lengths[to] = lengths[from];
+	}
+
+	private void grow() {
+		long[] oldIds = entityIds;
+		byte[] oldStates = states;
+		long[] oldCells = cells;
+		long[] oldVersions = versions;
+		int[] oldOffsets = offsets;
+		int[] oldLengths = lengths;
+		if (oldIds.length == MAX_CAPACITY) {
+			throw new IllegalStateException("A tracker holds at most " + MAX_CAPACITY / 4 * 3 + " entities");
+		}
+		allocate(2 * oldIds.length);
+		for (int i = 0; i < oldIds.length; i++) {
+			if (oldStates[i] != FREE) {
+				int slot = probe(oldIds[i]);
+				entityIds[slot] = oldIds[i];
+				states[slot] = oldStates[i];
+				cells[slot] = oldCells[i];
+				versions[slot] = oldVersions[i];
+				offsets[slot] = oldOffsets[i];
+				lengths[slot] = oldLengths[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		entityIds = new long[capacity];
+		states = new byte[capacity];
+		cells = new long[capacity];
+		versions = new long[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+	}
+}
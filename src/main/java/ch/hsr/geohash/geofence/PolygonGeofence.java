@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.geofence;
+
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+
+/**
+ * A simple polygon whose edges are straight lines in latitude and longitude,
+ * like those of cells. Points on an edge are inside. The polygon must not
+ * cross the antimeridian.
+ */
+public class PolygonGeofence implements Geofence {
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final BoundingBox boundingBox;
+
+	/**
+	 * @param vertices
+	 *            at least three corners, in either order; the polygon is
+	 *            closed implicitly
+	 */
+	public PolygonGeofence(List<WGS84Point> vertices) {
+		if (vertices.size() < 3) {
+			throw new IllegalArgumentException("A polygon needs at least three vertices");
+		}
+		latitudes = new double[vertices.size()];
+		longitudes = new double[vertices.size()];
+		for (int i = 0; i < vertices.size(); i++) {
+			latitudes[i] = vertices.get(i).getLatitude();
+			longitudes[i] = vertices.get(i).getLongitude();
+		}
+		boundingBox = new BoundingBox(vertices.get(0), vertices.get(0));
+		for (WGS84Point vertex : vertices) {
+			boundingBox.expandToInclude(new BoundingBox(vertex, vertex));
+		}
+	}
+
+	public BoundingBox getBoundingBox() {
+		return new BoundingBox(boundingBox);
+	}
+
+	@Override
+	public List<GeoHash> getCovering() {
+		return new GeoHashBoundingBoxQuery(boundingBox).getSearchHashes();
+	}
+
+	/**
+	 * A cell that no edge touches is either inside or outside as a whole,
+	 * like its center.
+	 */
+	@Override
+	public Relation relate(BoundingBox cell) {
+		if (!cell.intersects(boundingBox)) {
+			return Relation.OUTSIDE;
+		}
+		for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+			if (segmentIntersects(cell, latitudes[j], longitudes[j], latitudes[i], longitudes[i])) {
+				return Relation.PARTIAL;
+			}
+		}
+		WGS84Point center = cell.getCenterPoint();
+		return contains(center.getLatitude(), center.getLongitude()) ? Relation.INSIDE : Relation.OUTSIDE;
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude) {
+		boolean isInside = false;
+		for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+			if (isOnSegment(latitude, longitude, latitudes[j], longitudes[j], latitudes[i], longitudes[i])) {
+				return true;
+			}
+			// count the edges crossed by a ray towards the east
+			if ((latitudes[i] > latitude) != (latitudes[j] > latitude)) {
+				double crossing = longitudes[j] + (latitude - latitudes[j]) * (longitudes[i] - longitudes[j])
+						/ (latitudes[i] - latitudes[j]);
+				if (longitude < crossing) {
+					isInside = !isInside;
+				}
+			}
+		}
+		return isInside;
+	}
+
+	private static boolean isOnSegment(double lat, double lon, double lat1, double lon1, double lat2, double lon2) {
+		if (lat < Math.min(lat1, lat2) || lat > Math.max(lat1, lat2) || lon < Math.min(lon1, lon2)
+				|| lon > Math.max(lon1, lon2)) {
+			return false;
+		}
+		return (lat2 - lat1) * (lon - lon1) == (lon2 - lon1) * (lat - lat1);
+	}
+
+	/**
+	 * clips the segment to the cell (Liang-Barsky) and returns whether any
+	 * part of it remains, including points on the cell's edges.
+	 */
+	private static boolean segmentIntersects(BoundingBox cell, double lat1, double lon1, double lat2, double lon2) {
+		double dLat = lat2 - lat1;
+		double dLon = lon2 - lon1;
+		double[] p = { -dLon, dLon, -dLat, dLat };
+		double[] q = { lon1 - cell.getMinLon(), cell.getMaxLon() - lon1, lat1 - cell.getMinLat(),
+				cell.getMaxLat() - lat1 };
+		double enter = 0;
+		double exit = 1;
+		for (int k = 0; k < 4; k++) {
+			if (p[k] == 0) {
+				if (q[k] < 0) {
+					return false;
+				}
+			} else {
+				double t = q[k] / p[k];
+				if (p[k] < 0) {
+					enter = Math.max(enter, t);
+				} else {
+					exit = Math.min(exit, t);
+				}
+			}
+		}
+		return enter <= exit;
+	}
+
+	@Override
+	public String toString() {
+		return "PolygonGeofence [" + latitudes.length + " vertices, " + boundingBox + "]";
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.GeoHashCodec;
+import ch.hsr.geohash.util.LongUtil;
+
+/**
+ * An immutable, thread-safe matcher for a fixed set of hashes, e.g. a covering
+ * of hundreds or thousands of cells.
+ * <p>
+ * The hashes are turned into the sorted, merged ranges of 64-bit values they
+ * cover, which are binary searched. In front of that sits a bitmap over all
+ * hash prefixes of a fixed, coarse precision that answers in constant time
+ * for every prefix that is either completely covered or not covered at all,
+ * which is where most points fall.
+ * <p>
+ * Only the hashes are compiled: a compiled {@link GeoHashCircleQuery} matches
+ * the points of its covering square, without checking the radius.
+ */
+public final class CompiledGeoHashQuery implements GeoHashQuery, Serializable {
+	private static final long serialVersionUID = -3418240731593106157L;
+	private static final int MAX_PREFIX_BITS = 20;
+
+	private final List<GeoHash> searchHashes;
+	/*
+	 * first and last value of each range, with the sign bit flipped so that
+	 * signed comparisons order them like the unsigned hashes.
+	 */
+	private final long[] starts;
+	private final long[] ends;
+	/* points need not be encoded any finer than the finest hash. */
+	private final int encodingPrecision;
+	private final int prefixBits;
+	/* prefixes that are entirely covered, and those that are partly covered. */
+	private final long[] fullPrefixes;
+	private final long[] partialPrefixes;
+	private final BoundingBox boundingBox;
+
+	/**
+	 * compile the search hashes of the given query.
+	 */
+	public static CompiledGeoHashQuery compile(GeoHashQuery query) {
+		return compile(query.getSearchHashes());
+	}
+
+	/**
+	 * compile the given hashes, with a prefix bitmap of about 64 bits per
+	 * range.
+	 */
+	public static CompiledGeoHashQuery compile(Collection<GeoHash> hashes) {
+		return new CompiledGeoHashQuery(hashes, -1);
+	}
+
+	/**
+	 * compile the given hashes, with a prefix bitmap of the given precision,
+	 * which takes 2^(prefixBits - 2) bytes.
+	 */
+	public static CompiledGeoHashQuery compile(Collection<GeoHash> hashes, int prefixBits) {
+		if (prefixBits < 0 || prefixBits > MAX_PREFIX_BITS) {
+			throw new IllegalArgumentException("The prefix must have between 0 and " + MAX_PREFIX_BITS + " bits");
+		}
+		return new CompiledGeoHashQuery(hashes, prefixBits);
+	}
+
+	private CompiledGeoHashQuery(Collection<GeoHash> hashes, int prefixBits) {
+		if (hashes.isEmpty()) {
+			throw new IllegalArgumentException("Can't compile a query without any hashes");
+		}
+		List<GeoHash> sorted = new ArrayList<GeoHash>(hashes);
+		Collections.sort(sorted, GeoHashCodec.UNSIGNED_ORDER);
+		searchHashes = Collections.unmodifiableList(sorted);
+
+		// merge the ranges of overlapping and adjacent hashes
+		long[] mergedStarts = new long[sorted.size()];
+		long[] mergedEnds = new long[sorted.size()];
+		int count = 0;
+		int maxPrecision = 0;
+		BoundingBox bbox = null;
+		for (GeoHash hash : sorted) {
+			long start = LongUtil.flip(hash.longValue() & LongUtil.prefixMask(hash.significantBits()));
+			long end = LongUtil.flip(hash.longValue() | ~LongUtil.prefixMask(hash.significantBits()));
+			if (count > 0 && (mergedEnds[count - 1] == Long.MAX_VALUE || start <= mergedEnds[count - 1] + 1)) {
+				mergedEnds[count - 1] = Math.max(mergedEnds[count - 1], end);
+			} else {
+				mergedStarts[count] = start;
+				mergedEnds[count] = end;
+				count++;
+			}
+			maxPrecision = Math.max(maxPrecision, hash.significantBits());
+			if (bbox == null) {
+				bbox = new BoundingBox(hash.getBoundingBox());
+			} else {
+				bbox.expandToInclude(hash.getBoundingBox());
+			}
+		}
+		starts = Arrays.copyOf(mergedStarts, count);
+		ends = Arrays.copyOf(mergedEnds, count);
+		boundingBox = bbox;
+
+		if (prefixBits < 0) {
+			prefixBits = 64 - Long.numberOfLeadingZeros(64L * count);
+			prefixBits = Math.max(6, Math.min(MAX_PREFIX_BITS, prefixBits));
+		}
+		this.prefixBits = prefixBits;
+		encodingPrecision = Math.max(maxPrecision, prefixBits);
+
+		int words = Math.max(1, (1 << prefixBits) >>> 6);
+		fullPrefixes = new long[words];
+		partialPrefixes = new long[words];
+		for (int i = 0; i < count; i++) {
+			long first = prefixOf(starts[i]);
+			long last = prefixOf(ends[i]);
+			for (long prefix = first; prefix <= last; prefix++) {
+				boolean isFull = (prefix != first || starts[i] == prefixStart(prefix))
+						&& (prefix != last || ends[i] == prefixEnd(prefix));
+				setBit(isFull ? fullPrefixes : partialPrefixes, prefix);
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(GeoHash hash) {
+		return contains(hash.longValue(), hash.significantBits());
+	}
+
+	@Override
+	public boolean contains(WGS84Point point) {
+		return contains(point.getLatitude(), point.getLongitude());
+	}
+
+	/**
+	 * a hash is contained iff its whole cell is covered by the compiled
+	 * hashes, possibly by several finer ones.
+	 */
+	@Override
+	public boolean contains(long bits, int significantBits) {
+		long start = LongUtil.flip(bits & LongUtil.prefixMask(significantBits));
+		long end = LongUtil.flip(bits | ~LongUtil.prefixMask(significantBits));
+		if (significantBits >= prefixBits) {
+			long prefix = prefixOf(start);
+			if (isSet(fullPrefixes, prefix)) {
+				return true;
+			}
+			if (!isSet(partialPrefixes, prefix)) {
+				return false;
+			}
+		}
+		int i = indexOfRange(start);
+		return i >= 0 && end <= ends[i];
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude) {
+		long key = LongUtil.flip(GeoHash.encodeLongValue(latitude, longitude, encodingPrecision));
+		long prefix = prefixOf(key);
+		if (isSet(fullPrefixes, prefix)) {
+			return true;
+		}
+		if (!isSet(partialPrefixes, prefix)) {
+			return false;
+		}
+		return indexOfRange(key) >= 0;
+	}
+
+	@Override
+	public int filter(double[] latitudes, double[] longitudes, long[] bitmaskOut) {
+		GeoHashBoundingBoxQuery.checkFilterArguments(latitudes, longitudes, bitmaskOut);
+		int matches = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (contains(latitudes[i], longitudes[i])) {
+				bitmaskOut[i >>> 6] |= 1L << i;
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * returns the compiled hashes in ascending order.
+	 */
+	@Override
+	public List<GeoHash> getSearchHashes() {
+		return searchHashes;
+	}
+
+	@Override
+	public String getWktBox() {
+		return GeoHashBoundingBoxQuery.toWktBox(boundingBox);
+	}
+
+	/**
+	 * write the precision of the prefix bitmap and the compiled hashes,
+	 * delta-encoded with {@link GeoHashCodec#writeCells}.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeByte(prefixBits);
+		GeoHashCodec.writeCells(searchHashes, out);
+	}
+
+	/**
+	 * read a query written by {@link #writeTo(DataOutput)}, and compile it
+	 * again.
+	 */
+	public static CompiledGeoHashQuery readFrom(DataInput in) throws IOException {
+		int prefixBits = in.readUnsignedByte();
+		if (prefixBits > MAX_PREFIX_BITS) {
+			throw new IOException("Invalid prefix length " + prefixBits);
+		}
+		List<GeoHash> hashes = GeoHashCodec.readCells(in);
+		if (hashes.isEmpty()) {
+			throw new IOException("A compiled query has at least one hash");
+		}
+		return new CompiledGeoHashQuery(hashes, prefixBits);
+	}
+
+	private Object writeReplace() {
+		return new QueryExternalForm(this);
+	}
+
+	/**
+	 * returns the number of disjoint ranges the hashes were merged into.
+	 */
+	public int getNumberOfRanges() {
+		return starts.length;
+	}
+
+	@Override
+	public String toString() {
+		return "Compiled Query [" + searchHashes.size() + " hashes in " + starts.length + " ranges]";
+	}
+
+	/**
+	 * returns the index of the range containing the given flipped value, or
+	 * -1.
+	 */
+	private int indexOfRange(long key) {
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return (high >= 0 && key <= ends[high]) ? high : -1;
+	}
+
+	private long prefixOf(long key) {
+		return (prefixBits == 0) ? 0 : LongUtil.flip(key) >>> (64 - prefixBits);
+	}
+
+	private long prefixStart(long prefix) {
+		return (prefixBits == 0) ? Long.MIN_VALUE : LongUtil.flip(prefix << (64 - prefixBits));
+	}
+
+	private long prefixEnd(long prefix) {
+		return (prefixBits == 0) ? Long.MAX_VALUE : LongUtil.flip((prefix << (64 - prefixBits))
+				| ~LongUtil.prefixMask(prefixBits));
+	}
+
+	private static boolean isSet(long[] bitmap, long index) {
+		return (bitmap[(int) (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	private static void setBit(long[] bitmap, long index) {
+		bitmap[(int) (index >>> 6)] |= 1L << index;
+	}
+}
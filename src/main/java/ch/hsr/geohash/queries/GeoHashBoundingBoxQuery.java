@@ -8,6 +8,10 @@
  */
 package ch.hsr.geohash.queries;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,21 +19,65 @@ import java.util.List;
 import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
 import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.GeoHashCodec;
 import ch.hsr.geohash.util.GeoHashSizeTable;
+import ch.hsr.geohash.util.LongUtil;
 
 /**
  * This class returns the hashes covering a certain bounding box. There are
  * either 1,2 or 4 susch hashes, depending on the position of the bounding box
- * on the geohash grid.
+ * on the geohash grid. A box crossing the antimeridian is covered on either
+ * side of it, with up to 8 hashes. A box spanning all longitudes, such as a
+ * polar cap, is covered by a band of up to 64 hashes.
  */
 public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 	private static final long serialVersionUID = 9223256928940522683L;
-	/* there's not going to be more than 4 hashes. */
+	/* a band around the globe is split into no more than 2^5 columns. */
+	private static final int MAX_BAND_LATITUDE_BITS = 5;
+	/* there's not going to be more than 4 hashes per side of the antimeridian. */
 	private List<GeoHash> searchHashes = new ArrayList<GeoHash>(4);
 	/* the combined bounding box of those hashes. */
 	private BoundingBox boundingBox;
+	/*
+	 * the search hashes' bits, masks and precisions, for the primitive tests.
+	 * They are derived from the search hashes again when read from a stream
+	 * written in the default serialized form.
+	 */
+	private transient long[] searchBits;
+	private transient long[] searchMasks;
+	private transient int[] searchPrecisions;
+	/* points need not be encoded any finer than the finest search hash. */
+	private transient int maxSearchPrecision;
 
 	public GeoHashBoundingBoxQuery(BoundingBox bbox) {
+		if (bbox.crossesAntimeridian()) {
+			List<BoundingBox> parts = bbox.splitAtAntimeridian();
+			coverPart(parts.get(0));
+			BoundingBox western = boundingBox;
+			boundingBox = null;
+			coverPart(parts.get(1));
+			BoundingBox eastern = boundingBox;
+			double minLat = Math.min(western.getMinLat(), eastern.getMinLat());
+			double maxLat = Math.max(western.getMaxLat(), eastern.getMaxLat());
+			if (western.getLongitudeSize() == 360 || eastern.getLongitudeSize() == 360) {
+				boundingBox = new BoundingBox(minLat, maxLat, -180, 180);
+			} else {
+				boundingBox = BoundingBox.fromWestToEast(minLat, maxLat, western.getMinLon(), eastern.getMaxLon());
+			}
+		} else {
+			coverPart(bbox);
+		}
+		prepareSearch();
+	}
+
+	/**
+	 * adds the hashes covering a box that doesn't cross the antimeridian.
+	 */
+	private void coverPart(BoundingBox bbox) {
+		if (bbox.getLongitudeSize() == 360) {
+			coverBand(bbox);
+			return;
+		}
 		int fittingBits = GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(bbox);
 		WGS84Point center = bbox.getCenterPoint();
 		GeoHash centerHash = GeoHash.withBitPrecision(center.getLatitude(), center.getLongitude(), fittingBits);
@@ -41,13 +89,65 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 		}
 	}
 
+	/**
+	 * adds the hashes covering a box that spans all longitudes. A single hash
+	 * would have to cover the whole globe, so the box is covered with the
+	 * columns of the rows that its latitudes overlap, at the finest precision
+	 * whose rows are at least as tall as the box.
+	 */
+	private void coverBand(BoundingBox bbox) {
+		int latitudeBits = 0;
+		while (latitudeBits < MAX_BAND_LATITUDE_BITS && 180.0 / (2 << latitudeBits) >= bbox.getLatitudeSize()) {
+			latitudeBits++;
+		}
+		int cells = 1 << latitudeBits;
+		double rowHeight = 180.0 / cells;
+		double columnWidth = 360.0 / cells;
+		int firstRow = Math.min(cells - 1, (int) Math.floor((bbox.getMinLat() + 90) / rowHeight));
+		int lastRow = Math.min(cells - 1, (int) Math.floor((bbox.getMaxLat() + 90) / rowHeight));
+		for (int row = firstRow; row <= lastRow; row++) {
+			double latitude = -90 + (row + 0.5) * rowHeight;
+			for (int column = 0; column < cells; column++) {
+				addSearchHash(GeoHash.withBitPrecision(latitude, -180 + (column + 0.5) * columnWidth, 2 * latitudeBits));
+			}
+		}
+	}
+
+	/**
+	 * the box is given, because joining the hashes on either side of the
+	 * antimeridian would span the globe the other way round.
+	 */
+	private GeoHashBoundingBoxQuery(List<GeoHash> hashes, BoundingBox boundingBox) {
+		for (GeoHash hash : hashes) {
+			addSearchHash(hash);
+		}
+		this.boundingBox = boundingBox;
+		prepareSearch();
+	}
+
+	private void prepareSearch() {
+		int count = searchHashes.size();
+		searchBits = new long[count];
+		searchMasks = new long[count];
+		searchPrecisions = new int[count];
+		for (int i = 0; i < count; i++) {
+			GeoHash hash = searchHashes.get(i);
+			searchBits[i] = hash.longValue();
+			searchPrecisions[i] = hash.significantBits();
+			searchMasks[i] = LongUtil.prefixMask(searchPrecisions[i]);
+			maxSearchPrecision = Math.max(maxSearchPrecision, searchPrecisions[i]);
+		}
+	}
+
 	private void addSearchHash(GeoHash hash) {
 		if (boundingBox == null) {
 			boundingBox = new BoundingBox(hash.getBoundingBox());
 		} else {
 			boundingBox.expandToInclude(hash.getBoundingBox());
 		}
-		searchHashes.add(hash);
+		if (!searchHashes.contains(hash)) {
+			searchHashes.add(hash);
+		}
 	}
 
 	private void expandSearch(GeoHash centerHash, BoundingBox bbox) {
@@ -67,8 +167,22 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 
 	@Override
 	public boolean contains(GeoHash hash) {
-		for (GeoHash searchHash : searchHashes) {
-			if (hash.within(searchHash)) {
+		return contains(hash.longValue(), hash.significantBits());
+	}
+
+	@Override
+	public boolean contains(WGS84Point point) {
+		return contains(point.getLatitude(), point.getLongitude());
+	}
+
+	/**
+	 * a hash is contained if it is one of the search hashes or lies within
+	 * one; hashes coarser than the search hashes are not.
+	 */
+	@Override
+	public boolean contains(long bits, int significantBits) {
+		for (int i = 0; i < searchBits.length; i++) {
+			if (significantBits >= searchPrecisions[i] && (bits & searchMasks[i]) == searchBits[i]) {
 				return true;
 			}
 		}
@@ -76,8 +190,39 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 	}
 
 	@Override
-	public boolean contains(WGS84Point point) {
-		return contains(GeoHash.withBitPrecision(point.getLatitude(), point.getLongitude(), 64));
+	public boolean contains(double latitude, double longitude) {
+		return contains(GeoHash.encodeLongValue(latitude, longitude, maxSearchPrecision), maxSearchPrecision);
+	}
+
+	@Override
+	public int filter(double[] latitudes, double[] longitudes, long[] bitmaskOut) {
+		checkFilterArguments(latitudes, longitudes, bitmaskOut);
+		int matches = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (contains(latitudes[i], longitudes[i])) {
+				bitmaskOut[i >>> 6] |= 1L << i;
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * validates the arguments of {@link GeoHashQuery#filter} and clears the
+	 * bitmask.
+	 */
+	static void checkFilterArguments(double[] latitudes, double[] longitudes, long[] bitmaskOut) {
+		if (latitudes.length != longitudes.length) {
+			throw new IllegalArgumentException("There must be as many latitudes as longitudes");
+		}
+		int words = (latitudes.length + 63) >>> 6;
+		if (bitmaskOut.length < words) {
+			throw new IllegalArgumentException("The bitmask needs at least " + words + " longs for " + latitudes.length
+					+ " points");
+		}
+		for (int i = 0; i < words; i++) {
+			bitmaskOut[i] = 0;
+		}
 	}
 
 	@Override
@@ -94,9 +239,67 @@ public class GeoHashBoundingBoxQuery implements GeoHashQuery, Serializable {
 		return bui.toString();
 	}
 
+	/**
+	 * write the search hashes of this query, delta-encoded with
+	 * {@link GeoHashCodec#writeCells}, followed by their combined bounding
+	 * box.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		GeoHashCodec.writeCells(searchHashes, out);
+		boundingBox.writeTo(out);
+	}
+
+	/**
+	 * read a query written by {@link #writeTo(DataOutput)}. Its search hashes
+	 * are in ascending order.
+	 */
+	public static GeoHashBoundingBoxQuery readFrom(DataInput in) throws IOException {
+		List<GeoHash> hashes = GeoHashCodec.readCells(in);
+		if (hashes.isEmpty()) {
+			throw new IOException("A bounding box query has at least one search hash");
+		}
+		return new GeoHashBoundingBoxQuery(hashes, BoundingBox.readFrom(in));
+	}
+
+	private Object writeReplace() {
+		return new QueryExternalForm(this);
+	}
+
+	/**
+	 * reads a query written in the default serialized form, as before
+	 * {@link #writeReplace()}.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		prepareSearch();
+	}
+
 	@Override
 	public String getWktBox() {
-		return "BOX(" + boundingBox.getMinLon() + " " + boundingBox.getMinLat() + "," + boundingBox.getMaxLon() + " "
-				+ boundingBox.getMaxLat() + ")";
+		return toWktBox(boundingBox);
+	}
+
+	/**
+	 * returns the box as a WKT BOX, or as a MULTIPOLYGON of its parts on
+	 * either side if it crosses the antimeridian, since a BOX can't wrap.
+	 */
+	static String toWktBox(BoundingBox box) {
+		if (!box.crossesAntimeridian()) {
+			return "BOX(" + box.getMinLon() + " " + box.getMinLat() + "," + box.getMaxLon() + " " + box.getMaxLat()
+					+ ")";
+		}
+		StringBuilder bui = new StringBuilder("MULTIPOLYGON(");
+		for (BoundingBox part : box.splitAtAntimeridian()) {
+			if (bui.length() > "MULTIPOLYGON(".length()) {
+				bui.append(",");
+			}
+			String lowerLeft = part.getMinLon() + " " + part.getMinLat();
+			bui.append("((").append(lowerLeft).append(",");
+			bui.append(part.getMaxLon()).append(" ").append(part.getMinLat()).append(",");
+			bui.append(part.getMaxLon()).append(" ").append(part.getMaxLat()).append(",");
+			bui.append(part.getMinLon()).append(" ").append(part.getMaxLat()).append(",");
+			bui.append(lowerLeft).append("))");
+		}
+		return bui.append(")").toString();
 	}
 }
@@ -8,37 +8,58 @@
  */
 package ch.hsr.geohash.queries;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.List;
 
-import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
 import ch.hsr.geohash.WGS84Point;
-import ch.hsr.geohash.util.VincentyGeodesy;
+import ch.hsr.geohash.util.GeodesicDistance;
+import ch.hsr.geohash.util.GeodesicDistances;
 
 /**
  * represents a radius search around a specific point via geohashes.
- * Approximates the circle with a square!
+ * Approximates the circle with a square, unless it is given a
+ * {@link GeodesicDistance} to check points against the actual radius.
  */
 public class GeoHashCircleQuery implements GeoHashQuery, Serializable {
 	private static final long serialVersionUID = 1263295371663796291L;
 	private double radius;
 	private GeoHashBoundingBoxQuery query;
 	private WGS84Point center;
+	private GeodesicDistance distance;
 
 	/**
 	 * create a {@link GeoHashCircleQuery} with the given center point and a
 	 * radius in meters.
 	 */
 	public GeoHashCircleQuery(WGS84Point center, double radius) {
+		this(center, radius, (GeodesicDistance) null);
+	}
+
+	/**
+	 * create a {@link GeoHashCircleQuery} whose {@link #contains(WGS84Point)}
+	 * is exact up to the given relative error, using the cheapest distance
+	 * formula that satisfies it.
+	 */
+	public GeoHashCircleQuery(WGS84Point center, double radius, double relativeTolerance) {
+		this(center, radius, GeodesicDistances.forTolerance(radius, relativeTolerance));
+	}
+
+	/**
+	 * create a {@link GeoHashCircleQuery} whose {@link #contains(WGS84Point)}
+	 * also checks the distance to the center with the given strategy. If the
+	 * strategy is null, points are only checked against the covering hashes.
+	 */
+	public GeoHashCircleQuery(WGS84Point center, double radius, GeodesicDistance distance) {
 		this.radius = radius;
 		this.center = center;
-		WGS84Point northEast = VincentyGeodesy.moveInDirection(VincentyGeodesy.moveInDirection(center, 0, radius), 90,
-				radius);
-		WGS84Point southWest = VincentyGeodesy.moveInDirection(VincentyGeodesy.moveInDirection(center, 180, radius),
-				270, radius);
-		BoundingBox bbox = new BoundingBox(northEast, southWest);
-		query = new GeoHashBoundingBoxQuery(bbox);
+		this.distance = distance;
+		query = new GeoHashBoundingBoxQuery(GeodesicDistances.getBoundingBox(center.getLatitude(),
+				center.getLongitude(), radius));
 	}
 
 	@Override
@@ -71,6 +92,93 @@ public class GeoHashCircleQuery implements GeoHashQuery, Serializable {
 
 	@Override
 	public boolean contains(WGS84Point point) {
-		return query.contains(point);
+		return contains(point.getLatitude(), point.getLongitude());
+	}
+
+	@Override
+	public boolean contains(long bits, int significantBits) {
+		return query.contains(bits, significantBits);
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude) {
+		if (!query.contains(latitude, longitude)) {
+			return false;
+		}
+		return distance == null || isWithinRadius(latitude, longitude);
+	}
+
+	/**
+	 * filters the points with the covering hashes first, and only measures
+	 * the distance of those that pass.
+	 */
+	@Override
+	public int filter(double[] latitudes, double[] longitudes, long[] bitmaskOut) {
+		int matches = query.filter(latitudes, longitudes, bitmaskOut);
+		if (distance == null) {
+			return matches;
+		}
+		for (int word = 0; word < (latitudes.length + 63) >>> 6; word++) {
+			long candidates = bitmaskOut[word];
+			while (candidates != 0) {
+				long bit = Long.lowestOneBit(candidates);
+				candidates ^= bit;
+				int i = (word << 6) + Long.numberOfTrailingZeros(bit);
+				if (!isWithinRadius(latitudes[i], longitudes[i])) {
+					bitmaskOut[word] ^= bit;
+					matches--;
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * write the center, the radius and the distance strategy of this query.
+	 * The covering is not written, but computed again when reading.
+	 * 
+	 * @throws NotSerializableException
+	 *             if the strategy isn't one of the {@link GeodesicDistances}
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		if (distance != null && !(distance instanceof GeodesicDistances)) {
+			throw new NotSerializableException("Only the built-in GeodesicDistances can be written, not " + distance);
+		}
+		center.writeTo(out);
+		out.writeDouble(radius);
+		out.writeByte((distance == null) ? -1 : ((GeodesicDistances) distance).ordinal());
+	}
+
+	/**
+	 * read a query written by {@link #writeTo(DataOutput)}.
+	 */
+	public static GeoHashCircleQuery readFrom(DataInput in) throws IOException {
+		WGS84Point center = WGS84Point.readFrom(in);
+		double radius = in.readDouble();
+		int ordinal = in.readByte();
+		if (ordinal >= GeodesicDistances.values().length) {
+			throw new IOException("Unknown distance strategy " + ordinal);
+		}
+		return new GeoHashCircleQuery(center, radius, (ordinal < 0) ? null : GeodesicDistances.values()[ordinal]);
+	}
+
+	/**
+	 * queries with a custom distance strategy keep the default serialized
+	 * form.
+	 */
+	private Object writeReplace() {
+		return (distance == null || distance instanceof GeodesicDistances) ? new QueryExternalForm(this) : this;
+	}
+
+	private boolean isWithinRadius(double latitude, double longitude) {
+		return distance.distanceInMeters(center.getLatitude(), center.getLongitude(), latitude, longitude) <= radius;
+	}
+
+	/**
+	 * returns the strategy used to check points against the radius, or null
+	 * if points are only checked against the covering hashes.
+	 */
+	public GeodesicDistance getDistance() {
+		return distance;
 	}
 }
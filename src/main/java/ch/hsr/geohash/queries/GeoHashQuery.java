@@ -17,6 +17,30 @@ public interface GeoHashQuery {
 	 */
 	public boolean contains(WGS84Point point);
 
+	/**
+	 * check whether the geohash with the given {@link GeoHash#longValue()}
+	 * and number of significant bits is within the hashes that make up this
+	 * query, without creating a {@link GeoHash}.
+	 */
+	public boolean contains(long bits, int significantBits);
+
+	/**
+	 * returns whether a point lies within a query, without creating any
+	 * objects.
+	 */
+	public boolean contains(double latitude, double longitude);
+
+	/**
+	 * check a batch of points against this query. Point i is contained iff bit
+	 * <code>i % 64</code> of <code>bitmaskOut[i / 64]</code> is set afterwards.
+	 * 
+	 * @return the number of points contained in this query
+	 * @throws IllegalArgumentException
+	 *             if the arrays of coordinates differ in length, or the
+	 *             bitmask is too short to hold a bit for every point
+	 */
+	public int filter(double[] latitudes, double[] longitudes, long[] bitmaskOut);
+
 	/**
 	 * should return the hashes that re required to perform this search.
 	 */
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.queries;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The serialized form of the queries: a type byte followed by the query's
+ * <code>writeTo</code> encoding. The queries replace themselves with this
+ * when serialized, and it resolves back to them when deserialized.
+ */
+final class QueryExternalForm implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final byte BOUNDING_BOX_QUERY = 1;
+	private static final byte CIRCLE_QUERY = 2;
+	private static final byte COMPILED_QUERY = 3;
+
+	private GeoHashQuery query;
+
+	/**
+	 * for deserialization only.
+	 */
+	public QueryExternalForm() {
+	}
+
+	QueryExternalForm(GeoHashQuery query) {
+		this.query = query;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		if (query instanceof GeoHashBoundingBoxQuery) {
+			out.writeByte(BOUNDING_BOX_QUERY);
+			((GeoHashBoundingBoxQuery) query).writeTo(out);
+		} else if (query instanceof GeoHashCircleQuery) {
+			out.writeByte(CIRCLE_QUERY);
+			((GeoHashCircleQuery) query).writeTo(out);
+		} else {
+			out.writeByte(COMPILED_QUERY);
+			((CompiledGeoHashQuery) query).writeTo(out);
+		}
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case BOUNDING_BOX_QUERY:
+			query = GeoHashBoundingBoxQuery.readFrom(in);
+			break;
+		case CIRCLE_QUERY:
+			query = GeoHashCircleQuery.readFrom(in);
+			break;
+		case COMPILED_QUERY:
+			query = CompiledGeoHashQuery.readFrom(in);
+			break;
+		default:
+			throw new InvalidObjectException("Unknown type " + type);
+		}
+	}
+
+	private Object readResolve() {
+		return query;
+	}
+}
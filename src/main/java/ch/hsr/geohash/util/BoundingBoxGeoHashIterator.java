@@ -1,20 +1,25 @@
 package ch.hsr.geohash.util;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import ch.hsr.geohash.GeoHash;
 
 /**
  * Iterate over all of the values within a bounding box at a particular
- * resolution
+ * resolution. A box crossing the antimeridian is iterated as its western and
+ * then its eastern part.
  */
 public class BoundingBoxGeoHashIterator implements Iterator<GeoHash> {
 	private TwoGeoHashBoundingBox boundingBox;
+	private List<TwoGeoHashBoundingBox> parts;
+	private int part;
 	private GeoHash current;
 
 	public BoundingBoxGeoHashIterator(TwoGeoHashBoundingBox bbox) {
 		this.boundingBox = bbox;
+		this.parts = bbox.splitAtAntimeridian();
 		this.current = bbox.getBottomLeft();
 	}
 
@@ -24,7 +29,7 @@ public class BoundingBoxGeoHashIterator implements Iterator<GeoHash> {
 
 	@Override
 	public boolean hasNext() {
-		return current.compareTo(boundingBox.getTopRight()) <= 0;
+		return current.compareTo(parts.get(part).getTopRight()) <= 0;
 	}
 
 	@Override
@@ -34,9 +39,12 @@ public class BoundingBoxGeoHashIterator implements Iterator<GeoHash> {
 			throw new NoSuchElementException();
 		}
 		current = rv.next();
-		while (hasNext() && !boundingBox.getBoundingBox().contains(current.getPoint())) {
+		while (hasNext() && !parts.get(part).getBoundingBox().contains(current.getPoint())) {
 			current = current.next();
 		}
+		if (!hasNext() && part + 1 < parts.size()) {
+			current = parts.get(++part).getBottomLeft();
+		}
 		return rv;
 	}
 
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+
+/**
+ * Per-cell aggregates at every precision from 0 bits up to a finest one.
+ * <p>
+ * Each level is rolled up from the next finer one in a single pass: in
+ * ascending order the cells sharing a prefix are consecutive, so masking
+ * their values is enough to group them. Every level is kept as sorted arrays,
+ * which answer lookups and bounding box queries by binary search.
+ */
+public final class GeoHashAggregatePyramid {
+	private final Level[] levels;
+
+	private GeoHashAggregatePyramid(Level[] levels) {
+		this.levels = levels;
+	}
+
+	/**
+	 * builds a pyramid from the cells of the given aggregator.
+	 */
+	public static GeoHashAggregatePyramid of(GeoHashAggregator fine) {
+		long[] cells = fine.getCells();
+		Level level = new Level(cells.length);
+		for (long cell : cells) {
+			level.append(cell, fine.getCount(cell), fine.getSum(cell), fine.getMin(cell), fine.getMax(cell));
+		}
+		return rollUp(fine.getPrecision(), level);
+	}
+
+	/**
+	 * builds a pyramid from aggregates at the given precision. The cells must
+	 * be sorted in ascending unsigned order, without duplicates.
+	 */
+	public static GeoHashAggregatePyramid of(int precision, long[] cells, long[] counts, double[] sums,
+			double[] mins, double[] maxs) {
+		if (precision < 0 || precision > 64) {
+			throw new IllegalArgumentException("The precision must be between 0 and 64 bits");
+		}
+		int n = cells.length;
+		if (counts.length != n || sums.length != n || mins.length != n || maxs.length != n) {
+			throw new IllegalArgumentException("All arrays must have the same length");
+		}
+		long mask = LongUtil.prefixMask(precision);
+		Level level = new Level(n);
+		for (int i = 0; i < n; i++) {
+			if ((cells[i] & ~mask) != 0) {
+				throw new IllegalArgumentException("The cell " + Long.toHexString(cells[i]) + " has more than "
+						+ precision + " bits");
+			}
+			if (i > 0 && LongUtil.flip(cells[i - 1]) >= LongUtil.flip(cells[i])) {
+				throw new IllegalArgumentException("The cells must be sorted and distinct");
+			}
+			level.append(cells[i], counts[i], sums[i], mins[i], maxs[i]);
+		}
+		return rollUp(precision, level);
+	}
+
+	private static GeoHashAggregatePyramid rollUp(int precision, Level finest) {
+		Level[] levels = new Level[precision + 1];
+		levels[precision] = finest;
+		for (int p = precision - 1; p >= 0; p--) {
+			Level finer = levels[p + 1];
+			Level coarser = new Level(finer.size);
+			long mask = LongUtil.prefixMask(p);
+			for (int i = 0; i < finer.size; i++) {
+				long cell = finer.cells[i] & mask;
+				if (coarser.size > 0 && coarser.cells[coarser.size - 1] == cell) {
+					coarser.merge(coarser.size - 1, finer.counts[i], finer.sums[i], finer.mins[i], finer.maxs[i]);
+				} else {
+					coarser.append(cell, finer.counts[i], finer.sums[i], finer.mins[i], finer.maxs[i]);
+				}
+			}
+			levels[p] = coarser.trim();
+		}
+		return new GeoHashAggregatePyramid(levels);
+	}
+
+	/**
+	 * returns the finest precision of this pyramid.
+	 */
+	public int getPrecision() {
+		return levels.length - 1;
+	}
+
+	public int getNumberOfCells(int precision) {
+		return level(precision).size;
+	}
+
+	/**
+	 * returns the bits of the cells of the given precision, in ascending
+	 * unsigned order.
+	 */
+	public long[] getCells(int precision) {
+		Level level = level(precision);
+		long[] cells = new long[level.size];
+		System.arraycopy(level.cells, 0, cells, 0, level.size);
+		return cells;
+	}
+
+	/**
+	 * returns the number of values in the cell with the given bits and
+	 * precision.
+	 */
+	public long getCount(long bits, int precision) {
+		Level level = level(precision);
+		int i = level.indexOf(bits & LongUtil.prefixMask(precision));
+		return (i < 0) ? 0 : level.counts[i];
+	}
+
+	public long getCount(GeoHash cell) {
+		return getCount(cell.longValue(), cell.significantBits());
+	}
+
+	/**
+	 * returns the sum of the values in the cell with the given bits and
+	 * precision, or 0.
+	 */
+	public double getSum(long bits, int precision) {
+		Level level = level(precision);
+		int i = level.indexOf(bits & LongUtil.prefixMask(precision));
+		return (i < 0) ? 0 : level.sums[i];
+	}
+
+	/**
+	 * returns the smallest value in the cell with the given bits and
+	 * precision, or NaN.
+	 */
+	public double getMin(long bits, int precision) {
+		Level level = level(precision);
+		int i = level.indexOf(bits & LongUtil.prefixMask(precision));
+		return (i < 0) ? Double.NaN : level.mins[i];
+	}
+
+	/**
+	 * returns the largest value in the cell with the given bits and precision,
+	 * or NaN.
+	 */
+	public double getMax(long bits, int precision) {
+		Level level = level(precision);
+		int i = level.indexOf(bits & LongUtil.prefixMask(precision));
+		return (i < 0) ? Double.NaN : level.maxs[i];
+	}
+
+	/**
+	 * calls the visitor for every cell of the given precision, in ascending
+	 * order.
+	 */
+	public void forEach(int precision, GeoHashAggregator.Visitor visitor) {
+		Level level = level(precision);
+		for (int i = 0; i < level.size; i++) {
+			level.visit(i, visitor);
+		}
+	}
+
+	/**
+	 * returns the precision at which about <code>cellsAcross</code> cells span
+	 * the given box, as suggested by
+	 * {@link GeoHashSizeTable#numberOfBitsForOverlappingGeoHash(double, double)}
+	 * , but no finer than this pyramid.
+	 */
+	public int getPrecisionFor(BoundingBox box, int cellsAcross) {
+		if (cellsAcross < 1) {
+			throw new IllegalArgumentException("There must be at least one cell across");
+		}
+		int bits = GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(box.getLatitudeSize() / cellsAcross,
+				box.getLongitudeSize() / cellsAcross);
+		return Math.min(getPrecision(), bits);
+	}
+
+	/**
+	 * calls the visitor for every cell of the given precision that intersects
+	 * the box, in ascending order.
+	 */
+	public void query(BoundingBox box, int precision, GeoHashAggregator.Visitor visitor) {
+		Level level = level(precision);
+		List<GeoHash> searchHashes = new ArrayList<GeoHash>(new GeoHashBoundingBoxQuery(box).getSearchHashes());
+		Collections.sort(searchHashes, GeoHashCodec.UNSIGNED_ORDER);
+
+		int next = 0;
+		for (GeoHash searchHash : searchHashes) {
+			// the cells of this level within the search hash, or the one
+			// containing it
+			long mask = LongUtil.prefixMask(Math.min(precision, searchHash.significantBits()));
+			long first = searchHash.longValue() & mask;
+			long last = first | ~mask;
+			for (int i = Math.max(next, level.lowerBound(first)); i < level.size
+					&& LongUtil.flip(level.cells[i]) <= LongUtil.flip(last); i++) {
+				if (GeoHash.fromLongValue(level.cells[i], precision).getBoundingBox().intersects(box)) {
+					level.visit(i, visitor);
+				}
+				next = i + 1;
+			}
+		}
+	}
+
+	private Level level(int precision) {
+		if (precision < 0 || precision >= levels.length) {
+			throw new IllegalArgumentException("The precision must be between 0 and " + getPrecision() + " bits");
+		}
+		return levels[precision];
+	}
+
+	/**
+	 * The aggregates of one precision, sorted by cell.
+	 */
+	private static final class Level {
+		private long[] cells;
+		private long[] counts;
+		private double[] sums;
+		private double[] mins;
+		private double[] maxs;
+		private int size;
+
+		Level(int capacity) {
+			cells = new long[capacity];
+			counts = new long[capacity];
+			sums = new double[capacity];
+			mins = new double[capacity];
+			maxs = new double[capacity];
+		}
+
+		void append(long cell, long count, double sum, double min, double max) {
+			cells[size] = cell;
+			counts[size] = count;
+			sums[size] = sum;
+			mins[size] = min;
+			maxs[size] = max;
+			size++;
+		}
+
+		void merge(int i, long count, double sum, double min, double max) {
+			counts[i] += count;
+			sums[i] += sum;
+			mins[i] = Math.min(mins[i], min);
+			maxs[i] = Math.max(maxs[i], max);
+		}
+
+		Level trim() {
+			if (size < cells.length) {
+				Level trimmed = new Level(size);
+				System.arraycopy(cells, 0, trimmed.cells, 0, size);
+				System.arraycopy(counts, 0, trimmed.counts, 0, size);
+				System.arraycopy(sums, 0, trimmed.sums, 0, size);
+				System.arraycopy(mins, 0, trimmed.mins, 0, size);
+				System.arraycopy(maxs, 0, trimmed.maxs, 0, size);
+				trimmed.size = size;
+				return trimmed;
+			}
+			return this;
+		}
+
+		void visit(int i, GeoHashAggregator.Visitor visitor) {
+			visitor.visit(cells[i], counts[i], sums[i], mins[i], maxs[i]);
+		}
+
+		int indexOf(long cell) {
+			int i = lowerBound(cell);
+			return (i < size && cells[i] == cell) ? i : -1;
+		}
+
+		/**
+		 * returns the index of the first cell not below the given one.
+		 */
+		int lowerBound(long cell) {
+			long key = LongUtil.flip(cell);
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (LongUtil.flip(cells[mid]) < key) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
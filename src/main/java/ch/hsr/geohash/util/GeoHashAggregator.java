@@ -0,0 +1,343 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Accumulates the count, sum, minimum and maximum of values per cell of one
+ * precision, in an open-addressing hash map of the cells' 64-bit values. It
+ * creates no objects per point, and only grows its arrays.
+ * <p>
+ * An aggregator is not thread-safe. Every thread fills one of its own, and
+ * hands it to a shared {@link Partials} queue, at the end or periodically,
+ * from which another thread merges them.
+ */
+public class GeoHashAggregator {
+	private static final int MIN_CAPACITY = 16;
+	/* the largest power of two an int can double to */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private final int precision;
+	private final long mask;
+
+	/*
+	 * The slot of a cell whose value is 0 (the south-western cell) can't be
+	 * told from an empty one, so it is kept in the extra slot at the end.
+	 */
+	private long[] keys;
+	private long[] counts;
+	private double[] sums;
+	private double[] mins;
+	private double[] maxs;
+	private boolean hasZeroKey;
+	private int size;
+
+	public GeoHashAggregator(int precision) {
+		this(precision, MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedCells
+	 *            the number of cells to hold without growing, at most 3/4 of
+	 *            2^30
+	 */
+	public GeoHashAggregator(int precision, int expectedCells) {
+		if (precision < 0 || precision > 64) {
+			throw new IllegalArgumentException("The precision must be between 0 and 64 bits");
+		}
+		if (expectedCells < 0) {
+			throw new IllegalArgumentException("The expected number of cells must not be negative");
+		}
+		this.precision = precision;
+		this.mask = LongUtil.prefixMask(precision);
+		allocate(capacityFor(expectedCells));
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * returns the number of cells with at least one value.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * adds a value to the cell containing the given point.
+	 */
+	public void add(double latitude, double longitude, double value) {
+		addToCell(GeoHash.encodeLongValue(latitude, longitude, precision), 1, value, value, value);
+	}
+
+	/**
+	 * adds a value to the cell with the given bits; bits beyond the precision
+	 * are ignored.
+	 */
+	public void add(long bits, double value) {
+		addToCell(bits & mask, 1, value, value, value);
+	}
+
+	/**
+	 * adds the aggregates of another aggregator of the same precision to this
+	 * one.
+	 */
+	public void addAll(GeoHashAggregator other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge aggregates of " + other.precision + " bits into "
+					+ precision + " bits");
+		}
+		for (int slot = 0; slot < other.keys.length; slot++) {
+			if (other.isOccupied(slot)) {
+				addToCell(other.keys[slot], other.counts[slot], other.sums[slot], other.mins[slot], other.maxs[slot]);
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(counts, 0);
+		hasZeroKey = false;
+		size = 0;
+	}
+
+	/**
+	 * returns the number of values added to the cell with the given bits.
+	 */
+	public long getCount(long bits) {
+		int slot = slotOf(bits);
+		return (slot < 0) ? 0 : counts[slot];
+	}
+
+	public long getCount(GeoHash cell) {
+		checkPrecision(cell);
+		return getCount(cell.longValue());
+	}
+
+	/**
+	 * returns the sum of the values of the cell with the given bits, or 0.
+	 */
+	public double getSum(long bits) {
+		int slot = slotOf(bits);
+		return (slot < 0) ? 0 : sums[slot];
+	}
+
+	/**
+	 * returns the smallest value of the cell with the given bits, or NaN.
+	 */
+	public double getMin(long bits) {
+		int slot = slotOf(bits);
+		return (slot < 0) ? Double.NaN : mins[slot];
+	}
+
+	/**
+	 * returns the largest value of the cell with the given bits, or NaN.
+	 */
+	public double getMax(long bits) {
+		int slot = slotOf(bits);
+		return (slot < 0) ? Double.NaN : maxs[slot];
+	}
+
+	/**
+	 * returns the bits of the cells with values, in ascending unsigned order.
+	 */
+	public long[] getCells() {
+		long[] cells = new long[size];
+		int i = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (isOccupied(slot)) {
+				cells[i++] = LongUtil.flip(keys[slot]);
+			}
+		}
+		Arrays.sort(cells);
+		for (i = 0; i < cells.length; i++) {
+			cells[i] = LongUtil.flip(cells[i]);
+		}
+		return cells;
+	}
+
+	/**
+	 * calls the visitor for every cell with values, in no particular order.
+	 */
+	public void forEach(Visitor visitor) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (isOccupied(slot)) {
+				visitor.visit(keys[slot], counts[slot], sums[slot], mins[slot], maxs[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Receives the aggregates of one cell.
+	 */
+	public interface Visitor {
+		void visit(long bits, long count, double sum, double min, double max);
+	}
+
+	/**
+	 * A lock-free queue of partial aggregates. Producers offer the aggregators
+	 * they filled and continue with fresh ones; a consumer drains the queue
+	 * into its total whenever it likes.
+	 */
+	public static final class Partials {
+		private final ConcurrentLinkedQueue<GeoHashAggregator> queue = new ConcurrentLinkedQueue<GeoHashAggregator>();
+
+		/**
+		 * hands over a filled aggregator, which the producer must not touch
+		 * afterwards.
+		 */
+		public void offer(GeoHashAggregator partial) {
+			queue.offer(partial);
+		}
+
+		/**
+		 * merges all partials offered so far into the given total.
+		 *
+		 * @return the number of partials merged
+		 */
+		public int drainTo(GeoHashAggregator total) {
+			int drained = 0;
+			GeoHashAggregator partial;
+			while ((partial = queue.poll()) != null) {
+				total.addAll(partial);
+				drained++;
+			}
+			return drained;
+		}
+	}
+
+	private void addToCell(long key, long count, double sum, double min, double max) {
+		int slot;
+		if (key == 0) {
+			slot = keys.length - 1;
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				initialize(slot, key);
+			}
+		} else {
+			slot = probe(key);
+			if (keys[slot] == 0) {
+				initialize(slot, key);
+			}
+		}
+		counts[slot] += count;
+		sums[slot] += sum;
+		if (min < mins[slot]) {
+			mins[slot] = min;
+		}
+		if (max > maxs[slot]) {
+			maxs[slot] = max;
+		}
+		if (size > (keys.length - 1) / 4 * 3) {
+			grow();
+		}
+	}
+
+	private void initialize(int slot, long key) {
+		keys[slot] = key;
+		counts[slot] = 0;
+		sums[slot] = 0;
+		mins[slot] = Double.POSITIVE_INFINITY;
+		maxs[slot] = Double.NEGATIVE_INFINITY;
+		size++;
+	}
+
+	/**
+	 * returns the slot holding the given key, or the empty slot where it
+	 * belongs.
+	 */
+	private int probe(long key) {
+		int tableMask = keys.length - 2;
+		int slot = LongUtil.hash(key) & tableMask;
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & tableMask;
+		}
+		return slot;
+	}
+
+	private int slotOf(long bits) {
+		long key = bits & mask;
+		if (key == 0) {
+			return hasZeroKey ? keys.length - 1 : -1;
+		}
+		int slot = probe(key);
+		return (keys[slot] == 0) ? -1 : slot;
+	}
+
+	private boolean isOccupied(int slot) {
+		return (slot == keys.length - 1) ? hasZeroKey : keys[slot] != 0;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		double[] oldSums = sums;
+		double[] oldMins = mins;
+		double[] oldMaxs = maxs;
+		if (oldKeys.length - 1 == MAX_CAPACITY) {
+			throw new IllegalStateException("An aggregator holds at most " + MAX_CAPACITY / 4 * 3 + " cells");
+		}
+		allocate(2 * (oldKeys.length - 1));
+		for (int slot = 0; slot < oldKeys.length - 1; slot++) {
+			if (oldKeys[slot] != 0) {
+				int newSlot = probe(oldKeys[slot]);
+				keys[newSlot] = oldKeys[slot];
+				counts[newSlot] = oldCounts[slot];
+				sums[newSlot] = oldSums[slot];
+				mins[newSlot] = oldMins[slot];
+				maxs[newSlot] = oldMaxs[slot];
+			}
+		}
+		int zero = oldKeys.length - 1;
+		keys[keys.length - 1] = 0;
+		counts[keys.length - 1] = oldCounts[zero];
+		sums[keys.length - 1] = oldSums[zero];
+		mins[keys.length - 1] = oldMins[zero];
+		maxs[keys.length - 1] = oldMaxs[zero];
+	}
+
+	/**
+	 * allocates a table of the given power-of-two capacity, plus the slot for
+	 * the zero key.
+	 */
+	private void allocate(int capacity) {
+		keys = new long[capacity + 1];
+		counts = new long[capacity + 1];
+		sums = new double[capacity + 1];
+		mins = new double[capacity + 1];
+		maxs = new double[capacity + 1];
+	}
+
+	private static int capacityFor(int expectedCells) {
+		if (expectedCells > MAX_CAPACITY / 4 * 3) {
+			throw new IllegalArgumentException("An aggregator holds at most " + MAX_CAPACITY / 4 * 3 + " cells");
+		}
+		int capacity = MIN_CAPACITY;
+		while (capacity / 4 * 3 < expectedCells) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	private void checkPrecision(GeoHash cell) {
+		if (cell.significantBits() != precision) {
+			throw new IllegalArgumentException("The cell has " + cell.significantBits() + " bits instead of "
+					+ precision);
+		}
+	}
+}
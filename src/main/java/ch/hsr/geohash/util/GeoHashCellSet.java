@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * An immutable set of cells of any precision, stored as the sorted, disjoint
+ * and non-adjacent intervals of 64-bit hash values they cover. Every cell is
+ * one such interval, so any collection of cells normalizes to the same
+ * intervals as the area it covers: complete sets of siblings are
+ * indistinguishable from their parent, and cells within other cells vanish.
+ * <p>
+ * Union, intersection, difference and containment of two sets merge their
+ * interval lists in O(n + m). The intervals include their last value, because
+ * the end of the key space is one past the largest unsigned long.
+ */
+public final class GeoHashCellSet {
+	private static final GeoHashCellSet EMPTY = new GeoHashCellSet(new long[0], new long[0]);
+
+	/*
+	 * first and last value of each interval, with the sign bit flipped so that
+	 * signed comparisons order them like the unsigned hashes.
+	 */
+	private final long[] starts;
+	private final long[] ends;
+
+	private GeoHashCellSet(long[] starts, long[] ends) {
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	public static GeoHashCellSet empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * returns the set of all cells, i.e. the whole world.
+	 */
+	public static GeoHashCellSet all() {
+		return new GeoHashCellSet(new long[] { Long.MIN_VALUE }, new long[] { Long.MAX_VALUE });
+	}
+
+	public static GeoHashCellSet of(GeoHash... cells) {
+		return of(Arrays.asList(cells));
+	}
+
+	public static GeoHashCellSet of(Collection<GeoHash> cells) {
+		List<GeoHash> sorted = new ArrayList<GeoHash>(cells);
+		Collections.sort(sorted, GeoHashCodec.UNSIGNED_ORDER);
+		Builder builder = new Builder(sorted.size());
+		for (GeoHash cell : sorted) {
+			long mask = LongUtil.prefixMask(cell.significantBits());
+			builder.add(LongUtil.flip(cell.longValue() & mask), LongUtil.flip(cell.longValue() | ~mask));
+		}
+		return builder.build();
+	}
+
+	public boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	/**
+	 * returns the number of disjoint intervals of hash values.
+	 */
+	public int getNumberOfIntervals() {
+		return starts.length;
+	}
+
+	/**
+	 * returns the first hash value of the given interval.
+	 */
+	public long getFirst(int interval) {
+		return LongUtil.flip(starts[interval]);
+	}
+
+	/**
+	 * returns the last hash value of the given interval.
+	 */
+	public long getLast(int interval) {
+		return LongUtil.flip(ends[interval]);
+	}
+
+	/**
+	 * returns the fewest cells that make up this set, in ascending order. Every
+	 * interval is split into the largest cells that fit, which collapses
+	 * complete sets of siblings into their parent.
+	 */
+	public List<GeoHash> getCells() {
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		for (int i = 0; i < starts.length; i++) {
+			long first = LongUtil.flip(starts[i]);
+			long last = LongUtil.flip(ends[i]);
+			while (true) {
+				// the largest cell starting at first that doesn't extend past last
+				int size = Math.min(64, Long.numberOfTrailingZeros(first));
+				while (size > 0 && compareUnsigned(first + ((size == 64) ? -1 : (1L << size) - 1), last) > 0) {
+					size--;
+				}
+				cells.add(GeoHash.fromLongValue(first, 64 - size));
+				long cellLast = first + ((size == 64) ? -1 : (1L << size) - 1);
+				if (cellLast == last) {
+					break;
+				}
+				first = cellLast + 1;
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * returns whether the whole cell of the given hash is in this set.
+	 */
+	public boolean contains(GeoHash hash) {
+		return contains(hash.longValue(), hash.significantBits());
+	}
+
+	/**
+	 * returns whether the whole cell with the given bits is in this set.
+	 */
+	public boolean contains(long bits, int significantBits) {
+		long mask = LongUtil.prefixMask(significantBits);
+		int i = indexOfInterval(LongUtil.flip(bits & mask));
+		return i >= 0 && LongUtil.flip(bits | ~mask) <= ends[i];
+	}
+
+	public boolean contains(double latitude, double longitude) {
+		return indexOfInterval(LongUtil.flip(GeoHash.encodeLongValue(latitude, longitude, 64))) >= 0;
+	}
+
+	/**
+	 * returns whether the given cell and this set have any part in common.
+	 */
+	public boolean intersects(GeoHash hash) {
+		long mask = LongUtil.prefixMask(hash.significantBits());
+		long start = LongUtil.flip(hash.longValue() & mask);
+		long end = LongUtil.flip(hash.longValue() | ~mask);
+		// the last interval starting within the cell, or the one before it
+		int i = indexOfLastStartAtOrBefore(end);
+		return i >= 0 && ends[i] >= start;
+	}
+
+	/**
+	 * returns whether every cell of the other set is in this one.
+	 */
+	public boolean containsAll(GeoHashCellSet other) {
+		int i = 0;
+		for (int j = 0; j < other.starts.length; j++) {
+			while (i < starts.length && ends[i] < other.starts[j]) {
+				i++;
+			}
+			if (i == starts.length || starts[i] > other.starts[j] || ends[i] < other.ends[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public GeoHashCellSet union(GeoHashCellSet other) {
+		Builder builder = new Builder(starts.length + other.starts.length);
+		int i = 0;
+		int j = 0;
+		while (i < starts.length || j < other.starts.length) {
+			if (j == other.starts.length || (i < starts.length && starts[i] <= other.starts[j])) {
+				builder.add(starts[i], ends[i]);
+				i++;
+			} else {
+				builder.add(other.starts[j], other.ends[j]);
+				j++;
+			}
+		}
+		return builder.build();
+	}
+
+	public GeoHashCellSet intersection(GeoHashCellSet other) {
+		Builder builder = new Builder(Math.max(starts.length, other.starts.length));
+		int i = 0;
+		int j = 0;
+		while (i < starts.length && j < other.starts.length) {
+			long start = Math.max(starts[i], other.starts[j]);
+			long end = Math.min(ends[i], other.ends[j]);
+			if (start <= end) {
+				builder.add(start, end);
+			}
+			if (ends[i] < other.ends[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * returns the cells of this set that aren't in the other.
+	 */
+	public GeoHashCellSet difference(GeoHashCellSet other) {
+		Builder builder = new Builder(starts.length + other.starts.length);
+		int j = 0;
+		for (int i = 0; i < starts.length; i++) {
+			long start = starts[i];
+			boolean isExhausted = false;
+			while (j < other.starts.length && other.ends[j] < start) {
+				j++;
+			}
+			// cut out every interval of the other set that overlaps this one
+			for (int k = j; k < other.starts.length && other.starts[k] <= ends[i]; k++) {
+				if (other.starts[k] > start) {
+					builder.add(start, other.starts[k] - 1);
+				}
+				if (other.ends[k] >= ends[i]) {
+					isExhausted = true;
+					break;
+				}
+				start = other.ends[k] + 1;
+			}
+			if (!isExhausted) {
+				builder.add(start, ends[i]);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * estimates the area covered by this set on a sphere of
+	 * {@link GeodesicDistances#MEAN_RADIUS}.
+	 */
+	public double getAreaInSquareMeters() {
+		double area = 0;
+		for (GeoHash cell : getCells()) {
+			BoundingBox box = cell.getBoundingBox();
+			double sinMax = Math.sin(Math.toRadians(box.getMaxLat()));
+			double sinMin = Math.sin(Math.toRadians(box.getMinLat()));
+			area += Math.toRadians(box.getLongitudeSize()) * (sinMax - sinMin);
+		}
+		return area * GeodesicDistances.MEAN_RADIUS * GeodesicDistances.MEAN_RADIUS;
+	}
+
+	/**
+	 * write the intervals of this set with
+	 * {@link GeoHashCodec#writeRanges(long[], long[], int, DataOutput)}.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		long[] firsts = new long[starts.length];
+		long[] lasts = new long[starts.length];
+		for (int i = 0; i < starts.length; i++) {
+			firsts[i] = LongUtil.flip(starts[i]);
+			lasts[i] = LongUtil.flip(ends[i]);
+		}
+		GeoHashCodec.writeRanges(firsts, lasts, starts.length, out);
+	}
+
+	/**
+	 * read a set written by {@link #writeTo(DataOutput)}.
+	 *
+	 * @throws IOException
+	 *             if the intervals are not sorted and disjoint, as the
+	 *             lookups rely on
+	 */
+	public static GeoHashCellSet readFrom(DataInput in) throws IOException {
+		long[][] ranges = GeoHashCodec.readRanges(in);
+		Builder builder = new Builder(ranges[0].length);
+		for (int i = 0; i < ranges[0].length; i++) {
+			long start = LongUtil.flip(ranges[0][i]);
+			long end = LongUtil.flip(ranges[1][i]);
+			if (start > end || (i > 0 && start <= LongUtil.flip(ranges[1][i - 1]))) {
+				throw new IOException("The intervals must be sorted and disjoint, but interval " + i + " is not");
+			}
+			builder.add(start, end);
+		}
+		return builder.build();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (obj instanceof GeoHashCellSet) {
+			GeoHashCellSet other = (GeoHashCellSet) obj;
+			return Arrays.equals(starts, other.starts) && Arrays.equals(ends, other.ends);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+	}
+
+	@Override
+	public String toString() {
+		return "GeoHashCellSet [" + starts.length + " intervals]";
+	}
+
+	/**
+	 * returns the index of the interval containing the given flipped value, or
+	 * -1.
+	 */
+	private int indexOfInterval(long key) {
+		int i = indexOfLastStartAtOrBefore(key);
+		return (i >= 0 && key <= ends[i]) ? i : -1;
+	}
+
+	private int indexOfLastStartAtOrBefore(long key) {
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	private static int compareUnsigned(long a, long b) {
+		long x = LongUtil.flip(a);
+		long y = LongUtil.flip(b);
+		return (x < y) ? -1 : ((x == y) ? 0 : 1);
+	}
+
+	/**
+	 * collects intervals in ascending order of their starts, merging those
+	 * that overlap or touch.
+	 */
+	private static final class Builder {
+		private long[] starts;
+		private long[] ends;
+		private int size;
+
+		Builder(int capacity) {
+			starts = new long[Math.max(4, capacity)];
+			ends = new long[starts.length];
+		}
+
+		void add(long start, long end) {
+			if (size > 0 && (ends[size - 1] == Long.MAX_VALUE || start <= ends[size - 1] + 1)) {
+				ends[size - 1] = Math.max(ends[size - 1], end);
+				return;
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, 2 * size);
+				ends = Arrays.copyOf(ends, 2 * size);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+
+		GeoHashCellSet build() {
+			if (size == 0) {
+				return EMPTY;
+			}
+			return new GeoHashCellSet(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Compact binary encodings for collections of hashes.
+ * <p>
+ * Cell lists are sorted and written as the varint-encoded differences between
+ * consecutive cells, in units of the finest cell. Coverings given as ranges of
+ * 64-bit values are written as varint-encoded gaps and lengths in the same
+ * units. Neighbouring cells thus take two or three bytes each, instead of the
+ * hundreds of bytes of default serialization.
+ */
+public final class GeoHashCodec {
+	/*
+	 * the counts in a stream are not trusted to preallocate more than this;
+	 * longer lists grow as they are read.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	/**
+	 * orders hashes as unsigned 64-bit values, and coarser before finer hashes
+	 * with the same value.
+	 */
+	public static final Comparator<GeoHash> UNSIGNED_ORDER = new Comparator<GeoHash>() {
+		@Override
+		public int compare(GeoHash a, GeoHash b) {
+			long x = LongUtil.flip(a.longValue());
+			long y = LongUtil.flip(b.longValue());
+			if (x != y) {
+				return (x < y) ? -1 : 1;
+			}
+			return a.significantBits() - b.significantBits();
+		}
+	};
+
+	private GeoHashCodec() {
+	}
+
+	/**
+	 * writes the given hashes in ascending order, without duplicates.
+	 */
+	public static void writeCells(Collection<GeoHash> cells, DataOutput out) throws IOException {
+		List<GeoHash> sorted = new ArrayList<GeoHash>(cells);
+		Collections.sort(sorted, UNSIGNED_ORDER);
+
+		int maxPrecision = 0;
+		int count = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			if (i == 0 || !sorted.get(i).equals(sorted.get(i - 1))) {
+				maxPrecision = Math.max(maxPrecision, sorted.get(i).significantBits());
+				count++;
+			}
+		}
+		int shift = 64 - maxPrecision;
+
+		writeUnsignedVarLong(count, out);
+		out.writeByte(maxPrecision);
+		long previous = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			GeoHash cell = sorted.get(i);
+			if (i > 0 && cell.equals(sorted.get(i - 1))) {
+				continue;
+			}
+			long value = (shift == 64) ? 0 : cell.longValue() >>> shift;
+			writeUnsignedVarLong(value - previous, out);
+			out.writeByte(maxPrecision - cell.significantBits());
+			previous = value;
+		}
+	}
+
+	/**
+	 * reads hashes written by {@link #writeCells(Collection, DataOutput)}, in
+	 * ascending order.
+	 */
+	public static List<GeoHash> readCells(DataInput in) throws IOException {
+		int count = readCount(in);
+		int maxPrecision = readPrecision(in);
+		int shift = 64 - maxPrecision;
+
+		List<GeoHash> cells = new ArrayList<GeoHash>(Math.min(count, MAX_INITIAL_CAPACITY));
+		long value = 0;
+		for (int i = 0; i < count; i++) {
+			value += readUnsignedVarLong(in);
+			int precision = maxPrecision - in.readUnsignedByte();
+			if (precision < 0) {
+				throw new IOException("Invalid precision " + precision);
+			}
+			cells.add(GeoHash.fromLongValue((shift == 64) ? 0 : value << shift, precision));
+		}
+		return cells;
+	}
+
+	/**
+	 * writes sorted, disjoint ranges of 64-bit hash values, each given by its
+	 * first and last value. The values are compared as unsigned numbers.
+	 *
+	 * @param count
+	 *            the number of ranges to write from the arrays
+	 */
+	public static void writeRanges(long[] firsts, long[] lasts, int count, DataOutput out) throws IOException {
+		// the ranges are aligned to the finest cell, so drop its trailing zeros
+		int shift = 64;
+		for (int i = 0; i < count; i++) {
+			shift = Math.min(shift, Long.numberOfTrailingZeros(firsts[i]));
+			shift = Math.min(shift, Long.numberOfTrailingZeros(lasts[i] + 1));
+		}
+		writeUnsignedVarLong(count, out);
+		out.writeByte(shift);
+		long previous = -1;
+		for (int i = 0; i < count; i++) {
+			long first = (shift == 64) ? 0 : firsts[i] >>> shift;
+			long last = (shift == 64) ? 0 : lasts[i] >>> shift;
+			if (i > 0 && LongUtil.flip(first) <= LongUtil.flip(previous)) {
+				throw new IllegalArgumentException("The ranges must be sorted and disjoint");
+			}
+			writeUnsignedVarLong(first - previous - 1, out);
+			writeUnsignedVarLong(last - first, out);
+			previous = last;
+		}
+	}
+
+	/**
+	 * reads ranges written by
+	 * {@link #writeRanges(long[], long[], int, DataOutput)}.
+	 *
+	 * @return the first values of the ranges at index 0 and their last values
+	 *         at index 1
+	 */
+	public static long[][] readRanges(DataInput in) throws IOException {
+		int count = readCount(in);
+		int shift = readPrecision(in);
+		long[] firsts = new long[Math.min(count, MAX_INITIAL_CAPACITY)];
+		long[] lasts = new long[firsts.length];
+		long previous = -1;
+		for (int i = 0; i < count; i++) {
+			if (i == firsts.length) {
+				int capacity = (int) Math.min(count, 2L * i);
+				firsts = Arrays.copyOf(firsts, capacity);
+				lasts = Arrays.copyOf(lasts, capacity);
+			}
+			long first = previous + 1 + readUnsignedVarLong(in);
+			long last = first + readUnsignedVarLong(in);
+			// the low bits that were dropped are all zeros in the first value,
+			// and all ones in the last
+			firsts[i] = (shift == 64) ? 0 : first << shift;
+			lasts[i] = (shift == 64) ? -1 : (last << shift) | ((1L << shift) - 1);
+			previous = last;
+		}
+		return new long[][] { firsts, lasts };
+	}
+
+	/**
+	 * writes the value in 7-bit groups, least significant first, with the
+	 * high bit of each byte set if more follow. Values below 128 take a single
+	 * byte; negative values are treated as unsigned and take ten.
+	 */
+	public static void writeUnsignedVarLong(long value, DataOutput out) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	public static long readUnsignedVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static int readCount(DataInput in) throws IOException {
+		long count = readUnsignedVarLong(in);
+		if (count < 0 || count > Integer.MAX_VALUE) {
+			throw new IOException("Invalid count " + count);
+		}
+		return (int) count;
+	}
+
+	private static int readPrecision(DataInput in) throws IOException {
+		int precision = in.readUnsignedByte();
+		if (precision > 64) {
+			throw new IOException("Invalid precision " + precision);
+		}
+		return precision;
+	}
+}
@@ -3,9 +3,9 @@ package ch.hsr.geohash.util;
 import ch.hsr.geohash.GeoHash;
 import ch.hsr.geohash.WGS84Point;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -16,6 +16,11 @@ import java.util.TreeMap;
  * Base class for all iterators that range over,and return, GeoHashes.
  */
 public abstract class GeoHashIterator implements Iterator<GeoHash> {
+    /**
+     * The finest precision, in bits, that the automatic precision selection will choose.
+     */
+    public static final int MAX_AUTOMATIC_PRECISION = 60;
+
     protected long latBitsLL;
 
     protected long lonBitsLL;
@@ -66,11 +71,38 @@ public abstract class GeoHashIterator implements Iterator<GeoHash> {
     protected double midLatitude;
 
     /**
-     * Utility storage for converting degrees to meters.
+     * Precomputed lookup table for converting degrees to meters:  distances in meters, spaced
+     * logarithmically, and the corresponding lengths in degrees as reported by
+     * <code>convertRadiusInMetersToDegrees</code>.  The table is only extended as long as the
+     * degrees keep growing, so both arrays are strictly increasing.  They are never modified
+     * after class initialization, which makes the conversion safe to call from any thread.
      */
-
-    private static final TreeMap<Double,Double> mapDegreesToMeters = new TreeMap<Double, Double>();
-    private static final double precisionDegreesToMeters = 1e5;
+    private static final double[] tableMeters;
+    private static final double[] tableDegrees;
+
+    private static final int TABLE_SIZE = 4096;
+    private static final double TABLE_MIN_METERS = 0.01;
+    private static final double TABLE_MAX_METERS = 10000000.0;
+
+    static {
+        double[] meters = new double[TABLE_SIZE];
+        double[] degrees = new double[TABLE_SIZE];
+        double logMin = Math.log(TABLE_MIN_METERS);
+        double logStep = (Math.log(TABLE_MAX_METERS) - logMin) / (TABLE_SIZE - 1);
+        int n = 0;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double m = Math.exp(logMin + i * logStep);
+            double d = convertRadiusInMetersToDegrees(m);
+            if (n > 0 && d <= degrees[n - 1]) break;
+            meters[n] = m;
+            degrees[n] = d;
+            n++;
+        }
+        tableMeters = new double[n];
+        tableDegrees = new double[n];
+        System.arraycopy(meters, 0, tableMeters, 0, n);
+        System.arraycopy(degrees, 0, tableDegrees, 0, n);
+    }
 
     /**
      * Empty constructor.
@@ -115,9 +147,10 @@ public abstract class GeoHashIterator implements Iterator<GeoHash> {
         incLatitudeDegrees = 180.0 / Math.pow(2.0, latPrecision);
         incLongitudeDegrees = 360.0 / Math.pow(2.0, lonPrecision);
 
-        // count the span (in bits) for each dimension
+        // count the span (in bits) for each dimension; longitude may wrap around the antimeridian
         this.spanBitsLat = latBitsUR - latBitsLL + 1;
         this.spanBitsLon = lonBitsUR - lonBitsLL + 1;
+        if (spanBitsLon <= 0) this.spanBitsLon += 1L << lonPrecision;
 
         // initialize whether there are any qualifying GeoHashes to iterate over (there had better be!)
         if (shouldAdvance) this.doesHaveNext = advance();
@@ -168,6 +201,71 @@ public abstract class GeoHashIterator implements Iterator<GeoHash> {
         };
     }
 
+    /**
+     * Counts the GeoHashes of the given precision that an iterator over the rectangle visits.
+     * This is the same span arithmetic as in {@link #initialize(GeoHash[], int, boolean)}, but
+     * without creating any GeoHash.
+     *
+     * @param precision the precision, in bits, of the GeoHashes
+     * @return the number of GeoHashes spanned by the rectangle
+     */
+    public static long getCellCount(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, int precision) {
+        int latPrecision = (precision >> 1);
+        int lonPrecision = latPrecision + (precision % 2);
+
+        long spanLat = getCellIndex(latitudeUR, -90.0, 180.0, latPrecision) - getCellIndex(latitudeLL, -90.0, 180.0, latPrecision) + 1;
+        long spanLon = getLongitudeCellSpan(longitudeLL, longitudeUR, lonPrecision);
+
+        return Math.max(0, spanLat) * Math.max(0, spanLon);
+    }
+
+    /**
+     * The number of columns of cells from the lower-left to the upper-right longitude.  If the
+     * lower-left longitude is greater, the rectangle extends east across the antimeridian.
+     */
+    static long getLongitudeCellSpan(double longitudeLL, double longitudeUR, int lonPrecision) {
+        long span = getCellIndex(longitudeUR, -180.0, 360.0, lonPrecision) - getCellIndex(longitudeLL, -180.0, 360.0, lonPrecision) + 1;
+        if (longitudeUR < longitudeLL) {
+            long columns = 1L << lonPrecision;
+            span = Math.min(columns, span + columns);
+        }
+        return span;
+    }
+
+    /**
+     * The index of the cell along one dimension that contains the value, when the range is
+     * split into 2^bits cells.
+     */
+    static long getCellIndex(double value, double min, double range, int bits) {
+        double cells = Math.scalb(1.0, bits);
+        long index = (long) Math.floor((value - min) / range * cells);
+        return Math.max(0, Math.min((long) cells - 1, index));
+    }
+
+    /**
+     * Picks the finest precision for which the rectangle spans no more than <code>maxCells</code>
+     * GeoHashes.  Since refining never reduces the count, this is a simple upward scan.
+     *
+     * @param maxCells the largest acceptable number of GeoHashes
+     * @return the precision, in bits; at most {@link #MAX_AUTOMATIC_PRECISION}
+     */
+    public static int getPrecisionForMaxCells(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, long maxCells) {
+        checkMaxCells(maxCells);
+
+        int precision = 0;
+        while (precision < MAX_AUTOMATIC_PRECISION
+                && getCellCount(latitudeLL, longitudeLL, latitudeUR, longitudeUR, precision + 1) <= maxCells) {
+            precision++;
+        }
+        return precision;
+    }
+
+    static void checkMaxCells(long maxCells) {
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("The cell budget must be positive: " + maxCells);
+        }
+    }
+
     /**
      * This is a degenerate method, present as a requirement of the <code>Iterator</code>
      * interface.
@@ -220,12 +318,12 @@ public abstract class GeoHashIterator implements Iterator<GeoHash> {
      * @return how many meters each bit of this dimension represents
      */
     public static double getDimensionPrecisionInMeters(double nearLatitude, boolean isLatitude, int dimensionBits) {
-        if (isLatitude) return 20004000.0 / (double)(1 << dimensionBits);
+        if (isLatitude) return Math.scalb(20004000.0, -dimensionBits);
         else {
             double radiusAtEquator = 40075160.0;
             double radiusNearLatitude = radiusAtEquator * Math.cos(nearLatitude * Math.PI / 180.0);
             double circumferenceNearLatitude = radiusNearLatitude * 2.0 * Math.PI;
-            return circumferenceNearLatitude / (double)(1 << dimensionBits);
+            return Math.scalb(circumferenceNearLatitude, -dimensionBits);
         }
     }
 
@@ -364,22 +462,33 @@ public abstract class GeoHashIterator implements Iterator<GeoHash> {
      * Given a radius in degrees, what is a blended-estimate size in meters that it might represent?
      * Note:  This is almost entirely useless as a measure.
      *
+     * Answers from a precomputed table instead of running the interval-halving search, and holds
+     * no mutable state, so it may be called concurrently.
+     *
      * @param degrees a distance in degrees
      * @return a distance in meters
      */
     public static double convertRadiusInDegreesToMeters(double degrees) {
-        // round this value, because beneath some tolerance they should be considered equal
-        degrees = Math.round(degrees * precisionDegreesToMeters) / precisionDegreesToMeters;
+        int last = tableDegrees.length - 1;
 
-        if (mapDegreesToMeters.containsKey(degrees)) {
-            return mapDegreesToMeters.get(degrees);
+        // beyond the table, the relationship is no longer monotonic; fall back to the search
+        if (degrees > tableDegrees[last]) {
+            return convertRadiusInDegreesToMetersViaIntervalHalving(degrees, 45.0);
         }
-        
-        double meters = convertRadiusInDegreesToMetersViaIntervalHalving(degrees, 45.0);
-        
-        mapDegreesToMeters.put(degrees, meters);
-        
-        return meters;
+
+        // below the table, degrees and meters are proportional
+        if (degrees <= tableDegrees[0]) {
+            return Math.max(0.0, degrees) * tableMeters[0] / tableDegrees[0];
+        }
+
+        // interpolate linearly between the two neighbouring entries
+        int hi = Arrays.binarySearch(tableDegrees, degrees);
+        if (hi >= 0) return tableMeters[hi];
+        hi = -hi - 1;
+        int lo = hi - 1;
+        double t = (degrees - tableDegrees[lo]) / (tableDegrees[hi] - tableDegrees[lo]);
+
+        return tableMeters[lo] + t * (tableMeters[hi] - tableMeters[lo]);
     }
     
     /**
@@ -0,0 +1,643 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * Dissolves a set of cells, such as the covering of a query, into the fewest
+ * polygons that cover the same area, and writes them as a WKT, WKB or
+ * GeoJSON multipolygon.
+ * <p>
+ * Every cell is a rectangle on the grid of the longitude and latitude indexes
+ * that a 64-bit hash interleaves. The sides of all rectangles are collected
+ * line by line, sides shared by two cells cancel out, and the remaining edges
+ * are traced into rings. Outer rings run counterclockwise and holes
+ * clockwise. Where cells touch only at a corner, the rings are kept apart so
+ * that rings meet in at most a point. The cells don't wrap around the
+ * antimeridian, so an area crossing it becomes polygons on both sides.
+ * <p>
+ * The polygons are traced once, on construction. Writing streams them to an
+ * {@link OutputStream} without building strings; the text formats round the
+ * coordinates to nine decimals.
+ */
+public final class GeoHashPolygonWriter {
+	private static final double GRID_SIZE = 4294967296.0;
+	private static final double LONGITUDE_NANOS_PER_INDEX = 360e9 / GRID_SIZE;
+	private static final double LATITUDE_NANOS_PER_INDEX = 180e9 / GRID_SIZE;
+
+	private static final int EAST = 0;
+	private static final int NORTH = 1;
+	private static final int WEST = 2;
+	private static final int SOUTH = 3;
+
+	private static final int WKB_POLYGON = 3;
+	private static final int WKB_MULTIPOLYGON = 6;
+
+	/* the vertices of all rings, as indexes on the grid of 2^32 by 2^32 */
+	private final long[] xs;
+	private final long[] ys;
+	/* the vertices of ring r are ringStarts[r] until ringStarts[r + 1] */
+	private final int[] ringStarts;
+	/* the rings of polygon p, its outer ring first, likewise */
+	private final int[] polygonStarts;
+
+	public GeoHashPolygonWriter(Collection<GeoHash> cells) {
+		this(GeoHashCellSet.of(cells));
+	}
+
+	public GeoHashPolygonWriter(GeoHashCellSet cells) {
+		Tracer tracer = new Tracer(cells.getCells());
+		tracer.collectEdges();
+		tracer.traceRings();
+		int[] order = tracer.orderRings();
+		polygonStarts = tracer.polygonStarts;
+
+		xs = new long[tracer.vertices];
+		ys = new long[tracer.vertices];
+		ringStarts = new int[order.length + 1];
+		int vertices = 0;
+		for (int i = 0; i < order.length; i++) {
+			int from = tracer.ringStarts[order[i]];
+			int length = tracer.ringStarts[order[i] + 1] - from;
+			System.arraycopy(tracer.xs, from, xs, vertices, length);
+			System.arraycopy(tracer.ys, from, ys, vertices, length);
+			ringStarts[i] = vertices;
+			vertices += length;
+		}
+		ringStarts[order.length] = vertices;
+	}
+
+	public int getNumberOfPolygons() {
+		return polygonStarts.length - 1;
+	}
+
+	/**
+	 * returns the number of rings of a polygon: its outer ring and its holes.
+	 */
+	public int getNumberOfRings(int polygon) {
+		return polygonStarts[polygon + 1] - polygonStarts[polygon];
+	}
+
+	/**
+	 * returns the vertices of a ring, without repeating the first one at the
+	 * end. Ring 0 is the outer ring of the polygon.
+	 */
+	public List<WGS84Point> getRing(int polygon, int ring) {
+		if (ring < 0 || ring >= getNumberOfRings(polygon)) {
+			throw new IllegalArgumentException("Polygon " + polygon + " has no ring " + ring);
+		}
+		int r = polygonStarts[polygon] + ring;
+		List<WGS84Point> points = new ArrayList<WGS84Point>();
+		for (int v = ringStarts[r]; v < ringStarts[r + 1]; v++) {
+			points.add(new WGS84Point(latitude(ys[v]), longitude(xs[v])));
+		}
+		return points;
+	}
+
+	/**
+	 * writes the polygons as a WKT <code>MULTIPOLYGON</code>, in longitude,
+	 * latitude order. The stream is flushed, not closed.
+	 */
+	public void writeWkt(OutputStream out) throws IOException {
+		TextOutput text = new TextOutput(out);
+		text.write("MULTIPOLYGON ");
+		if (getNumberOfPolygons() == 0) {
+			text.write("EMPTY");
+		} else {
+			text.write('(');
+			for (int p = 0; p < getNumberOfPolygons(); p++) {
+				if (p > 0) {
+					text.write(", ");
+				}
+				text.write('(');
+				for (int r = polygonStarts[p]; r < polygonStarts[p + 1]; r++) {
+					if (r > polygonStarts[p]) {
+						text.write(", ");
+					}
+					text.write('(');
+					for (int i = ringStarts[r]; i <= ringStarts[r + 1]; i++) {
+						int v = (i < ringStarts[r + 1]) ? i : ringStarts[r];
+						if (i > ringStarts[r]) {
+							text.write(", ");
+						}
+						text.writeNanos(longitudeNanos(xs[v]));
+						text.write(' ');
+						text.writeNanos(latitudeNanos(ys[v]));
+					}
+					text.write(')');
+				}
+				text.write(')');
+			}
+			text.write(')');
+		}
+		text.flush();
+	}
+
+	/**
+	 * writes the polygons as a GeoJSON <code>MultiPolygon</code> geometry.
+	 * The stream is flushed, not closed.
+	 */
+	public void writeGeoJson(OutputStream out) throws IOException {
+		TextOutput text = new TextOutput(out);
+		text.write("{\"type\":\"MultiPolygon\",\"coordinates\":[");
+		for (int p = 0; p < getNumberOfPolygons(); p++) {
+			if (p > 0) {
+				text.write(',');
+			}
+			text.write('[');
+			for (int r = polygonStarts[p]; r < polygonStarts[p + 1]; r++) {
+				if (r > polygonStarts[p]) {
+					text.write(',');
+				}
+				text.write('[');
+				for (int i = ringStarts[r]; i <= ringStarts[r + 1]; i++) {
+					int v = (i < ringStarts[r + 1]) ? i : ringStarts[r];
+					if (i > ringStarts[r]) {
+						text.write(',');
+					}
+					text.write('[');
+					text.writeNanos(longitudeNanos(xs[v]));
+					text.write(',');
+					text.writeNanos(latitudeNanos(ys[v]));
+					text.write(']');
+				}
+				text.write(']');
+			}
+			text.write(']');
+		}
+		text.write("]}");
+		text.flush();
+	}
+
+	/**
+	 * writes the polygons as a big-endian WKB <code>MultiPolygon</code>. The
+	 * stream is flushed, not closed.
+	 */
+	public void writeWkb(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeByte(0);
+		data.writeInt(WKB_MULTIPOLYGON);
+		data.writeInt(getNumberOfPolygons());
+		for (int p = 0; p < getNumberOfPolygons(); p++) {
+			data.writeByte(0);
+			data.writeInt(WKB_POLYGON);
+			data.writeInt(getNumberOfRings(p));
+			for (int r = polygonStarts[p]; r < polygonStarts[p + 1]; r++) {
+				data.writeInt(ringStarts[r + 1] - ringStarts[r] + 1);
+				for (int i = ringStarts[r]; i <= ringStarts[r + 1]; i++) {
+					int v = (i < ringStarts[r + 1]) ? i : ringStarts[r];
+					data.writeDouble(longitude(xs[v]));
+					data.writeDouble(latitude(ys[v]));
+				}
+			}
+		}
+		data.flush();
+	}
+
+	private static double longitude(long x) {
+		return x * (360 / GRID_SIZE) - 180;
+	}
+
+	private static double latitude(long y) {
+		return y * (180 / GRID_SIZE) - 90;
+	}
+
+	private static long longitudeNanos(long x) {
+		return Math.round(x * LONGITUDE_NANOS_PER_INDEX) - 180000000000L;
+	}
+
+	private static long latitudeNanos(long y) {
+		return Math.round(y * LATITUDE_NANOS_PER_INDEX) - 90000000000L;
+	}
+
+	/**
+	 * traces the outlines of cells into rings. The cells are rectangles
+	 * [x0, x1) by [y0, y1) on the grid of their finest precision, which has
+	 * 2^longitudeBits by 2^latitudeBits indexes; an edge has the interior of
+	 * a cell on its left.
+	 */
+	private static final class Tracer {
+		private final int longitudeBits;
+		private final int latitudeBits;
+		private final long[] x0;
+		private final long[] y0;
+		private final long[] x1;
+		private final long[] y1;
+		/* the cells connected by a shared side, as a union-find forest */
+		private final int[] parents;
+
+		private long[] startX = new long[64];
+		private long[] startY = new long[64];
+		private long[] endX = new long[64];
+		private long[] endY = new long[64];
+		private byte[] directions = new byte[64];
+		private int[] cells = new int[64];
+		private int edges;
+
+		/* the first edge starting at each vertex, and the second one if any */
+		private int[] table;
+		private int[] seconds;
+
+		private long[] xs = new long[64];
+		private long[] ys = new long[64];
+		private int vertices;
+		private int[] ringStarts = new int[16];
+		private int[] ringComponents = new int[16];
+		private boolean[] holes = new boolean[16];
+		private int rings;
+		private int[] polygonStarts;
+
+		Tracer(List<GeoHash> cellList) {
+			int n = cellList.size();
+			x0 = new long[n];
+			y0 = new long[n];
+			x1 = new long[n];
+			y1 = new long[n];
+			parents = new int[n];
+			int finest = 0;
+			for (GeoHash cell : cellList) {
+				finest = Math.max(finest, cell.significantBits());
+			}
+			// the first bit of a hash is a longitude bit
+			longitudeBits = (finest + 1) / 2;
+			latitudeBits = finest / 2;
+			for (int i = 0; i < n; i++) {
+				GeoHash cell = cellList.get(i);
+				long bits = cell.longValue();
+				int precision = cell.significantBits();
+				x0[i] = LongUtil.compact(bits >>> 1) >>> (32 - longitudeBits);
+				y0[i] = LongUtil.compact(bits) >>> (32 - latitudeBits);
+				x1[i] = x0[i] + (1L << (longitudeBits - (precision + 1) / 2));
+				y1[i] = y0[i] + (1L << (latitudeBits - precision / 2));
+				parents[i] = i;
+			}
+		}
+
+		/**
+		 * sorts the sides of the cells by line and collects the parts that
+		 * aren't shared with another cell.
+		 */
+		void collectEdges() {
+			int n = x0.length;
+			long[] eastern = new long[n];
+			long[] western = new long[n];
+			long[] southern = new long[n];
+			long[] northern = new long[n];
+			for (int i = 0; i < n; i++) {
+				eastern[i] = ((x1[i] - 1) << latitudeBits) | y0[i];
+				western[i] = (x0[i] << latitudeBits) | y0[i];
+				southern[i] = (y0[i] << longitudeBits) | x0[i];
+				northern[i] = ((y1[i] - 1) << longitudeBits) | x0[i];
+			}
+			int bits = longitudeBits + latitudeBits;
+			int[] easternCells = sortedCells(eastern, bits);
+			int[] westernCells = sortedCells(western, bits);
+			int[] southernCells = sortedCells(southern, bits);
+			int[] northernCells = sortedCells(northern, bits);
+			// eastern sides run north and western sides south, on the meridians
+			sweep(eastern, easternCells, 1, western, westernCells, 0, latitudeBits, true);
+			// southern sides run east and northern sides west, on the parallels
+			sweep(southern, southernCells, 0, northern, northernCells, 1, longitudeBits, false);
+		}
+
+		private static int[] sortedCells(long[] keys, int bits) {
+			int[] indexes = new int[keys.length];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = i;
+			}
+			LongUtil.radixSort(keys, indexes, bits);
+			return indexes;
+		}
+
+		/**
+		 * goes through the lines that have sides on them. A key is the line of
+		 * the side, less the given offset so that the far edge of the grid
+		 * still fits, followed by the given number of bits of its start.
+		 */
+		private void sweep(long[] forwardKeys, int[] forwardCells, int forwardOffset, long[] backwardKeys,
+				int[] backwardCells, int backwardOffset, int positionBits, boolean meridians) {
+			int i = 0;
+			int j = 0;
+			while (i < forwardKeys.length || j < backwardKeys.length) {
+				long line = Math.min((i < forwardKeys.length) ? (forwardKeys[i] >>> positionBits) + forwardOffset
+						: Long.MAX_VALUE, (j < backwardKeys.length) ? (backwardKeys[j] >>> positionBits) + backwardOffset
+						: Long.MAX_VALUE);
+				int iEnd = i;
+				while (iEnd < forwardKeys.length && (forwardKeys[iEnd] >>> positionBits) + forwardOffset == line) {
+					iEnd++;
+				}
+				int jEnd = j;
+				while (jEnd < backwardKeys.length && (backwardKeys[jEnd] >>> positionBits) + backwardOffset == line) {
+					jEnd++;
+				}
+				subtract(line, forwardCells, i, iEnd, backwardCells, j, jEnd, meridians, true);
+				subtract(line, backwardCells, j, jEnd, forwardCells, i, iEnd, meridians, false);
+				i = iEnd;
+				j = jEnd;
+			}
+		}
+
+		/**
+		 * adds the parts of the sides from..to of a line that the sides of the
+		 * cells on its other side don't cover. Both are sorted and disjoint.
+		 */
+		private void subtract(long line, int[] sides, int from, int to, int[] others, int otherFrom, int otherTo,
+				boolean meridians, boolean forward) {
+			int k = otherFrom;
+			for (int a = from; a < to; a++) {
+				int cell = sides[a];
+				long start = low(cell, meridians);
+				long end = high(cell, meridians);
+				while (k < otherTo && high(others[k], meridians) <= start) {
+					k++;
+				}
+				long position = start;
+				for (int m = k; m < otherTo && low(others[m], meridians) < end; m++) {
+					if (forward) {
+						union(cell, others[m]);
+					}
+					if (low(others[m], meridians) > position) {
+						addEdge(line, position, low(others[m], meridians), cell, meridians, forward);
+					}
+					position = high(others[m], meridians);
+				}
+				if (position < end) {
+					addEdge(line, position, end, cell, meridians, forward);
+				}
+			}
+		}
+
+		private long low(int cell, boolean meridians) {
+			return meridians ? y0[cell] : x0[cell];
+		}
+
+		private long high(int cell, boolean meridians) {
+			return meridians ? y1[cell] : x1[cell];
+		}
+
+		private void addEdge(long line, long from, long to, int cell, boolean meridians, boolean forward) {
+			if (edges == cells.length) {
+				int capacity = 2 * edges;
+				startX = Arrays.copyOf(startX, capacity);
+				startY = Arrays.copyOf(startY, capacity);
+				endX = Arrays.copyOf(endX, capacity);
+				endY = Arrays.copyOf(endY, capacity);
+				directions = Arrays.copyOf(directions, capacity);
+				cells = Arrays.copyOf(cells, capacity);
+			}
+			long first = forward ? from : to;
+			long last = forward ? to : from;
+			if (meridians) {
+				startX[edges] = line;
+				startY[edges] = first;
+				endX[edges] = line;
+				endY[edges] = last;
+				directions[edges] = (byte) (forward ? NORTH : SOUTH);
+			} else {
+				startX[edges] = first;
+				startY[edges] = line;
+				endX[edges] = last;
+				endY[edges] = line;
+				directions[edges] = (byte) (forward ? EAST : WEST);
+			}
+			cells[edges] = cell;
+			edges++;
+		}
+
+		/**
+		 * links the edges at their vertices and follows them around.
+		 */
+		void traceRings() {
+			table = new int[Integer.highestOneBit(Math.max(edges, 1) * 2) * 2];
+			Arrays.fill(table, -1);
+			seconds = new int[edges];
+			Arrays.fill(seconds, -1);
+			for (int e = 0; e < edges; e++) {
+				int slot = slot(startX[e], startY[e]);
+				if (table[slot] == -1) {
+					table[slot] = e;
+				} else {
+					seconds[table[slot]] = e;
+				}
+			}
+
+			boolean[] visited = new boolean[edges];
+			int[] ring = new int[16];
+			for (int e = 0; e < edges; e++) {
+				if (visited[e]) {
+					continue;
+				}
+				int length = 0;
+				int current = e;
+				do {
+					visited[current] = true;
+					if (length == ring.length) {
+						ring = Arrays.copyOf(ring, 2 * length);
+					}
+					ring[length++] = current;
+					current = next(current);
+				} while (current != e);
+				addRing(ring, length);
+			}
+		}
+
+		/**
+		 * returns the edge that follows the given one. Two edges leave a
+		 * vertex where two cells touch at their corners: turning left keeps
+		 * the cells apart, unless they are connected elsewhere, in which case
+		 * turning right keeps the hole between them apart from the outline.
+		 */
+		private int next(int edge) {
+			int first = table[slot(endX[edge], endY[edge])];
+			int second = seconds[first];
+			if (second == -1) {
+				return first;
+			}
+			boolean firstIsLeft = directions[first] == ((directions[edge] + 1) & 3);
+			int left = firstIsLeft ? first : second;
+			int right = firstIsLeft ? second : first;
+			return (find(cells[edge]) == find(cells[right])) ? right : left;
+		}
+
+		private int slot(long x, long y) {
+			int mask = table.length - 1;
+			int slot = hash(x, y) & mask;
+			while (table[slot] != -1 && (startX[table[slot]] != x || startY[table[slot]] != y)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/**
+		 * keeps the corners of a ring, and whether it turns clockwise.
+		 */
+		private void addRing(int[] ring, int length) {
+			if (rings + 1 == ringStarts.length) {
+				ringStarts = Arrays.copyOf(ringStarts, 2 * ringStarts.length);
+				ringComponents = Arrays.copyOf(ringComponents, ringStarts.length);
+				holes = Arrays.copyOf(holes, ringStarts.length);
+			}
+			ringStarts[rings] = vertices;
+			int turns = 0;
+			for (int i = 0; i < length; i++) {
+				int edge = ring[i];
+				int turn = (directions[edge] - directions[ring[(i == 0) ? length - 1 : i - 1]]) & 3;
+				if (turn != 0) {
+					turns += (turn == 1) ? 1 : -1;
+					if (vertices == xs.length) {
+						xs = Arrays.copyOf(xs, 2 * vertices);
+						ys = Arrays.copyOf(ys, 2 * vertices);
+					}
+					xs[vertices] = startX[edge] << (32 - longitudeBits);
+					ys[vertices] = startY[edge] << (32 - latitudeBits);
+					vertices++;
+				}
+			}
+			ringComponents[rings] = find(cells[ring[0]]);
+			holes[rings] = turns < 0;
+			rings++;
+			ringStarts[rings] = vertices;
+		}
+
+		/**
+		 * groups the rings by the connected cells they surround, one polygon
+		 * per group with its outer ring first, and returns the rings in that
+		 * order.
+		 */
+		int[] orderRings() {
+			int[] polygons = new int[x0.length];
+			int count = 0;
+			for (int r = 0; r < rings; r++) {
+				if (!holes[r]) {
+					polygons[ringComponents[r]] = count++;
+				}
+			}
+			polygonStarts = new int[count + 1];
+			for (int r = 0; r < rings; r++) {
+				polygonStarts[polygons[ringComponents[r]] + 1]++;
+			}
+			for (int p = 0; p < count; p++) {
+				polygonStarts[p + 1] += polygonStarts[p];
+			}
+			int[] positions = Arrays.copyOf(polygonStarts, count);
+			int[] order = new int[rings];
+			for (int r = 0; r < rings; r++) {
+				if (!holes[r]) {
+					order[positions[polygons[ringComponents[r]]]++] = r;
+				}
+			}
+			for (int r = 0; r < rings; r++) {
+				if (holes[r]) {
+					order[positions[polygons[ringComponents[r]]]++] = r;
+				}
+			}
+			return order;
+		}
+
+		private int find(int cell) {
+			while (parents[cell] != cell) {
+				parents[cell] = parents[parents[cell]];
+				cell = parents[cell];
+			}
+			return cell;
+		}
+
+		private void union(int a, int b) {
+			parents[find(a)] = find(b);
+		}
+
+		private static int hash(long x, long y) {
+			return LongUtil.hash(x * 0x9E3779B97F4A7C15L + y);
+		}
+	}
+
+	/**
+	 * buffers ASCII text on its way to a stream.
+	 */
+	private static final class TextOutput {
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8192];
+		private int length;
+
+		TextOutput(OutputStream out) {
+			this.out = out;
+		}
+
+		void write(char c) throws IOException {
+			if (length == buffer.length) {
+				drain();
+			}
+			buffer[length++] = (byte) c;
+		}
+
+		void write(String ascii) throws IOException {
+			for (int i = 0; i < ascii.length(); i++) {
+				write(ascii.charAt(i));
+			}
+		}
+
+		/**
+		 * writes billionths as a decimal number without trailing zeros.
+		 */
+		void writeNanos(long nanos) throws IOException {
+			if (length + 32 > buffer.length) {
+				drain();
+			}
+			if (nanos < 0) {
+				buffer[length++] = '-';
+				nanos = -nanos;
+			}
+			long integer = nanos / 1000000000L;
+			long fraction = nanos % 1000000000L;
+			int digits = 1;
+			for (long rest = integer / 10; rest > 0; rest /= 10) {
+				digits++;
+			}
+			for (int i = digits - 1; i >= 0; i--) {
+				buffer[length + i] = (byte) ('0' + integer % 10);
+				integer /= 10;
+			}
+			length += digits;
+			if (fraction != 0) {
+				buffer[length++] = '.';
+				digits = 9;
+				while (fraction % 10 == 0) {
+					fraction /= 10;
+					digits--;
+				}
+				for (int i = digits - 1; i >= 0; i--) {
+					buffer[length + i] = (byte) ('0' + fraction % 10);
+					fraction /= 10;
+				}
+				length += digits;
+			}
+		}
+
+		void flush() throws IOException {
+			drain();
+			out.flush();
+		}
+
+		private void drain() throws IOException {
+			out.write(buffer, 0, length);
+			length = 0;
+		}
+	}
+}
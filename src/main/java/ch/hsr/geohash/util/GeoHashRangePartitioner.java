@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Splits the 64-bit key space into contiguous ranges that hold about the same
+ * share of a sample of the data.
+ * <p>
+ * Each boundary lies between two consecutive sample values, at the start of
+ * the largest cell that separates them, so that boundaries are as coarse as
+ * the data allows. Partitioners are immutable; a partition that grows hot is
+ * split with a fresh sample of its keys, and cold neighbours can be merged.
+ */
+public final class GeoHashRangePartitioner {
+	/*
+	 * the first value of each partition, with the sign bit flipped so that
+	 * signed comparisons order them like the unsigned hashes. The first
+	 * partition always starts at 0.
+	 */
+	private final long[] starts;
+
+	private GeoHashRangePartitioner(long[] starts) {
+		this.starts = starts;
+	}
+
+	/**
+	 * partitions the key space so that every partition gets about the same
+	 * number of the given sample values. Values that occur more often than
+	 * the share of one partition can't be split, so there may be fewer
+	 * partitions than requested.
+	 *
+	 * @param sample
+	 *            64-bit hash values, such as {@link GeoHash#longValue()} of
+	 *            points or cells
+	 */
+	public static GeoHashRangePartitioner fromSample(long[] sample, int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("There must be at least one partition");
+		}
+		long[] sorted = sortedFlipped(sample);
+		long[] starts = new long[partitions];
+		starts[0] = Long.MIN_VALUE;
+		int count = addBoundaries(sorted, partitions, starts, 1);
+		return new GeoHashRangePartitioner(Arrays.copyOf(starts, count));
+	}
+
+	public static GeoHashRangePartitioner fromSample(Collection<GeoHash> sample, int partitions) {
+		return fromSample(longValues(sample), partitions);
+	}
+
+	public int getNumberOfPartitions() {
+		return starts.length;
+	}
+
+	/**
+	 * returns the first hash value of the given partition.
+	 */
+	public long getFirst(int partition) {
+		return LongUtil.flip(starts[partition]);
+	}
+
+	/**
+	 * returns the last hash value of the given partition.
+	 */
+	public long getLast(int partition) {
+		return (partition == starts.length - 1) ? -1L : LongUtil.flip(starts[partition + 1]) - 1;
+	}
+
+	/**
+	 * returns the partition of the given hash value.
+	 */
+	public int partitionOf(long bits) {
+		long key = LongUtil.flip(bits);
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * returns the partition of the first value of the given cell. Coarse cells
+	 * may extend into the following partitions.
+	 */
+	public int partitionOf(GeoHash hash) {
+		return partitionOf(hash.longValue());
+	}
+
+	/**
+	 * counts the given hash values per partition, e.g. to find hot ones.
+	 */
+	public long[] count(long[] values) {
+		long[] counts = new long[starts.length];
+		for (long value : values) {
+			counts[partitionOf(value)]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * returns a partitioner in which the given partition is replaced by up to
+	 * <code>parts</code> partitions, balanced by the sample values within it.
+	 * Sample values of other partitions are ignored.
+	 */
+	public GeoHashRangePartitioner split(int partition, long[] sample, int parts) {
+		checkPartition(partition);
+		if (parts < 1) {
+			throw new IllegalArgumentException("There must be at least one part");
+		}
+		long first = LongUtil.flip(getFirst(partition));
+		long last = LongUtil.flip(getLast(partition));
+		long[] sorted = sortedFlipped(sample);
+		int from = 0;
+		while (from < sorted.length && sorted[from] < first) {
+			from++;
+		}
+		int to = from;
+		while (to < sorted.length && sorted[to] <= last) {
+			to++;
+		}
+
+		long[] newStarts = new long[starts.length + parts - 1];
+		System.arraycopy(starts, 0, newStarts, 0, partition + 1);
+		int count = addBoundaries(Arrays.copyOfRange(sorted, from, to), parts, newStarts, partition + 1);
+		System.arraycopy(starts, partition + 1, newStarts, count, starts.length - partition - 1);
+		return new GeoHashRangePartitioner(Arrays.copyOf(newStarts, count + starts.length - partition - 1));
+	}
+
+	/**
+	 * returns a partitioner in which the given partition and the one after it
+	 * are merged.
+	 */
+	public GeoHashRangePartitioner merge(int partition) {
+		checkPartition(partition);
+		if (partition == starts.length - 1) {
+			throw new IllegalArgumentException("The last partition has no successor to merge with");
+		}
+		long[] newStarts = new long[starts.length - 1];
+		System.arraycopy(starts, 0, newStarts, 0, partition + 1);
+		System.arraycopy(starts, partition + 2, newStarts, partition + 1, starts.length - partition - 2);
+		return new GeoHashRangePartitioner(newStarts);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof GeoHashRangePartitioner && Arrays.equals(starts, ((GeoHashRangePartitioner) obj).starts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(starts);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("GeoHashRangePartitioner [");
+		for (int i = 0; i < starts.length; i++) {
+			builder.append((i == 0) ? "" : ", ").append(Long.toHexString(getFirst(i)));
+		}
+		return builder.append("]").toString();
+	}
+
+	/**
+	 * appends the starts of the partitions after the first one that split the
+	 * sorted sample into the given number of parts.
+	 *
+	 * @return the number of starts in the array afterwards
+	 */
+	private static int addBoundaries(long[] sorted, int parts, long[] starts, int count) {
+		long previous = starts[count - 1];
+		for (int i = 1; i < parts; i++) {
+			int index = (int) ((long) sorted.length * i / parts);
+			// the boundary must separate two different values
+			while (index > 0 && index < sorted.length && sorted[index] == sorted[index - 1]) {
+				index++;
+			}
+			if (index == 0 || index >= sorted.length) {
+				continue;
+			}
+			long boundary = LongUtil.flip(alignedBoundary(LongUtil.flip(sorted[index - 1]), LongUtil.flip(sorted[index])));
+			if (boundary > previous) {
+				starts[count++] = boundary;
+				previous = boundary;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * returns the coarsest cell boundary above a and not above b, i.e. b with
+	 * the bits below the first one in which they differ cleared.
+	 */
+	private static long alignedBoundary(long a, long b) {
+		int differingBit = 63 - Long.numberOfLeadingZeros(a ^ b);
+		return b & -(1L << differingBit);
+	}
+
+	private static long[] sortedFlipped(long[] values) {
+		long[] sorted = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			sorted[i] = LongUtil.flip(values[i]);
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static long[] longValues(Collection<GeoHash> hashes) {
+		long[] values = new long[hashes.size()];
+		int i = 0;
+		for (GeoHash hash : hashes) {
+			values[i++] = hash.longValue();
+		}
+		return values;
+	}
+
+	private void checkPartition(int partition) {
+		if (partition < 0 || partition >= starts.length) {
+			throw new IllegalArgumentException("There is no partition " + partition);
+		}
+	}
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.queries.GeoHashQuery;
+
+/**
+ * An immutable assignment of contiguous ranges of the 64-bit key space to
+ * nodes, looked up by binary search over the range starts.
+ * <p>
+ * Changing the set of nodes returns a new table and moves only a bounded
+ * number of ranges: a new node takes the tail of one range from every other
+ * node, and the ranges of a removed node go to the nodes owning the ranges
+ * before them.
+ */
+public final class GeoHashRoutingTable {
+	/**
+	 * marks that a node hands over nothing; no range can start at the last
+	 * value.
+	 */
+	private static final long NO_BOUNDARY = Long.MAX_VALUE;
+
+	/*
+	 * the first value of each range, with the sign bit flipped so that signed
+	 * comparisons order them like the unsigned hashes, and the node owning
+	 * it. Adjacent ranges always belong to different nodes.
+	 */
+	private final long[] starts;
+	private final int[] nodes;
+
+	private GeoHashRoutingTable(long[] starts, int[] nodes) {
+		this.starts = starts;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * assigns partition i of the partitioner to <code>nodes[i]</code>.
+	 */
+	public static GeoHashRoutingTable of(GeoHashRangePartitioner partitioner, int... nodes) {
+		if (nodes.length != partitioner.getNumberOfPartitions()) {
+			throw new IllegalArgumentException("There are " + partitioner.getNumberOfPartitions()
+					+ " partitions, but " + nodes.length + " nodes");
+		}
+		TreeMap<Long, Integer> ranges = new TreeMap<Long, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			ranges.put(LongUtil.flip(partitioner.getFirst(i)), checkNode(nodes[i]));
+		}
+		return build(ranges);
+	}
+
+	/**
+	 * splits the key space into ranges of equal width, one per node.
+	 */
+	public static GeoHashRoutingTable uniform(int... nodes) {
+		if (nodes.length == 0) {
+			throw new IllegalArgumentException("There must be at least one node");
+		}
+		TreeMap<Long, Integer> ranges = new TreeMap<Long, Integer>();
+		for (int i = 0; i < nodes.length; i++) {
+			long start = toUnsignedLong(Math.scalb((double) i / nodes.length, 64));
+			ranges.put(LongUtil.flip(start), checkNode(nodes[i]));
+		}
+		return build(ranges);
+	}
+
+	/**
+	 * returns the node owning the given hash value.
+	 */
+	public int nodeFor(long bits) {
+		return nodes[indexOf(LongUtil.flip(bits))];
+	}
+
+	/**
+	 * returns the node owning the first value of the given cell.
+	 */
+	public int nodeFor(GeoHash hash) {
+		return nodeFor(hash.longValue());
+	}
+
+	/**
+	 * returns the nodes owning any part of the given cell, in ascending
+	 * order.
+	 */
+	public int[] nodesFor(GeoHash cell) {
+		return nodesFor(Collections.singletonList(cell));
+	}
+
+	/**
+	 * returns the nodes owning any part of the search hashes of the query, in
+	 * ascending order. Only these nodes need to receive the query.
+	 */
+	public int[] nodesFor(GeoHashQuery query) {
+		return nodesFor(query.getSearchHashes());
+	}
+
+	/**
+	 * returns the nodes owning any part of the given cells, in ascending
+	 * order.
+	 */
+	public int[] nodesFor(Collection<GeoHash> cells) {
+		int[] found = new int[Math.min(starts.length, 16)];
+		int count = 0;
+		for (GeoHash cell : cells) {
+			int precision = cell.significantBits();
+			long mask = LongUtil.prefixMask(precision);
+			long last = LongUtil.flip(cell.longValue() | ~mask);
+			for (int i = indexOf(LongUtil.flip(cell.longValue() & mask)); i < starts.length && starts[i] <= last; i++) {
+				if (count == found.length) {
+					found = Arrays.copyOf(found, 2 * count);
+				}
+				found[count++] = nodes[i];
+			}
+		}
+		Arrays.sort(found, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || found[distinct - 1] != found[i]) {
+				found[distinct++] = found[i];
+			}
+		}
+		return Arrays.copyOf(found, distinct);
+	}
+
+	/**
+	 * returns the distinct nodes of this table, in ascending order.
+	 */
+	public int[] getNodes() {
+		int[] sorted = nodes.clone();
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
+
+	public int getNumberOfRanges() {
+		return starts.length;
+	}
+
+	/**
+	 * returns the first hash value of the given range.
+	 */
+	public long getFirst(int range) {
+		return LongUtil.flip(starts[range]);
+	}
+
+	/**
+	 * returns the last hash value of the given range.
+	 */
+	public long getLast(int range) {
+		return (range == starts.length - 1) ? -1L : LongUtil.flip(starts[range + 1]) - 1;
+	}
+
+	public int getNode(int range) {
+		return nodes[range];
+	}
+
+	/**
+	 * returns a table in which the given node also owns part of the key space.
+	 * Every other node hands over the tail of its largest range, sized so that
+	 * all nodes end up with about the same share of the sample.
+	 *
+	 * @param sample
+	 *            64-bit hash values of the data, or an empty array to balance
+	 *            the width of the ranges instead
+	 */
+	public GeoHashRoutingTable withNode(int node, long[] sample) {
+		checkNode(node);
+		int[] existing = getNodes();
+		if (Arrays.binarySearch(existing, node) >= 0) {
+			throw new IllegalArgumentException("The node " + node + " is already in the table");
+		}
+		long[] sorted = new long[sample.length];
+		for (int i = 0; i < sample.length; i++) {
+			sorted[i] = LongUtil.flip(sample[i]);
+		}
+		Arrays.sort(sorted);
+		boolean byWidth = sorted.length == 0;
+
+		TreeMap<Long, Integer> ranges = toMap();
+		for (int owner : existing) {
+			// the largest range of the owner, and its total load
+			int largest = -1;
+			double largestLoad = -1;
+			double total = 0;
+			for (int i = 0; i < starts.length; i++) {
+				if (nodes[i] == owner) {
+					double load = byWidth ? width(i) : countIn(sorted, starts[i], LongUtil.flip(getLast(i)));
+					total += load;
+					if (load > largestLoad) {
+						largest = i;
+						largestLoad = load;
+					}
+				}
+			}
+			double take = Math.min(largestLoad, total / (existing.length + 1));
+			long boundary = byWidth ? tailByWidth(largest, take) : tailBySample(sorted, largest, take);
+			if (boundary != NO_BOUNDARY) {
+				ranges.put(boundary, node);
+			}
+		}
+		return build(ranges);
+	}
+
+	/**
+	 * returns a table without the given node. Each of its ranges goes to the
+	 * node owning the range before it, or after it for the first range.
+	 */
+	public GeoHashRoutingTable withoutNode(int node) {
+		int[] existing = getNodes();
+		if (Arrays.binarySearch(existing, node) < 0) {
+			throw new IllegalArgumentException("The node " + node + " is not in the table");
+		}
+		if (existing.length == 1) {
+			throw new IllegalArgumentException("Cannot remove the last node");
+		}
+		TreeMap<Long, Integer> ranges = new TreeMap<Long, Integer>();
+		for (int i = 0; i < starts.length; i++) {
+			if (nodes[i] != node) {
+				ranges.put(starts[i], nodes[i]);
+			}
+		}
+		// adjacent ranges belong to different nodes, so the second range
+		// survives if the first doesn't
+		if (nodes[0] == node) {
+			ranges.put(starts[0], ranges.remove(starts[1]));
+		}
+		return build(ranges);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof GeoHashRoutingTable) {
+			GeoHashRoutingTable other = (GeoHashRoutingTable) obj;
+			return Arrays.equals(starts, other.starts) && Arrays.equals(nodes, other.nodes);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(starts) + Arrays.hashCode(nodes);
+	}
+
+	@Override
+	public String toString() {
+		return "GeoHashRoutingTable [" + starts.length + " ranges, " + getNodes().length + " nodes]";
+	}
+
+	/**
+	 * returns the flipped start of the tail of the given range that holds
+	 * about <code>take</code> of the sample values.
+	 */
+	private long tailBySample(long[] sorted, int range, double take) {
+		long first = starts[range];
+		long last = LongUtil.flip(getLast(range));
+		int from = lowerBound(sorted, first);
+		int to = (last == Long.MAX_VALUE) ? sorted.length : lowerBound(sorted, last + 1);
+		int index = to - (int) Math.round(take);
+		while (index > from && index < to && sorted[index] == sorted[index - 1]) {
+			index++;
+		}
+		if (index >= to) {
+			return NO_BOUNDARY;
+		}
+		if (index <= from) {
+			return first;
+		}
+		// the coarsest cell boundary between the two sample values
+		long a = LongUtil.flip(sorted[index - 1]);
+		long b = LongUtil.flip(sorted[index]);
+		return LongUtil.flip(b & -(1L << (63 - Long.numberOfLeadingZeros(a ^ b))));
+	}
+
+	/**
+	 * returns the flipped start of the tail of the given range that is about
+	 * <code>take</code> values wide.
+	 */
+	private long tailByWidth(int range, double take) {
+		if (take < 1) {
+			return NO_BOUNDARY;
+		}
+		long first = LongUtil.flip(starts[range]);
+		long offset = toUnsignedLong(width(range) - take);
+		// align to a cell of about a sixty-fourth of the width taken
+		long boundary = alignDown(first + offset, Math.max(0, 63 - Long.numberOfLeadingZeros(toUnsignedLong(take)) - 6));
+		return (LongUtil.flip(boundary) <= starts[range]) ? starts[range] : LongUtil.flip(boundary);
+	}
+
+	/**
+	 * returns the number of values from first to last, as a double.
+	 */
+	private double width(int range) {
+		long difference = getLast(range) - getFirst(range);
+		return ((difference >>> 1) * 2.0 + (difference & 1)) + 1;
+	}
+
+	private static double countIn(long[] sorted, long first, long last) {
+		int to = (last == Long.MAX_VALUE) ? sorted.length : lowerBound(sorted, last + 1);
+		return to - lowerBound(sorted, first);
+	}
+
+	private TreeMap<Long, Integer> toMap() {
+		TreeMap<Long, Integer> ranges = new TreeMap<Long, Integer>();
+		for (int i = 0; i < starts.length; i++) {
+			ranges.put(starts[i], nodes[i]);
+		}
+		return ranges;
+	}
+
+	/**
+	 * builds a table from flipped range starts, joining adjacent ranges of the
+	 * same node.
+	 */
+	private static GeoHashRoutingTable build(TreeMap<Long, Integer> ranges) {
+		List<Long> starts = new ArrayList<Long>();
+		List<Integer> nodes = new ArrayList<Integer>();
+		for (Map.Entry<Long, Integer> range : ranges.entrySet()) {
+			if (nodes.isEmpty() || !nodes.get(nodes.size() - 1).equals(range.getValue())) {
+				starts.add(range.getKey());
+				nodes.add(range.getValue());
+			}
+		}
+		long[] startArray = new long[starts.size()];
+		int[] nodeArray = new int[nodes.size()];
+		for (int i = 0; i < startArray.length; i++) {
+			startArray[i] = starts.get(i);
+			nodeArray[i] = nodes.get(i);
+		}
+		return new GeoHashRoutingTable(startArray, nodeArray);
+	}
+
+	/**
+	 * returns the index of the range containing the given flipped value.
+	 */
+	private int indexOf(long key) {
+		int low = 0;
+		int high = starts.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	private static int lowerBound(long[] sorted, long key) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static long alignDown(long value, int zeroBits) {
+		return value & -(1L << zeroBits);
+	}
+
+	/**
+	 * converts a non-negative double below 2^64 to the unsigned long closest
+	 * to it.
+	 */
+	private static long toUnsignedLong(double value) {
+		if (value < Math.scalb(1.0, 63)) {
+			return (long) value;
+		}
+		return ((long) (value / 2)) << 1;
+	}
+
+	private static int checkNode(int node) {
+		if (node < 0) {
+			throw new IllegalArgumentException("Nodes are identified by non-negative numbers");
+		}
+		return node;
+	}
+}
@@ -10,16 +10,37 @@ package ch.hsr.geohash.util;
 
 import ch.hsr.geohash.BoundingBox;
 
+/**
+ * Answers which precision to use for a given box, radius or cell size, and how
+ * large the cells of a given precision are.
+ *
+ * All lookups are O(1): the number of bits is derived from the binary exponent
+ * of the size ratio rather than by searching, and the meters per degree are
+ * read from a table with one entry per degree of latitude.
+ */
 public class GeoHashSizeTable {
 	private static final int NUM_BITS = 64;
-	private static final double[] dLat = new double[NUM_BITS];
-	private static final double[] dLon = new double[NUM_BITS];
+	private static final double[] dLat = new double[NUM_BITS + 1];
+	private static final double[] dLon = new double[NUM_BITS + 1];
+
+	private static final double ECCENTRICITY_SQUARED = VincentyGeodesy.f * (2 - VincentyGeodesy.f);
+
+	/**
+	 * meters per degree along the meridian and along the parallel, for every
+	 * whole degree of latitude from 0 to 90.
+	 */
+	private static final double[] meridianTable = new double[91];
+	private static final double[] parallelTable = new double[91];
 
 	static {
-		for (int i = 0; i < NUM_BITS; i++) {
+		for (int i = 0; i <= NUM_BITS; i++) {
 			dLat[i] = dLat(i);
 			dLon[i] = dLon(i);
 		}
+		for (int i = 0; i <= 90; i++) {
+			meridianTable[i] = metersPerDegreeLatitude(i);
+			parallelTable[i] = (i == 90) ? 0 : metersPerDegreeLongitude(i);
+		}
 	}
 
 	protected static final double dLat(int bits) {
@@ -30,13 +51,129 @@ public class GeoHashSizeTable {
 		return 360d / Math.pow(2, (bits + 1) / 2);
 	}
 
+	/**
+	 * @return the largest number of bits (at most 63) for which a single
+	 *         GeoHash could contain the bounding box.
+	 */
 	public static final int numberOfBitsForOverlappingGeoHash(BoundingBox boundingBox) {
-		int bits = 63;
-		double height = boundingBox.getLatitudeSize();
-		double width = boundingBox.getLongitudeSize();
-		while ((dLat[bits] < height || dLon[bits] < width) && bits > 0) {
-			bits--;
+		return numberOfBitsForOverlappingGeoHash(boundingBox.getLatitudeSize(), boundingBox.getLongitudeSize());
+	}
+
+	/**
+	 * @param height
+	 *            the latitude span, in degrees
+	 * @param width
+	 *            the longitude span, in degrees
+	 * @return the largest number of bits (at most 63) for which a single
+	 *         GeoHash could contain a box of the given size.
+	 */
+	public static final int numberOfBitsForOverlappingGeoHash(double height, double width) {
+		// with 2k or 2k+1 bits, a cell is 180 / 2^k degrees high, so the
+		// largest k that is still high enough is the exponent of 180 / height
+		int latBits = 2 * fittingHalvings(dLat, height) + 1;
+		// with 2k-1 or 2k bits, a cell is 360 / 2^k degrees wide
+		int lonBits = 2 * fittingHalvings(dLon, width);
+		return Math.max(0, Math.min(NUM_BITS - 1, Math.min(latBits, lonBits)));
+	}
+
+	/**
+	 * @return the largest k for which <code>sizes[2k]</code>, i.e. the full
+	 *         range halved k times, still isn't smaller than <code>size</code>.
+	 */
+	private static int fittingHalvings(double[] sizes, double size) {
+		int k = Math.getExponent(sizes[0] / size);
+		if (k > NUM_BITS / 2) {
+			return NUM_BITS / 2;
+		}
+		if (k < 0) {
+			return -1;
 		}
-		return bits;
+		// the division may have been rounded across a power of two
+		if (sizes[2 * k] < size) {
+			k--;
+		} else if (2 * k + 2 <= NUM_BITS && sizes[2 * k + 2] >= size) {
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * @return the largest number of bits for which a single GeoHash could
+	 *         contain a circle of the given radius around a point at the given
+	 *         latitude.
+	 */
+	public static final int numberOfBitsForOverlappingCircle(double latitude, double radiusInMeters) {
+		double height = 2 * radiusInMeters / getMetersPerDegreeLatitude(latitude);
+		// the circle is widest, in degrees, along its poleward edge
+		double poleward = Math.min(90, Math.abs(latitude) + 0.5 * height);
+		double width = 2 * radiusInMeters / getMetersPerDegreeLongitude(poleward);
+		return numberOfBitsForOverlappingGeoHash(height, width);
+	}
+
+	/**
+	 * @return the largest number of bits for which the GeoHashes at the given
+	 *         latitude are at least <code>meters</code> high and wide.
+	 */
+	public static final int numberOfBitsForCellSize(double latitude, double meters) {
+		return numberOfBitsForOverlappingGeoHash(meters / getMetersPerDegreeLatitude(latitude),
+				meters / getMetersPerDegreeLongitude(latitude));
+	}
+
+	/**
+	 * @return the north-south extent, in meters, of a GeoHash with the given
+	 *         number of bits at the given latitude.
+	 */
+	public static final double getCellHeightInMeters(double latitude, int bits) {
+		return dLat[bits] * getMetersPerDegreeLatitude(latitude);
+	}
+
+	/**
+	 * @return the east-west extent, in meters, of a GeoHash with the given
+	 *         number of bits at the given latitude.
+	 */
+	public static final double getCellWidthInMeters(double latitude, int bits) {
+		return dLon[bits] * getMetersPerDegreeLongitude(latitude);
+	}
+
+	/**
+	 * Table lookup for {@link #metersPerDegreeLatitude(double)}, interpolated
+	 * linearly between whole degrees.
+	 */
+	public static final double getMetersPerDegreeLatitude(double latitude) {
+		return interpolate(meridianTable, latitude);
+	}
+
+	/**
+	 * Table lookup for {@link #metersPerDegreeLongitude(double)}, interpolated
+	 * linearly between whole degrees.
+	 */
+	public static final double getMetersPerDegreeLongitude(double latitude) {
+		return interpolate(parallelTable, latitude);
+	}
+
+	private static double interpolate(double[] table, double latitude) {
+		double x = Math.min(90, Math.abs(latitude));
+		int i = Math.min(89, (int) x);
+		return table[i] + (x - i) * (table[i + 1] - table[i]);
+	}
+
+	/**
+	 * @return the length, in meters, of one degree along the meridian at the
+	 *         given latitude on the WGS-84 ellipsoid
+	 */
+	public static double metersPerDegreeLatitude(double latitude) {
+		double sinPhi = Math.sin(latitude * VincentyGeodesy.degToRad);
+		double w = 1 - ECCENTRICITY_SQUARED * sinPhi * sinPhi;
+		return VincentyGeodesy.equatorRadius * (1 - ECCENTRICITY_SQUARED) / (w * Math.sqrt(w)) * VincentyGeodesy.degToRad;
+	}
+
+	/**
+	 * @return the length, in meters, of one degree along the parallel at the
+	 *         given latitude on the WGS-84 ellipsoid
+	 */
+	public static double metersPerDegreeLongitude(double latitude) {
+		double sinPhi = Math.sin(latitude * VincentyGeodesy.degToRad);
+		double primeVerticalRadius = VincentyGeodesy.equatorRadius / Math.sqrt(1 - ECCENTRICITY_SQUARED * sinPhi * sinPhi);
+		return primeVerticalRadius * Math.cos(latitude * VincentyGeodesy.degToRad) * VincentyGeodesy.degToRad;
 	}
 }
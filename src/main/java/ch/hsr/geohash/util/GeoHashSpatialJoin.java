@@ -0,0 +1,356 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Finds all pairs of points from two sets that are within a given distance of
+ * each other.
+ * <p>
+ * Both sets are encoded at one precision and radix-sorted by cell. Every cell
+ * of the left set is then joined with the cells of the right set around it:
+ * its neighbours, or more rows and columns where the cells are small compared
+ * to the distance, as they are towards the poles. Only the pairs from those
+ * cells are measured, and the work is split at cell boundaries across
+ * threads.
+ */
+public class GeoHashSpatialJoin {
+	private static final int MAX_PRECISION = 60;
+
+	private final double maxDistanceInMeters;
+	private final int precision;
+	private final GeodesicDistance distance;
+
+	/**
+	 * joins with Vincenty's formulae, at the precision whose cells at the
+	 * equator are at least as large as the distance.
+	 */
+	public GeoHashSpatialJoin(double maxDistanceInMeters) {
+		this(maxDistanceInMeters, Math.max(1, Math.min(MAX_PRECISION, GeoHashSizeTable.numberOfBitsForCellSize(0,
+				maxDistanceInMeters))), GeodesicDistances.VINCENTY);
+	}
+
+	/**
+	 * @param precision
+	 *            the number of bits of the cells to join on, from 1 to 60
+	 * @param distance
+	 *            measures the candidate pairs
+	 */
+	public GeoHashSpatialJoin(double maxDistanceInMeters, int precision, GeodesicDistance distance) {
+		if (!(maxDistanceInMeters >= 0)) {
+			throw new IllegalArgumentException("The distance must not be negative");
+		}
+		if (precision < 1 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("The precision must be between 1 and " + MAX_PRECISION + " bits");
+		}
+		this.maxDistanceInMeters = maxDistanceInMeters;
+		this.precision = precision;
+		this.distance = distance;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * joins the points on the calling thread.
+	 */
+	public Pairs join(double[] leftLatitudes, double[] leftLongitudes, double[] rightLatitudes,
+			double[] rightLongitudes) {
+		Plan plan = new Plan(leftLatitudes, leftLongitudes, rightLatitudes, rightLongitudes);
+		return plan.joinGroups(0, plan.leftGroups.length - 1);
+	}
+
+	/**
+	 * joins the points with the given number of threads.
+	 *
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting for the
+	 *             threads of the join
+	 */
+	public Pairs join(double[] leftLatitudes, double[] leftLongitudes, double[] rightLatitudes,
+			double[] rightLongitudes, int threads) throws InterruptedException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("There must be at least one thread");
+		}
+		if (threads == 1) {
+			return join(leftLatitudes, leftLongitudes, rightLatitudes, rightLongitudes);
+		}
+		final Plan plan = new Plan(leftLatitudes, leftLongitudes, rightLatitudes, rightLongitudes);
+
+		// several chunks per thread, so that dense cells even out
+		int groups = plan.leftGroups.length - 1;
+		int chunks = Math.min(groups, 4 * threads);
+		List<Callable<Pairs>> tasks = new ArrayList<Callable<Pairs>>();
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			final int from = (int) ((long) groups * chunk / chunks);
+			final int to = (int) ((long) groups * (chunk + 1) / chunks);
+			tasks.add(new Callable<Pairs>() {
+				@Override
+				public Pairs call() {
+					return plan.joinGroups(from, to);
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Pairs result = new Pairs();
+			for (Future<Pairs> future : executor.invokeAll(tasks)) {
+				result.addAll(future.get());
+			}
+			return result;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The pairs found by a join, in no particular order.
+	 */
+	public static final class Pairs {
+		private int[] left = new int[16];
+		private int[] right = new int[16];
+		private double[] distances = new double[16];
+		private int size;
+
+		Pairs() {
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * returns the index of the left point of the i-th pair.
+		 */
+		public int getLeft(int i) {
+			checkIndex(i);
+			return left[i];
+		}
+
+		/**
+		 * returns the index of the right point of the i-th pair.
+		 */
+		public int getRight(int i) {
+			checkIndex(i);
+			return right[i];
+		}
+
+		public double getDistanceInMeters(int i) {
+			checkIndex(i);
+			return distances[i];
+		}
+
+		private void checkIndex(int i) {
+			if (i < 0 || i >= size) {
+				throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+			}
+		}
+
+		void add(int leftIndex, int rightIndex, double distanceInMeters) {
+			ensureCapacity(size + 1);
+			left[size] = leftIndex;
+			right[size] = rightIndex;
+			distances[size] = distanceInMeters;
+			size++;
+		}
+
+		void addAll(Pairs other) {
+			ensureCapacity(size + other.size);
+			System.arraycopy(other.left, 0, left, size, other.size);
+			System.arraycopy(other.right, 0, right, size, other.size);
+			System.arraycopy(other.distances, 0, distances, size, other.size);
+			size += other.size;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > left.length) {
+				int length = Math.max(capacity, 2 * left.length);
+				left = Arrays.copyOf(left, length);
+				right = Arrays.copyOf(right, length);
+				distances = Arrays.copyOf(distances, length);
+			}
+		}
+	}
+
+	/**
+	 * Both sets sorted by cell, and the bounds of the cells of the left set.
+	 */
+	private final class Plan {
+		private final int latitudeBits = precision / 2;
+		private final int longitudeBits = (precision + 1) / 2;
+		private final double cellHeight = 180.0 / (1L << latitudeBits);
+		private final double cellWidth = 360.0 / (1L << longitudeBits);
+
+		private final long[] leftKeys;
+		private final int[] leftIndexes;
+		private final double[] leftLatitudes;
+		private final double[] leftLongitudes;
+		/** the start of every group of left points in the same cell, and the end */
+		private final int[] leftGroups;
+
+		private final long[] rightKeys;
+		private final int[] rightIndexes;
+		private final double[] rightLatitudes;
+		private final double[] rightLongitudes;
+
+		Plan(double[] leftLatitudes, double[] leftLongitudes, double[] rightLatitudes, double[] rightLongitudes) {
+			if (leftLatitudes.length != leftLongitudes.length || rightLatitudes.length != rightLongitudes.length) {
+				throw new IllegalArgumentException("There must be as many latitudes as longitudes");
+			}
+			this.leftLatitudes = leftLatitudes;
+			this.leftLongitudes = leftLongitudes;
+			this.rightLatitudes = rightLatitudes;
+			this.rightLongitudes = rightLongitudes;
+
+			leftKeys = encode(leftLatitudes, leftLongitudes);
+			leftIndexes = identity(leftKeys.length);
+			LongUtil.radixSort(leftKeys, leftIndexes, precision);
+			rightKeys = encode(rightLatitudes, rightLongitudes);
+			rightIndexes = identity(rightKeys.length);
+			LongUtil.radixSort(rightKeys, rightIndexes, precision);
+
+			int[] groups = new int[leftKeys.length + 1];
+			int count = 0;
+			for (int i = 0; i < leftKeys.length; i++) {
+				if (i == 0 || leftKeys[i] != leftKeys[i - 1]) {
+					groups[count++] = i;
+				}
+			}
+			groups[count++] = leftKeys.length;
+			leftGroups = Arrays.copyOf(groups, count);
+		}
+
+		private long[] encode(double[] latitudes, double[] longitudes) {
+			long[] keys = new long[latitudes.length];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = GeoHash.encodeLongValue(latitudes[i], longitudes[i], precision) >>> (64 - precision);
+			}
+			return keys;
+		}
+
+		/**
+		 * joins the left points of the groups [from, to) with the right points
+		 * around them.
+		 */
+		Pairs joinGroups(int from, int to) {
+			Pairs pairs = new Pairs();
+			double reachInRadians = GeodesicDistances.getAngularRadius(maxDistanceInMeters);
+			double reachInDegrees = Math.toDegrees(reachInRadians);
+			long rows = 1L << latitudeBits;
+			long columns = 1L << longitudeBits;
+			int rowReach = (int) Math.min(rows, (long) Math.ceil(reachInDegrees / cellHeight));
+
+			for (int group = from; group < to; group++) {
+				long key = leftKeys[leftGroups[group]];
+				long row = latitudeIndex(key);
+				long column = longitudeIndex(key);
+
+				// the longitudes within reach widen towards the pole
+				double cellLatitude = -90 + row * cellHeight;
+				double poleward = Math.max(Math.abs(cellLatitude), Math.abs(cellLatitude + cellHeight)) + reachInDegrees;
+				long columnReach = columns;
+				if (poleward < 90 && Math.sin(reachInRadians) < Math.cos(Math.toRadians(poleward))) {
+					double longitudeReach = Math.toDegrees(Math.asin(Math.sin(reachInRadians)
+							/ Math.cos(Math.toRadians(poleward))));
+					columnReach = (long) Math.ceil(longitudeReach / cellWidth);
+				}
+				long firstColumn = column - columnReach;
+				long lastColumn = column + columnReach;
+				if (lastColumn - firstColumn + 1 >= columns) {
+					firstColumn = 0;
+					lastColumn = columns - 1;
+				}
+
+				long firstRow = Math.max(0, row - rowReach);
+				long lastRow = Math.min(rows - 1, row + rowReach);
+				for (long r = firstRow; r <= lastRow; r++) {
+					for (long c = firstColumn; c <= lastColumn; c++) {
+						long neighbour = interleave(r, (c + columns) & (columns - 1));
+						joinCell(leftGroups[group], leftGroups[group + 1], neighbour, pairs);
+					}
+				}
+			}
+			return pairs;
+		}
+
+		private void joinCell(int leftFrom, int leftTo, long rightKey, Pairs pairs) {
+			int rightFrom = lowerBound(rightKeys, rightKey);
+			for (int j = rightFrom; j < rightKeys.length && rightKeys[j] == rightKey; j++) {
+				int b = rightIndexes[j];
+				for (int i = leftFrom; i < leftTo; i++) {
+					int a = leftIndexes[i];
+					double meters = distance.distanceInMeters(leftLatitudes[a], leftLongitudes[a], rightLatitudes[b],
+							rightLongitudes[b]);
+					if (meters <= maxDistanceInMeters) {
+						pairs.add(a, b, meters);
+					}
+				}
+			}
+		}
+
+		/*
+		 * the first bit of a key is a longitude bit, so with an odd precision
+		 * the longitude bits are the even ones, counted from the lowest.
+		 */
+
+		private long latitudeIndex(long key) {
+			return LongUtil.compact((precision % 2 == 1) ? key >>> 1 : key);
+		}
+
+		private long longitudeIndex(long key) {
+			return LongUtil.compact((precision % 2 == 1) ? key : key >>> 1);
+		}
+
+		private long interleave(long latitudeIndex, long longitudeIndex) {
+			if (precision % 2 == 1) {
+				return LongUtil.spread(longitudeIndex) | (LongUtil.spread(latitudeIndex) << 1);
+			}
+			return LongUtil.spread(latitudeIndex) | (LongUtil.spread(longitudeIndex) << 1);
+		}
+	}
+
+	private static int[] identity(int length) {
+		int[] indexes = new int[length];
+		for (int i = 0; i < length; i++) {
+			indexes[i] = i;
+		}
+		return indexes;
+	}
+
+	private static int lowerBound(long[] keys, long key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
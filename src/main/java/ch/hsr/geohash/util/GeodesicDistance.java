@@ -0,0 +1,52 @@
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * Strategy for measuring the distance between two points on the earth's
+ * surface.
+ *
+ * Implementations trade accuracy for speed; each one reports the worst-case
+ * relative error it can guarantee for distances up to a given length, so that
+ * callers (or {@link GeodesicDistances#forTolerance(double, double)}) can pick
+ * the cheapest formula that is still good enough for the job at hand.
+ *
+ * @see GeodesicDistances for the built-in implementations
+ */
+public interface GeodesicDistance {
+    /**
+     * @return the distance in meters between the two points
+     */
+    public double distanceInMeters(WGS84Point a, WGS84Point b);
+
+    /**
+     * Same as {@link #distanceInMeters(WGS84Point, WGS84Point)}, but without
+     * requiring the caller to allocate points.
+     *
+     * @return the distance in meters between the two coordinate pairs
+     */
+    public double distanceInMeters(double latitudeA, double longitudeA, double latitudeB, double longitudeB);
+
+    /**
+     * One-to-many form of {@link #distanceInMeters(double, double, double, double)}.
+     * Everything that only depends on the center is computed once per call, which
+     * makes this the preferred way to post-filter candidates against a fixed point.
+     *
+     * @param center the point to measure from
+     * @param latitudes the latitudes of the points to measure to
+     * @param longitudes the longitudes of the points to measure to, same length as <code>latitudes</code>
+     * @param out receives the distance in meters to the i-th point at index i; must be at
+     *            least as long as the coordinate arrays
+     */
+    public void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out);
+
+    /**
+     * Reports how far off (relative to the true ellipsoidal distance on WGS-84)
+     * this strategy may be for any pair of points that are at most
+     * <code>maxDistanceInMeters</code> apart.
+     *
+     * @param maxDistanceInMeters the largest distance the caller intends to measure
+     * @return the worst-case relative error, e.g. 0.005 for half a percent
+     */
+    public double getMaxRelativeError(double maxDistanceInMeters);
+}
@@ -0,0 +1,254 @@
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * The built-in {@link GeodesicDistance} strategies, declared from the cheapest
+ * to the most expensive one.
+ *
+ * The error figures below are measured against Vincenty's inverse formula on
+ * the WGS-84 ellipsoid, for points up to 89 degrees latitude.
+ */
+public enum GeodesicDistances implements GeodesicDistance {
+    /**
+     * Flat-earth approximation around the mean latitude of the two points.
+     * One cosine and one square root per call. Within 50 km it is as good as
+     * {@link #HAVERSINE} (0.57%), up to 100 km it is off by at most 2.5%;
+     * beyond that the error is unbounded. Not suitable for pairs that lie on
+     * opposite sides of a pole.
+     */
+    EQUIRECTANGULAR {
+        @Override
+        public double distanceInMeters(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+            double deltaLongitude = wrapLongitude(longitudeB - longitudeA) * VincentyGeodesy.degToRad;
+            double deltaLatitude = (latitudeB - latitudeA) * VincentyGeodesy.degToRad;
+            double x = deltaLongitude * Math.cos(0.5 * (latitudeA + latitudeB) * VincentyGeodesy.degToRad);
+            return MEAN_RADIUS * Math.sqrt(x * x + deltaLatitude * deltaLatitude);
+        }
+
+        @Override
+        public void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out) {
+            checkLengths(latitudes, longitudes, out);
+            double centerLatitude = center.getLatitude(), centerLongitude = center.getLongitude();
+            for (int i = 0; i < latitudes.length; i++) {
+                out[i] = distanceInMeters(centerLatitude, centerLongitude, latitudes[i], longitudes[i]);
+            }
+        }
+
+        @Override
+        public double getMaxRelativeError(double maxDistanceInMeters) {
+            if (maxDistanceInMeters <= 50000.0) {
+                return SPHERICAL_ERROR;
+            }
+            if (maxDistanceInMeters <= 100000.0) {
+                return 0.025;
+            }
+            return 1.0;
+        }
+    },
+
+    /**
+     * Great-circle distance on a sphere with the mean earth radius. Ignoring
+     * the flattening costs at most 0.57% at any distance.
+     */
+    HAVERSINE {
+        @Override
+        public double distanceInMeters(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+            return haversine(latitudeA, Math.cos(latitudeA * VincentyGeodesy.degToRad), longitudeA, latitudeB, longitudeB);
+        }
+
+        @Override
+        public void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out) {
+            checkLengths(latitudes, longitudes, out);
+            double centerLatitude = center.getLatitude(), centerLongitude = center.getLongitude();
+            double cosCenterLatitude = Math.cos(centerLatitude * VincentyGeodesy.degToRad);
+            for (int i = 0; i < latitudes.length; i++) {
+                out[i] = haversine(centerLatitude, cosCenterLatitude, centerLongitude, latitudes[i], longitudes[i]);
+            }
+        }
+
+        @Override
+        public double getMaxRelativeError(double maxDistanceInMeters) {
+            return SPHERICAL_ERROR;
+        }
+    },
+
+    /**
+     * Lambert's first-order flattening correction applied to the great-circle
+     * distance between the reduced latitudes. Non-iterative; up to 19,000 km
+     * the relative error stays below 3e-5, i.e. at most 30 m per 1000 km.
+     * Towards antipodal points it grows to about 0.2%, still within that of
+     * {@link #HAVERSINE}.
+     */
+    ANDOYER_LAMBERT {
+        @Override
+        public double distanceInMeters(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+            double tanA = (1 - VincentyGeodesy.f) * Math.tan(latitudeA * VincentyGeodesy.degToRad);
+            double cosA = 1 / Math.sqrt(1 + tanA * tanA);
+            double tanB = (1 - VincentyGeodesy.f) * Math.tan(latitudeB * VincentyGeodesy.degToRad);
+            double cosB = 1 / Math.sqrt(1 + tanB * tanB);
+            return andoyerLambert(tanA * cosA, cosA, tanB * cosB, cosB, (longitudeB - longitudeA) * VincentyGeodesy.degToRad);
+        }
+
+        @Override
+        public void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out) {
+            checkLengths(latitudes, longitudes, out);
+            double tanA = (1 - VincentyGeodesy.f) * Math.tan(center.getLatitude() * VincentyGeodesy.degToRad);
+            double cosA = 1 / Math.sqrt(1 + tanA * tanA), sinA = tanA * cosA;
+            double centerLongitude = center.getLongitude();
+            for (int i = 0; i < latitudes.length; i++) {
+                double tanB = (1 - VincentyGeodesy.f) * Math.tan(latitudes[i] * VincentyGeodesy.degToRad);
+                double cosB = 1 / Math.sqrt(1 + tanB * tanB);
+                out[i] = andoyerLambert(sinA, cosA, tanB * cosB, cosB, (longitudes[i] - centerLongitude) * VincentyGeodesy.degToRad);
+            }
+        }
+
+        @Override
+        public double getMaxRelativeError(double maxDistanceInMeters) {
+            return (maxDistanceInMeters <= 19000000.0) ? 3e-5 : SPHERICAL_ERROR;
+        }
+    },
+
+    /**
+     * Vincenty's iterative inverse formula, see
+     * {@link VincentyGeodesy#distanceInMeters(WGS84Point, WGS84Point)}.
+     * Accurate to well below a millimetre, but runs up to 20 iterations of
+     * trigonometry per call.
+     */
+    VINCENTY {
+        @Override
+        public double distanceInMeters(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+            return VincentyGeodesy.distanceInMeters(latitudeA, longitudeA, latitudeB, longitudeB);
+        }
+
+        @Override
+        public void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out) {
+            VincentyGeodesy.distancesFrom(center, latitudes, longitudes, out);
+        }
+
+        @Override
+        public double getMaxRelativeError(double maxDistanceInMeters) {
+            return 1e-9;
+        }
+    };
+
+    /**
+     * Mean earth radius (IUGG), in meters.
+     */
+    public static final double MEAN_RADIUS = 6371008.8;
+
+    /**
+     * Worst-case relative error of treating the WGS-84 ellipsoid as a sphere
+     * with {@link #MEAN_RADIUS}.
+     */
+    static final double SPHERICAL_ERROR = 0.0057;
+
+    @Override
+    public double distanceInMeters(WGS84Point a, WGS84Point b) {
+        return distanceInMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+    }
+
+    /**
+     * Picks the cheapest built-in strategy whose error stays within the given
+     * tolerance for all distances up to <code>maxDistanceInMeters</code>.
+     * Falls back to {@link #VINCENTY} if nothing else qualifies.
+     *
+     * @param maxDistanceInMeters the largest distance the caller intends to measure
+     * @param relativeTolerance the acceptable relative error, e.g. 0.01 for one percent
+     * @return the cheapest strategy that satisfies the tolerance
+     */
+    public static GeodesicDistance forTolerance(double maxDistanceInMeters, double relativeTolerance) {
+        for (GeodesicDistances distance : values()) {
+            if (distance.getMaxRelativeError(maxDistanceInMeters) <= relativeTolerance) {
+                return distance;
+            }
+        }
+        return VINCENTY;
+    }
+
+    /**
+     * Bounds the circle of the given radius around a point. The latitudes are those of the
+     * circle's northern and southern edges; if one of them reaches a pole, the circle contains
+     * that pole and the box spans all longitudes. Otherwise the longitudes are those of the
+     * meridians touching the circle, and the box crosses the antimeridian if the circle does.
+     *
+     * @return a box containing every point within the radius
+     */
+    public static BoundingBox getBoundingBox(double latitude, double longitude, double radiusInMeters) {
+        double delta = getAngularRadius(radiusInMeters);
+        double minLatitude = latitude - delta / VincentyGeodesy.degToRad;
+        double maxLatitude = latitude + delta / VincentyGeodesy.degToRad;
+        if (minLatitude <= -90.0 || maxLatitude >= 90.0) {
+            return new BoundingBox(Math.max(-90.0, minLatitude), Math.min(90.0, maxLatitude), -180.0, 180.0);
+        }
+
+        double halfWidth = Math.asin(Math.sin(delta) / Math.cos(latitude * VincentyGeodesy.degToRad)) / VincentyGeodesy.degToRad;
+        double west = longitude - halfWidth;
+        double east = longitude + halfWidth;
+        if (west < -180.0) {
+            west += 360.0;
+        }
+        if (east > 180.0) {
+            east -= 360.0;
+        }
+        return BoundingBox.fromWestToEast(minLatitude, maxLatitude, west, east);
+    }
+
+    /**
+     * Returns the angle, in radians, subtended on the sphere by a distance in meters, widened so that
+     * it holds on the ellipsoid as well.
+     */
+    static double getAngularRadius(double distanceInMeters) {
+        return distanceInMeters * (1 + SPHERICAL_ERROR) / MEAN_RADIUS;
+    }
+
+    private static double haversine(double latitudeA, double cosLatitudeA, double longitudeA, double latitudeB, double longitudeB) {
+        double sinHalfDeltaLatitude = Math.sin(0.5 * (latitudeB - latitudeA) * VincentyGeodesy.degToRad);
+        double sinHalfDeltaLongitude = Math.sin(0.5 * (longitudeB - longitudeA) * VincentyGeodesy.degToRad);
+        double h = sinHalfDeltaLatitude * sinHalfDeltaLatitude
+                + cosLatitudeA * Math.cos(latitudeB * VincentyGeodesy.degToRad) * sinHalfDeltaLongitude * sinHalfDeltaLongitude;
+        return 2.0 * MEAN_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Lambert's formula, starting from the sine and cosine of both reduced latitudes and the
+     * difference in longitude (in radians). The half-angle terms are derived algebraically so
+     * that the only transcendental calls left are one sine and one arcsine.
+     */
+    private static double andoyerLambert(double sinA, double cosA, double sinB, double cosB, double deltaLongitude) {
+        double sinDelta = sinB * cosA - cosB * sinA;
+        double cosDelta = cosA * cosB + sinA * sinB;
+        // sin^2 of half the difference in reduced latitude, avoiding cancellation for small differences
+        double sinSqHalfDelta = (cosDelta > 0) ? sinDelta * sinDelta / (2 * (1 + cosDelta)) : 0.5 * (1 - cosDelta);
+        double sinHalfDeltaLongitude = Math.sin(0.5 * deltaLongitude);
+        double h = Math.min(1.0, sinSqHalfDelta + cosA * cosB * sinHalfDeltaLongitude * sinHalfDeltaLongitude);
+        if (h == 0) {
+            return 0; // co-incident points
+        }
+        // h = sin^2(sigma/2), 1 - h = cos^2(sigma/2)
+        double sigma = 2.0 * Math.asin(Math.sqrt(h));
+        double sinSigma = 2.0 * Math.sqrt(h * (1 - h));
+        double sinPCosQ = 0.5 * (sinA + sinB);
+        double cosPSinQ = 0.5 * (sinB - sinA);
+        double x = (h < 1) ? (sigma - sinSigma) * sinPCosQ * sinPCosQ / (1 - h) : 0;
+        double y = (sigma + sinSigma) * cosPSinQ * cosPSinQ / h;
+        return VincentyGeodesy.equatorRadius * (sigma - 0.5 * VincentyGeodesy.f * (x + y));
+    }
+
+    static void checkLengths(double[] latitudes, double[] longitudes, double[] out) {
+        if (latitudes.length != longitudes.length || out.length < latitudes.length) {
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length, out at least that");
+        }
+    }
+
+    private static double wrapLongitude(double deltaLongitude) {
+        if (deltaLongitude > 180.0) {
+            return deltaLongitude - 360.0;
+        }
+        if (deltaLongitude < -180.0) {
+            return deltaLongitude + 360.0;
+        }
+        return deltaLongitude;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+/**
+ * Keys of the cells of a Hilbert curve laid over the grid of {@link GeoHash}:
+ * the cells of a 2n-bit key are the GeoHash cells of 2n bits, but numbered
+ * along the curve instead of in Z-order. Cells with consecutive keys always
+ * share a side, so a box breaks into fewer ranges of keys than of hashes.
+ * <p>
+ * Like {@link GeoHash#longValue()}, keys are left-aligned 64-bit values that
+ * order as unsigned numbers, and the key of a cell is a prefix of the keys of
+ * all cells within it. The curve refines every cell into four, so a key
+ * always has an even number of bits.
+ */
+public final class HilbertKey {
+	public static final int MAX_PRECISION = 64;
+
+	private HilbertKey() {
+	}
+
+	/**
+	 * returns the key of the cell containing the point, with the given even
+	 * number of bits.
+	 */
+	public static long encode(double latitude, double longitude, int precision) {
+		checkPrecision(precision);
+		return fromGeoHashValue(GeoHash.encodeLongValue(latitude, longitude, precision), precision);
+	}
+
+	/**
+	 * returns the key of the cell of the given hash, which must have an even
+	 * number of bits.
+	 */
+	public static long fromGeoHash(GeoHash hash) {
+		return fromGeoHashValue(hash.longValue(), hash.significantBits());
+	}
+
+	/**
+	 * returns the key of the cell whose {@link GeoHash#longValue()} is given.
+	 */
+	public static long fromGeoHashValue(long bits, int precision) {
+		checkPrecision(precision);
+		int order = precision / 2;
+		if (order == 0) {
+			return 0;
+		}
+		long x = LongUtil.compact(bits >>> 1) >>> (32 - order);
+		long y = LongUtil.compact(bits) >>> (32 - order);
+		return fromIndexes(x, y, order);
+	}
+
+	/**
+	 * returns the {@link GeoHash#longValue()} of the cell with the given key.
+	 */
+	public static long toGeoHashValue(long key, int precision) {
+		checkPrecision(precision);
+		int order = precision / 2;
+		if (order == 0) {
+			return 0;
+		}
+		long[] indexes = toIndexes(key, order);
+		return (LongUtil.spread(indexes[0]) | (LongUtil.spread(indexes[1]) << 1)) << (64 - precision);
+	}
+
+	public static GeoHash toGeoHash(long key, int precision) {
+		return GeoHash.fromLongValue(toGeoHashValue(key, precision), precision);
+	}
+
+	public static BoundingBox getBoundingBox(long key, int precision) {
+		checkPrecision(precision);
+		int order = precision / 2;
+		long[] indexes = (order == 0) ? new long[2] : toIndexes(key, order);
+		double height = Math.scalb(180.0, -order);
+		double width = Math.scalb(360.0, -order);
+		double minLat = -90.0 + indexes[0] * height;
+		double minLon = -180.0 + indexes[1] * width;
+		return new BoundingBox(minLat, minLat + height, minLon, minLon + width);
+	}
+
+	/**
+	 * returns the center of the cell with the given key.
+	 */
+	public static WGS84Point decode(long key, int precision) {
+		return getBoundingBox(key, precision).getCenterPoint();
+	}
+
+	public static long getNorthernNeighbour(long key, int precision) {
+		return getNeighbour(key, precision, 1, 0);
+	}
+
+	public static long getSouthernNeighbour(long key, int precision) {
+		return getNeighbour(key, precision, -1, 0);
+	}
+
+	public static long getEasternNeighbour(long key, int precision) {
+		return getNeighbour(key, precision, 0, 1);
+	}
+
+	public static long getWesternNeighbour(long key, int precision) {
+		return getNeighbour(key, precision, 0, -1);
+	}
+
+	/**
+	 * returns the 8 adjacent cells in the same order as
+	 * {@link GeoHash#getAdjacent()}: N, NE, E, SE, S, SW, W, NW.
+	 */
+	public static long[] getAdjacent(long key, int precision) {
+		return new long[] { getNeighbour(key, precision, 1, 0), getNeighbour(key, precision, 1, 1),
+				getNeighbour(key, precision, 0, 1), getNeighbour(key, precision, -1, 1),
+				getNeighbour(key, precision, -1, 0), getNeighbour(key, precision, -1, -1),
+				getNeighbour(key, precision, 0, -1), getNeighbour(key, precision, 1, -1) };
+	}
+
+	/**
+	 * like the neighbours of a {@link GeoHash}, the cells wrap around in both
+	 * directions.
+	 */
+	private static long getNeighbour(long key, int precision, int latitudeSteps, int longitudeSteps) {
+		checkPrecision(precision);
+		int order = precision / 2;
+		if (order == 0) {
+			return 0;
+		}
+		long[] indexes = toIndexes(key, order);
+		long mask = (1L << order) - 1;
+		return fromIndexes((indexes[1] + longitudeSteps) & mask, (indexes[0] + latitudeSteps) & mask, order);
+	}
+
+	/**
+	 * returns the position of the cell along the curve, from 0 to
+	 * 2^precision - 1 as an unsigned number.
+	 */
+	public static long ord(long key, int precision) {
+		checkPrecision(precision);
+		return (precision == 0) ? 0 : key >>> (64 - precision);
+	}
+
+	public static long fromOrd(long ord, int precision) {
+		checkPrecision(precision);
+		return (precision == 0) ? 0 : ord << (64 - precision);
+	}
+
+	/**
+	 * returns the key of the cell the given number of steps further along the
+	 * curve, wrapping around from the last cell to the first.
+	 */
+	public static long next(long key, int precision, long step) {
+		return fromOrd(ord(key, precision) + step, precision);
+	}
+
+	public static long next(long key, int precision) {
+		return next(key, precision, 1);
+	}
+
+	public static long prev(long key, int precision) {
+		return next(key, precision, -1);
+	}
+
+	/**
+	 * returns whether the cell of the key lies within the cell of the prefix,
+	 * which has at most as many bits.
+	 */
+	public static boolean within(long key, int precision, long prefix, int prefixPrecision) {
+		checkPrecision(precision);
+		checkPrecision(prefixPrecision);
+		if (prefixPrecision > precision) {
+			return false;
+		}
+		return prefixPrecision == 0 || ((key ^ prefix) >>> (64 - prefixPrecision)) == 0;
+	}
+
+	/**
+	 * returns the key of the cell with the given number of bits that contains
+	 * the cell of the key.
+	 */
+	public static long getParent(long key, int parentPrecision) {
+		checkPrecision(parentPrecision);
+		return key & LongUtil.prefixMask(parentPrecision);
+	}
+
+	static void checkPrecision(int precision) {
+		if (precision < 0 || precision > MAX_PRECISION || precision % 2 != 0) {
+			throw new IllegalArgumentException("A Hilbert key has an even number of bits up to 64: " + precision);
+		}
+	}
+
+	/**
+	 * walks down from the whole grid, taking two bits of the key per level. At
+	 * every level, the remaining coordinates are turned into the frame of the
+	 * sub-curve that fills the chosen quadrant.
+	 */
+	private static long fromIndexes(long x, long y, int order) {
+		long key = 0;
+		for (int level = order - 1; level >= 0; level--) {
+			long rx = (x >>> level) & 1;
+			long ry = (y >>> level) & 1;
+			key = (key << 2) | ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = ~x;
+					y = ~y;
+				}
+				long swap = x;
+				x = y;
+				y = swap;
+			}
+		}
+		return key << (64 - 2 * order);
+	}
+
+	/**
+	 * the inverse of {@link #fromIndexes(long, long, int)}, building the
+	 * coordinates up from the finest level.
+	 *
+	 * @return the latitude index at index 0 and the longitude index at 1, like
+	 *         {@link GeoHashIterator#decomposeGeoHashBits(GeoHash)}
+	 */
+	private static long[] toIndexes(long key, int order) {
+		long digits = key >>> (64 - 2 * order);
+		long x = 0;
+		long y = 0;
+		for (int level = 0; level < order; level++) {
+			long size = 1L << level;
+			long rx = (digits >>> 1) & 1;
+			long ry = (digits ^ rx) & 1;
+			if (ry == 0) {
+				if (rx == 1) {
+					x = size - 1 - x;
+					y = size - 1 - y;
+				}
+				long swap = x;
+				x = y;
+				y = swap;
+			}
+			x += size * rx;
+			y += size * ry;
+			digits >>>= 2;
+		}
+		return new long[] { y, x };
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010, Silvio Heuberger @ IFS www.ifs.hsr.ch
+ *
+ * This code is release under the LGPL license.
+ * You should have received a copy of the license
+ * in the LICENSE file. If you have not, see
+ * http://www.gnu.org/licenses/lgpl-3.0.txt
+ */
+package ch.hsr.geohash.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+
+/**
+ * Plans the ranges of keys a sorted store has to scan for a query: the
+ * sorted, merged ranges covering the cells that intersect a box, or the cells
+ * an iterator yields, numbered along either curve.
+ * <p>
+ * The ranges come as the first and the last 64-bit value of each, in the
+ * form read by {@link GeoHashCodec#readRanges(java.io.DataInput)}, and are
+ * ordered as unsigned values. A box is planned by descending the quadtree of
+ * cells in the order of the curve, so that the work grows with the outline
+ * of the box rather than its area.
+ */
+public final class KeyRangePlanner {
+	/**
+	 * the numbering of the cells: {@link GeoHash#longValue()} or
+	 * {@link HilbertKey}.
+	 */
+	public enum Curve {
+		GEOHASH, HILBERT
+	}
+
+	private KeyRangePlanner() {
+	}
+
+	/**
+	 * plans the ranges of all cells with the given number of bits that
+	 * intersect the box, which may cross the antimeridian. The precision must
+	 * be even, so that every level of the quadtree splits a cell into four.
+	 *
+	 * @return the first values of the ranges at index 0 and their last values
+	 *         at index 1
+	 */
+	public static long[][] plan(BoundingBox box, int precision, Curve curve) {
+		HilbertKey.checkPrecision(precision);
+		List<BoundingBox> parts = box.splitAtAntimeridian();
+		long[][] rectangles = new long[parts.size()][];
+		for (int i = 0; i < rectangles.length; i++) {
+			BoundingBox part = parts.get(i);
+			long lowerLeft = GeoHash.encodeLongValue(part.getMinLat(), part.getMinLon(), precision);
+			long upperRight = GeoHash.encodeLongValue(part.getMaxLat(), part.getMaxLon(), precision);
+			int shift = 32 - precision / 2;
+			rectangles[i] = new long[] { LongUtil.compact(lowerLeft >>> 1) >>> shift,
+					LongUtil.compact(lowerLeft) >>> shift, LongUtil.compact(upperRight >>> 1) >>> shift,
+					LongUtil.compact(upperRight) >>> shift };
+		}
+		Descent descent = new Descent(rectangles, precision / 2, curve == Curve.HILBERT);
+		descent.descend(0, 0, 0, 0, false, false);
+		return descent.ranges.toArrays();
+	}
+
+	/**
+	 * plans the ranges of the cells the iterator yields, e.g. a
+	 * {@link RectangleGeoHashIterator}. The cells may have any number of bits;
+	 * a Hilbert range is planned for each half of a cell with an odd number.
+	 */
+	public static long[][] plan(Iterator<GeoHash> cells, Curve curve) {
+		long[] firsts = new long[64];
+		long[] lasts = new long[64];
+		int count = 0;
+		while (cells.hasNext()) {
+			GeoHash cell = cells.next();
+			int precision = cell.significantBits();
+			int halves = (curve == Curve.HILBERT && precision % 2 == 1) ? 2 : 1;
+			if (count + halves > firsts.length) {
+				firsts = Arrays.copyOf(firsts, 2 * firsts.length);
+				lasts = Arrays.copyOf(lasts, 2 * lasts.length);
+			}
+			if (curve == Curve.GEOHASH) {
+				firsts[count] = cell.longValue() & LongUtil.prefixMask(precision);
+				lasts[count] = cell.longValue() | ~LongUtil.prefixMask(precision);
+				count++;
+			} else {
+				int keyPrecision = precision + halves - 1;
+				for (int half = 0; half < halves; half++) {
+					long bits = (halves == 1) ? cell.longValue() : cell.longValue() | ((long) half << (63 - precision));
+					long key = HilbertKey.fromGeoHashValue(bits, keyPrecision);
+					firsts[count] = key;
+					lasts[count] = key | ~LongUtil.prefixMask(keyPrecision);
+					count++;
+				}
+			}
+		}
+
+		int[] indexes = new int[count];
+		for (int i = 0; i < count; i++) {
+			indexes[i] = i;
+		}
+		long[] sorted = Arrays.copyOf(firsts, count);
+		LongUtil.radixSort(sorted, indexes, 64);
+
+		Ranges ranges = new Ranges();
+		for (int i = 0; i < count; i++) {
+			ranges.add(firsts[indexes[i]], lasts[indexes[i]]);
+		}
+		return ranges.toArrays();
+	}
+
+	/**
+	 * merges ranges added in ascending order of their first values.
+	 */
+	private static class Ranges {
+		private long[] firsts = new long[16];
+		private long[] lasts = new long[16];
+		private int count;
+
+		void add(long first, long last) {
+			if (count > 0) {
+				long previous = lasts[count - 1];
+				// overlapping, nested or adjacent
+				if (previous == -1 || LongUtil.flip(first) <= LongUtil.flip(previous + 1)) {
+					if (LongUtil.flip(last) > LongUtil.flip(previous)) {
+						lasts[count - 1] = last;
+					}
+					return;
+				}
+			}
+			if (count == firsts.length) {
+				firsts = Arrays.copyOf(firsts, 2 * count);
+				lasts = Arrays.copyOf(lasts, 2 * count);
+			}
+			firsts[count] = first;
+			lasts[count] = last;
+			count++;
+		}
+
+		long[][] toArrays() {
+			return new long[][] { Arrays.copyOf(firsts, count), Arrays.copyOf(lasts, count) };
+		}
+	}
+
+	/**
+	 * the quadtree walk. A cell entirely within one of the rectangles becomes
+	 * a single range; a cell partly within them is split into its quadrants,
+	 * visited in the order of their keys.
+	 */
+	private static class Descent {
+		/* longitude and latitude index of the lower-left and upper-right cell */
+		private final long[][] rectangles;
+		private final int order;
+		private final boolean hilbert;
+		private final Ranges ranges = new Ranges();
+
+		Descent(long[][] rectangles, int order, boolean hilbert) {
+			this.rectangles = rectangles;
+			this.order = order;
+			this.hilbert = hilbert;
+		}
+
+		/**
+		 * @param digits
+		 *            the right-aligned key of the cell, two bits per level
+		 * @param x
+		 *            the longitude index of the cell at its level
+		 * @param y
+		 *            the latitude index of the cell at its level
+		 * @param swapped
+		 *            whether the curve within the cell is mirrored along its
+		 *            diagonal, as in {@link HilbertKey}
+		 * @param complemented
+		 *            whether the curve within the cell is turned by 180
+		 *            degrees
+		 */
+		void descend(long digits, int level, long x, long y, boolean swapped, boolean complemented) {
+			int shift = order - level;
+			long minX = x << shift;
+			long maxX = ((x + 1) << shift) - 1;
+			long minY = y << shift;
+			long maxY = ((y + 1) << shift) - 1;
+			boolean intersects = false;
+			for (long[] r : rectangles) {
+				if (minX > r[2] || maxX < r[0] || minY > r[3] || maxY < r[1]) {
+					continue;
+				}
+				if (minX >= r[0] && maxX <= r[2] && minY >= r[1] && maxY <= r[3]) {
+					add(digits, level);
+					return;
+				}
+				intersects = true;
+			}
+			if (!intersects) {
+				return;
+			}
+
+			for (int digit = 0; digit < 4; digit++) {
+				long qx;
+				long qy;
+				boolean childSwapped = swapped;
+				boolean childComplemented = complemented;
+				if (hilbert) {
+					// the quadrant in the frame of the sub-curve, turned back
+					long rx = digit >>> 1;
+					long ry = (digit ^ rx) & 1;
+					qx = complemented ? rx ^ 1 : rx;
+					qy = complemented ? ry ^ 1 : ry;
+					if (swapped) {
+						long swap = qx;
+						qx = qy;
+						qy = swap;
+					}
+					if (ry == 0) {
+						childSwapped = !swapped;
+						childComplemented = complemented ^ (rx == 1);
+					}
+				} else {
+					// longitude comes first, as in a GeoHash
+					qx = digit >>> 1;
+					qy = digit & 1;
+				}
+				descend((digits << 2) | digit, level + 1, 2 * x + qx, 2 * y + qy, childSwapped, childComplemented);
+			}
+		}
+
+		private void add(long digits, int level) {
+			if (level == 0) {
+				ranges.add(0, -1);
+			} else {
+				long first = digits << (64 - 2 * level);
+				ranges.add(first, first | ((1L << (64 - 2 * level)) - 1));
+			}
+		}
+	}
+}
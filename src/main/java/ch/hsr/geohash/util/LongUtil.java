@@ -1,5 +1,7 @@
 package ch.hsr.geohash.util;
 
+import java.util.Arrays;
+
 public class LongUtil {
 	public static final long FIRST_BIT = 0x8000000000000000l;
 
@@ -12,4 +14,95 @@ public class LongUtil {
 		}
 		return result;
 	}
+
+	/**
+	 * maps unsigned order onto signed order, and back: a ^ MIN_VALUE is less
+	 * than b ^ MIN_VALUE exactly if a is less than b as unsigned values.
+	 */
+	public static final long flip(long value) {
+		return value ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * returns the mask of the given number of leading bits, e.g. those of a
+	 * hash with that many significant bits.
+	 */
+	public static final long prefixMask(int bits) {
+		return (bits == 0) ? 0 : FIRST_BIT >> (bits - 1);
+	}
+
+	/**
+	 * spreads the high bits of the key over the low bits of the result, to
+	 * pick the slot of a hash table.
+	 */
+	public static final int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * moves the lower 32 bits of x to the even bit positions.
+	 */
+	public static final long spread(long x) {
+		x &= 0xFFFFFFFFL;
+		x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x;
+	}
+
+	/**
+	 * the inverse of {@link #spread(long)}: gathers the even bits of x.
+	 */
+	public static final long compact(long x) {
+		x &= 0x5555555555555555L;
+		x = (x | (x >>> 1)) & 0x3333333333333333L;
+		x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+		return x;
+	}
+
+	/**
+	 * sorts the keys of the given number of bits as unsigned values, and the
+	 * indexes along with them, one byte per pass.
+	 */
+	static final void radixSort(long[] keys, int[] indexes, int bits) {
+		long[] keyBuffer = new long[keys.length];
+		int[] indexBuffer = new int[keys.length];
+		long[] fromKeys = keys;
+		int[] fromIndexes = indexes;
+		long[] toKeys = keyBuffer;
+		int[] toIndexes = indexBuffer;
+		int[] counts = new int[257];
+		for (int shift = 0; shift < bits; shift += 8) {
+			Arrays.fill(counts, 0);
+			for (long key : fromKeys) {
+				counts[(int) ((key >>> shift) & 0xFF) + 1]++;
+			}
+			for (int i = 1; i < counts.length; i++) {
+				counts[i] += counts[i - 1];
+			}
+			for (int i = 0; i < fromKeys.length; i++) {
+				int slot = counts[(int) ((fromKeys[i] >>> shift) & 0xFF)]++;
+				toKeys[slot] = fromKeys[i];
+				toIndexes[slot] = fromIndexes[i];
+			}
+			long[] swapKeys = fromKeys;
+			fromKeys = toKeys;
+			toKeys = swapKeys;
+			int[] swapIndexes = fromIndexes;
+			fromIndexes = toIndexes;
+			toIndexes = swapIndexes;
+		}
+		if (fromKeys != keys) {
+			System.arraycopy(fromKeys, 0, keys, 0, keys.length);
+			System.arraycopy(fromIndexes, 0, indexes, 0, indexes.length);
+		}
+	}
 }
@@ -0,0 +1,445 @@
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Covers the corridor of a fixed width around a polyline with GeoHashes of mixed precision.
+ *
+ * Unlike {@link LineSegmentBufferGeoHashIterator}, which works in planar degrees and converts the
+ * buffer with a single, latitude-independent factor, all of the geometry here is done in meters:
+ * <ul>
+ *     <li>the polyline is densified along great circles into pieces of at most
+ *     {@link #MAX_SEGMENT_METERS};</li>
+ *     <li>each piece gets its own local projection, scaled by the meridian and prime-vertical radii of
+ *     curvature of the WGS-84 ellipsoid at the piece's mid-latitude, to find the closest point on it;</li>
+ *     <li>the distance to that closest point is measured with the radii of curvature at the mean latitude
+ *     of the two points.</li>
+ * </ul>
+ * This keeps the error of the distance to the polyline well below a meter for buffers of a few
+ * kilometers, at any latitude short of the poles.
+ *
+ * The covering is built by recursive subdivision: a cell whose every point is within the buffer is
+ * emitted as it is, a cell entirely outside of the buffer is dropped, and any other cell is split
+ * in two until the maximum precision is reached.  The interior of the corridor is thus covered by a
+ * few coarse cells, and only its edge by cells of the finest precision.  What happens to the cells
+ * of the finest precision along the edge depends on the method:
+ * <ul>
+ *     <li>{@link #cover(int, int)} keeps those whose center is within the buffer, just like the
+ *     other iterators in this package do;</li>
+ *     <li>{@link #coverAll(int, int)} keeps every cell that the corridor reaches into, so that every
+ *     point within the buffer is inside one of the cells.</li>
+ * </ul>
+ */
+public class PolylineCorridorCoverer {
+    /**
+     * Longest piece, in meters, into which the polyline is cut before projecting it locally.
+     */
+    public static final double MAX_SEGMENT_METERS = 2000.0;
+
+    /**
+     * An edge whose central angle has a smaller sine is all but half a great circle, i.e. it joins (nearly)
+     * antipodal points, and its great circle is not defined.
+     */
+    private static final double MIN_EDGE_SINE = 1e-9;
+
+    /**
+     * Cells with a half-diagonal larger than this are too big for a local projection; they are only
+     * checked against the bounding box of the corridor.
+     */
+    private static final double MAX_LOCAL_METERS = 100000.0;
+
+    /**
+     * The fewest meters a degree of latitude spans anywhere (at the equator).
+     */
+    private static final double MIN_METERS_PER_DEGREE_LATITUDE = 110574.0;
+
+    private final double bufferMeters;
+
+    /**
+     * Densified polyline; the i-th piece runs from (latitudes[i], longitudes[i]) to (latitudes[i+1], longitudes[i+1]).
+     */
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    /**
+     * Per piece: the meters per degree along the parallel and the meridian at its mid-latitude.
+     */
+    private final double[] metersPerDegreeLongitude;
+
+    private final double[] metersPerDegreeLatitude;
+
+    /**
+     * Per piece: the latitude range, used to skip pieces that are obviously too far away.
+     */
+    private final double[] minLatitudes;
+
+    private final double[] maxLatitudes;
+
+    /**
+     * Per piece: how far off, in meters, its local projection may be for anything within the buffer.
+     */
+    private final double[] projectionErrors;
+
+    private final BoundingBox corridorBoundingBox;
+
+    /**
+     * @param polyline the vertices of the polyline; a single vertex describes a circle
+     * @param bufferMeters the half-width of the corridor, in meters
+     * @throws IllegalArgumentException if two consecutive vertices are antipodal, since no single great circle
+     *         joins them
+     */
+    public PolylineCorridorCoverer(List<WGS84Point> polyline, double bufferMeters) {
+        if (polyline == null || polyline.isEmpty()) {
+            throw new IllegalArgumentException("The polyline must have at least one vertex.");
+        }
+        if (!(bufferMeters >= 0)) {
+            throw new IllegalArgumentException("The buffer must not be negative: " + bufferMeters);
+        }
+        this.bufferMeters = bufferMeters;
+
+        List<WGS84Point> points = densify(polyline);
+        int n = points.size();
+        latitudes = new double[n];
+        longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = points.get(i).getLatitude();
+            longitudes[i] = points.get(i).getLongitude();
+        }
+
+        int pieces = Math.max(1, n - 1);
+        metersPerDegreeLongitude = new double[pieces];
+        metersPerDegreeLatitude = new double[pieces];
+        minLatitudes = new double[pieces];
+        maxLatitudes = new double[pieces];
+        projectionErrors = new double[pieces];
+        for (int i = 0; i < pieces; i++) {
+            int j = Math.min(i + 1, n - 1);
+            double midLatitude = 0.5 * (latitudes[i] + latitudes[j]);
+            metersPerDegreeLongitude[i] = GeoHashSizeTable.metersPerDegreeLongitude(midLatitude);
+            metersPerDegreeLatitude[i] = GeoHashSizeTable.metersPerDegreeLatitude(midLatitude);
+            minLatitudes[i] = Math.min(latitudes[i], latitudes[j]);
+            maxLatitudes[i] = Math.max(latitudes[i], latitudes[j]);
+
+            // the scale along the parallel drifts by tan(phi) per radian of latitude away from the mid-latitude
+            double length = Math.hypot((latitudes[j] - latitudes[i]) * metersPerDegreeLatitude[i],
+                    wrapLongitude(longitudes[j] - longitudes[i]) * metersPerDegreeLongitude[i]);
+            double drift = Math.abs(Math.tan(Math.min(89.0, Math.abs(midLatitude)) * VincentyGeodesy.degToRad));
+            projectionErrors[i] = drift * (0.5 * length + bufferMeters) * (length + bufferMeters) / GeodesicDistances.MEAN_RADIUS
+                    + 0.01 * bufferMeters;
+        }
+
+        corridorBoundingBox = getCorridorBoundingBox();
+    }
+
+    /**
+     * Covers the corridor with cells of at most <code>maxPrecision</code> bits.
+     *
+     * @param maxPrecision the precision, in bits, of the cells along the edge of the corridor
+     * @return the cells, in ascending order of their long values
+     */
+    public List<GeoHash> cover(int maxPrecision) {
+        return cover(0, maxPrecision);
+    }
+
+    /**
+     * Covers the corridor with cells of <code>minPrecision</code> to <code>maxPrecision</code> bits.  A cell
+     * of <code>maxPrecision</code> bits along the edge is included if its center is within the buffer.
+     *
+     * @param minPrecision the precision, in bits, of the coarsest cells to be emitted
+     * @param maxPrecision the precision, in bits, of the cells along the edge of the corridor
+     * @return the cells, in ascending order of their long values
+     */
+    public List<GeoHash> cover(int minPrecision, int maxPrecision) {
+        return cover(minPrecision, maxPrecision, false);
+    }
+
+    /**
+     * Covers the corridor with cells of <code>minPrecision</code> to <code>maxPrecision</code> bits, such
+     * that every point within the buffer is inside one of the cells.
+     *
+     * @param minPrecision the precision, in bits, of the coarsest cells to be emitted
+     * @param maxPrecision the precision, in bits, of the cells along the edge of the corridor
+     * @return the cells, in ascending order of their long values
+     */
+    public List<GeoHash> coverAll(int minPrecision, int maxPrecision) {
+        return cover(minPrecision, maxPrecision, true);
+    }
+
+    private List<GeoHash> cover(int minPrecision, int maxPrecision, boolean isConservative) {
+        if (minPrecision < 0 || minPrecision > maxPrecision || maxPrecision > 64) {
+            throw new IllegalArgumentException("Invalid precision range [" + minPrecision + ", " + maxPrecision + "]");
+        }
+        List<GeoHash> cells = new ArrayList<GeoHash>();
+        cover(GeoHash.fromLongValue(0, 0), minPrecision, maxPrecision, isConservative, cells);
+        return cells;
+    }
+
+    private void cover(GeoHash cell, int minPrecision, int maxPrecision, boolean isConservative, List<GeoHash> cells) {
+        BoundingBox box = cell.getBoundingBox();
+        if (!corridorBoundingBox.intersects(box)) {
+            return;
+        }
+
+        int precision = cell.significantBits();
+        double halfDiagonal = getHalfDiagonalInMeters(box);
+        if (halfDiagonal <= MAX_LOCAL_METERS) {
+            WGS84Point center = box.getCenterPoint();
+            double distance = getDistanceInMeters(center.getLatitude(), center.getLongitude());
+            if (distance - halfDiagonal > bufferMeters) {
+                return;
+            }
+            if (distance + halfDiagonal <= bufferMeters && precision >= minPrecision) {
+                cells.add(cell);
+                return;
+            }
+            if (precision >= maxPrecision) {
+                if (isConservative ? isNear(box) : distance <= bufferMeters) {
+                    cells.add(cell);
+                }
+                return;
+            }
+        } else if (precision >= maxPrecision) {
+            cells.add(cell);
+            return;
+        }
+
+        long bits = cell.longValue();
+        cover(GeoHash.fromLongValue(bits, precision + 1), minPrecision, maxPrecision, isConservative, cells);
+        cover(GeoHash.fromLongValue(bits | (GeoHash.FIRST_BIT_FLAGGED >>> precision), precision + 1), minPrecision, maxPrecision, isConservative, cells);
+    }
+
+    /**
+     * @return whether the point is within the buffer around the polyline
+     */
+    public boolean contains(WGS84Point point) {
+        return getDistanceInMeters(point.getLatitude(), point.getLongitude()) <= bufferMeters;
+    }
+
+    /**
+     * @return the distance, in meters, from the point to the closest point of the polyline
+     */
+    public double getDistanceInMeters(WGS84Point point) {
+        return getDistanceInMeters(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * @return the distance, in meters, from the coordinates to the closest point of the polyline
+     */
+    public double getDistanceInMeters(double latitude, double longitude) {
+        double best = Double.POSITIVE_INFINITY;
+        int last = latitudes.length - 1;
+        for (int i = 0; i < metersPerDegreeLatitude.length; i++) {
+            // a piece can't be any closer than its latitude range allows
+            double latitudeGap = Math.max(0, Math.max(minLatitudes[i] - latitude, latitude - maxLatitudes[i]));
+            if (latitudeGap * MIN_METERS_PER_DEGREE_LATITUDE > best) {
+                continue;
+            }
+
+            // find the closest point on the piece in its local projection...
+            int j = Math.min(i + 1, last);
+            double pieceX = wrapLongitude(longitudes[j] - longitudes[i]) * metersPerDegreeLongitude[i];
+            double pieceY = (latitudes[j] - latitudes[i]) * metersPerDegreeLatitude[i];
+            double x = wrapLongitude(longitude - longitudes[i]) * metersPerDegreeLongitude[i];
+            double y = (latitude - latitudes[i]) * metersPerDegreeLatitude[i];
+            double lengthSquared = pieceX * pieceX + pieceY * pieceY;
+            double t = (lengthSquared > 0) ? Math.max(0, Math.min(1, (x * pieceX + y * pieceY) / lengthSquared)) : 0;
+
+            // ...and measure the distance to it around the mean latitude
+            double closestLatitude = latitudes[i] + t * (latitudes[j] - latitudes[i]);
+            double closestLongitude = longitudes[i] + t * wrapLongitude(longitudes[j] - longitudes[i]);
+            double meanLatitude = 0.5 * (latitude + closestLatitude);
+            double dx = wrapLongitude(longitude - closestLongitude) * GeoHashSizeTable.metersPerDegreeLongitude(meanLatitude);
+            double dy = (latitude - closestLatitude) * GeoHashSizeTable.metersPerDegreeLatitude(meanLatitude);
+            best = Math.min(best, Math.sqrt(dx * dx + dy * dy));
+        }
+        return best;
+    }
+
+    /**
+     * Tells whether some point of the box may be within the buffer.  Every piece is tested against the box in
+     * its own local projection; the projection's error is added to the buffer, so that the answer errs on the
+     * side of caution.
+     */
+    private boolean isNear(BoundingBox box) {
+        int last = latitudes.length - 1;
+        for (int i = 0; i < metersPerDegreeLatitude.length; i++) {
+            double limit = bufferMeters + projectionErrors[i];
+            double latitudeGap = Math.max(0, Math.max(minLatitudes[i] - box.getMaxLat(), box.getMinLat() - maxLatitudes[i]));
+            if (latitudeGap * MIN_METERS_PER_DEGREE_LATITUDE > limit) {
+                continue;
+            }
+
+            int j = Math.min(i + 1, last);
+            double kx = metersPerDegreeLongitude[i], ky = metersPerDegreeLatitude[i];
+            double ax = 0, ay = 0;
+            double bx = wrapLongitude(longitudes[j] - longitudes[i]) * kx;
+            double by = (latitudes[j] - latitudes[i]) * ky;
+            double minX = wrapLongitude(box.getMinLon() - longitudes[i]) * kx;
+            double maxX = minX + box.getLongitudeSize() * kx;
+            double minY = (box.getMinLat() - latitudes[i]) * ky;
+            double maxY = (box.getMaxLat() - latitudes[i]) * ky;
+
+            if (getDistanceBetweenSegmentAndRectangle(ax, ay, bx, by, minX, minY, maxX, maxY) <= limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Planar distance between the segment (a, b) and an axis-aligned rectangle; 0 if they intersect.
+     */
+    static double getDistanceBetweenSegmentAndRectangle(double ax, double ay, double bx, double by,
+                                                        double minX, double minY, double maxX, double maxY) {
+        // clip the segment against the rectangle (Liang-Barsky); any remaining part means they intersect
+        double dx = bx - ax, dy = by - ay;
+        double t0 = 0, t1 = 1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { ax - minX, maxX - ax, ay - minY, maxY - ay };
+        boolean isIntersecting = true;
+        for (int k = 0; k < 4 && isIntersecting; k++) {
+            if (p[k] == 0) {
+                isIntersecting = q[k] >= 0;
+            } else {
+                double t = q[k] / p[k];
+                if (p[k] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+                isIntersecting = t0 <= t1;
+            }
+        }
+        if (isIntersecting) {
+            return 0;
+        }
+
+        // otherwise, the closest pair involves an end-point of the segment or a corner of the rectangle
+        double distance = Math.min(getDistanceToRectangle(ax, ay, minX, minY, maxX, maxY),
+                getDistanceToRectangle(bx, by, minX, minY, maxX, maxY));
+        distance = Math.min(distance, getDistanceToSegment(minX, minY, ax, ay, bx, by));
+        distance = Math.min(distance, getDistanceToSegment(minX, maxY, ax, ay, bx, by));
+        distance = Math.min(distance, getDistanceToSegment(maxX, minY, ax, ay, bx, by));
+        distance = Math.min(distance, getDistanceToSegment(maxX, maxY, ax, ay, bx, by));
+        return distance;
+    }
+
+    private static double getDistanceToRectangle(double x, double y, double minX, double minY, double maxX, double maxY) {
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dy = Math.max(0, Math.max(minY - y, y - maxY));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static double getDistanceToSegment(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = (lengthSquared > 0) ? Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / lengthSquared)) : 0;
+        double ex = x - (ax + t * dx), ey = y - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+
+    public double getBufferMeters() {
+        return bufferMeters;
+    }
+
+    /**
+     * Cuts every edge of the polyline that is longer than {@link #MAX_SEGMENT_METERS} along its great circle.
+     */
+    private static List<WGS84Point> densify(List<WGS84Point> polyline) {
+        List<WGS84Point> points = new ArrayList<WGS84Point>();
+        points.add(polyline.get(0));
+        for (int i = 1; i < polyline.size(); i++) {
+            WGS84Point a = polyline.get(i - 1);
+            WGS84Point b = polyline.get(i);
+            double length = GeodesicDistances.HAVERSINE.distanceInMeters(a, b);
+            int pieces = (int) Math.ceil(length / MAX_SEGMENT_METERS);
+            if (pieces > 1) {
+                double[] va = toUnitVector(a), vb = toUnitVector(b);
+                // the central angle from the vectors, which unlike the haversine stays accurate close to pi
+                double cx = va[1] * vb[2] - va[2] * vb[1], cy = va[2] * vb[0] - va[0] * vb[2], cz = va[0] * vb[1] - va[1] * vb[0];
+                double sinSigma = Math.sqrt(cx * cx + cy * cy + cz * cz);
+                if (sinSigma < MIN_EDGE_SINE) {
+                    throw new IllegalArgumentException("The edge from " + a + " to " + b
+                            + " joins antipodal points; add a vertex in between.");
+                }
+                double sigma = Math.atan2(sinSigma, va[0] * vb[0] + va[1] * vb[1] + va[2] * vb[2]);
+                for (int k = 1; k < pieces; k++) {
+                    double fraction = (double) k / pieces;
+                    double wa = Math.sin((1 - fraction) * sigma) / sinSigma;
+                    double wb = Math.sin(fraction * sigma) / sinSigma;
+                    double x = wa * va[0] + wb * vb[0], y = wa * va[1] + wb * vb[1], z = wa * va[2] + wb * vb[2];
+                    points.add(new WGS84Point(
+                            Math.atan2(z, Math.sqrt(x * x + y * y)) / VincentyGeodesy.degToRad,
+                            Math.atan2(y, x) / VincentyGeodesy.degToRad));
+                }
+            }
+            points.add(b);
+        }
+        return points;
+    }
+
+    private static double[] toUnitVector(WGS84Point point) {
+        double phi = point.getLatitude() * VincentyGeodesy.degToRad;
+        double lambda = point.getLongitude() * VincentyGeodesy.degToRad;
+        return new double[] { Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi) };
+    }
+
+    /**
+     * The polyline's bounding box, grown by the buffer.  Spans all longitudes if the corridor gets too close
+     * to a pole or the polyline crosses the 180th meridian.
+     */
+    private BoundingBox getCorridorBoundingBox() {
+        double minLatitude = 90, maxLatitude = -90, minLongitude = 180, maxLongitude = -180;
+        boolean isWrapping = false;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+            isWrapping |= (i > 0 && Math.abs(longitudes[i] - longitudes[i - 1]) > 180);
+        }
+
+        double latitudePadding = bufferMeters / MIN_METERS_PER_DEGREE_LATITUDE;
+        minLatitude = Math.max(-90, minLatitude - latitudePadding);
+        maxLatitude = Math.min(90, maxLatitude + latitudePadding);
+
+        double closestToPole = Math.max(Math.abs(minLatitude), Math.abs(maxLatitude));
+        if (isWrapping || closestToPole >= 89) {
+            minLongitude = -180;
+            maxLongitude = 180;
+        } else {
+            double longitudePadding = bufferMeters / GeoHashSizeTable.metersPerDegreeLongitude(closestToPole);
+            minLongitude = Math.max(-180, minLongitude - longitudePadding);
+            maxLongitude = Math.min(180, maxLongitude + longitudePadding);
+        }
+        return new BoundingBox(minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    /**
+     * An upper bound on the distance from the center of the box to any point in it.
+     */
+    private static double getHalfDiagonalInMeters(BoundingBox box) {
+        double closestToEquator = (box.getMinLat() <= 0 && box.getMaxLat() >= 0) ? 0
+                : Math.min(Math.abs(box.getMinLat()), Math.abs(box.getMaxLat()));
+        double halfWidth = 0.5 * box.getLongitudeSize() * GeoHashSizeTable.metersPerDegreeLongitude(closestToEquator);
+        double farthestFromEquator = Math.max(Math.abs(box.getMinLat()), Math.abs(box.getMaxLat()));
+        double halfHeight = 0.5 * box.getLatitudeSize() * GeoHashSizeTable.metersPerDegreeLatitude(farthestFromEquator);
+        return Math.sqrt(halfWidth * halfWidth + halfHeight * halfHeight);
+    }
+
+    private static double wrapLongitude(double deltaLongitude) {
+        if (deltaLongitude > 180.0) {
+            return deltaLongitude - 360.0;
+        }
+        if (deltaLongitude < -180.0) {
+            return deltaLongitude + 360.0;
+        }
+        return deltaLongitude;
+    }
+}
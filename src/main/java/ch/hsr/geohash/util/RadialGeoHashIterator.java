@@ -1,5 +1,6 @@
 package ch.hsr.geohash.util;
 
+import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.WGS84Point;
 
 /**
@@ -10,68 +11,264 @@ import ch.hsr.geohash.WGS84Point;
  *
  * Built upon a rectangular iterator, this class makes some estimates about in-circle
  * membership.
+ *
+ * Rather than testing every cell of the bounding rectangle, each latitude row is visited once
+ * to find the span of longitude indexes whose centers are within the radius.  Along a fixed
+ * latitude, the distance to the center only grows as the longitude moves away from the
+ * center's, so the span is estimated on a sphere and then corrected with a handful of distance
+ * checks at its two ends.  All cells between the ends are emitted without further geodesy.
+ *
+ * The rows are those of the circle's bounding box.  If the circle contains a pole, only the rows
+ * of the polar cap that lie entirely within the radius span all longitudes; every other row gets
+ * its own span, which may wrap around the antimeridian.
  */
 public class RadialGeoHashIterator extends RectangleGeoHashIterator {
     private double radiusMeters;
 
     private double distanceInMeters = Double.NaN;
 
+    private boolean isDistanceKnown = false;
+
     private WGS84Point centerPoint = null;
 
+    private GeodesicDistance distance;
+
+    /**
+     * Whether the span for the current latitude row (latPosition) has been computed.
+     */
+    private boolean isRowInitialized = false;
+
+    /**
+     * The last longitude index (inclusive) of the current row that is within the radius.  The
+     * indexes of a row are not wrapped, so a row crossing the antimeridian may start below 0 or
+     * end beyond the last column.
+     */
+    private long rowLonMax;
+
+    /**
+     * Index coordinates of the current GeoHash.
+     */
+    private long currentLat;
+
+    private long currentLon;
+
     public RadialGeoHashIterator(double latitude, double longitude, double radiusMeters, int precision) {
+        this(latitude, longitude, radiusMeters, precision, GeodesicDistances.VINCENTY);
+    }
+
+    /**
+     * Uses the cheapest built-in distance formula whose relative error stays within the given
+     * tolerance for distances up to the radius.
+     *
+     * @param relativeTolerance the acceptable relative error of the in-circle test, e.g. 0.01 for one percent
+     */
+    public RadialGeoHashIterator(double latitude, double longitude, double radiusMeters, int precision, double relativeTolerance) {
+        this(latitude, longitude, radiusMeters, precision, GeodesicDistances.forTolerance(radiusMeters, relativeTolerance));
+    }
+
+    /**
+     * @param distance the strategy used to decide whether a GeoHash's center is within the radius
+     */
+    public RadialGeoHashIterator(double latitude, double longitude, double radiusMeters, int precision, GeodesicDistance distance) {
         super();
 
         this.radiusMeters = radiusMeters;
+        this.distance = distance;
 
         this.centerPoint = new WGS84Point(latitude, longitude);
-        
-        double effectiveRadiusMeters = Math.hypot(
-                radiusMeters+0.6*getPrecisionInMetersLatitude(precision),
-                radiusMeters+0.6*getPrecisionInMetersLongitude(precision)
-        );
-        
 
-        WGS84Point ptLL = VincentyGeodesy.moveInDirection(centerPoint, 225.0, effectiveRadiusMeters);
-        WGS84Point ptUR = VincentyGeodesy.moveInDirection(centerPoint, 45.0, effectiveRadiusMeters);
+        // every cell whose center is within the radius lies in a row of the bounding box
+        BoundingBox box = GeodesicDistances.getBoundingBox(latitude, longitude, radiusMeters);
 
         // invoke your ancestor's initializer that creates a GeoHash iterator over the bounding rectangle
         super.initialize(
-                ptLL.getLatitude(), ptLL.getLongitude(),
-                ptUR.getLatitude(), ptUR.getLongitude(),
+                box.getMinLat(), box.getMinLon(),
+                box.getMaxLat(), box.getMaxLon(),
                 precision
         );
     }
 
+    /**
+     * Creates an iterator with the finest precision for which no more than <code>maxCells</code>
+     * GeoHashes can be within the radius.
+     *
+     * @param maxCells the largest acceptable number of GeoHashes
+     */
+    public static RadialGeoHashIterator withMaxCells(double latitude, double longitude, double radiusMeters, long maxCells) {
+        return new RadialGeoHashIterator(latitude, longitude, radiusMeters, getPrecisionForMaxCells(latitude, longitude, radiusMeters, maxCells));
+    }
+
+    /**
+     * Creates an iterator with the coarsest precision for which the GeoHashes along the circle
+     * cover no more than <code>maxFalsePositiveRatio</code> times the circle's area.  That area
+     * bounds the area of the GeoHashes that lie partly outside of the circle.  If that would take
+     * more than <code>maxCells</code> GeoHashes, the finest precision within that budget is used
+     * instead.
+     *
+     * @param maxFalsePositiveRatio the acceptable area outside of the circle, relative to its area
+     * @param maxCells the largest acceptable number of GeoHashes
+     */
+    public static RadialGeoHashIterator withMaxFalsePositiveRatio(double latitude, double longitude, double radiusMeters, double maxFalsePositiveRatio, long maxCells) {
+        int maxPrecision = getPrecisionForMaxCells(latitude, longitude, radiusMeters, maxCells);
+        int precision = 0;
+        while (precision < maxPrecision && getFalsePositiveRatio(latitude, radiusMeters, precision) > maxFalsePositiveRatio) {
+            precision++;
+        }
+        return new RadialGeoHashIterator(latitude, longitude, radiusMeters, precision);
+    }
+
+    /**
+     * Estimates the false-positive area ratio as the area of the band of GeoHashes crossing the
+     * circle (its circumference times the average cell extent) over the area of the circle.
+     *
+     * @param precision the precision, in bits, of the GeoHashes
+     */
+    public static double getFalsePositiveRatio(double latitude, double radiusMeters, int precision) {
+        if (!(radiusMeters > 0)) return Double.POSITIVE_INFINITY;
+
+        double width = GeoHashSizeTable.getCellWidthInMeters(latitude, precision);
+        double height = GeoHashSizeTable.getCellHeightInMeters(latitude, precision);
+        return (width + height) / radiusMeters;
+    }
+
+    /**
+     * Every GeoHash whose center is within the radius intersects the circle's bounding box, so the
+     * number of GeoHashes spanning that box is an upper bound for the iteration.
+     */
+    private static int getPrecisionForMaxCells(double latitude, double longitude, double radiusMeters, long maxCells) {
+        BoundingBox box = GeodesicDistances.getBoundingBox(latitude, longitude, radiusMeters);
+        return GeoHashIterator.getPrecisionForMaxCells(box.getMinLat(), box.getMinLon(), box.getMaxLat(), box.getMaxLon(), maxCells);
+    }
+
+    /**
+     * Walks the bounding rectangle row by row, but only over the span of each row that lies
+     * within the radius.
+     *
+     * @return whether the iteration is over
+     */
     public boolean advance() {
-        boolean isDone = false;
-
-        // identify the next pair of coordinates that is likely to be inside the circle of interest
-        while (!isDone) {
-            // if you've run out of GeoHashes within the bounding rectangle, you're done
-            if (!super.advance()) {
-                distanceInMeters = Double.NaN;
-                return false;
+        isDistanceKnown = false;
+        distanceInMeters = Double.NaN;
+
+        while (latPosition <= latBitsUR) {
+            if (!isRowInitialized) {
+                initializeRow();
+            }
+
+            if (lonPosition <= rowLonMax) {
+                currentLat = latPosition;
+                currentLon = lonPosition & ((1L << lonPrecision) - 1);
+                setCurrentGeoHash(composeGeoHashFromBits(latPosition, currentLon, latPrecision, lonPrecision));
+                lonPosition++;
+                return true;
             }
 
-            // this GeoHash is inside the bounding rectangle, but may not be within our circle...
+            // this row is exhausted; move up
+            latPosition++;
+            isRowInitialized = false;
+        }
+
+        // if you've run out of rows within the bounding rectangle, you're done
+        setCurrentGeoHash(null);
+        return false;
+    }
+
+    /**
+     * Identifies the span of longitude indexes [lonPosition, rowLonMax] of the current row whose
+     * cell centers are within the radius.  An empty row yields lonPosition > rowLonMax.  The span
+     * never holds more than one full turn of columns.
+     */
+    private void initializeRow() {
+        isRowInitialized = true;
+
+        double rowLatitude = getCellLatitude(latPosition);
+        long columns = 1L << lonPrecision;
+
+        // the column containing the center's longitude is the closest one in this row
+        long nearest = (long) Math.floor((centerPoint.getLongitude() + 180.0) / incLongitudeDegrees);
+        nearest = Math.max(0, Math.min(columns - 1, nearest));
+        if (!isWithinRadius(rowLatitude, nearest)) {
+            lonPosition = 0;
+            rowLonMax = -1;
+            return;
+        }
+
+        // estimate the span on a sphere...
+        double halfWidth = getSphericalHalfWidthInDegrees(rowLatitude);
+        long lo = (long) Math.floor((centerPoint.getLongitude() - halfWidth + 180.0) / incLongitudeDegrees);
+        long hi = (long) Math.floor((centerPoint.getLongitude() + halfWidth + 180.0) / incLongitudeDegrees);
+        lo = Math.min(nearest, lo);
+        hi = Math.max(nearest, hi);
+        if (hi - lo + 1 >= columns) {
+            // the row may lie entirely within the radius; the farthest columns are at the ends
+            lo = nearest - (columns - 1) / 2;
+            hi = lo + columns - 1;
+        }
 
-            // compute the distance between the center point and the middle of the current GeoHash
-            distanceInMeters = VincentyGeodesy.distanceInMeters(centerPoint, new WGS84Point(getCurrentGeoHash().getPoint()));
-            isDone = (distanceInMeters <= radiusMeters);
+        // ...and correct both ends against the actual distance
+        if (isWithinRadius(rowLatitude, lo)) {
+            while (hi - lo + 1 < columns && isWithinRadius(rowLatitude, lo - 1)) lo--;
+        } else {
+            do lo++; while (!isWithinRadius(rowLatitude, lo));
+        }
+        if (isWithinRadius(rowLatitude, hi)) {
+            while (hi - lo + 1 < columns && isWithinRadius(rowLatitude, hi + 1)) hi++;
+        } else {
+            do hi--; while (!isWithinRadius(rowLatitude, hi));
         }
 
-        // if you get this far, you have a valid next GeoHash cell
-        return true;
+        lonPosition = lo;
+        rowLonMax = hi;
+    }
+
+    /**
+     * On a sphere, the longitude difference at which a point at the given latitude is exactly
+     * one radius away from the center.
+     *
+     * @return the half-width in degrees; 0 if the row doesn't reach the circle, 180 if the entire row is inside
+     */
+    private double getSphericalHalfWidthInDegrees(double rowLatitude) {
+        double phiC = centerPoint.getLatitude() * VincentyGeodesy.degToRad;
+        double phiR = rowLatitude * VincentyGeodesy.degToRad;
+        double cosDeltaLambda = (Math.cos(radiusMeters / GeodesicDistances.MEAN_RADIUS) - Math.sin(phiR) * Math.sin(phiC))
+                / (Math.cos(phiR) * Math.cos(phiC));
+
+        if (Double.isNaN(cosDeltaLambda) || cosDeltaLambda <= -1.0) return 180.0;
+        if (cosDeltaLambda >= 1.0) return 0.0;
+        return Math.acos(cosDeltaLambda) / VincentyGeodesy.degToRad;
+    }
+
+    private boolean isWithinRadius(double rowLatitude, long lon) {
+        return distance.distanceInMeters(centerPoint.getLatitude(), centerPoint.getLongitude(), rowLatitude, getCellLongitude(lon)) <= radiusMeters;
+    }
+
+    private double getCellLatitude(long lat) {
+        return -90.0 + (lat + 0.5) * incLatitudeDegrees;
+    }
+
+    private double getCellLongitude(long lon) {
+        return -180.0 + ((lon & ((1L << lonPrecision) - 1)) + 0.5) * incLongitudeDegrees;
     }
 
     /**
-     * Returns the estimated distance of the current GeoHash from the center point.
+     * Returns the estimated distance of the current GeoHash from the center point.  This is only
+     * computed when asked for.
      *
      * @return the estimated distance of the current GeoHash from the center point
      */
     public double getDistanceInMeters() {
+        if (!isDistanceKnown && getCurrentGeoHash() != null) {
+            distanceInMeters = distance.distanceInMeters(centerPoint.getLatitude(), centerPoint.getLongitude(), getCellLatitude(currentLat), getCellLongitude(currentLon));
+            isDistanceKnown = true;
+        }
         return distanceInMeters;
     }
 
-}
+    /**
+     * @return the strategy used to measure distances from the center point
+     */
+    public GeodesicDistance getDistance() {
+        return distance;
+    }
 
+}
@@ -1,5 +1,6 @@
 package ch.hsr.geohash.util;
 
+import ch.hsr.geohash.GeoHash;
 import ch.hsr.geohash.WGS84Point;
 
 import java.util.ArrayList;
@@ -40,6 +41,9 @@ import java.util.ArrayList;
  * Note that the dimension-specific bit-strings proceed in order (longitude from 0 to 7; latitude from 0 to 3)
  * along each axis.  That allows us to work on these bit-strings as coordinate indexes, making it simple to
  * iterate over the GeoHashes within a rectangle (and make some estimates about in-circle membership).
+ *
+ * A rectangle whose lower-left longitude is greater than its upper-right longitude extends east across
+ * the antimeridian; the longitude index then wraps from the last column back to the first.
  */
 public class RectangleGeoHashIterator extends GeoHashIterator {
     /**
@@ -67,7 +71,86 @@ public class RectangleGeoHashIterator extends GeoHashIterator {
      */
     public RectangleGeoHashIterator(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, int precision) {
         this();
-        initialize(latitudeLL+OFFSET_DEGREES, longitudeLL+OFFSET_DEGREES, latitudeUR-OFFSET_DEGREES, longitudeUR-OFFSET_DEGREES, precision);
+        double[] inset = insetCorners(latitudeLL, longitudeLL, latitudeUR, longitudeUR);
+        initialize(inset[0], inset[1], inset[2], inset[3], precision);
+    }
+
+    /**
+     * Moves the corners inward by <code>OFFSET_DEGREES</code>, without turning a rectangle that is
+     * narrower than that into one that crosses the antimeridian.
+     */
+    private static double[] insetCorners(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR) {
+        double lonLL = longitudeLL+OFFSET_DEGREES, lonUR = longitudeUR-OFFSET_DEGREES;
+        if (longitudeLL <= longitudeUR && lonLL > lonUR) {
+            lonLL = lonUR = 0.5 * (longitudeLL + longitudeUR);
+        }
+        return new double[]{latitudeLL+OFFSET_DEGREES, lonLL, latitudeUR-OFFSET_DEGREES, lonUR};
+    }
+
+    /**
+     * Creates an iterator with the finest precision for which the rectangle spans no more than
+     * <code>maxCells</code> GeoHashes.
+     *
+     * @param maxCells the largest acceptable number of GeoHashes
+     */
+    public static RectangleGeoHashIterator withMaxCells(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, long maxCells) {
+        double[] inset = insetCorners(latitudeLL, longitudeLL, latitudeUR, longitudeUR);
+        int precision = getPrecisionForMaxCells(inset[0], inset[1], inset[2], inset[3], maxCells);
+        return new RectangleGeoHashIterator(latitudeLL, longitudeLL, latitudeUR, longitudeUR, precision);
+    }
+
+    /**
+     * Creates an iterator with the coarsest precision for which the GeoHashes cover no more than
+     * <code>maxFalsePositiveRatio</code> times the rectangle's area outside of the rectangle.  If
+     * that would take more than <code>maxCells</code> GeoHashes, the finest precision within that
+     * budget is used instead.
+     *
+     * @param maxFalsePositiveRatio the acceptable area outside of the rectangle, relative to its area
+     * @param maxCells the largest acceptable number of GeoHashes
+     */
+    public static RectangleGeoHashIterator withMaxFalsePositiveRatio(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, double maxFalsePositiveRatio, long maxCells) {
+        double[] inset = insetCorners(latitudeLL, longitudeLL, latitudeUR, longitudeUR);
+        double latLL = inset[0], lonLL = inset[1], latUR = inset[2], lonUR = inset[3];
+
+        int maxPrecision = getPrecisionForMaxCells(latLL, lonLL, latUR, lonUR, maxCells);
+        int precision = 0;
+        while (precision < maxPrecision && getFalsePositiveRatio(latLL, lonLL, latUR, lonUR, precision) > maxFalsePositiveRatio) {
+            precision++;
+        }
+        return new RectangleGeoHashIterator(latitudeLL, longitudeLL, latitudeUR, longitudeUR, precision);
+    }
+
+    /**
+     * Computes how much area the GeoHashes spanning a rectangle cover outside of it, relative to the
+     * rectangle's own area.  Areas are taken on a sphere.
+     *
+     * @param precision the precision, in bits, of the GeoHashes
+     * @return the false-positive area ratio; infinite for a degenerate rectangle
+     */
+    public static double getFalsePositiveRatio(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, int precision) {
+        int latPrecision = (precision >> 1);
+        int lonPrecision = latPrecision + (precision % 2);
+        double incLatitude = 180.0 / Math.scalb(1.0, latPrecision);
+        double incLongitude = 360.0 / Math.scalb(1.0, lonPrecision);
+
+        double coveredLatLL = -90.0 + getCellIndex(latitudeLL, -90.0, 180.0, latPrecision) * incLatitude;
+        double coveredLatUR = -90.0 + (getCellIndex(latitudeUR, -90.0, 180.0, latPrecision) + 1) * incLatitude;
+        double coveredLongitudeSpan = getLongitudeCellSpan(longitudeLL, longitudeUR, lonPrecision) * incLongitude;
+
+        double longitudeSpan = longitudeUR - longitudeLL;
+        if (longitudeSpan < 0) longitudeSpan += 360.0;
+        double area = getSphericalArea(latitudeLL, latitudeUR, longitudeSpan);
+        if (!(area > 0)) return Double.POSITIVE_INFINITY;
+
+        return getSphericalArea(coveredLatLL, coveredLatUR, coveredLongitudeSpan) / area - 1.0;
+    }
+
+    /**
+     * The area of a latitude/longitude rectangle on the unit sphere.
+     */
+    private static double getSphericalArea(double latitudeLL, double latitudeUR, double longitudeSpan) {
+        return longitudeSpan * VincentyGeodesy.degToRad
+                * (Math.sin(latitudeUR * VincentyGeodesy.degToRad) - Math.sin(latitudeLL * VincentyGeodesy.degToRad));
     }
 
     /**
@@ -80,6 +163,11 @@ public class RectangleGeoHashIterator extends GeoHashIterator {
      * @param precision the precision, in bits, of the GeoHashes sought
      */
     protected void initialize(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, int precision) {
+        if (longitudeLL > longitudeUR) {
+            super.initialize(getWrappingGeoHashes(latitudeLL, longitudeLL, latitudeUR, longitudeUR, precision), precision, true);
+            return;
+        }
+
         ArrayList<WGS84Point> points = new ArrayList<WGS84Point>();
         points.add(new WGS84Point(latitudeLL, longitudeLL));
         points.add(new WGS84Point(latitudeUR, longitudeUR));
@@ -87,6 +175,28 @@ public class RectangleGeoHashIterator extends GeoHashIterator {
         super.initialize(getBoundingGeoHashes(points, precision, 0.0), precision, true);
     }
 
+    /**
+     * The lower-left and upper-right corners of a rectangle that crosses the antimeridian, whose
+     * lower-left column therefore lies east of its upper-right column.  If both corners fall into
+     * the same column, the rectangle spans all columns.
+     */
+    private static GeoHash[] getWrappingGeoHashes(double latitudeLL, double longitudeLL, double latitudeUR, double longitudeUR, int precision) {
+        int latPrecision = (precision >> 1);
+        int lonPrecision = latPrecision + (precision % 2);
+
+        long[] ll = decomposeGeoHashBits(GeoHash.withBitPrecision(Math.min(latitudeLL, latitudeUR), longitudeLL, precision));
+        long[] ur = decomposeGeoHashBits(GeoHash.withBitPrecision(Math.max(latitudeLL, latitudeUR), longitudeUR, precision));
+        if (ll[1] == ur[1]) {
+            ll[1] = 0;
+            ur[1] = (1L << lonPrecision) - 1;
+        }
+
+        return new GeoHash[]{
+                composeGeoHashFromBits(ll[0], ll[1], latPrecision, lonPrecision),
+                composeGeoHashFromBits(ur[0], ur[1], latPrecision, lonPrecision)
+        };
+    }
+
     /**
      * Internal method that figures out whether the iterator is finished, and if not, updates the
      * current GeoHash and advances the counters.
@@ -110,10 +220,12 @@ public class RectangleGeoHashIterator extends GeoHashIterator {
         // fetch this current GeoHash
         setCurrentGeoHash(composeGeoHashFromBits(latPosition, lonPosition, latPrecision, lonPrecision));
 
-        // increment the counters in either case (found a keeper or not)
-        if (++lonPosition > lonBitsUR) {
+        // increment the counters in either case (found a keeper or not), wrapping around the antimeridian
+        if (lonPosition == lonBitsUR) {
             latPosition++;
             lonPosition = lonBitsLL;
+        } else {
+            lonPosition = (lonPosition + 1) & ((1L << lonPrecision) - 1);
         }
 
         // if you get this far, there is another GeoHash
@@ -32,7 +32,7 @@ public class TrackGeoHashIterator extends GeoHashIterator {
     /**
      * Utility class to represent a 2-point line segment.
      */
-    class Segment {
+    static class Segment {
         WGS84Point LL;
         WGS84Point UR;
         WGS84Point a;
@@ -118,6 +118,83 @@ public class TrackGeoHashIterator extends GeoHashIterator {
      */
     public final static double NEARLY_ZERO_DEGREES = GeoHashIterator.convertRadiusInMetersToDegrees(0.1);
 
+    /**
+     * Creates an iterator with the finest precision for which no more than <code>maxCells</code>
+     * GeoHashes can be within the buffer of the track.
+     *
+     * The budget is checked against the sum of per-segment bounds:  each row of the segment's
+     * buffered bounding box is charged only the columns that the buffered segment can reach at
+     * that latitude, which is what the per-segment iterators visit.  Cells shared by neighbouring
+     * segments are counted once per segment, so a track with many short segments may return
+     * noticeably fewer cells than the budget; a single straight segment stays within a factor of
+     * about four.
+     *
+     * @param maxCells the largest acceptable number of GeoHashes
+     */
+    public static TrackGeoHashIterator withMaxCells(Iterable<WGS84Point> pointsGiven, WGS84Point[] filterRectangle, double radiusInMeters, long maxCells) {
+        checkMaxCells(maxCells);
+
+        // buffer every segment once; only the cell counts depend on the precision
+        ArrayList<WGS84Point> points = new ArrayList<WGS84Point>();
+        for (WGS84Point point : pointsGiven) points.add(point);
+
+        // the per-segment iterators buffer in planar degrees, so never pad by less than they do
+        double radiusInDegrees = convertRadiusInMetersToDegrees(radiusInMeters);
+        double padLatitude = Math.max(radiusInDegrees, radiusInMeters / GeoHashSizeTable.getMetersPerDegreeLatitude(0.0));
+
+        ArrayList<double[]> corridors = new ArrayList<double[]>();
+        for (int i = (points.size() > 1) ? 1 : 0; i < points.size(); i++) {
+            Segment segment = new Segment(points.get(Math.max(0, i - 1)), points.get(i));
+            if (!segment.intersects(filterRectangle)) continue;
+
+            double poleward = Math.min(90.0, Math.max(Math.abs(segment.LL.getLatitude()), Math.abs(segment.UR.getLatitude())) + padLatitude);
+            double metersPerDegree = GeoHashSizeTable.getMetersPerDegreeLongitude(poleward);
+            double padLongitude = (metersPerDegree > 0) ? Math.max(radiusInDegrees, radiusInMeters / metersPerDegree) : 360.0;
+
+            // how far the buffered segment can reach east-west at any single latitude
+            double spanLatitude = segment.UR.getLatitude() - segment.LL.getLatitude();
+            double spanLongitude = segment.UR.getLongitude() - segment.LL.getLongitude();
+            double reach = spanLongitude + 2.0 * padLongitude;
+            if (spanLatitude > 0) {
+                reach = Math.min(reach, spanLongitude / spanLatitude * 2.0 * padLatitude + 2.0 * padLongitude);
+            }
+
+            corridors.add(new double[]{
+                    Math.max(-90.0, segment.LL.getLatitude() - padLatitude), Math.max(-180.0, segment.LL.getLongitude() - padLongitude),
+                    Math.min(90.0, segment.UR.getLatitude() + padLatitude), Math.min(180.0, segment.UR.getLongitude() + padLongitude),
+                    reach
+            });
+        }
+
+        int precision = 0;
+        while (precision < MAX_AUTOMATIC_PRECISION) {
+            long count = 0;
+            for (double[] corridor : corridors) {
+                count += getCorridorCellCount(corridor, precision + 1);
+            }
+            if (count > maxCells) break;
+            precision++;
+        }
+
+        return new TrackGeoHashIterator(pointsGiven, filterRectangle, radiusInMeters, precision);
+    }
+
+    /**
+     * Bounds the cells of one buffered segment:  every row of its bounding box, times the columns
+     * that an east-west extent of <code>corridor[4]</code> degrees can touch in that row.
+     */
+    static long getCorridorCellCount(double[] corridor, int precision) {
+        int latPrecision = (precision >> 1);
+        int lonPrecision = latPrecision + (precision % 2);
+
+        long rows = getCellIndex(corridor[2], -90.0, 180.0, latPrecision) - getCellIndex(corridor[0], -90.0, 180.0, latPrecision) + 1;
+        long columns = getLongitudeCellSpan(corridor[1], corridor[3], lonPrecision);
+        double reachInColumns = Math.floor(corridor[4] / 360.0 * Math.scalb(1.0, lonPrecision)) + 2.0;
+        if (reachInColumns < columns) columns = (long) reachInColumns;
+
+        return rows * columns;
+    }
+
     /**
      * Simple constructor.
      */
@@ -3,24 +3,32 @@ package ch.hsr.geohash.util;
 import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by IntelliJ IDEA. User: kevin Date: Jan 17, 2011 Time: 12:03:47 PM
+ *
+ * The constructor spans the smallest box around both hashes, whatever their order.  Only the
+ * factories taking a {@link BoundingBox} that crosses the antimeridian create a box extending
+ * east from the bottom-left hash across the antimeridian to the top-right one.
  */
 public class TwoGeoHashBoundingBox {
     private BoundingBox boundingBox;
     private GeoHash bottomLeft;
     private GeoHash topRight;
+    private boolean crossesAntimeridian;
 
     public static TwoGeoHashBoundingBox withCharacterPrecision(BoundingBox bbox, int numberOfCharacters) {
         GeoHash bottomLeft = GeoHash.withCharacterPrecision(bbox.getMinLat(), bbox.getMinLon(), numberOfCharacters);
         GeoHash topRight = GeoHash.withCharacterPrecision(bbox.getMaxLat(), bbox.getMaxLon(), numberOfCharacters);
-        return new TwoGeoHashBoundingBox(bottomLeft, topRight);
+        return new TwoGeoHashBoundingBox(bottomLeft, topRight, bbox.crossesAntimeridian());
     }
 
     public static TwoGeoHashBoundingBox withBitPrecision(BoundingBox bbox, int numberOfBits) {
         GeoHash bottomLeft = GeoHash.withBitPrecision(bbox.getMinLat(), bbox.getMinLon(), numberOfBits);
         GeoHash topRight = GeoHash.withBitPrecision(bbox.getMaxLat(), bbox.getMaxLon(), numberOfBits);
-        return new TwoGeoHashBoundingBox(bottomLeft, topRight);
+        return new TwoGeoHashBoundingBox(bottomLeft, topRight, bbox.crossesAntimeridian());
     }
 
     /**
@@ -52,14 +60,61 @@ public class TwoGeoHashBoundingBox {
     }
 
     public TwoGeoHashBoundingBox(GeoHash bottomLeft, GeoHash topRight) {
+        this(bottomLeft, topRight, false);
+    }
+
+    /**
+     * @param wrapEast whether to extend east from the bottom-left hash across the antimeridian,
+     * which only happens if the bottom-left hash lies in a column east of the top-right one
+     */
+    private TwoGeoHashBoundingBox(GeoHash bottomLeft, GeoHash topRight, boolean wrapEast) {
         if (bottomLeft.significantBits() != topRight.significantBits()) {
             throw new IllegalArgumentException(
                     "Does it make sense to iterate between hashes that have different precisions?");
         }
         this.bottomLeft = GeoHash.fromLongValue(bottomLeft.longValue(), bottomLeft.significantBits());
         this.topRight = GeoHash.fromLongValue(topRight.longValue(), topRight.significantBits());
-        this.boundingBox = this.bottomLeft.getBoundingBox();
-        this.boundingBox.expandToInclude(this.topRight.getBoundingBox());
+        this.crossesAntimeridian = wrapEast && GeoHashIterator.decomposeGeoHashBits(this.bottomLeft)[1]
+                > GeoHashIterator.decomposeGeoHashBits(this.topRight)[1];
+        BoundingBox bl = this.bottomLeft.getBoundingBox();
+        BoundingBox tr = this.topRight.getBoundingBox();
+        if (!crossesAntimeridian) {
+            this.boundingBox = bl;
+            this.boundingBox.expandToInclude(tr);
+        } else {
+            double minLat = Math.min(bl.getMinLat(), tr.getMinLat());
+            double maxLat = Math.max(bl.getMaxLat(), tr.getMaxLat());
+            this.boundingBox = BoundingBox.fromWestToEast(minLat, maxLat, bl.getMinLon(), tr.getMaxLon());
+        }
+    }
+
+    /**
+     * @return whether the box extends east across the antimeridian
+     */
+    public boolean crossesAntimeridian() {
+        return crossesAntimeridian;
+    }
+
+    /**
+     * @return this box, or its parts west and east of the antimeridian if it crosses it, the
+     * western part first
+     */
+    public List<TwoGeoHashBoundingBox> splitAtAntimeridian() {
+        List<TwoGeoHashBoundingBox> parts = new ArrayList<TwoGeoHashBoundingBox>(2);
+        if (!crossesAntimeridian) {
+            parts.add(this);
+            return parts;
+        }
+        int bits = bottomLeft.significantBits();
+        int latBits = bits >> 1;
+        int lonBits = latBits + (bits % 2);
+        long[] bl = GeoHashIterator.decomposeGeoHashBits(bottomLeft);
+        long[] tr = GeoHashIterator.decomposeGeoHashBits(topRight);
+        parts.add(new TwoGeoHashBoundingBox(bottomLeft,
+                GeoHashIterator.composeGeoHashFromBits(tr[0], (1L << lonBits) - 1, latBits, lonBits)));
+        parts.add(new TwoGeoHashBoundingBox(
+                GeoHashIterator.composeGeoHashFromBits(bl[0], 0, latBits, lonBits), topRight));
+        return parts;
     }
 
     public BoundingBox getBoundingBox() {
@@ -74,22 +74,66 @@ public class VincentyGeodesy {
 
 		double newLat = lat2 / degToRad;
 		double newLon = point.getLongitude() + L / degToRad;
-		
-		newLon = (newLon >  180.0 ? 360.0 - newLon : newLon);
-		newLon = (newLon < -180.0 ? 360.0 + newLon : newLon);
-		
+
+		// wrap around the antimeridian
+		if (newLon > 180.0) {
+			newLon -= 360.0;
+		} else if (newLon < -180.0) {
+			newLon += 360.0;
+		}
+
 		return new WGS84Point(newLat, newLon);
 	}
 
 	public static double distanceInMeters(WGS84Point foo, WGS84Point bar) {
+		return distanceInMeters(foo.getLatitude(), foo.getLongitude(), bar.getLatitude(), bar.getLongitude());
+	}
+
+	/**
+	 * same as {@link #distanceInMeters(WGS84Point, WGS84Point)}, but works on
+	 * plain coordinates so that callers in tight loops don't have to allocate
+	 * {@link WGS84Point}s.
+	 */
+	public static double distanceInMeters(double fooLatitude, double fooLongitude, double barLatitude,
+			double barLongitude) {
+		double tanU1 = (1 - f) * Math.tan(fooLatitude * degToRad);
+		double cosU1 = 1 / Math.sqrt((1 + tanU1 * tanU1)), sinU1 = tanU1 * cosU1;
+		double tanU2 = (1 - f) * Math.tan(barLatitude * degToRad);
+		double cosU2 = 1 / Math.sqrt((1 + tanU2 * tanU2)), sinU2 = tanU2 * cosU2;
+		return distanceInMeters(sinU1, cosU1, sinU2, cosU2, (barLongitude - fooLongitude) * degToRad);
+	}
+
+	/**
+	 * computes the distances from one center point to many others.<br>
+	 * The center's reduced latitude is only computed once, and the other
+	 * points are passed as plain arrays, so this is considerably cheaper than
+	 * calling {@link #distanceInMeters(WGS84Point, WGS84Point)} in a loop.
+	 * 
+	 * @param out
+	 *            receives the distance in meters to the i-th point at index i;
+	 *            must be at least as long as the coordinate arrays
+	 */
+	public static void distancesFrom(WGS84Point center, double[] latitudes, double[] longitudes, double[] out) {
+		if (latitudes.length != longitudes.length || out.length < latitudes.length) {
+			throw new IllegalArgumentException("latitudes and longitudes must have the same length, out at least that");
+		}
+		double tanU1 = (1 - f) * Math.tan(center.getLatitude() * degToRad);
+		double cosU1 = 1 / Math.sqrt((1 + tanU1 * tanU1)), sinU1 = tanU1 * cosU1;
+		double centerLongitude = center.getLongitude();
+		for (int i = 0; i < latitudes.length; i++) {
+			double tanU2 = (1 - f) * Math.tan(latitudes[i] * degToRad);
+			double cosU2 = 1 / Math.sqrt((1 + tanU2 * tanU2)), sinU2 = tanU2 * cosU2;
+			out[i] = distanceInMeters(sinU1, cosU1, sinU2, cosU2, (longitudes[i] - centerLongitude) * degToRad);
+		}
+	}
+
+	/**
+	 * Vincenty's inverse formula, starting from the sine and cosine of both
+	 * reduced latitudes and the difference in longitude (in radians).
+	 */
+	private static double distanceInMeters(double sinU1, double cosU1, double sinU2, double cosU2, double L) {
 		double a = 6378137, b = 6356752.3142, f = 1 / 298.257223563; // WGS-84
 		// ellipsiod
-		double L = (bar.getLongitude() - foo.getLongitude()) * degToRad;
-		double U1 = Math.atan((1 - f) * Math.tan(foo.getLatitude() * degToRad));
-		double U2 = Math.atan((1 - f) * Math.tan(bar.getLatitude() * degToRad));
-		double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
-		double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
-
 		double cosSqAlpha, sinSigma, cos2SigmaM, cosSigma, sigma;
 
 		double lambda = L, lambdaP, iterLimit = 20;
@@ -105,7 +149,7 @@ public class VincentyGeodesy {
 			double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
 			cosSqAlpha = 1 - sinAlpha * sinAlpha;
 			cos2SigmaM = cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
-			if (cos2SigmaM == Double.NaN) {
+			if (Double.isNaN(cos2SigmaM)) {
 				cos2SigmaM = 0; // equatorial line: cosSqAlpha=0 (�6)
 			}
 			double C = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
@@ -77,6 +77,43 @@ public class BoundingBoxTest {
 		assertDoesNotIntersect(bbox, new BoundingBox(5, -15, 42, 43));
 	}
 
+	@Test
+	public void testBoxAcrossTheAntimeridian() {
+		BoundingBox box = BoundingBox.fromWestToEast(-10, 10, 170, -160);
+		assertTrue(box.crossesAntimeridian());
+		assertFalse(c.crossesAntimeridian());
+		assertEquals(30, box.getLongitudeSize(), DELTA);
+		assertEquals(-175, box.getCenterPoint().getLongitude(), DELTA);
+		assertContains(box, new WGS84Point(0, 175));
+		assertContains(box, new WGS84Point(0, -165));
+		assertContains(box, new WGS84Point(0, 180));
+		assertNotContains(box, new WGS84Point(0, 0));
+		assertNotContains(box, new WGS84Point(0, -150));
+
+		assertEquals(2, box.splitAtAntimeridian().size());
+		assertEquals(new BoundingBox(-10, 10, 170, 180), box.splitAtAntimeridian().get(0));
+		assertEquals(new BoundingBox(-10, 10, -180, -160), box.splitAtAntimeridian().get(1));
+
+		assertIntersects(box, new BoundingBox(5, -5, -170, -100));
+		assertIntersects(box, BoundingBox.fromWestToEast(5, -5, 100, -170));
+		assertDoesNotIntersect(box, new BoundingBox(5, -5, -150, 160));
+	}
+
+	@Test
+	public void testExpandAcrossTheAntimeridian() {
+		BoundingBox box = BoundingBox.fromWestToEast(-10, 10, 170, -160);
+		box.expandToInclude(new BoundingBox(0, 20, -170, -150));
+		assertEquals(BoundingBox.fromWestToEast(-10, 20, 170, -150), box);
+
+		// growing west is narrower than growing east around the globe
+		box.expandToInclude(new BoundingBox(0, 1, 100, 110));
+		assertEquals(BoundingBox.fromWestToEast(-10, 20, 100, -150), box);
+
+		BoundingBox almostAround = BoundingBox.fromWestToEast(0, 1, 10, -10);
+		almostAround.expandToInclude(new BoundingBox(0, 1, -20, 20));
+		assertEquals(new BoundingBox(0, 1, -180, 180), almostAround);
+	}
+
 	private void assertDoesNotIntersect(BoundingBox bbox, BoundingBox boundingBox) {
 		assertFalse(bbox + " should NOT intersect " + boundingBox, bbox.intersects(boundingBox));
 		assertFalse(boundingBox + " should NOT intersect " + bbox, boundingBox.intersects(bbox));
@@ -0,0 +1,96 @@
+package ch.hsr.geohash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.queries.CompiledGeoHashQuery;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashQuery;
+import ch.hsr.geohash.util.PolylineCorridorCoverer;
+
+public class CompiledGeoHashQueryTest {
+
+	@Test
+	public void testCompiledCoveringMatchesLinearScan() {
+		List<WGS84Point> route = Arrays.asList(new WGS84Point(47.37, 8.54), new WGS84Point(47.42, 8.62),
+				new WGS84Point(47.40, 8.75), new WGS84Point(47.45, 8.90));
+		List<GeoHash> cells = new PolylineCorridorCoverer(route, 500.0).cover(30, 40);
+		assertTrue(cells.size() > 100);
+
+		for (int prefixBits : new int[] { 0, 5, 12, 20 }) {
+			CompiledGeoHashQuery compiled = CompiledGeoHashQuery.compile(cells, prefixBits);
+			assertTrue(compiled.getNumberOfRanges() <= cells.size());
+			Random rand = new Random(4711);
+			for (int i = 0; i < 20000; i++) {
+				double lat = 47.3 + 0.2 * rand.nextDouble();
+				double lon = 8.5 + 0.45 * rand.nextDouble();
+				boolean expected = false;
+				for (GeoHash cell : cells) {
+					if (cell.contains(new WGS84Point(lat, lon))) {
+						expected = true;
+						break;
+					}
+				}
+				assertEquals(expected, compiled.contains(lat, lon));
+			}
+		}
+	}
+
+	@Test
+	public void testContainsHashes() {
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		GeoHash parent = GeoHash.fromGeohashString("u0qj");
+		// all 32 children of one cell, and a single child of another
+		for (int i = 0; i < 32; i++) {
+			cells.add(GeoHash.fromLongValue(parent.longValue() | ((long) i << 39), 25));
+		}
+		cells.add(GeoHash.fromGeohashString("u0qm7"));
+		CompiledGeoHashQuery compiled = CompiledGeoHashQuery.compile(cells);
+		assertEquals(2, compiled.getNumberOfRanges());
+
+		assertTrue(compiled.contains(parent));
+		assertTrue(compiled.contains(GeoHash.fromGeohashString("u0qjzzzz")));
+		assertTrue(compiled.contains(GeoHash.fromGeohashString("u0qm7b")));
+		assertFalse(compiled.contains(GeoHash.fromGeohashString("u0qm")));
+		assertFalse(compiled.contains(GeoHash.fromGeohashString("u0qm8")));
+		assertFalse(compiled.contains(GeoHash.fromGeohashString("u0q")));
+	}
+
+	@Test
+	public void testCompiledBoundingBoxQueryAgrees() {
+		GeoHashQuery query = new GeoHashBoundingBoxQuery(new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215));
+		GeoHashQuery compiled = CompiledGeoHashQuery.compile(query);
+		Random rand = new Random(815);
+		double[] latitudes = new double[1000];
+		double[] longitudes = new double[1000];
+		for (int i = 0; i < latitudes.length; i++) {
+			latitudes[i] = 47.0 + 0.5 * rand.nextDouble();
+			longitudes[i] = 8.4 + 0.6 * rand.nextDouble();
+		}
+		long[] expected = new long[16];
+		long[] actual = new long[16];
+		assertEquals(query.filter(latitudes, longitudes, expected), compiled.filter(latitudes, longitudes, actual));
+		assertTrue(Arrays.equals(expected, actual));
+	}
+
+	@Test
+	public void testWholeWorld() {
+		CompiledGeoHashQuery compiled = CompiledGeoHashQuery.compile(Arrays.asList(GeoHash.fromLongValue(0, 0)));
+		assertTrue(compiled.contains(-90, -180));
+		assertTrue(compiled.contains(90, 180));
+		assertTrue(compiled.contains(GeoHash.fromLongValue(0, 0)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyCovering() {
+		CompiledGeoHashQuery.compile(new ArrayList<GeoHash>());
+	}
+}
@@ -9,8 +9,11 @@
 package ch.hsr.geohash;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
@@ -26,6 +29,67 @@ public class GeoHashBoundingBoxSearchTest {
 		checkSearchYieldsCorrectHashes(47.157502, 47.329727, 8.562244, 8.859215, "u0qj", "u0qm", "u0qh", "u0qk");
 	}
 
+	@Test
+	public void testPrimitiveContainsAgreesWithObjects() {
+		GeoHashQuery search = new GeoHashBoundingBoxQuery(new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215));
+		Random rand = new Random(4711);
+		double[] latitudes = new double[200];
+		double[] longitudes = new double[200];
+		int expectedMatches = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			latitudes[i] = 47.0 + 0.5 * rand.nextDouble();
+			longitudes[i] = 8.4 + 0.6 * rand.nextDouble();
+			boolean expected = search.contains(GeoHash.withBitPrecision(latitudes[i], longitudes[i], 64));
+			assertEquals(expected, search.contains(new WGS84Point(latitudes[i], longitudes[i])));
+			assertEquals(expected, search.contains(latitudes[i], longitudes[i]));
+			if (expected) {
+				expectedMatches++;
+			}
+		}
+
+		long[] bitmask = { -1, -1, -1, -1 };
+		assertEquals(expectedMatches, search.filter(latitudes, longitudes, bitmask));
+		for (int i = 0; i < latitudes.length; i++) {
+			assertEquals(search.contains(latitudes[i], longitudes[i]), (bitmask[i >>> 6] & (1L << i)) != 0);
+		}
+		assertEquals(0, bitmask[3] >>> 8);
+	}
+
+	@Test
+	public void testContainsBits() {
+		GeoHashQuery search = new GeoHashBoundingBoxQuery(new BoundingBox(47.300200, 47.447907, 8.471276, 8.760941));
+		GeoHash inside = GeoHash.withCharacterPrecision(47.4, 8.6, 8);
+		assertTrue(search.contains(inside.longValue(), inside.significantBits()));
+		assertTrue(search.contains(inside));
+		// the search hash itself, but not its coarser parent
+		GeoHash searchHash = GeoHash.fromGeohashString("u0qj");
+		assertTrue(search.contains(searchHash.longValue(), 20));
+		assertFalse(search.contains(searchHash.longValue(), 15));
+		GeoHash outside = GeoHash.withCharacterPrecision(48.4, 8.6, 8);
+		assertFalse(search.contains(outside.longValue(), outside.significantBits()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFilterRejectsShortBitmask() {
+		GeoHashQuery search = new GeoHashBoundingBoxQuery(new BoundingBox(47.300200, 47.447907, 8.471276, 8.760941));
+		search.filter(new double[65], new double[65], new long[1]);
+	}
+
+	@Test
+	public void testBoxAcrossTheAntimeridianIsCoveredOnBothSides() {
+		GeoHashQuery search = new GeoHashBoundingBoxQuery(BoundingBox.fromWestToEast(-1, 1, 179.5, -179.5));
+		assertTrue(search.getSearchHashes().size() <= 8);
+		for (GeoHash hash : search.getSearchHashes()) {
+			// none of the hashes spans the globe
+			assertTrue(hash.getBoundingBox().getLongitudeSize() < 10);
+		}
+		assertTrue(search.contains(new WGS84Point(0, 179.9)));
+		assertTrue(search.contains(new WGS84Point(0, -179.9)));
+		assertTrue(search.contains(0.5, -179.6));
+		assertFalse(search.contains(new WGS84Point(0, 0)));
+		assertFalse(search.contains(0, 170));
+	}
+
 	private void checkSearchYieldsCorrectNumberOfHashes(double minLat, double maxLat, double minLon, double maxLon) {
 		GeoHashQuery search = new GeoHashBoundingBoxQuery(new BoundingBox(minLat, maxLat, minLon, maxLon));
 		assertRightNumberOfSearchHashes(search);
@@ -1,10 +1,16 @@
 package ch.hsr.geohash;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.util.GeodesicDistances;
+import ch.hsr.geohash.util.VincentyGeodesy;
 
 public class GeoHashCircleQueryTest {
 	@Test
@@ -20,4 +26,75 @@ public class GeoHashCircleQueryTest {
 		assertTrue(query.contains(test1));
 		assertTrue(query.contains(test2));
 	}
+
+	@Test
+	public void testCircleAcrossTheAntimeridian() {
+		WGS84Point center = new WGS84Point(-16.5, 179.99);
+		WGS84Point east = VincentyGeodesy.moveInDirection(center, 90, 3000);
+		assertTrue(east.getLongitude() < -179.97);
+
+		GeoHashCircleQuery query = new GeoHashCircleQuery(center, 5000);
+		assertTrue(query.contains(east));
+		assertTrue(query.contains(VincentyGeodesy.moveInDirection(center, 270, 3000)));
+		for (GeoHash hash : query.getSearchHashes()) {
+			assertTrue(hash.getBoundingBox().getLongitudeSize() < 1);
+		}
+		assertTrue(query.contains(center));
+	}
+
+	@Test
+	public void testCircleAroundThePole() {
+		GeoHashCircleQuery query = new GeoHashCircleQuery(new WGS84Point(89.9, 0), 50000, GeodesicDistances.VINCENTY);
+		// across the pole, about 22 km away
+		assertTrue(query.contains(new WGS84Point(89.9, 180)));
+		assertTrue(query.contains(new WGS84Point(89.7, -90)));
+		assertFalse(query.contains(new WGS84Point(89.4, 180)));
+		assertFalse(query.contains(new WGS84Point(89.0, 0)));
+	}
+
+	@Test
+	public void testCircleAroundThePoleStaysInItsHemisphere() {
+		GeoHashCircleQuery north = new GeoHashCircleQuery(new WGS84Point(89.5, 10), 100000);
+		assertTrue(north.contains(new WGS84Point(89.9, -170)));
+		assertFalse(north.contains(new WGS84Point(-45, 0)));
+		assertFalse(north.contains(new WGS84Point(45, 0)));
+		for (GeoHash hash : north.getSearchHashes()) {
+			assertTrue(hash.getBoundingBox().getMinLat() > 80);
+		}
+
+		GeoHashCircleQuery south = new GeoHashCircleQuery(new WGS84Point(-89.5, 10), 100000);
+		assertTrue(south.contains(new WGS84Point(-89.9, -170)));
+		assertFalse(south.contains(new WGS84Point(45, 0)));
+		for (GeoHash hash : south.getSearchHashes()) {
+			assertTrue(hash.getBoundingBox().getMaxLat() < -80);
+		}
+	}
+
+	@Test
+	public void testFilterAppliesTheRadius() {
+		WGS84Point center = new WGS84Point(39.86391280373075, 116.37356590048701);
+		GeoHashCircleQuery square = new GeoHashCircleQuery(center, 589);
+		GeoHashCircleQuery circle = new GeoHashCircleQuery(center, 589, GeodesicDistances.HAVERSINE);
+
+		Random rand = new Random(815);
+		double[] latitudes = new double[300];
+		double[] longitudes = new double[300];
+		for (int i = 0; i < latitudes.length; i++) {
+			WGS84Point point = VincentyGeodesy.moveInDirection(center, rand.nextDouble() * 360, rand.nextDouble() * 1200);
+			latitudes[i] = point.getLatitude();
+			longitudes[i] = point.getLongitude();
+		}
+
+		long[] squareBits = new long[5];
+		long[] circleBits = new long[5];
+		int squareMatches = square.filter(latitudes, longitudes, squareBits);
+		int circleMatches = circle.filter(latitudes, longitudes, circleBits);
+		assertTrue(circleMatches < squareMatches);
+		for (int i = 0; i < latitudes.length; i++) {
+			boolean expected = circle.contains(new WGS84Point(latitudes[i], longitudes[i]));
+			assertEquals(expected, circle.contains(latitudes[i], longitudes[i]));
+			assertEquals(expected, (circleBits[i >>> 6] & (1L << i)) != 0);
+			assertEquals(square.contains(latitudes[i], longitudes[i]), (squareBits[i >>> 6] & (1L << i)) != 0);
+		}
+	}
 }
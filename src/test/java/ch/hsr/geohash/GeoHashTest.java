@@ -82,6 +82,32 @@ public class GeoHashTest {
 		}
 	}
 
+	@Test
+	public void testEncodeLongValueMatchesWithBitPrecision() {
+		double[] exact = { -90, -45, 0, 45, 90, -180, 180 };
+		for (int i = 0; i < 5000; i++) {
+			double lat = (i < 49) ? exact[i % 5] : rand.nextDouble() * 180 - 90;
+			double lon = (i < 49) ? exact[i / 7] : rand.nextDouble() * 360 - 180;
+			int bits = rand.nextInt(65);
+			assertEquals(GeoHash.withBitPrecision(lat, lon, bits).longValue(), GeoHash.encodeLongValue(lat, lon, bits));
+		}
+		assertEquals(0, GeoHash.encodeLongValue(47.2, 8.8, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEncodeLongValueRejectsInvalidLatitude() {
+		GeoHash.encodeLongValue(91, 8.8, 32);
+	}
+
+	@Test
+	public void testEncodePrefixes() {
+		long[] prefixes = new long[41];
+		GeoHash.encodePrefixes(47.2, 8.8, prefixes);
+		for (int bits = 0; bits <= 40; bits++) {
+			assertEquals(GeoHash.withBitPrecision(47.2, 8.8, bits).longValue(), prefixes[bits]);
+		}
+	}
+
 	@Test
 	public void testToAndFromBinaryString() {
 		for (GeoHash gh : RandomGeohashes.fullRange()) {
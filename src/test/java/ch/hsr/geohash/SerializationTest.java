@@ -0,0 +1,177 @@
+package ch.hsr.geohash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.queries.CompiledGeoHashQuery;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+import ch.hsr.geohash.queries.GeoHashQuery;
+import ch.hsr.geohash.util.GeodesicDistances;
+import ch.hsr.geohash.util.PolylineCorridorCoverer;
+
+public class SerializationTest {
+
+	@Test
+	public void testGeoHashRoundTrip() throws Exception {
+		Random rand = new Random(4711);
+		for (int i = 0; i < 1000; i++) {
+			GeoHash hash = GeoHash.withBitPrecision(rand.nextDouble() * 180 - 90, rand.nextDouble() * 360 - 180,
+					rand.nextInt(65));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			hash.writeTo(new DataOutputStream(bytes));
+			assertEquals(1 + (hash.significantBits() + 7) / 8, bytes.size());
+			GeoHash read = GeoHash.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			assertEquals(hash, read);
+			assertEquals(hash.getBoundingBox(), read.getBoundingBox());
+
+			assertEquals(hash, javaRoundTrip(hash));
+		}
+	}
+
+	@Test
+	public void testJavaSerializationIsCompact() throws Exception {
+		GeoHash hash = GeoHash.withCharacterPrecision(47.2266, 8.8184, 12);
+		byte[] serialized = serialize(hash);
+		assertTrue("a serialized hash takes " + serialized.length + " bytes", serialized.length < 80);
+
+		// a list of hashes repeats the class descriptor only once
+		GeoHash[] hashes = new GeoHash[100];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = hash.next(i);
+		}
+		assertTrue(serialize(hashes).length < 100 * 20);
+		assertTrue(Arrays.equals(hashes, (GeoHash[]) deserialize(serialize(hashes))));
+	}
+
+	@Test
+	public void testPointAndBoundingBoxRoundTrip() throws Exception {
+		WGS84Point point = new WGS84Point(-33.8688, 151.2093);
+		assertEquals(point, javaRoundTrip(point));
+		BoundingBox box = new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215);
+		assertEquals(box, javaRoundTrip(box));
+	}
+
+	@Test
+	public void testQueriesRoundTrip() throws Exception {
+		WGS84Point center = new WGS84Point(39.86391280373075, 116.37356590048701);
+		GeoHashQuery[] queries = {
+				new GeoHashBoundingBoxQuery(new BoundingBox(47.157502, 47.329727, 8.562244, 8.859215)),
+				new GeoHashBoundingBoxQuery(BoundingBox.fromWestToEast(10, 20, 170, -170)),
+				new GeoHashCircleQuery(new WGS84Point(-16.5, 179.9), 20000),
+				new GeoHashCircleQuery(center, 589),
+				new GeoHashCircleQuery(center, 589, GeodesicDistances.HAVERSINE),
+				CompiledGeoHashQuery.compile(new PolylineCorridorCoverer(Arrays.asList(new WGS84Point(47.37, 8.54),
+						new WGS84Point(47.42, 8.62)), 500.0).cover(30, 40)) };
+
+		Random rand = new Random(815);
+		for (GeoHashQuery query : queries) {
+			GeoHashQuery read = (GeoHashQuery) javaRoundTrip(query);
+			assertSame(query.getClass(), read.getClass());
+			assertEquals(query.getSearchHashes().size(), read.getSearchHashes().size());
+			assertTrue(read.getSearchHashes().containsAll(query.getSearchHashes()));
+			assertEquals(query.getWktBox(), read.getWktBox());
+			for (int i = 0; i < 2000; i++) {
+				double lat = 0.5 * rand.nextGaussian();
+				double lon = 0.5 * rand.nextGaussian();
+				// sample around the first search hash, wrapping around the antimeridian
+				WGS84Point point = new WGS84Point(query.getSearchHashes().get(0).getPoint().getLatitude() + lat,
+						(query.getSearchHashes().get(0).getPoint().getLongitude() + lon + 540) % 360 - 180);
+				assertEquals(query.contains(point), read.contains(point));
+			}
+		}
+		assertEquals(GeodesicDistances.HAVERSINE, ((GeoHashCircleQuery) javaRoundTrip(queries[4])).getDistance());
+		assertEquals("MULTIPOLYGON(((168.75 0.0,180.0 0.0,180.0 22.5,168.75 22.5,168.75 0.0)),"
+				+ "((-180.0 0.0,-168.75 0.0,-168.75 22.5,-180.0 22.5,-180.0 0.0)))", ((GeoHashQuery) javaRoundTrip(queries[1])).getWktBox());
+	}
+
+	@Test
+	public void testObjectsWrittenInTheDefaultForm() throws Exception {
+		GeoHash hash = (GeoHash) readResource("geohash.ser");
+		assertEquals(GeoHash.fromGeohashString("u0qk8tk1n"), hash);
+		assertEquals("u0qk8tk1n", hash.toBase32());
+		assertEquals(new WGS84Point(47.2263, 8.8168), hash.getPoint());
+		assertEquals(GeoHash.fromGeohashString("u0qk8tk1n").getBoundingBox(), hash.getBoundingBox());
+		assertEquals(new WGS84Point(47.2263, 8.8168), readResource("point.ser"));
+		assertEquals(new BoundingBox(46.0, 47.5, 8.0, 9.5), readResource("bounding-box.ser"));
+	}
+
+	@Test
+	public void testQueriesWrittenInTheDefaultForm() throws Exception {
+		GeoHashBoundingBoxQuery boxQuery = (GeoHashBoundingBoxQuery) readResource("bounding-box-query.ser");
+		GeoHashBoundingBoxQuery expected = new GeoHashBoundingBoxQuery(new BoundingBox(46.0, 47.5, 8.0, 9.5));
+		assertEquals(expected.getSearchHashes(), boxQuery.getSearchHashes());
+		assertEquals(expected.getWktBox(), boxQuery.getWktBox());
+		assertTrue(boxQuery.contains(new WGS84Point(47.0, 9.0)));
+		assertTrue(boxQuery.contains(GeoHash.fromGeohashString("u0n8")));
+		assertFalse(boxQuery.contains(new WGS84Point(47.0, 12.0)));
+		long[] bitmask = new long[1];
+		assertEquals(1, boxQuery.filter(new double[] { 47.0, 47.0 }, new double[] { 9.0, 12.0 }, bitmask));
+		assertEquals(1L, bitmask[0]);
+
+		GeoHashCircleQuery circleQuery = (GeoHashCircleQuery) readResource("circle-query.ser");
+		assertNull(circleQuery.getDistance());
+		assertTrue(circleQuery.contains(new WGS84Point(47.2, 8.8)));
+		assertFalse(circleQuery.contains(new WGS84Point(47.0, 12.0)));
+	}
+
+	@Test
+	public void testCompiledQueryIsSmallerThanItsCells() throws Exception {
+		CompiledGeoHashQuery compiled = CompiledGeoHashQuery.compile(new PolylineCorridorCoverer(Arrays.asList(
+				new WGS84Point(47.37, 8.54), new WGS84Point(47.42, 8.62)), 500.0).cover(30, 40));
+		int cells = compiled.getSearchHashes().size();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		compiled.writeTo(new DataOutputStream(bytes));
+		assertTrue(bytes.size() + " bytes for " + cells + " cells", bytes.size() < 4 * cells);
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptGeoHash() throws Exception {
+		GeoHash.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[] { 65 })));
+	}
+
+	/**
+	 * reads a stream written by the classes of the last release, in the
+	 * default serialized form.
+	 */
+	private Object readResource(String name) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(getClass().getResourceAsStream("serialized/" + name));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Object javaRoundTrip(Object object) throws Exception {
+		return deserialize(serialize(object));
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws Exception {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+}
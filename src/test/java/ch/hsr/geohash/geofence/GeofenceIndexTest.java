@@ -0,0 +1,145 @@
+package ch.hsr.geohash.geofence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.GeodesicDistances;
+
+public class GeofenceIndexTest {
+	private Map<Integer, Geofence> fences;
+	private GeofenceIndex index;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(2718);
+		fences = new HashMap<Integer, Geofence>();
+		for (int id = 0; id < 300; id++) {
+			double lat = 47 + random.nextDouble();
+			double lon = 8 + random.nextDouble();
+			if (id % 2 == 0) {
+				fences.put(id, new CircleGeofence(new WGS84Point(lat, lon), 1000 + 10000 * random.nextDouble(),
+						GeodesicDistances.HAVERSINE));
+			} else {
+				double size = 0.02 + 0.1 * random.nextDouble();
+				fences.put(id, new PolygonGeofence(Arrays.asList(new WGS84Point(lat, lon), new WGS84Point(lat + size,
+						lon + size / 2), new WGS84Point(lat + size / 3, lon + size), new WGS84Point(lat - size / 2,
+						lon + size / 2))));
+			}
+		}
+		index = new GeofenceIndex();
+		index.putAll(fences);
+	}
+
+	@Test
+	public void testMatchesTheFencesContainingAPoint() {
+		Random random = new Random(1);
+		int matched = 0;
+		for (int i = 0; i < 5000; i++) {
+			double lat = 46.9 + 1.2 * random.nextDouble();
+			double lon = 7.9 + 1.2 * random.nextDouble();
+			int[] expected = bruteForce(lat, lon);
+			assertArrayEquals(expected, index.match(lat, lon));
+			matched += expected.length;
+		}
+		assertTrue(matched > 5000);
+		assertEquals(0, index.match(10, 10).length);
+	}
+
+	@Test
+	public void testMatchReportsResultsThatDontFit() {
+		double lat = 0;
+		double lon = 0;
+		// find a point inside several fences
+		Random random = new Random(3);
+		while (bruteForce(lat, lon).length < 3) {
+			lat = 47 + random.nextDouble();
+			lon = 8 + random.nextDouble();
+		}
+		int[] ids = new int[1];
+		assertEquals(bruteForce(lat, lon).length, index.snapshot().match(lat, lon, ids));
+	}
+
+	@Test
+	public void testSnapshotsAreUnaffectedByLaterChanges() {
+		GeofenceIndex.Snapshot before = index.snapshot();
+		assertEquals(300, before.size());
+		WGS84Point center = new WGS84Point(20, 20);
+		index.put(1000, new CircleGeofence(center, 5000));
+		assertArrayEquals(new int[] { 1000 }, index.match(20, 20));
+		assertEquals(0, before.match(20, 20).length);
+		assertTrue(index.snapshot().getVersion() > before.getVersion());
+
+		assertTrue(index.remove(1000));
+		assertFalse(index.remove(1000));
+		assertEquals(0, index.match(20, 20).length);
+	}
+
+	@Test
+	public void testResolvedCellsMatchTheSameFencesEverywhere() {
+		GeofenceIndex.Snapshot snapshot = index.snapshot();
+		Random random = new Random(5);
+		int resolved = 0;
+		for (int i = 0; i < 2000; i++) {
+			GeoHash cell = GeoHash.withBitPrecision(47 + random.nextDouble(), 8 + random.nextDouble(), 30);
+			if (snapshot.isResolved(cell.longValue(), 30)) {
+				resolved++;
+				WGS84Point a = cell.getBoundingBox().getUpperLeft();
+				WGS84Point b = cell.getBoundingBox().getCenterPoint();
+				assertArrayEquals(bruteForce(b.getLatitude(), b.getLongitude()),
+						bruteForce(a.getLatitude(), a.getLongitude() + 1e-9));
+			}
+		}
+		assertTrue(resolved > 200);
+		assertTrue(snapshot.isResolved(GeoHash.encodeLongValue(-40, -40, 20), 20));
+	}
+
+	@Test
+	public void testReadersSeeConsistentSnapshotsDuringUpdates() throws InterruptedException {
+		final GeofenceIndex growing = new GeofenceIndex();
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int id = 0; id < 50; id++) {
+					growing.put(id, new CircleGeofence(new WGS84Point(0, 0), 1000 * (id + 1)));
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive()) {
+			GeofenceIndex.Snapshot snapshot = growing.snapshot();
+			// every fence contains the center
+			assertEquals(snapshot.size(), snapshot.match(0, 0).length);
+		}
+		writer.join();
+		assertEquals(50, growing.match(0, 0).length);
+	}
+
+	private int[] bruteForce(double lat, double lon) {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Map.Entry<Integer, Geofence> entry : fences.entrySet()) {
+			if (entry.getValue().contains(lat, lon)) {
+				ids.add(entry.getKey());
+			}
+		}
+		int[] result = new int[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+}
@@ -0,0 +1,101 @@
+package ch.hsr.geohash.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.util.GeodesicDistances;
+
+public class GeofenceTest {
+	private static final PolygonGeofence TRIANGLE = new PolygonGeofence(Arrays.asList(new WGS84Point(47, 8),
+			new WGS84Point(48, 8.5), new WGS84Point(47, 9)));
+
+	@Test
+	public void testPolygonContainsItsInteriorAndEdges() {
+		assertTrue(TRIANGLE.contains(47.3, 8.5));
+		assertTrue(TRIANGLE.contains(47, 8.5));
+		assertTrue(TRIANGLE.contains(48, 8.5));
+		assertFalse(TRIANGLE.contains(47.9, 8.2));
+		assertFalse(TRIANGLE.contains(46.9, 8.5));
+	}
+
+	@Test
+	public void testRelationsHoldForEveryPointOfACell() {
+		Geofence circle = new CircleGeofence(new WGS84Point(47.4, 8.5), 30000, GeodesicDistances.HAVERSINE);
+		for (Geofence fence : new Geofence[] { TRIANGLE, circle }) {
+			int[] relations = new int[3];
+			for (GeoHash covering : fence.getCovering()) {
+				checkRelations(fence, covering, relations);
+			}
+			assertTrue(relations[Geofence.Relation.INSIDE.ordinal()] > 0);
+			assertTrue(relations[Geofence.Relation.OUTSIDE.ordinal()] > 0);
+			assertTrue(relations[Geofence.Relation.PARTIAL.ordinal()] > 0);
+		}
+	}
+
+	@Test
+	public void testCircleCoveringWrapsAroundTheAntimeridian() {
+		CircleGeofence circle = new CircleGeofence(new WGS84Point(-17, 179.9), 50000);
+		boolean coversEast = false;
+		boolean coversWest = false;
+		for (GeoHash cell : circle.getCovering()) {
+			coversEast |= cell.contains(new WGS84Point(-17, 179.95));
+			coversWest |= cell.contains(new WGS84Point(-17, -179.8));
+		}
+		assertTrue(coversEast && coversWest);
+		assertTrue(circle.contains(-17, -179.8));
+	}
+
+	@Test
+	public void testCircleCoveringAroundThePole() {
+		CircleGeofence circle = new CircleGeofence(new WGS84Point(89.5, 30), 100000);
+		for (double lon = -180; lon < 180; lon += 15) {
+			boolean covered = false;
+			for (GeoHash cell : circle.getCovering()) {
+				covered |= cell.contains(new WGS84Point(89.8, lon));
+			}
+			assertTrue(covered);
+			assertTrue(circle.contains(89.8, lon));
+		}
+		// the covering stays near the pole
+		for (GeoHash cell : circle.getCovering()) {
+			assertTrue(cell.getBoundingBox().getMinLat() > 80);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPolygonNeedsThreeVertices() {
+		new PolygonGeofence(Arrays.asList(new WGS84Point(1, 1), new WGS84Point(2, 2)));
+	}
+
+	/**
+	 * classifies the cell and its descendants down to 8 more bits, and checks
+	 * every classification against sample points.
+	 */
+	private static void checkRelations(Geofence fence, GeoHash cell, int[] relations) {
+		Random random = new Random(cell.longValue());
+		BoundingBox box = cell.getBoundingBox();
+		Geofence.Relation relation = fence.relate(box);
+		relations[relation.ordinal()]++;
+		if (relation != Geofence.Relation.PARTIAL) {
+			for (int i = 0; i < 50; i++) {
+				double lat = box.getMinLat() + random.nextDouble() * box.getLatitudeSize();
+				double lon = box.getMinLon() + random.nextDouble() * box.getLongitudeSize();
+				assertEquals(relation == Geofence.Relation.INSIDE, fence.contains(lat, lon));
+			}
+		} else if (cell.significantBits() < 30) {
+			long bit = GeoHash.FIRST_BIT_FLAGGED >>> cell.significantBits();
+			checkRelations(fence, GeoHash.fromLongValue(cell.longValue(), cell.significantBits() + 1), relations);
+			checkRelations(fence, GeoHash.fromLongValue(cell.longValue() | bit, cell.significantBits() + 1),
+					relations);
+		}
+	}
+}
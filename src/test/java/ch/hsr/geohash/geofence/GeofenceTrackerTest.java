@@ -0,0 +1,116 @@
+package ch.hsr.geohash.geofence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.hsr.geohash.WGS84Point;
+
+public class GeofenceTrackerTest {
+	private GeofenceIndex index;
+	private GeofenceTracker tracker;
+	private List<String> events;
+	private GeofenceTracker.Listener listener;
+
+	@Before
+	public void setUp() {
+		index = new GeofenceIndex();
+		index.put(1, new CircleGeofence(new WGS84Point(47.37, 8.54), 2000));
+		index.put(2, new PolygonGeofence(Arrays.asList(new WGS84Point(47.3, 8.5), new WGS84Point(47.4, 8.5),
+				new WGS84Point(47.4, 8.6), new WGS84Point(47.3, 8.6))));
+		tracker = new GeofenceTracker(index, 60000);
+		events = new ArrayList<String>();
+		listener = new GeofenceTracker.Listener() {
+			@Override
+			public void onEvent(long entityId, int fenceId, GeofenceTracker.EventType type, long timestamp) {
+				events.add(entityId + " " + type + " " + fenceId + " @" + timestamp);
+			}
+		};
+	}
+
+	@Test
+	public void testEmitsEnterDwellAndExit() {
+		tracker.report(7, 47.0, 8.0, 0, listener);
+		assertTrue(events.isEmpty());
+
+		tracker.report(7, 47.37, 8.54, 5000, listener);
+		assertEquals(Arrays.asList("7 ENTER 1 @5000", "7 ENTER 2 @5000"), events);
+		assertArrayEquals(new int[] { 1, 2 }, tracker.getFences(7));
+
+		events.clear();
+		tracker.report(7, 47.371, 8.541, 30000, listener);
+		assertTrue(events.isEmpty());
+		tracker.report(7, 47.372, 8.541, 65000, listener);
+		assertEquals(Arrays.asList("7 DWELL 1 @65000", "7 DWELL 2 @65000"), events);
+
+		// leave the circle but stay in the square; dwell is only sent once
+		events.clear();
+		tracker.report(7, 47.31, 8.51, 70000, listener);
+		tracker.report(7, 47.31, 8.51, 200000, listener);
+		assertEquals(Arrays.asList("7 EXIT 1 @70000"), events);
+
+		events.clear();
+		tracker.report(7, 47.31, 8.45, 210000, listener);
+		assertEquals(Arrays.asList("7 EXIT 2 @210000"), events);
+		assertEquals(0, tracker.getFences(7).length);
+	}
+
+	@Test
+	public void testReusesTheResultWithinAResolvedCell() {
+		for (int i = 0; i < 100; i++) {
+			tracker.report(1, 47.37, 8.54, 1000 * i, listener);
+		}
+		assertEquals(1, tracker.getNumberOfEvaluations());
+
+		// a change of the fences invalidates the reused results
+		index.put(3, new CircleGeofence(new WGS84Point(0, 0), 1000));
+		tracker.report(1, 47.37, 8.54, 200000, listener);
+		assertEquals(2, tracker.getNumberOfEvaluations());
+	}
+
+	@Test
+	public void testReevaluatesInACellOnAFenceBoundary() {
+		// on the western edge of the square
+		tracker.report(1, 47.35, 8.5, 0, listener);
+		tracker.report(1, 47.35, 8.5, 1000, listener);
+		assertEquals(2, tracker.getNumberOfEvaluations());
+	}
+
+	@Test
+	public void testTracksManyEntities() {
+		Random random = new Random(8);
+		GeofenceTracker small = new GeofenceTracker(index, 0, 30, 1);
+		int[] inside = new int[5000];
+		for (int round = 0; round < 4; round++) {
+			for (int id = 0; id < inside.length; id++) {
+				double lat = 47.3 + 0.1 * random.nextDouble();
+				double lon = 8.45 + 0.2 * random.nextDouble();
+				small.report(id, lat, lon, round, listener);
+				assertArrayEquals(index.match(lat, lon), small.getFences(id));
+				inside[id] = index.match(lat, lon).length;
+			}
+			for (int id = 0; id < inside.length; id += 3) {
+				assertTrue(small.remove(id));
+				assertFalse(small.remove(id));
+			}
+			for (int id = 1; id < inside.length; id += 3) {
+				assertEquals(inside[id], small.getFences(id).length);
+			}
+		}
+		assertEquals(inside.length - (inside.length + 2) / 3, small.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMoreExpectedEntitiesThanFit() {
+		new GeofenceTracker(index, 60000, GeofenceTracker.DEFAULT_PRECISION, Integer.MAX_VALUE);
+	}
+}
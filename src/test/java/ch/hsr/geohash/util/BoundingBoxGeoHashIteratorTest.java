@@ -34,6 +34,30 @@ public class BoundingBoxGeoHashIteratorTest {
 
 	}
 
+	@Test
+	public void testIterAcrossTheAntimeridian() {
+		BoundingBox box = BoundingBox.fromWestToEast(-5, 5, 175, -175);
+		TwoGeoHashBoundingBox twoBox = TwoGeoHashBoundingBox.withBitPrecision(box, 20);
+		Assert.assertTrue(twoBox.crossesAntimeridian());
+		Assert.assertTrue(twoBox.getBoundingBox().crossesAntimeridian());
+		Assert.assertEquals(2, twoBox.splitAtAntimeridian().size());
+
+		BoundingBoxGeoHashIterator iter = new BoundingBoxGeoHashIterator(twoBox);
+		int west = 0;
+		int east = 0;
+		while (iter.hasNext()) {
+			GeoHash gh = iter.next();
+			Assert.assertTrue(twoBox.getBoundingBox().contains(gh.getPoint()));
+			if (gh.getPoint().getLongitude() > 0) {
+				west++;
+			} else {
+				east++;
+			}
+		}
+		Assert.assertTrue(west > 0);
+		Assert.assertEquals(west, east);
+	}
+
 	@Test
 	public void testIter2() {
 		BoundingBox box = new BoundingBox(37.7, 37.84, -122.52, -122.35);
@@ -0,0 +1,114 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+
+public class GeoHashAggregatePyramidTest {
+	private static final int PRECISION = 30;
+
+	private GeoHashAggregator fine;
+	private GeoHashAggregatePyramid pyramid;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(99);
+		fine = new GeoHashAggregator(PRECISION);
+		for (int i = 0; i < 5000; i++) {
+			fine.add(46 + 2 * random.nextDouble(), 7 + 3 * random.nextDouble(), random.nextInt(100));
+		}
+		pyramid = GeoHashAggregatePyramid.of(fine);
+	}
+
+	@Test
+	public void testEveryLevelMatchesAggregatingAtThatPrecision() {
+		assertEquals(PRECISION, pyramid.getPrecision());
+		for (int precision = 0; precision <= PRECISION; precision += 3) {
+			final GeoHashAggregator coarse = new GeoHashAggregator(precision);
+			fine.forEach(new GeoHashAggregator.Visitor() {
+				@Override
+				public void visit(long bits, long count, double sum, double min, double max) {
+					for (int i = 0; i < count; i++) {
+						coarse.add(bits, 0);
+					}
+				}
+			});
+			assertEquals(coarse.size(), pyramid.getNumberOfCells(precision));
+			for (long cell : coarse.getCells()) {
+				assertEquals(coarse.getCount(cell), pyramid.getCount(cell, precision));
+			}
+		}
+		assertEquals(1, pyramid.getNumberOfCells(0));
+		assertEquals(5000, pyramid.getCount(0L, 0));
+	}
+
+	@Test
+	public void testRollsUpSumsMinimaAndMaxima() {
+		long[] cells = fine.getCells();
+		long parent = cells[0] & (GeoHash.FIRST_BIT_FLAGGED >> 19);
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (long cell : cells) {
+			if ((cell & (GeoHash.FIRST_BIT_FLAGGED >> 19)) == parent) {
+				sum += fine.getSum(cell);
+				min = Math.min(min, fine.getMin(cell));
+				max = Math.max(max, fine.getMax(cell));
+			}
+		}
+		assertEquals(sum, pyramid.getSum(parent, 20), 1e-9);
+		assertEquals(min, pyramid.getMin(parent, 20), 0);
+		assertEquals(max, pyramid.getMax(parent, 20), 0);
+		assertTrue(Double.isNaN(pyramid.getMax(GeoHash.encodeLongValue(-40, -40, 20), 20)));
+	}
+
+	@Test
+	public void testQueryReturnsTheCellsIntersectingTheBox() {
+		BoundingBox box = new BoundingBox(46.5, 47.2, 7.9, 9.1);
+		for (int cellsAcross : new int[] { 1, 4, 16 }) {
+			final int precision = pyramid.getPrecisionFor(box, cellsAcross);
+			final List<Long> found = new ArrayList<Long>();
+			pyramid.query(box, precision, new GeoHashAggregator.Visitor() {
+				@Override
+				public void visit(long bits, long count, double sum, double min, double max) {
+					found.add(bits);
+				}
+			});
+
+			List<Long> expected = new ArrayList<Long>();
+			for (long cell : pyramid.getCells(precision)) {
+				if (GeoHash.fromLongValue(cell, precision).getBoundingBox().intersects(box)) {
+					expected.add(cell);
+				}
+			}
+			assertEquals(expected, found);
+			assertTrue(found.size() <= 4 * cellsAcross * cellsAcross);
+		}
+	}
+
+	@Test
+	public void testBuildsFromSortedArrays() {
+		long a = GeoHash.encodeLongValue(10, 10, 10);
+		long b = GeoHash.encodeLongValue(10, 20, 10);
+		GeoHashAggregatePyramid pyramid = GeoHashAggregatePyramid.of(10, new long[] { a, b }, new long[] { 1, 2 },
+				new double[] { 1, 2 }, new double[] { 1, 2 }, new double[] { 1, 2 });
+		assertEquals(3, pyramid.getCount(0L, 0));
+		assertEquals(2, pyramid.getNumberOfCells(10));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsUnsortedCells() {
+		long a = GeoHash.encodeLongValue(10, 10, 10);
+		long b = GeoHash.encodeLongValue(10, 20, 10);
+		GeoHashAggregatePyramid.of(10, new long[] { b, a }, new long[2], new double[2], new double[2], new double[2]);
+	}
+}
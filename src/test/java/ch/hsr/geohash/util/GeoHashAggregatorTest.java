@@ -0,0 +1,142 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.GeoHash;
+
+public class GeoHashAggregatorTest {
+
+	@Test
+	public void testAggregatesLikeAMapOfCells() {
+		Random random = new Random(815);
+		GeoHashAggregator aggregator = new GeoHashAggregator(15);
+		Map<GeoHash, double[]> expected = new HashMap<GeoHash, double[]>();
+		for (int i = 0; i < 20000; i++) {
+			double lat = random.nextDouble() * 180 - 90;
+			double lon = random.nextDouble() * 360 - 180;
+			double value = random.nextGaussian();
+			aggregator.add(lat, lon, value);
+
+			GeoHash cell = GeoHash.withBitPrecision(lat, lon, 15);
+			double[] aggregate = expected.get(cell);
+			if (aggregate == null) {
+				aggregate = new double[] { 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+				expected.put(cell, aggregate);
+			}
+			aggregate[0]++;
+			aggregate[1] += value;
+			aggregate[2] = Math.min(aggregate[2], value);
+			aggregate[3] = Math.max(aggregate[3], value);
+		}
+
+		assertEquals(expected.size(), aggregator.size());
+		for (Map.Entry<GeoHash, double[]> entry : expected.entrySet()) {
+			long bits = entry.getKey().longValue();
+			assertEquals((long) entry.getValue()[0], aggregator.getCount(entry.getKey()));
+			assertEquals(entry.getValue()[1], aggregator.getSum(bits), 1e-9);
+			assertEquals(entry.getValue()[2], aggregator.getMin(bits), 0);
+			assertEquals(entry.getValue()[3], aggregator.getMax(bits), 0);
+		}
+		long[] cells = aggregator.getCells();
+		assertEquals(expected.size(), cells.length);
+		for (int i = 1; i < cells.length; i++) {
+			assertTrue((cells[i - 1] ^ Long.MIN_VALUE) < (cells[i] ^ Long.MIN_VALUE));
+		}
+	}
+
+	@Test
+	public void testKeepsTheSouthWesternCell() {
+		GeoHashAggregator aggregator = new GeoHashAggregator(20);
+		aggregator.add(-90, -180, 2);
+		aggregator.add(-89.99999, -179.99999, 4);
+		aggregator.add(0, 0, 1);
+		assertEquals(2, aggregator.size());
+		assertEquals(2, aggregator.getCount(0L));
+		assertEquals(6, aggregator.getSum(0L), 0);
+		assertEquals(2, aggregator.getMin(0L), 0);
+		assertEquals(4, aggregator.getMax(0L), 0);
+		assertEquals(0L, aggregator.getCells()[0]);
+		assertTrue(Double.isNaN(aggregator.getMin(GeoHash.withBitPrecision(10, 10, 20).longValue())));
+	}
+
+	@Test
+	public void testIgnoresBitsBeyondThePrecision() {
+		GeoHashAggregator aggregator = new GeoHashAggregator(10);
+		GeoHash fine = GeoHash.withBitPrecision(47.3, 8.5, 40);
+		aggregator.add(fine.longValue(), 1);
+		aggregator.add(47.3, 8.5, 1);
+		assertEquals(1, aggregator.size());
+		assertEquals(2, aggregator.getCount(fine.longValue()));
+	}
+
+	@Test
+	public void testMergesPartialsFromSeveralThreads() throws InterruptedException {
+		final GeoHashAggregator.Partials partials = new GeoHashAggregator.Partials();
+		final int eventsPerThread = 50000;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					GeoHashAggregator local = new GeoHashAggregator(8);
+					for (int i = 1; i <= eventsPerThread; i++) {
+						local.add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, 1);
+						if (i % 10000 == 0) {
+							partials.offer(local);
+							local = new GeoHashAggregator(8);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		GeoHashAggregator total = new GeoHashAggregator(8);
+		int merged = 0;
+		for (Thread thread : threads) {
+			merged += partials.drainTo(total);
+			thread.join();
+		}
+		merged += partials.drainTo(total);
+		assertEquals(20, merged);
+
+		final long[] count = new long[1];
+		total.forEach(new GeoHashAggregator.Visitor() {
+			@Override
+			public void visit(long bits, long cellCount, double sum, double min, double max) {
+				count[0] += cellCount;
+				assertEquals(cellCount, sum, 0);
+			}
+		});
+		assertEquals(threads.length * eventsPerThread, count[0]);
+		assertEquals(256, total.size());
+	}
+
+	@Test
+	public void testClearRemovesAllCells() {
+		GeoHashAggregator aggregator = new GeoHashAggregator(0);
+		aggregator.add(10, 10, 1);
+		aggregator.clear();
+		assertTrue(aggregator.isEmpty());
+		assertEquals(0, aggregator.getCount(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMergingDifferentPrecisions() {
+		new GeoHashAggregator(10).addAll(new GeoHashAggregator(11));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMoreExpectedCellsThanFit() {
+		new GeoHashAggregator(40, 900000000);
+	}
+}
@@ -0,0 +1,142 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.GeoHash;
+
+public class GeoHashCellSetTest {
+	private static final GeoHash PARENT = GeoHash.fromGeohashString("u0qj");
+
+	@Test
+	public void testCompleteSiblingsCollapseIntoTheirParent() {
+		List<GeoHash> children = new ArrayList<GeoHash>();
+		for (int i = 0; i < 32; i++) {
+			children.add(GeoHash.fromLongValue(PARENT.longValue() | ((long) i << 39), 25));
+		}
+		GeoHashCellSet set = GeoHashCellSet.of(children);
+		assertEquals(1, set.getNumberOfIntervals());
+		assertEquals(1, set.getCells().size());
+		assertEquals(PARENT, set.getCells().get(0));
+		assertEquals(GeoHashCellSet.of(PARENT), set);
+
+		// without one child, the rest splits into the coarsest cells possible
+		children.remove(5);
+		List<GeoHash> cells = GeoHashCellSet.of(children).getCells();
+		assertEquals(5, cells.size());
+		assertFalse(GeoHashCellSet.of(children).contains(PARENT));
+	}
+
+	@Test
+	public void testNestedCellsVanish() {
+		GeoHashCellSet set = GeoHashCellSet.of(PARENT, GeoHash.fromGeohashString("u0qjk"),
+				GeoHash.fromGeohashString("u0qjzz"));
+		assertEquals(GeoHashCellSet.of(PARENT), set);
+	}
+
+	@Test
+	public void testAlgebraAgreesWithPoints() {
+		Random rand = new Random(4711);
+		for (int round = 0; round < 20; round++) {
+			GeoHashCellSet a = randomSet(rand);
+			GeoHashCellSet b = randomSet(rand);
+			GeoHashCellSet union = a.union(b);
+			GeoHashCellSet intersection = a.intersection(b);
+			GeoHashCellSet difference = a.difference(b);
+
+			for (int i = 0; i < 2000; i++) {
+				double lat = 47.0 + rand.nextDouble();
+				double lon = 8.0 + rand.nextDouble();
+				boolean inA = a.contains(lat, lon);
+				boolean inB = b.contains(lat, lon);
+				assertEquals(inA || inB, union.contains(lat, lon));
+				assertEquals(inA && inB, intersection.contains(lat, lon));
+				assertEquals(inA && !inB, difference.contains(lat, lon));
+			}
+
+			assertTrue(union.containsAll(a));
+			assertTrue(union.containsAll(b));
+			assertTrue(a.containsAll(intersection));
+			assertTrue(a.containsAll(difference));
+			assertTrue(difference.intersection(b).isEmpty());
+			assertEquals(union, difference.union(b));
+			assertEquals(a, difference.union(intersection));
+			assertEquals(union, GeoHashCellSet.of(union.getCells()));
+			assertEquals(a.getAreaInSquareMeters(), difference.getAreaInSquareMeters()
+					+ intersection.getAreaInSquareMeters(), 1e-6 * a.getAreaInSquareMeters());
+		}
+	}
+
+	@Test
+	public void testWholeWorld() {
+		GeoHashCellSet all = GeoHashCellSet.all();
+		assertEquals(4 * Math.PI * GeodesicDistances.MEAN_RADIUS * GeodesicDistances.MEAN_RADIUS,
+				all.getAreaInSquareMeters(), 1.0);
+		assertEquals(all, GeoHashCellSet.of(GeoHash.fromLongValue(0, 0)));
+		assertEquals(all, GeoHashCellSet.of(GeoHash.fromLongValue(0, 1), GeoHash.fromLongValue(GeoHash.FIRST_BIT_FLAGGED, 1)));
+		assertTrue(all.difference(all).isEmpty());
+		assertTrue(all.difference(GeoHashCellSet.of(PARENT)).intersects(PARENT.getNorthernNeighbour()));
+		assertFalse(all.difference(GeoHashCellSet.of(PARENT)).intersects(PARENT));
+		assertTrue(all.contains(PARENT));
+		assertTrue(GeoHashCellSet.empty().union(all).equals(all));
+	}
+
+	@Test
+	public void testIntersects() {
+		GeoHashCellSet set = GeoHashCellSet.of(GeoHash.fromGeohashString("u0qjk"));
+		assertTrue(set.intersects(PARENT));
+		assertTrue(set.intersects(GeoHash.fromGeohashString("u0qjkz")));
+		assertFalse(set.intersects(GeoHash.fromGeohashString("u0qjm")));
+		assertFalse(set.contains(PARENT));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		GeoHashCellSet set = randomSet(new Random(815)).union(GeoHashCellSet.of(GeoHash.fromLongValue(-1L, 64)));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		set.writeTo(new DataOutputStream(bytes));
+		assertEquals(set, GeoHashCellSet.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	@Test
+	public void testRejectsOverlappingOrInvertedIntervals() throws IOException {
+		// gaps and lengths that wrap around: an interval starting within the
+		// previous one, and one ending before it starts
+		long[][] streams = { { 2, 0, 10, -5, 10 }, { 1, -100, 200 } };
+		for (long[] values : streams) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			GeoHashCodec.writeUnsignedVarLong(values[0], out);
+			out.writeByte(0);
+			for (int i = 1; i < values.length; i++) {
+				GeoHashCodec.writeUnsignedVarLong(values[i], out);
+			}
+			try {
+				GeoHashCellSet.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+				fail();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static GeoHashCellSet randomSet(Random rand) {
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		for (int i = 0; i < 50; i++) {
+			cells.add(GeoHash.withBitPrecision(47.0 + rand.nextDouble(), 8.0 + rand.nextDouble(), 20 + rand.nextInt(16)));
+		}
+		return GeoHashCellSet.of(cells);
+	}
+}
@@ -0,0 +1,136 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.GeoHash;
+
+public class GeoHashCodecTest {
+
+	@Test
+	public void testVarLongs() throws IOException {
+		long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (long value : values) {
+			GeoHashCodec.writeUnsignedVarLong(value, out);
+		}
+		assertEquals(1 + 1 + 1 + 2 + 2 + 3 + 5 + 9 + 10 + 10, bytes.size());
+		DataInputStream in = input(bytes);
+		for (long value : values) {
+			assertEquals(value, GeoHashCodec.readUnsignedVarLong(in));
+		}
+	}
+
+	@Test
+	public void testCellsRoundTripSortedWithoutDuplicates() throws IOException {
+		Random rand = new Random(4711);
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		for (int i = 0; i < 500; i++) {
+			cells.add(GeoHash.withBitPrecision(rand.nextDouble() * 180 - 90, rand.nextDouble() * 360 - 180,
+					rand.nextInt(65)));
+		}
+		cells.add(cells.get(17));
+		cells.add(GeoHash.fromLongValue(0, 0));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GeoHashCodec.writeCells(cells, new DataOutputStream(bytes));
+		List<GeoHash> read = GeoHashCodec.readCells(input(bytes));
+
+		List<GeoHash> expected = new ArrayList<GeoHash>(new HashSet<GeoHash>(cells));
+		Collections.sort(expected, GeoHashCodec.UNSIGNED_ORDER);
+		assertTrue(expected.size() < cells.size());
+		assertEquals(expected, read);
+	}
+
+	@Test
+	public void testNeighbouringCellsAreCheap() throws IOException {
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		GeoHash cell = GeoHash.withBitPrecision(47.2266, 8.8184, 40);
+		for (int i = 0; i < 1000; i++) {
+			cells.add(cell.next(3 * i));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GeoHashCodec.writeCells(cells, new DataOutputStream(bytes));
+		assertTrue(bytes.size() < 2 * 1000 + 16);
+		assertEquals(cells, GeoHashCodec.readCells(input(bytes)));
+	}
+
+	@Test
+	public void testRangesRoundTrip() throws IOException {
+		long[] firsts = { 0x0000100000000000L, 0x0000300000000000L, 0x7ff0000000000000L, 0x8000000000000000L };
+		long[] lasts = { 0x00001fffffffffffL, 0x00003fffffffffffL, 0x7fffffffffffffffL, 0xffffffffffffffffL };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GeoHashCodec.writeRanges(firsts, lasts, firsts.length, new DataOutputStream(bytes));
+		long[][] read = GeoHashCodec.readRanges(input(bytes));
+		assertTrue(Arrays.equals(firsts, read[0]));
+		assertTrue(Arrays.equals(lasts, read[1]));
+
+		// the whole world
+		bytes.reset();
+		GeoHashCodec.writeRanges(new long[] { 0 }, new long[] { -1 }, 1, new DataOutputStream(bytes));
+		read = GeoHashCodec.readRanges(input(bytes));
+		assertEquals(0, read[0][0]);
+		assertEquals(-1, read[1][0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOverlappingRanges() throws IOException {
+		GeoHashCodec.writeRanges(new long[] { 0, 10 }, new long[] { 10, 20 }, 2, new DataOutputStream(
+				new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testManyRangesRoundTrip() throws IOException {
+		long[] firsts = new long[5000];
+		long[] lasts = new long[firsts.length];
+		for (int i = 0; i < firsts.length; i++) {
+			firsts[i] = (3L * i) << 40;
+			lasts[i] = firsts[i] + (1L << 40) - 1;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GeoHashCodec.writeRanges(firsts, lasts, firsts.length, new DataOutputStream(bytes));
+		long[][] read = GeoHashCodec.readRanges(input(bytes));
+		assertTrue(Arrays.equals(firsts, read[0]));
+		assertTrue(Arrays.equals(lasts, read[1]));
+	}
+
+	/**
+	 * a stream claiming 2^31 - 1 entries ends long before the readers would
+	 * have allocated room for all of them.
+	 */
+	@Test
+	public void testHugeCountsInShortStreams() throws IOException {
+		byte[] stream = { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07, 40, 1, 0 };
+		try {
+			GeoHashCodec.readCells(new DataInputStream(new ByteArrayInputStream(stream)));
+			fail();
+		} catch (EOFException e) {
+		}
+		try {
+			GeoHashCodec.readRanges(new DataInputStream(new ByteArrayInputStream(stream)));
+			fail();
+		} catch (EOFException e) {
+		}
+	}
+
+	private static DataInputStream input(ByteArrayOutputStream bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+}
@@ -96,4 +96,46 @@ public class GeoHashIteratorTest {
             Assert.assertTrue("Round trip conversion between degrees and meters failed to match; error " + Double.toString(d2m) + "/" + Double.toString(meters) + " (" + Double.toString(100.0 * errorPercent) + "%)", errorPercent <= 0.05);
         }
     }
+
+    /**
+     * The table-based conversion should agree with the interval-halving search it replaces
+     * (which itself stops at a 1cm tolerance).
+     */
+    @Test
+    public void testDegreesToMetersTableMatchesIntervalHalving() {
+        for (double degrees = 1e-7; degrees < 100.0; degrees *= 1.7) {
+            double expected = GeoHashIterator.convertRadiusInDegreesToMetersViaIntervalHalving(degrees, 45.0);
+            double actual = GeoHashIterator.convertRadiusInDegreesToMeters(degrees);
+
+            Assert.assertEquals("Table conversion of " + degrees + " degrees is off", expected, actual, Math.max(0.02, 1e-5 * expected));
+        }
+    }
+
+    /**
+     * The conversion used to memoize into an unsynchronized map; make sure concurrent callers
+     * all see consistent answers.
+     */
+    @Test
+    public void testDegreesToMetersIsSafeForConcurrentCallers() throws InterruptedException {
+        final double[] expected = new double[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = GeoHashIterator.convertRadiusInDegreesToMeters(i * 1e-3);
+        }
+
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = expected.length - 1; i >= 0; i--) {
+                        if (GeoHashIterator.convertRadiusInDegreesToMeters(i * 1e-3) != expected[i]) failed[0] = true;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        Assert.assertFalse("Concurrent conversions disagreed", failed[0]);
+    }
 }
@@ -0,0 +1,213 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+public class GeoHashPolygonWriterTest {
+	private static final GeoHash CELL = GeoHash.withBitPrecision(47.37, 8.54, 24);
+
+	@Test
+	public void testSingleCellIsItsBoundingBox() {
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(Arrays.asList(CELL));
+		assertEquals(1, writer.getNumberOfPolygons());
+		assertEquals(1, writer.getNumberOfRings(0));
+		BoundingBox box = CELL.getBoundingBox();
+		assertEquals(new HashSet<WGS84Point>(Arrays.asList(box.getUpperLeft(), box.getLowerRight(),
+				new WGS84Point(box.getMinLat(), box.getMinLon()), new WGS84Point(box.getMaxLat(), box.getMaxLon()))),
+				new HashSet<WGS84Point>(writer.getRing(0, 0)));
+	}
+
+	@Test
+	public void testAdjacentCellsOfAnyPrecisionMerge() {
+		GeoHash east = CELL.getEasternNeighbour();
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		cells.add(CELL);
+		for (int i = 0; i < 4; i++) {
+			cells.add(GeoHash.fromLongValue(east.longValue() | ((long) i << (64 - 26)), 26));
+		}
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(cells);
+		assertEquals(1, writer.getNumberOfPolygons());
+		assertEquals(4, writer.getRing(0, 0).size());
+	}
+
+	@Test
+	public void testCellsTouchingAtACornerAreSeparatePolygons() {
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(Arrays.asList(CELL, CELL.getNorthernNeighbour()
+				.getEasternNeighbour()));
+		assertEquals(2, writer.getNumberOfPolygons());
+		assertEquals(4, writer.getRing(0, 0).size());
+		assertEquals(4, writer.getRing(1, 0).size());
+	}
+
+	@Test
+	public void testEnclosedGapsAreHoles() {
+		List<GeoHash> block = block(CELL, 3);
+		block.remove(CELL);
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(block);
+		assertEquals(1, writer.getNumberOfPolygons());
+		assertEquals(2, writer.getNumberOfRings(0));
+		assertEquals(4, writer.getRing(0, 0).size());
+		assertEquals(4, writer.getRing(0, 1).size());
+
+		// a hole touching the outline at a corner stays a hole
+		block.remove(CELL.getSouthernNeighbour().getWesternNeighbour());
+		writer = new GeoHashPolygonWriter(block);
+		assertEquals(1, writer.getNumberOfPolygons());
+		assertEquals(2, writer.getNumberOfRings(0));
+		assertEquals(6, writer.getRing(0, 0).size());
+		assertEquals(4, writer.getRing(0, 1).size());
+	}
+
+	@Test
+	public void testWritesWktAndGeoJson() throws IOException {
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(Arrays.asList(GeoHash.fromLongValue(0, 1),
+				GeoHash.fromLongValue(0xE000000000000000L, 3)));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.writeWkt(out);
+		assertEquals("MULTIPOLYGON (((-180 90, -180 -90, 0 -90, 0 90, -180 90)), "
+				+ "((90 90, 90 0, 180 0, 180 90, 90 90)))", out.toString("US-ASCII"));
+
+		out.reset();
+		writer.writeGeoJson(out);
+		assertEquals("{\"type\":\"MultiPolygon\",\"coordinates\":[[[[-180,90],[-180,-90],[0,-90],[0,90],[-180,90]]],"
+				+ "[[[90,90],[90,0],[180,0],[180,90],[90,90]]]]}", out.toString("US-ASCII"));
+
+		out.reset();
+		new GeoHashPolygonWriter(GeoHashCellSet.empty()).writeWkt(out);
+		assertEquals("MULTIPOLYGON EMPTY", out.toString("US-ASCII"));
+
+		out.reset();
+		new GeoHashPolygonWriter(Arrays.asList(GeoHash.withBitPrecision(-33.8568, 151.2153, 60))).writeWkt(out);
+		assertTrue(out.toString("US-ASCII").startsWith("MULTIPOLYGON (((151.215"));
+	}
+
+	@Test
+	public void testWritesWkb() throws IOException {
+		List<GeoHash> block = block(CELL, 3);
+		block.remove(CELL);
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(block);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.writeWkb(out);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(0, in.readByte());
+		assertEquals(6, in.readInt());
+		assertEquals(1, in.readInt());
+		assertEquals(0, in.readByte());
+		assertEquals(3, in.readInt());
+		assertEquals(2, in.readInt());
+		for (int ring = 0; ring < 2; ring++) {
+			List<WGS84Point> points = writer.getRing(0, ring);
+			assertEquals(points.size() + 1, in.readInt());
+			for (int i = 0; i <= points.size(); i++) {
+				WGS84Point point = points.get(i % points.size());
+				assertEquals(point.getLongitude(), in.readDouble(), 0);
+				assertEquals(point.getLatitude(), in.readDouble(), 0);
+			}
+		}
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testPolygonsCoverTheSameAreaAsTheCells() {
+		Random random = new Random(31);
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		for (int i = 0; i < 3000; i++) {
+			GeoHash cell = GeoHash.withBitPrecision(47 + random.nextDouble(), 8 + random.nextDouble(),
+					30 + random.nextInt(8));
+			cells.add(cell);
+			cells.add(cell.getEasternNeighbour());
+			if (random.nextBoolean()) {
+				cells.add(cell.getNorthernNeighbour());
+			}
+		}
+		GeoHashCellSet set = GeoHashCellSet.of(cells);
+		GeoHashPolygonWriter writer = new GeoHashPolygonWriter(set);
+
+		int vertices = 0;
+		for (int p = 0; p < writer.getNumberOfPolygons(); p++) {
+			assertTrue(signedArea(writer.getRing(p, 0)) > 0);
+			for (int r = 0; r < writer.getNumberOfRings(p); r++) {
+				vertices += writer.getRing(p, r).size();
+				if (r > 0) {
+					assertTrue(signedArea(writer.getRing(p, r)) < 0);
+				}
+			}
+		}
+		assertTrue(writer.getNumberOfPolygons() < set.getCells().size() / 2);
+		assertTrue(vertices < 4 * set.getCells().size());
+
+		for (GeoHash cell : set.getCells()) {
+			WGS84Point center = cell.getBoundingBoxCenterPoint();
+			assertTrue(isInside(writer, center.getLatitude(), center.getLongitude()));
+		}
+		for (int i = 0; i < 5000; i++) {
+			double lat = 46.9 + 1.2 * random.nextDouble();
+			double lon = 7.9 + 1.2 * random.nextDouble();
+			assertEquals(set.contains(lat, lon), isInside(writer, lat, lon));
+		}
+	}
+
+	private static List<GeoHash> block(GeoHash center, int size) {
+		List<GeoHash> cells = new ArrayList<GeoHash>();
+		GeoHash row = center;
+		for (int i = 0; i < size / 2; i++) {
+			row = row.getSouthernNeighbour().getWesternNeighbour();
+		}
+		for (int i = 0; i < size; i++) {
+			GeoHash cell = row;
+			for (int j = 0; j < size; j++) {
+				cells.add(cell);
+				cell = cell.getEasternNeighbour();
+			}
+			row = row.getNorthernNeighbour();
+		}
+		return cells;
+	}
+
+	private static double signedArea(List<WGS84Point> ring) {
+		double area = 0;
+		for (int i = 0; i < ring.size(); i++) {
+			WGS84Point a = ring.get(i);
+			WGS84Point b = ring.get((i + 1) % ring.size());
+			area += a.getLongitude() * b.getLatitude() - b.getLongitude() * a.getLatitude();
+		}
+		return area / 2;
+	}
+
+	/**
+	 * counts the crossings of all rings by a ray to the east.
+	 */
+	private static boolean isInside(GeoHashPolygonWriter writer, double lat, double lon) {
+		boolean inside = false;
+		for (int p = 0; p < writer.getNumberOfPolygons(); p++) {
+			for (int r = 0; r < writer.getNumberOfRings(p); r++) {
+				List<WGS84Point> ring = writer.getRing(p, r);
+				for (int i = 0; i < ring.size(); i++) {
+					WGS84Point a = ring.get(i);
+					WGS84Point b = ring.get((i + 1) % ring.size());
+					if ((a.getLatitude() > lat) != (b.getLatitude() > lat) && a.getLongitude() > lon) {
+						inside = !inside;
+					}
+				}
+			}
+		}
+		return inside;
+	}
+}
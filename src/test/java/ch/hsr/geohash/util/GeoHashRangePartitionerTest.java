@@ -0,0 +1,120 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.GeoHash;
+
+public class GeoHashRangePartitionerTest {
+
+	@Test
+	public void testBalancesSkewedData() {
+		Random random = new Random(1234);
+		GeoHashRangePartitioner partitioner = GeoHashRangePartitioner.fromSample(skewed(random, 20000), 16);
+		assertEquals(16, partitioner.getNumberOfPartitions());
+
+		long[] data = skewed(random, 200000);
+		assertTrue(imbalance(partitioner.count(data)) < 1.2);
+
+		// equal-width ranges put almost everything into one partition
+		long[] equalWidth = new long[16];
+		for (long value : data) {
+			equalWidth[(int) (value >>> 60)]++;
+		}
+		assertTrue(imbalance(equalWidth) > 10);
+	}
+
+	@Test
+	public void testPartitionsCoverTheKeySpaceContiguously() {
+		GeoHashRangePartitioner partitioner = GeoHashRangePartitioner.fromSample(skewed(new Random(5), 5000), 8);
+		assertEquals(0L, partitioner.getFirst(0));
+		assertEquals(-1L, partitioner.getLast(partitioner.getNumberOfPartitions() - 1));
+		for (int i = 0; i < partitioner.getNumberOfPartitions(); i++) {
+			assertEquals(i, partitioner.partitionOf(partitioner.getFirst(i)));
+			assertEquals(i, partitioner.partitionOf(partitioner.getLast(i)));
+			if (i > 0) {
+				assertEquals(partitioner.getLast(i - 1) + 1, partitioner.getFirst(i));
+			}
+		}
+	}
+
+	@Test
+	public void testAlignsBoundariesToCells() {
+		// two clusters far apart are split at the start of a coarse cell
+		List<GeoHash> sample = new ArrayList<GeoHash>();
+		for (int i = 0; i < 100; i++) {
+			sample.add(GeoHash.withBitPrecision(40.75 + i * 1e-4, -73.98, 64));
+			sample.add(GeoHash.withBitPrecision(47.37 + i * 1e-4, 8.54, 64));
+		}
+		GeoHashRangePartitioner partitioner = GeoHashRangePartitioner.fromSample(sample, 2);
+		assertEquals(2, partitioner.getNumberOfPartitions());
+		assertEquals(0x8000000000000000L, partitioner.getFirst(1));
+	}
+
+	@Test
+	public void testSplitsAHotPartition() {
+		Random random = new Random(77);
+		GeoHashRangePartitioner partitioner = GeoHashRangePartitioner.fromSample(skewed(random, 10000), 4);
+		// the load shifts entirely into the first partition
+		long[] shifted = new long[10000];
+		for (int i = 0; i < shifted.length; i++) {
+			shifted[i] = partitioner.getFirst(0) + (long) (random.nextDouble() * partitioner.getLast(0));
+		}
+		GeoHashRangePartitioner split = partitioner.split(0, shifted, 3);
+		assertEquals(6, split.getNumberOfPartitions());
+		long[] counts = split.count(shifted);
+		assertTrue(imbalance(new long[] { counts[0], counts[1], counts[2] }) < 1.1);
+		for (int i = 1; i < 4; i++) {
+			assertEquals(partitioner.getFirst(i), split.getFirst(i + 2));
+		}
+		assertEquals(partitioner, split.merge(0).merge(0));
+	}
+
+	@Test
+	public void testKeepsIdenticalValuesTogether() {
+		long[] sample = new long[100];
+		GeoHashRangePartitioner partitioner = GeoHashRangePartitioner.fromSample(sample, 4);
+		assertEquals(1, partitioner.getNumberOfPartitions());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMergingTheLastPartition() {
+		GeoHashRangePartitioner.fromSample(new long[0], 1).merge(0);
+	}
+
+	/**
+	 * nine in ten points in Manhattan, the rest anywhere.
+	 */
+	private static long[] skewed(Random random, int count) {
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			double lat;
+			double lon;
+			if (random.nextInt(10) > 0) {
+				lat = 40.70 + 0.1 * random.nextDouble();
+				lon = -74.02 + 0.09 * random.nextDouble();
+			} else {
+				lat = random.nextDouble() * 180 - 90;
+				lon = random.nextDouble() * 360 - 180;
+			}
+			values[i] = GeoHash.encodeLongValue(lat, lon, 64);
+		}
+		return values;
+	}
+
+	private static double imbalance(long[] counts) {
+		long max = 0;
+		long sum = 0;
+		for (long count : counts) {
+			max = Math.max(max, count);
+			sum += count;
+		}
+		return max / ((double) sum / counts.length);
+	}
+}
@@ -0,0 +1,127 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashBoundingBoxQuery;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+
+public class GeoHashRoutingTableTest {
+
+	@Test
+	public void testUniformTableSplitsTheKeySpaceEvenly() {
+		GeoHashRoutingTable table = GeoHashRoutingTable.uniform(nodes(64));
+		assertEquals(64, table.getNumberOfRanges());
+		for (int i = 0; i < 64; i++) {
+			assertEquals((long) i << 58, table.getFirst(i));
+			assertEquals(i, table.nodeFor(((long) i << 58) + 12345));
+		}
+		assertEquals(63, table.nodeFor(-1L));
+	}
+
+	@Test
+	public void testFansQueriesOutToTheOwningNodesOnly() {
+		Random random = new Random(3);
+		long[] sample = new long[20000];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = GeoHash.encodeLongValue(40 + 10 * random.nextDouble(), -10 + 30 * random.nextDouble(), 64);
+		}
+		GeoHashRoutingTable table = GeoHashRoutingTable.of(GeoHashRangePartitioner.fromSample(sample, 64), nodes(64));
+
+		GeoHashBoundingBoxQuery query = new GeoHashBoundingBoxQuery(new BoundingBox(47.3, 47.4, 8.5, 8.6));
+		int[] fanOut = table.nodesFor(query);
+		assertTrue(fanOut.length >= 1 && fanOut.length < 8);
+		for (GeoHash searchHash : query.getSearchHashes()) {
+			assertTrue(contains(fanOut, table.nodeFor(searchHash)));
+		}
+		// every point of the query is stored on one of the nodes
+		for (int i = 0; i < 1000; i++) {
+			double lat = 47.3 + 0.1 * random.nextDouble();
+			double lon = 8.5 + 0.1 * random.nextDouble();
+			assertTrue(contains(fanOut, table.nodeFor(GeoHash.encodeLongValue(lat, lon, 64))));
+		}
+
+		int[] circleFanOut = table.nodesFor(new GeoHashCircleQuery(new WGS84Point(45, 5), 200000));
+		assertTrue(circleFanOut.length > fanOut.length && circleFanOut.length < 64);
+		assertArrayEquals(nodes(64), table.nodesFor(GeoHash.fromLongValue(0, 0)));
+	}
+
+	@Test
+	public void testAddingANodeMovesOnlyItsShare() {
+		Random random = new Random(11);
+		long[] sample = new long[50000];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = random.nextLong();
+		}
+		GeoHashRoutingTable before = GeoHashRoutingTable.uniform(nodes(8));
+		GeoHashRoutingTable after = before.withNode(8, sample);
+		assertArrayEquals(nodes(9), after.getNodes());
+		assertTrue(after.getNumberOfRanges() <= 2 * 8 + 1);
+
+		int[] counts = new int[9];
+		for (long value : sample) {
+			int node = after.nodeFor(value);
+			if (node != 8) {
+				assertEquals(before.nodeFor(value), node);
+			}
+			counts[node]++;
+		}
+		for (int count : counts) {
+			assertEquals(sample.length / 9.0, count, sample.length / 90.0);
+		}
+
+		GeoHashRoutingTable byWidth = before.withNode(8, new long[0]);
+		int moved = 0;
+		for (long value : sample) {
+			if (byWidth.nodeFor(value) == 8) {
+				moved++;
+			}
+		}
+		assertEquals(sample.length / 9.0, moved, sample.length / 90.0);
+	}
+
+	@Test
+	public void testRemovingANodeMovesOnlyItsRanges() {
+		GeoHashRoutingTable table = GeoHashRoutingTable.uniform(nodes(4)).withNode(4, new long[0]);
+		for (int removed = 0; removed < 5; removed++) {
+			GeoHashRoutingTable without = table.withoutNode(removed);
+			assertEquals(4, without.getNodes().length);
+			for (int i = 0; i < table.getNumberOfRanges(); i++) {
+				if (table.getNode(i) != removed) {
+					assertEquals(table.getNode(i), without.nodeFor(table.getFirst(i)));
+					assertEquals(table.getNode(i), without.nodeFor(table.getLast(i)));
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsAddingAnExistingNode() {
+		GeoHashRoutingTable.uniform(1, 2).withNode(2, new long[0]);
+	}
+
+	private static int[] nodes(int count) {
+		int[] nodes = new int[count];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = i;
+		}
+		return nodes;
+	}
+
+	private static boolean contains(int[] nodes, int node) {
+		for (int n : nodes) {
+			if (n == node) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
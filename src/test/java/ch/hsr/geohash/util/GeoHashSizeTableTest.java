@@ -1,12 +1,15 @@
 package ch.hsr.geohash.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
 
 import org.junit.Test;
 
 import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
 
 public class GeoHashSizeTableTest {
 
@@ -156,4 +159,91 @@ public class GeoHashSizeTableTest {
 			assertEquals(generator.getExpectedBits(bits), GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(bbox));
 		}
 	}
+
+	@Test
+	public void testOverlappingBitsMatchLinearSearch() {
+		Random rand = new Random(12);
+		for (int i = 0; i < 100000; i++) {
+			// sizes spread over all magnitudes, plus exact cell sizes
+			double height = (i % 3 == 0) ? GeoHashSizeTable.dLat(rand.nextInt(64)) : 180 * Math.pow(2, -40 * rand.nextDouble());
+			double width = (i % 5 == 0) ? GeoHashSizeTable.dLon(rand.nextInt(64)) : 360 * Math.pow(2, -40 * rand.nextDouble());
+			assertEquals(height + " x " + width, linearSearch(height, width),
+					GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(height, width));
+		}
+		assertEquals(63, GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(0, 0));
+		assertEquals(0, GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(180, 360));
+		assertEquals(0, GeoHashSizeTable.numberOfBitsForOverlappingGeoHash(200, 400));
+	}
+
+	private static int linearSearch(double height, double width) {
+		int bits = 63;
+		while ((GeoHashSizeTable.dLat(bits) < height || GeoHashSizeTable.dLon(bits) < width) && bits > 0) {
+			bits--;
+		}
+		return bits;
+	}
+
+	@Test
+	public void testCellSizesInMeters() {
+		double[] latitudes = { 0, 23.4, 45, 60.5, 80, 89.5 };
+		for (double latitude : latitudes) {
+			for (int bits = 20; bits <= 50; bits += 5) {
+				GeoHash hash = GeoHash.withBitPrecision(latitude, 8.8, bits);
+				BoundingBox box = hash.getBoundingBox();
+				double center = box.getCenterPoint().getLatitude();
+				double height = VincentyGeodesy.distanceInMeters(new WGS84Point(box.getMinLat(), 8.8), new WGS84Point(
+						box.getMaxLat(), 8.8));
+				double width = VincentyGeodesy.distanceInMeters(new WGS84Point(center, box.getMinLon()), new WGS84Point(
+						center, box.getMaxLon()));
+				assertEquals(height, GeoHashSizeTable.getCellHeightInMeters(center, bits), height * 1e-4);
+				assertEquals(width, GeoHashSizeTable.getCellWidthInMeters(center, bits), width * 1e-3);
+			}
+		}
+	}
+
+	@Test
+	public void testBitsForCellSize() {
+		double[] latitudes = { 0, 35, 47.2, 70, 85 };
+		double[] sizes = { 1, 150, 1000, 25000, 1000000 };
+		for (double latitude : latitudes) {
+			for (double meters : sizes) {
+				int bits = GeoHashSizeTable.numberOfBitsForCellSize(latitude, meters);
+				assertTrue(GeoHashSizeTable.getCellHeightInMeters(latitude, bits) >= meters * (1 - 1e-4));
+				assertTrue(GeoHashSizeTable.getCellWidthInMeters(latitude, bits) >= meters * (1 - 1e-4));
+				// one more bit makes one of the dimensions too small
+				assertTrue(GeoHashSizeTable.getCellHeightInMeters(latitude, bits + 1) < meters
+						|| GeoHashSizeTable.getCellWidthInMeters(latitude, bits + 1) < meters);
+			}
+		}
+	}
+
+	@Test
+	public void testBitsForCircle() {
+		Random rand = new Random(2);
+		for (int i = 0; i < 1000; i++) {
+			WGS84Point center = new WGS84Point(rand.nextDouble() * 160 - 80, rand.nextDouble() * 340 - 170);
+			double radius = Math.pow(10, 1 + 4 * rand.nextDouble());
+			int bits = GeoHashSizeTable.numberOfBitsForOverlappingCircle(center.getLatitude(), radius);
+			double height = GeoHashSizeTable.dLat(bits);
+			double width = GeoHashSizeTable.dLon(bits);
+			for (double bearing = 0; bearing < 360; bearing += 45) {
+				WGS84Point p = VincentyGeodesy.moveInDirection(center, bearing, radius);
+				// the cell size is large enough to hold the circle's bounding box
+				assertTrue(2 * Math.abs(p.getLatitude() - center.getLatitude()) <= height);
+				assertTrue(2 * Math.abs(p.getLongitude() - center.getLongitude()) <= width);
+			}
+		}
+	}
+
+	@Test
+	public void testDimensionPrecisionBeyond31Bits() {
+		double previous = GeoHashIterator.getDimensionPrecisionInMeters(45, true, 30);
+		for (int bits = 31; bits <= 40; bits++) {
+			double current = GeoHashIterator.getDimensionPrecisionInMeters(45, true, bits);
+			assertEquals(previous / 2, current, 0);
+			previous = current;
+		}
+		assertEquals(GeoHashIterator.getDimensionPrecisionInMeters(45, false, 20) / 1024,
+				GeoHashIterator.getDimensionPrecisionInMeters(45, false, 30), 1e-12);
+	}
 }
@@ -0,0 +1,111 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GeoHashSpatialJoinTest {
+	private static final double DISTANCE = 2000;
+
+	@Test
+	public void testFindsTheSamePairsAsComparingAllPoints() throws InterruptedException {
+		Random random = new Random(4711);
+		// clusters around the equator, at high latitudes, at the antimeridian
+		// and at the pole
+		double[][] centers = { { 0, 0 }, { 47.3, 8.5 }, { 75, 120 }, { -10, 179.99 }, { 89.99, 30 } };
+		double[][] left = points(random, centers, 250);
+		double[][] right = points(random, centers, 300);
+		Set<String> expected = bruteForce(left, right);
+		assertTrue(expected.size() > 1000);
+
+		GeoHashSpatialJoin join = new GeoHashSpatialJoin(DISTANCE);
+		assertEquals(expected, pairs(join.join(left[0], left[1], right[0], right[1])));
+		assertEquals(expected, pairs(join.join(left[0], left[1], right[0], right[1], 4)));
+
+		// cells much smaller than the distance are searched several rings out
+		GeoHashSpatialJoin fine = new GeoHashSpatialJoin(DISTANCE, 30, GeodesicDistances.VINCENTY);
+		assertEquals(expected, pairs(fine.join(left[0], left[1], right[0], right[1], 3)));
+	}
+
+	@Test
+	public void testReportsTheDistanceOfEachPair() {
+		GeoHashSpatialJoin join = new GeoHashSpatialJoin(500, 25, GeodesicDistances.HAVERSINE);
+		GeoHashSpatialJoin.Pairs pairs = join.join(new double[] { 47.0 }, new double[] { 8.0 }, new double[] {
+				47.001, 47.1 }, new double[] { 8.0, 8.0 });
+		assertEquals(1, pairs.size());
+		assertEquals(0, pairs.getLeft(0));
+		assertEquals(0, pairs.getRight(0));
+		assertEquals(GeodesicDistances.HAVERSINE.distanceInMeters(47.0, 8.0, 47.001, 8.0),
+				pairs.getDistanceInMeters(0), 0);
+	}
+
+	@Test
+	public void testJoinsEmptySets() throws InterruptedException {
+		GeoHashSpatialJoin join = new GeoHashSpatialJoin(100);
+		assertEquals(0, join.join(new double[0], new double[0], new double[] { 1 }, new double[] { 1 }, 2).size());
+		assertEquals(0, join.join(new double[] { 1 }, new double[] { 1 }, new double[0], new double[0]).size());
+	}
+
+	@Test
+	public void testRadixSortOrdersKeysAndIndexes() {
+		Random random = new Random(42);
+		long[] keys = new long[1000];
+		int[] indexes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong() >>> 24;
+			indexes[i] = i;
+		}
+		long[] original = keys.clone();
+		LongUtil.radixSort(keys, indexes, 40);
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(original[indexes[i]], keys[i]);
+			assertTrue(i == 0 || keys[i - 1] <= keys[i]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsANegativeDistance() {
+		new GeoHashSpatialJoin(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMismatchedCoordinates() {
+		new GeoHashSpatialJoin(100).join(new double[1], new double[2], new double[1], new double[1]);
+	}
+
+	private static double[][] points(Random random, double[][] centers, int perCenter) {
+		double[][] points = new double[2][centers.length * perCenter];
+		for (int i = 0; i < points[0].length; i++) {
+			double[] center = centers[i / perCenter];
+			points[0][i] = Math.max(-90, Math.min(90, center[0] + 0.1 * random.nextGaussian()));
+			double lon = center[1] + 0.1 * random.nextGaussian();
+			points[1][i] = (lon >= 180) ? lon - 360 : lon;
+		}
+		return points;
+	}
+
+	private static Set<String> bruteForce(double[][] left, double[][] right) {
+		Set<String> pairs = new HashSet<String>();
+		for (int i = 0; i < left[0].length; i++) {
+			for (int j = 0; j < right[0].length; j++) {
+				if (GeodesicDistances.VINCENTY.distanceInMeters(left[0][i], left[1][i], right[0][j], right[1][j]) <= DISTANCE) {
+					pairs.add(i + "," + j);
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private static Set<String> pairs(GeoHashSpatialJoin.Pairs result) {
+		Set<String> pairs = new HashSet<String>();
+		for (int i = 0; i < result.size(); i++) {
+			assertTrue(pairs.add(result.getLeft(i) + "," + result.getRight(i)));
+		}
+		return pairs;
+	}
+}
@@ -0,0 +1,132 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.WGS84Point;
+import ch.hsr.geohash.queries.GeoHashCircleQuery;
+
+public class GeodesicDistancesTest {
+
+	@Test
+	public void testStrategiesStayWithinTheirDocumentedError() {
+		double[] maxDistances = { 1000, 50000, 100000, 1000000, 15000000 };
+		Random rand = new Random(4711);
+		for (double maxDistance : maxDistances) {
+			for (int i = 0; i < 2000; i++) {
+				WGS84Point a = new WGS84Point(rand.nextDouble() * 170 - 85, rand.nextDouble() * 360 - 180);
+				double bearing = rand.nextDouble() * 360;
+				WGS84Point b = VincentyGeodesy.moveInDirection(a, bearing, maxDistance * (0.1 + 0.9 * rand.nextDouble()));
+				if (Math.abs(b.getLatitude()) > 85) {
+					continue;
+				}
+				double exact = VincentyGeodesy.distanceInMeters(a, b);
+				for (GeodesicDistances distance : GeodesicDistances.values()) {
+					double error = Math.abs(distance.distanceInMeters(a, b) - exact) / exact;
+					assertTrue(distance + " is off by " + error + " at " + exact + "m",
+							error <= distance.getMaxRelativeError(maxDistance));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBatchKernelsMatchSingleDistances() {
+		Random rand = new Random(815);
+		WGS84Point center = new WGS84Point(47.2266, 8.8184);
+		double[] latitudes = new double[500];
+		double[] longitudes = new double[500];
+		for (int i = 0; i < latitudes.length; i++) {
+			latitudes[i] = rand.nextDouble() * 180 - 90;
+			longitudes[i] = rand.nextDouble() * 360 - 180;
+		}
+		latitudes[0] = center.getLatitude();
+		longitudes[0] = center.getLongitude();
+
+		double[] out = new double[latitudes.length];
+		for (GeodesicDistances distance : GeodesicDistances.values()) {
+			distance.distancesFrom(center, latitudes, longitudes, out);
+			for (int i = 0; i < latitudes.length; i++) {
+				double expected = distance.distanceInMeters(center.getLatitude(), center.getLongitude(), latitudes[i],
+						longitudes[i]);
+				assertEquals(distance + " at index " + i, expected, out[i], 1e-6);
+			}
+		}
+
+		VincentyGeodesy.distancesFrom(center, latitudes, longitudes, out);
+		for (int i = 0; i < latitudes.length; i++) {
+			WGS84Point point = new WGS84Point(latitudes[i], longitudes[i]);
+			assertEquals(VincentyGeodesy.distanceInMeters(center, point), out[i], 1e-6);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchKernelRejectsShortOutput() {
+		GeodesicDistances.HAVERSINE.distancesFrom(new WGS84Point(0, 0), new double[3], new double[3], new double[2]);
+	}
+
+	@Test
+	public void testCoincidentPoints() {
+		for (GeodesicDistances distance : GeodesicDistances.values()) {
+			assertEquals(0.0, distance.distanceInMeters(47.2, 8.8, 47.2, 8.8), 0);
+		}
+	}
+
+	@Test
+	public void testForToleranceSelectsCheapestSufficientStrategy() {
+		assertSame(GeodesicDistances.EQUIRECTANGULAR, GeodesicDistances.forTolerance(20000, 0.01));
+		assertSame(GeodesicDistances.HAVERSINE, GeodesicDistances.forTolerance(2000000, 0.01));
+		assertSame(GeodesicDistances.ANDOYER_LAMBERT, GeodesicDistances.forTolerance(2000000, 1e-4));
+		assertSame(GeodesicDistances.VINCENTY, GeodesicDistances.forTolerance(2000000, 1e-7));
+		assertSame(GeodesicDistances.VINCENTY, GeodesicDistances.forTolerance(2000000, 0));
+	}
+
+	@Test
+	public void testForToleranceAtAntipodalRange() {
+		// close to antipodal, Andoyer-Lambert is off by more than 3e-5
+		double vincenty = GeodesicDistances.VINCENTY.distanceInMeters(0, 0, 1, 178.5);
+		double andoyerLambert = GeodesicDistances.ANDOYER_LAMBERT.distanceInMeters(0, 0, 1, 178.5);
+		double error = Math.abs(andoyerLambert - vincenty) / vincenty;
+		assertTrue(error > 1e-4);
+		assertTrue(error <= GeodesicDistances.ANDOYER_LAMBERT.getMaxRelativeError(vincenty));
+
+		assertSame(GeodesicDistances.ANDOYER_LAMBERT, GeodesicDistances.forTolerance(18000000, 1e-4));
+		assertSame(GeodesicDistances.VINCENTY, GeodesicDistances.forTolerance(20000000, 1e-4));
+		assertSame(GeodesicDistances.HAVERSINE, GeodesicDistances.forTolerance(20000000, 0.01));
+	}
+
+	@Test
+	public void testRadialIteratorWithSphericalDistance() {
+		WGS84Point center = new WGS84Point(35.0, 60.0);
+		RadialGeoHashIterator iterator = new RadialGeoHashIterator(35.0, 60.0, 500.0, 35, 0.01);
+		assertSame(GeodesicDistances.EQUIRECTANGULAR, iterator.getDistance());
+		int count = 0;
+		while (iterator.hasNext()) {
+			WGS84Point point = iterator.next().getPoint();
+			assertTrue(VincentyGeodesy.distanceInMeters(center, point) <= 500.0 * 1.01);
+			count++;
+		}
+		// the Vincenty-based iteration yields 42 hashes; a cell right on the
+		// circle may fall either way within the tolerance
+		assertTrue(Math.abs(count - 42) <= 2);
+	}
+
+	@Test
+	public void testCircleQueryChecksRadiusWhenGivenAStrategy() {
+		WGS84Point center = new WGS84Point(39.86391280373075, 116.37356590048701);
+		// inside the covering square, but about 830 meters from the center
+		WGS84Point corner = VincentyGeodesy.moveInDirection(center, 45, 830);
+
+		GeoHashCircleQuery square = new GeoHashCircleQuery(center, 589);
+		GeoHashCircleQuery circle = new GeoHashCircleQuery(center, 589, GeodesicDistances.HAVERSINE);
+		assertTrue(square.contains(corner));
+		assertFalse(circle.contains(corner));
+		assertTrue(circle.contains(VincentyGeodesy.moveInDirection(center, 45, 500)));
+	}
+}
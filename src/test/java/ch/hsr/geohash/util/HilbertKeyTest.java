@@ -0,0 +1,121 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+
+public class HilbertKeyTest {
+
+	@Test
+	public void testCellsAreTheGeoHashCells() {
+		Random random = new Random(41);
+		for (int i = 0; i < 2000; i++) {
+			double latitude = random.nextDouble() * 180 - 90;
+			double longitude = random.nextDouble() * 360 - 180;
+			int precision = 2 * random.nextInt(33);
+			long key = HilbertKey.encode(latitude, longitude, precision);
+			GeoHash hash = GeoHash.withBitPrecision(latitude, longitude, precision);
+
+			assertEquals(0, key & ~(precision == 0 ? 0 : -1L << (64 - precision)));
+			assertEquals(key, HilbertKey.fromGeoHash(hash));
+			assertEquals(hash, HilbertKey.toGeoHash(key, precision));
+			assertEquals(hash.getBoundingBox(), HilbertKey.getBoundingBox(key, precision));
+			assertTrue(HilbertKey.getBoundingBox(key, precision).contains(new WGS84Point(latitude, longitude)));
+			assertEquals(hash.getBoundingBoxCenterPoint(), HilbertKey.decode(key, precision));
+		}
+	}
+
+	@Test
+	public void testConsecutiveCellsShareASide() {
+		for (int precision = 2; precision <= 10; precision += 2) {
+			Set<Long> keys = new HashSet<Long>();
+			long cells = 1L << precision;
+			for (long ord = 0; ord < cells; ord++) {
+				long key = HilbertKey.fromOrd(ord, precision);
+				assertEquals(ord, HilbertKey.ord(key, precision));
+				assertTrue(keys.add(HilbertKey.toGeoHashValue(key, precision)));
+				if (ord + 1 < cells) {
+					long next = HilbertKey.next(key, precision);
+					assertTrue(next == HilbertKey.getNorthernNeighbour(key, precision)
+							|| next == HilbertKey.getSouthernNeighbour(key, precision)
+							|| next == HilbertKey.getEasternNeighbour(key, precision)
+							|| next == HilbertKey.getWesternNeighbour(key, precision));
+				}
+			}
+			// the curve runs from the south-western to the south-eastern cell
+			assertEquals(GeoHash.withBitPrecision(-90, -180, precision), HilbertKey.toGeoHash(0, precision));
+			assertEquals(GeoHash.withBitPrecision(-90, 180, precision),
+					HilbertKey.toGeoHash(HilbertKey.fromOrd(cells - 1, precision), precision));
+		}
+	}
+
+	@Test
+	public void testKeysOfCellsWithinACellShareItsPrefix() {
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			double latitude = random.nextDouble() * 180 - 90;
+			double longitude = random.nextDouble() * 360 - 180;
+			int precision = 2 + 2 * random.nextInt(32);
+			int prefixPrecision = 2 * random.nextInt(precision / 2 + 1);
+			long key = HilbertKey.encode(latitude, longitude, precision);
+			long prefix = HilbertKey.encode(latitude, longitude, prefixPrecision);
+			assertEquals(prefix, HilbertKey.getParent(key, prefixPrecision));
+			assertTrue(HilbertKey.within(key, precision, prefix, prefixPrecision));
+			if (prefixPrecision > 0) {
+				assertFalse(HilbertKey.within(key, precision, HilbertKey.next(prefix, prefixPrecision), prefixPrecision));
+			}
+			if (prefixPrecision < precision) {
+				assertFalse(HilbertKey.within(prefix, prefixPrecision, key, precision));
+			}
+		}
+	}
+
+	@Test
+	public void testNeighboursAreThoseOfTheGeoHash() {
+		Random random = new Random(43);
+		for (int i = 0; i < 500; i++) {
+			int precision = 2 + 2 * random.nextInt(32);
+			GeoHash hash = GeoHash.withBitPrecision(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+					precision);
+			long key = HilbertKey.fromGeoHash(hash);
+			GeoHash[] adjacent = hash.getAdjacent();
+			long[] adjacentKeys = HilbertKey.getAdjacent(key, precision);
+			for (int j = 0; j < adjacent.length; j++) {
+				assertEquals(HilbertKey.fromGeoHash(adjacent[j]), adjacentKeys[j]);
+			}
+			assertEquals(HilbertKey.fromGeoHash(hash.getNorthernNeighbour()), HilbertKey.getNorthernNeighbour(key, precision));
+			assertEquals(HilbertKey.fromGeoHash(hash.getWesternNeighbour()), HilbertKey.getWesternNeighbour(key, precision));
+		}
+	}
+
+	@Test
+	public void testStepsAlongTheCurve() {
+		long key = HilbertKey.encode(47.37, 8.54, 30);
+		assertEquals(key, HilbertKey.prev(HilbertKey.next(key, 30), 30));
+		assertEquals(HilbertKey.next(key, 30, 5), HilbertKey.fromOrd(HilbertKey.ord(key, 30) + 5, 30));
+		assertEquals(0, HilbertKey.next(HilbertKey.fromOrd((1L << 30) - 1, 30), 30));
+		assertEquals(-1L << 34, HilbertKey.prev(0, 30));
+
+		long last = HilbertKey.fromOrd(-1L, 64);
+		assertEquals(-1L, last);
+		assertEquals(0, HilbertKey.next(last, 64));
+		assertArrayEquals(new long[] { 0, 0, 0, 0, 0, 0, 0, 0 }, HilbertKey.getAdjacent(0, 0));
+		assertEquals(new BoundingBox(-90, 90, -180, 180), HilbertKey.getBoundingBox(0, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsAnOddPrecision() {
+		HilbertKey.encode(47.37, 8.54, 31);
+	}
+}
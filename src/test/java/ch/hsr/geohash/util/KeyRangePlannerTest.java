@@ -0,0 +1,121 @@
+package ch.hsr.geohash.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.util.KeyRangePlanner.Curve;
+
+public class KeyRangePlannerTest {
+
+	@Test
+	public void testBoxesArePlannedLikeTheirCells() {
+		Random random = new Random(51);
+		int geoHashRanges = 0;
+		int hilbertRanges = 0;
+		for (int i = 0; i < 300; i++) {
+			BoundingBox box = randomBox(random);
+			int precision = 2 * (6 + random.nextInt(8));
+			for (Curve curve : Curve.values()) {
+				long[][] planned = KeyRangePlanner.plan(box, precision, curve);
+				long[][] enumerated = KeyRangePlanner.plan(new RectangleGeoHashIterator(box.getMinLat(), box.getMinLon(),
+						box.getMaxLat(), box.getMaxLon(), precision), curve);
+				assertArrayEquals(enumerated[0], planned[0]);
+				assertArrayEquals(enumerated[1], planned[1]);
+				assertSortedAndDisjoint(planned);
+				if (curve == Curve.GEOHASH) {
+					geoHashRanges += planned[0].length;
+				} else {
+					hilbertRanges += planned[0].length;
+				}
+			}
+		}
+		assertTrue(hilbertRanges + " Hilbert versus " + geoHashRanges + " GeoHash ranges",
+				hilbertRanges < 0.8 * geoHashRanges);
+	}
+
+	@Test
+	public void testCellsOfAnyPrecision() {
+		GeoHash cell = GeoHash.withBitPrecision(47.37, 8.54, 25);
+		long[][] geoHash = KeyRangePlanner.plan(Arrays.asList(cell, cell.getEasternNeighbour()).iterator(),
+				Curve.GEOHASH);
+		assertEquals(1, geoHash[0].length);
+		assertEquals(cell.longValue(), geoHash[0][0]);
+
+		// an odd cell is the union of two Hilbert cells
+		long[][] hilbert = KeyRangePlanner.plan(Arrays.asList(cell).iterator(), Curve.HILBERT);
+		long cells = 0;
+		for (int i = 0; i < hilbert[0].length; i++) {
+			cells += ((hilbert[1][i] - hilbert[0][i]) >>> 38) + 1;
+		}
+		assertEquals(2, cells);
+		for (int i = 0; i < hilbert[0].length; i++) {
+			assertTrue(HilbertKey.toGeoHash(hilbert[0][i], 26).within(cell));
+		}
+	}
+
+	@Test
+	public void testBoxAcrossTheAntimeridian() {
+		BoundingBox box = BoundingBox.fromWestToEast(-1, 1, 179, -179);
+		for (Curve curve : Curve.values()) {
+			long[][] planned = KeyRangePlanner.plan(box, 20, curve);
+			long[][] enumerated = KeyRangePlanner.plan(new RectangleGeoHashIterator(-1, 179, 1, -179, 20), curve);
+			assertArrayEquals(enumerated[0], planned[0]);
+			assertArrayEquals(enumerated[1], planned[1]);
+		}
+	}
+
+	@Test
+	public void testTheWorldIsOneRange() {
+		for (int precision = 0; precision <= 64; precision += 16) {
+			long[][] planned = KeyRangePlanner.plan(new BoundingBox(-90, 90, -180, 180), precision, Curve.HILBERT);
+			assertArrayEquals(new long[] { 0 }, planned[0]);
+			assertArrayEquals(new long[] { -1 }, planned[1]);
+		}
+	}
+
+	@Test
+	public void testRangesRoundTripThroughTheCodec() throws IOException {
+		long[][] planned = KeyRangePlanner.plan(new BoundingBox(47.3, 47.4, 8.5, 8.6), 32, Curve.HILBERT);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GeoHashCodec.writeRanges(planned[0], planned[1], planned[0].length, new DataOutputStream(bytes));
+		long[][] read = GeoHashCodec.readRanges(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertArrayEquals(planned[0], read[0]);
+		assertArrayEquals(planned[1], read[1]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsAnOddPrecision() {
+		KeyRangePlanner.plan(new BoundingBox(47.3, 47.4, 8.5, 8.6), 31, Curve.GEOHASH);
+	}
+
+	private static BoundingBox randomBox(Random random) {
+		double latitude = random.nextDouble() * 160 - 80;
+		double longitude = random.nextDouble() * 340 - 170;
+		double height = Math.exp(random.nextGaussian() - 1);
+		double width = height * Math.exp(0.5 * random.nextGaussian());
+		return new BoundingBox(latitude, Math.min(90, latitude + height), longitude, Math.min(180, longitude + width));
+	}
+
+	private static void assertSortedAndDisjoint(long[][] ranges) {
+		for (int i = 0; i < ranges[0].length; i++) {
+			assertTrue((ranges[0][i] ^ Long.MIN_VALUE) <= (ranges[1][i] ^ Long.MIN_VALUE));
+			if (i > 0) {
+				// not even adjacent, or they would have been merged
+				assertTrue((ranges[1][i - 1] ^ Long.MIN_VALUE) + 1 < (ranges[0][i] ^ Long.MIN_VALUE));
+			}
+		}
+	}
+}
@@ -24,6 +24,16 @@ public class LongUtilTest {
 		assertPrefixLength(16, 0x8888300000000000l, 0x8888c00000000000l);
 	}
 
+	@Test
+	public void testCompactGathersTheBitsThatSpreadScatters() {
+		assertEquals(0x5555555555555555L, LongUtil.spread(0xFFFFFFFFL));
+		assertEquals(0xFFFFFFFFL, LongUtil.compact(0x5555555555555555L));
+		assertEquals(0L, LongUtil.compact(0xAAAAAAAAAAAAAAAAL));
+		for (long x = 1; x < 0x100000000L; x = 3 * x + 1) {
+			assertEquals(x, LongUtil.compact(LongUtil.spread(x)));
+		}
+	}
+
 	private void assertPrefixLength(int length, long a, long b) {
 		assertEquals(length, LongUtil.commonPrefixLength(a, b));
 	}
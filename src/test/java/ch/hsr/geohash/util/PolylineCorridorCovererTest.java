@@ -0,0 +1,209 @@
+package ch.hsr.geohash.util;
+
+import ch.hsr.geohash.BoundingBox;
+import ch.hsr.geohash.GeoHash;
+import ch.hsr.geohash.WGS84Point;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Tests the PolylineCorridorCoverer.
+ */
+public class PolylineCorridorCovererTest {
+    private static final List<WGS84Point> NORTHERN_ROUTE = Arrays.asList(
+            new WGS84Point(69.65, 18.96),
+            new WGS84Point(69.70, 19.10),
+            new WGS84Point(69.68, 19.25));
+
+    @Test
+    public void testDistanceAgreesWithVincenty() {
+        double[][] segments = { {35.0, 60.0, 35.01, 60.01}, {69.65, 18.96, 69.70, 19.10}, {-45.0, 170.0, -44.5, 170.8}, {0.0, 179.99, 0.01, -179.99} };
+        Random rand = new Random(42);
+        for (double[] s : segments) {
+            WGS84Point a = new WGS84Point(s[0], s[1]);
+            WGS84Point b = new WGS84Point(s[2], s[3]);
+            PolylineCorridorCoverer coverer = new PolylineCorridorCoverer(Arrays.asList(a, b), 1000.0);
+            List<WGS84Point> samples = sample(Arrays.asList(a, b), 5.0);
+            for (int i = 0; i < 200; i++) {
+                WGS84Point onLine = samples.get(rand.nextInt(samples.size()));
+                WGS84Point point = VincentyGeodesy.moveInDirection(onLine, rand.nextDouble() * 360, rand.nextDouble() * 3000);
+                double expected = Double.POSITIVE_INFINITY;
+                for (WGS84Point sample : samples) {
+                    expected = Math.min(expected, VincentyGeodesy.distanceInMeters(point, sample));
+                }
+                Assert.assertEquals("Distance from " + point, expected, coverer.getDistanceInMeters(point), 1.0);
+            }
+        }
+    }
+
+    @Test
+    public void testCoveringHasNoFalseNegatives() {
+        PolylineCorridorCoverer coverer = new PolylineCorridorCoverer(NORTHERN_ROUTE, 1000.0);
+        List<GeoHash> cells = coverer.coverAll(0, 35);
+        List<WGS84Point> samples = sample(NORTHERN_ROUTE, 10.0);
+
+        Random rand = new Random(4711);
+        for (int i = 0; i < 2000; i++) {
+            WGS84Point onLine = samples.get(rand.nextInt(samples.size()));
+            WGS84Point point = VincentyGeodesy.moveInDirection(onLine, rand.nextDouble() * 360, rand.nextDouble() * 990);
+            boolean isCovered = false;
+            for (GeoHash cell : cells) {
+                if (cell.contains(point)) {
+                    isCovered = true;
+                    break;
+                }
+            }
+            Assert.assertTrue(point + " is within the corridor, but not covered", isCovered);
+        }
+    }
+
+    @Test
+    public void testCoveringUsesCoarseCellsInside() {
+        PolylineCorridorCoverer coverer = new PolylineCorridorCoverer(NORTHERN_ROUTE, 1000.0);
+        List<GeoHash> cells = coverer.cover(35);
+        int coarse = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            GeoHash cell = cells.get(i);
+            Assert.assertTrue(cell.significantBits() <= 35);
+            if (cell.significantBits() < 35) {
+                coarse++;
+                // a coarse cell must lie entirely within the corridor
+                BoundingBox box = cell.getBoundingBox();
+                Assert.assertTrue(coverer.contains(box.getUpperLeft()));
+                Assert.assertTrue(coverer.contains(box.getLowerRight()));
+            }
+            if (i > 0) {
+                Assert.assertTrue(cells.get(i - 1).longValue() < cell.longValue());
+            }
+        }
+        Assert.assertTrue(coarse > 0);
+
+        for (GeoHash cell : coverer.cover(30, 35)) {
+            Assert.assertTrue(cell.significantBits() >= 30);
+        }
+    }
+
+    @Test
+    public void testCoveringIsMoreAccurateThanLineSegmentBuffer() {
+        double[][] segments = { {35.0, 60.0, 35.01, 60.01}, {69.65, 18.96, 69.70, 19.10} };
+        for (double[] s : segments) {
+            double radiusMeters = 1000.0;
+            List<WGS84Point> line = Arrays.asList(new WGS84Point(s[0], s[1]), new WGS84Point(s[2], s[3]));
+            PolylineCorridorCoverer coverer = new PolylineCorridorCoverer(line, radiusMeters);
+
+            List<GeoHash> segmentCells = new ArrayList<GeoHash>();
+            LineSegmentBufferGeoHashIterator lsbghi = new LineSegmentBufferGeoHashIterator(s[0], s[1], s[2], s[3], radiusMeters, 35);
+            while (lsbghi.hasNext()) {
+                segmentCells.add(lsbghi.next());
+            }
+            List<GeoHash> corridorCells = coverer.cover(35);
+
+            double[] segmentErrors = getErrorAreas(coverer, segmentCells);
+            double[] corridorErrors = getErrorAreas(coverer, corridorCells);
+            Assert.assertTrue(corridorCells.size() < segmentCells.size());
+            Assert.assertTrue(corridorErrors[0] + corridorErrors[1] < 0.5 * (segmentErrors[0] + segmentErrors[1]));
+            // far north, the degree-based buffer is so narrow that it has hardly any false positives, but it misses most of the corridor
+            Assert.assertTrue(corridorErrors[0] < segmentErrors[0] || corridorErrors[1] < 0.1 * segmentErrors[1]);
+
+            Assert.assertEquals(0.0, getErrorAreas(coverer, coverer.coverAll(0, 35))[1], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPolyline() {
+        new PolylineCorridorCoverer(new ArrayList<WGS84Point>(), 1000.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAntipodalEdge() {
+        new PolylineCorridorCoverer(Arrays.asList(new WGS84Point(10.0, 20.0), new WGS84Point(-10.0, -160.0)), 1000.0);
+    }
+
+    @Test
+    public void testEdgeAcrossHalfTheEarthIsDensified() {
+        PolylineCorridorCoverer coverer = new PolylineCorridorCoverer(
+                Arrays.asList(new WGS84Point(0.0, 0.0), new WGS84Point(0.0, 179.0), new WGS84Point(-10.0, -160.0)), 1000.0);
+        Assert.assertTrue(coverer.contains(new WGS84Point(0.0, 90.0)));
+        Assert.assertFalse(coverer.contains(new WGS84Point(45.0, 90.0)));
+    }
+
+    /**
+     * Estimates the area covered by the cells that's outside of the corridor, and the area of the corridor
+     * that's not covered by any of the cells, by testing a grid of points around the corridor.
+     *
+     * @return the false positive and false negative areas in square meters
+     */
+    private static double[] getErrorAreas(PolylineCorridorCoverer coverer, List<GeoHash> cells) {
+        Set<GeoHash> cellSet = new HashSet<GeoHash>(cells);
+        Set<Integer> precisions = new TreeSet<Integer>();
+        BoundingBox bounds = null;
+        for (GeoHash cell : cells) {
+            precisions.add(cell.significantBits());
+            if (bounds == null) {
+                bounds = new BoundingBox(cell.getBoundingBox());
+            } else {
+                bounds.expandToInclude(cell.getBoundingBox());
+            }
+        }
+
+        double step = 20.0;
+        double metersPerDegreeLatitude = GeoHashSizeTable.metersPerDegreeLatitude(bounds.getCenterPoint().getLatitude());
+        double metersPerDegreeLongitude = GeoHashSizeTable.metersPerDegreeLongitude(bounds.getCenterPoint().getLatitude());
+        double incLatitude = step / metersPerDegreeLatitude, incLongitude = step / metersPerDegreeLongitude;
+        double[] errors = new double[2];
+        // look a little beyond the cells, for parts of the corridor they miss
+        double padding = 2 * coverer.getBufferMeters();
+        for (double latitude = bounds.getMinLat() - padding / metersPerDegreeLatitude; latitude <= bounds.getMaxLat() + padding / metersPerDegreeLatitude; latitude += incLatitude) {
+            for (double longitude = bounds.getMinLon() - padding / metersPerDegreeLongitude; longitude <= bounds.getMaxLon() + padding / metersPerDegreeLongitude; longitude += incLongitude) {
+                boolean isCovered = false;
+                for (int precision : precisions) {
+                    if (cellSet.contains(GeoHash.withBitPrecision(latitude, longitude, precision))) {
+                        isCovered = true;
+                        break;
+                    }
+                }
+                boolean isInside = coverer.getDistanceInMeters(latitude, longitude) <= coverer.getBufferMeters();
+                if (isCovered && !isInside) {
+                    errors[0] += step * step;
+                } else if (!isCovered && isInside) {
+                    errors[1] += step * step;
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Points along the great circles through the polyline's vertices, at most about <code>stepMeters</code> apart.
+     */
+    private static List<WGS84Point> sample(List<WGS84Point> polyline, double stepMeters) {
+        List<WGS84Point> samples = new ArrayList<WGS84Point>();
+        for (int i = 1; i < polyline.size(); i++) {
+            WGS84Point a = polyline.get(i - 1);
+            WGS84Point b = polyline.get(i);
+            double[] va = toVector(a), vb = toVector(b);
+            double sigma = Math.acos(Math.min(1, va[0] * vb[0] + va[1] * vb[1] + va[2] * vb[2]));
+            int steps = (int) Math.ceil(VincentyGeodesy.distanceInMeters(a, b) / stepMeters);
+            for (int k = 0; k <= steps; k++) {
+                double wa = Math.sin(sigma * (steps - k) / steps) / Math.sin(sigma);
+                double wb = Math.sin(sigma * k / steps) / Math.sin(sigma);
+                double x = wa * va[0] + wb * vb[0], y = wa * va[1] + wb * vb[1], z = wa * va[2] + wb * vb[2];
+                samples.add(new WGS84Point(Math.toDegrees(Math.atan2(z, Math.hypot(x, y))), Math.toDegrees(Math.atan2(y, x))));
+            }
+        }
+        return samples;
+    }
+
+    private static double[] toVector(WGS84Point point) {
+        double phi = Math.toRadians(point.getLatitude()), lambda = Math.toRadians(point.getLongitude());
+        return new double[] { Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi) };
+    }
+}
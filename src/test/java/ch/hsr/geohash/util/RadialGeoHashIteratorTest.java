@@ -5,6 +5,9 @@ import ch.hsr.geohash.WGS84Point;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Created by IntelliJ IDEA.
  * User: cne1x
@@ -46,4 +49,116 @@ public class RadialGeoHashIteratorTest {
         // there should have been 21 qualifying GeoHashes meeting these criteria
         Assert.assertEquals("Expected number of GeoHashes in the result set did not match.", count, 42);
     }
+
+    @Test
+    public void testRowSpansMatchExhaustiveSearch() {
+        double[][] centers = { {35.0, 60.0}, {0.0, 0.0}, {-33.86, 151.21}, {69.65, 18.96}, {47.2266, 8.8184} };
+        double[] radii = { 150.0, 500.0, 2500.0 };
+        int[] precisions = { 30, 35, 36 };
+
+        for (double[] c : centers) {
+            WGS84Point ptCenter = new WGS84Point(c[0], c[1]);
+            for (double radiusMeters : radii) {
+                for (int bitsPrecision : precisions) {
+                    RadialGeoHashIterator rghi = new RadialGeoHashIterator(c[0], c[1], radiusMeters, bitsPrecision);
+                    Set<GeoHash> found = new HashSet<GeoHash>();
+                    while (rghi.hasNext()) {
+                        GeoHash geoHash = rghi.next();
+                        Assert.assertTrue("Duplicate GeoHash " + geoHash, found.add(geoHash));
+                    }
+
+                    // every cell of a generous rectangle whose center is inside the circle must have been found
+                    WGS84Point ptLL = VincentyGeodesy.moveInDirection(ptCenter, 225.0, 2.0 * radiusMeters);
+                    WGS84Point ptUR = VincentyGeodesy.moveInDirection(ptCenter, 45.0, 2.0 * radiusMeters);
+                    RectangleGeoHashIterator all = new RectangleGeoHashIterator(
+                            ptLL.getLatitude(), ptLL.getLongitude(), ptUR.getLatitude(), ptUR.getLongitude(), bitsPrecision);
+                    int expected = 0;
+                    while (all.hasNext()) {
+                        GeoHash geoHash = all.next();
+                        double distanceMeters = VincentyGeodesy.distanceInMeters(ptCenter, geoHash.getBoundingBoxCenterPoint());
+                        if (distanceMeters <= radiusMeters) {
+                            expected++;
+                            Assert.assertTrue(geoHash + " at " + distanceMeters + " meters was not found", found.contains(geoHash));
+                        }
+                    }
+                    Assert.assertEquals(expected, found.size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCirclesAroundAndNearThePoles() {
+        // around the north pole, near the south pole, and near the north pole across the antimeridian
+        double[][] circles = { {89.5, 30.0, 100000.0}, {-87.0, -60.0, 300000.0}, {85.0, 179.0, 200000.0} };
+        int bitsPrecision = 20;
+        for (double[] c : circles) {
+            WGS84Point ptCenter = new WGS84Point(c[0], c[1]);
+            RadialGeoHashIterator rghi = new RadialGeoHashIterator(c[0], c[1], c[2], bitsPrecision);
+            Set<GeoHash> found = new HashSet<GeoHash>();
+            while (rghi.hasNext()) {
+                GeoHash geoHash = rghi.next();
+                Assert.assertTrue("Duplicate GeoHash " + geoHash, found.add(geoHash));
+                Assert.assertTrue(VincentyGeodesy.distanceInMeters(ptCenter, geoHash.getBoundingBoxCenterPoint()) <= c[2]);
+            }
+
+            // every cell in the polar rows whose center is inside the circle must have been found
+            RectangleGeoHashIterator all = c[0] > 0
+                    ? new RectangleGeoHashIterator(80.0, -180.0, 90.0, 180.0, bitsPrecision)
+                    : new RectangleGeoHashIterator(-90.0, -180.0, -80.0, 180.0, bitsPrecision);
+            int expected = 0;
+            while (all.hasNext()) {
+                GeoHash geoHash = all.next();
+                if (VincentyGeodesy.distanceInMeters(ptCenter, geoHash.getBoundingBoxCenterPoint()) <= c[2]) {
+                    expected++;
+                    Assert.assertTrue(geoHash + " was not found", found.contains(geoHash));
+                }
+            }
+            Assert.assertEquals(expected, found.size());
+        }
+    }
+
+    @Test
+    public void testDistanceIsComputedForTheCurrentGeoHash() {
+        WGS84Point ptCenter = new WGS84Point(35.0, 60.0);
+        RadialGeoHashIterator rghi = new RadialGeoHashIterator(35.0, 60.0, 500.0, 35);
+        while (rghi.hasNext()) {
+            double distanceMeters = VincentyGeodesy.distanceInMeters(ptCenter, rghi.getCurrentGeoHash().getBoundingBoxCenterPoint());
+            Assert.assertEquals(distanceMeters, rghi.getDistanceInMeters(), 1e-6);
+            rghi.next();
+        }
+        Assert.assertTrue(Double.isNaN(rghi.getDistanceInMeters()));
+    }
+
+    @Test
+    public void testWithMaxCells() {
+        double[][] circles = { {35.0, 60.0, 500.0}, {69.65, 18.96, 20000.0}, {-33.86, 151.21, 5000000.0} };
+        long[] budgets = { 10, 1000, 20000 };
+        for (double[] c : circles) {
+            for (long maxCells : budgets) {
+                RadialGeoHashIterator rghi = RadialGeoHashIterator.withMaxCells(c[0], c[1], c[2], maxCells);
+                int count = 0;
+                while (rghi.hasNext()) {
+                    rghi.next();
+                    count++;
+                }
+                Assert.assertTrue(count + " cells for a budget of " + maxCells, count <= maxCells);
+            }
+        }
+    }
+
+    @Test
+    public void testWithMaxFalsePositiveRatio() {
+        RadialGeoHashIterator rghi = RadialGeoHashIterator.withMaxFalsePositiveRatio(35.0, 60.0, 500.0, 0.5, 100000);
+        Assert.assertTrue(RadialGeoHashIterator.getFalsePositiveRatio(35.0, 500.0, rghi.precision) <= 0.5);
+        Assert.assertTrue(RadialGeoHashIterator.getFalsePositiveRatio(35.0, 500.0, rghi.precision - 1) > 0.5);
+
+        RadialGeoHashIterator budgeted = RadialGeoHashIterator.withMaxFalsePositiveRatio(35.0, 60.0, 500.0, 0.001, 100);
+        int count = 0;
+        while (budgeted.hasNext()) {
+            budgeted.next();
+            count++;
+        }
+        Assert.assertTrue(count <= 100);
+    }
 }
@@ -120,4 +120,61 @@ public class RectangleGeoHashIteratorTest {
         // there should have been 72 qualifying GeoHashes meeting these criteria
         Assert.assertEquals("Wrong number of RGHI iterations found", 72, count);
     }
+
+    @Test
+    public void testWithMaxCells() {
+        double[][] rectangles = { {35.0, 60.0, 35.2, 60.5}, {-10.0, -80.0, 20.0, -30.0}, {47.37, 8.54, 47.38, 8.55} };
+        long[] budgets = { 1, 50, 1000, 100000 };
+        for (double[] r : rectangles) {
+            for (long maxCells : budgets) {
+                RectangleGeoHashIterator rghi = RectangleGeoHashIterator.withMaxCells(r[0], r[1], r[2], r[3], maxCells);
+                int count = 0;
+                while (rghi.hasNext()) {
+                    rghi.next();
+                    count++;
+                }
+                Assert.assertTrue(count <= maxCells);
+                Assert.assertEquals(count, rghi.getSpanBitsLatitude() * rghi.getSpanBitsLongitude());
+
+                // one more bit would have exceeded the budget
+                RectangleGeoHashIterator finer = new RectangleGeoHashIterator(r[0], r[1], r[2], r[3], rghi.precision + 1);
+                Assert.assertTrue(finer.getSpanBitsLatitude() * finer.getSpanBitsLongitude() > maxCells);
+            }
+        }
+    }
+
+    @Test
+    public void testWithMaxFalsePositiveRatio() {
+        RectangleGeoHashIterator rghi = RectangleGeoHashIterator.withMaxFalsePositiveRatio(35.0, 60.0, 35.2, 60.5, 0.1, 1000000);
+        Assert.assertTrue(RectangleGeoHashIterator.getFalsePositiveRatio(35.0, 60.0, 35.2, 60.5, rghi.precision) <= 0.1);
+        Assert.assertTrue(RectangleGeoHashIterator.getFalsePositiveRatio(35.0, 60.0, 35.2, 60.5, rghi.precision - 1) > 0.1);
+
+        // the cell budget wins over the ratio
+        RectangleGeoHashIterator budgeted = RectangleGeoHashIterator.withMaxFalsePositiveRatio(35.0, 60.0, 35.2, 60.5, 0.0001, 100);
+        Assert.assertTrue(budgeted.getSpanBitsLatitude() * budgeted.getSpanBitsLongitude() <= 100);
+    }
+
+    @Test
+    public void testRectangleAcrossTheAntimeridian() {
+        RectangleGeoHashIterator rghi = new RectangleGeoHashIterator(-5.0, 175.0, 5.0, -175.0, 20);
+        BoundingBox rectangle = BoundingBox.fromWestToEast(-5.0, 5.0, 175.0, -175.0);
+        int count = 0;
+        while (rghi.hasNext()) {
+            GeoHash gh = rghi.next();
+            Assert.assertTrue(rectangle.intersects(gh.getBoundingBox()));
+            count++;
+        }
+        Assert.assertEquals(rghi.getSpanBitsLatitude() * rghi.getSpanBitsLongitude(), count);
+        Assert.assertEquals(RectangleGeoHashIterator.getCellCount(-5.0, 175.0, 5.0, -175.0, 20), count);
+        Assert.assertTrue(RectangleGeoHashIterator.getFalsePositiveRatio(-5.0, 175.0, 5.0, -175.0, 20) < 1.0);
+
+        RectangleGeoHashIterator budgeted = RectangleGeoHashIterator.withMaxCells(-5.0, 175.0, 5.0, -175.0, 100);
+        Assert.assertTrue(budgeted.getSpanBitsLatitude() * budgeted.getSpanBitsLongitude() <= 100);
+        Assert.assertTrue(budgeted.precision > 6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithoutCellBudget() {
+        RectangleGeoHashIterator.withMaxCells(35.0, 60.0, 35.2, 60.5, 0);
+    }
 }
@@ -126,4 +126,34 @@ public class TrackGeoHashIteratorTest {
         
         return count;
     }
+
+    @Test
+    public void testWithMaxCells() {
+        List<WGS84Point> track = Arrays.asList(
+                new WGS84Point(35.00, 60.00),
+                new WGS84Point(35.01, 60.01),
+                new WGS84Point(35.01, 60.03)
+        );
+        long[] budgets = { 10, 300, 5000, 10000 };
+        for (long maxCells : budgets) {
+            TrackGeoHashIterator tghi = TrackGeoHashIterator.withMaxCells(track, null, 500.0, maxCells);
+            int count = 0;
+            while (tghi.hasNext()) {
+                tghi.next();
+                count++;
+            }
+            Assert.assertTrue(count + " cells for a budget of " + maxCells, count <= maxCells);
+            // the estimate counts the shared end-points twice, but should not waste most of the budget
+            Assert.assertTrue(count + " cells for a budget of " + maxCells, count * 8 > maxCells);
+        }
+
+        // a single point works, too
+        TrackGeoHashIterator tghi = TrackGeoHashIterator.withMaxCells(Arrays.asList(new WGS84Point(35.00, 60.00)), null, 500.0, 100);
+        int count = 0;
+        while (tghi.hasNext()) {
+            tghi.next();
+            count++;
+        }
+        Assert.assertTrue(count > 0 && count <= 100);
+    }
 }
@@ -1,5 +1,6 @@
 package ch.hsr.geohash.util;
 
+import ch.hsr.geohash.BoundingBox;
 import ch.hsr.geohash.GeoHash;
 import junit.framework.Assert;
 import org.junit.Test;
@@ -81,4 +82,34 @@ public class TwoGeoHashBoundingBoxTest {
             Assert.assertEquals("Incorrect number of bits precision in resulting string-initialized TwoGeoHashBoundingBox", i, bboxS.getBottomLeft().significantBits());
         }
     }
+
+    /**
+     * The constructor spans the box between its corners, whichever way round they are given;
+     * only a box that crosses the antimeridian yields one that wraps.
+     */
+    @Test
+    public void onlyWrapAroundForBoxesAcrossTheAntimeridian() {
+        TwoGeoHashBoundingBox swapped = new TwoGeoHashBoundingBox(
+                GeoHash.withCharacterPrecision(10, 20, 4), GeoHash.withCharacterPrecision(20, 10, 4));
+        Assert.assertFalse(swapped.crossesAntimeridian());
+        Assert.assertTrue(swapped.getBoundingBox().getLongitudeSize() < 11);
+        Assert.assertEquals(202, count(new BoundingBoxGeoHashIterator(swapped)));
+
+        TwoGeoHashBoundingBox wrapped = TwoGeoHashBoundingBox.withCharacterPrecision(
+                BoundingBox.fromWestToEast(10, 20, 20, 10), 4);
+        Assert.assertTrue(wrapped.crossesAntimeridian());
+        Assert.assertEquals(350, wrapped.getBoundingBox().getLongitudeSize(), 1);
+
+        TwoGeoHashBoundingBox ordered = TwoGeoHashBoundingBox.withCharacterPrecision(new BoundingBox(10, 20, 20, 10), 4);
+        Assert.assertFalse(ordered.crossesAntimeridian());
+    }
+
+    private static int count(BoundingBoxGeoHashIterator iter) {
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
 }